@@ -1,28 +1,119 @@
 package sensor;
 
-import java.util.Timer;
-
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.FileIndexProperties;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import sensor.common.Manager;
 import sensor.common.MetricProperties;
+import sensor.common.MetricSenderRegistry;
+import sensor.common.enums.CollectorMode;
 import sensor.cron.QuartzRunner;
+import sensor.cron.TailRunner;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 public class App {
 
+    private static final long TAIL_STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
     public static void main(String[] args) throws Exception{
         Arguments arguments = Arguments.fromMain(args);
-        MetricProperties.createInstance(arguments);
-        sendMetricsFromLog();
+        //pipelines sending to the same sink share its sender
+        MetricSenderRegistry metricSenderRegistry = new MetricSenderRegistry();
+        List<Manager> managers = new ArrayList<>();
+        Set<String> pipelineNames = new HashSet<>();
+        for (String pathToPropertiesFile : arguments.getPathsToPropertiesFiles()) {
+            String pipelineName = getPipelineName(pathToPropertiesFile, pipelineNames);
+            managers.add(new Manager(pipelineName, MetricProperties.load(pathToPropertiesFile), metricSenderRegistry));
+        }
+        validateStateFiles(managers);
+        sendMetricsFromLog(managers);
         
     }
 
-    private static void sendMetricsFromLog(){
-        MetricProperties metricProperties = MetricProperties.getInstance();
-        FileIndexProperties.createInstance(metricProperties.getCollectorFileIndex());
+    private static void sendMetricsFromLog(List<Manager> managers) throws Exception {
+        List<Thread> tailThreads = new ArrayList<>();
+        List<Manager> cronManagers = new ArrayList<>();
+        for (Manager manager : managers) {
+            if (manager.getMetricProperties().getCollectorMode() == CollectorMode.TAIL) {
+                tailThreads.add(new Thread(() -> new TailRunner(manager).fireJob(), "tail-" + manager.getPipelineName()));
+            } else {
+                cronManagers.add(manager);
+            }
+        }
+        //a job is never run concurrently with itself, so a thread per pipeline is enough
+        Scheduler scheduler = cronManagers.isEmpty() ? null : QuartzRunner.createScheduler(cronManagers.size());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(scheduler, tailThreads, managers), "shutdown"));
 
-        new QuartzRunner().fireJob();
+        tailThreads.forEach(Thread::start);
+        if (scheduler != null) {
+            for (Manager manager : cronManagers) {
+                new QuartzRunner(scheduler, manager).fireJob();
+            }
+            scheduler.start();
+        }
     }
-    
-   
-}
 
+    //reads running are finished before the components they use are closed
+    private static void shutdown(Scheduler scheduler, List<Thread> tailThreads, List<Manager> managers) {
+        if (scheduler != null) {
+            try {
+                scheduler.shutdown(true);
+            } catch (SchedulerException e) {
+                log.error("Error by shutting down scheduler", e);
+            }
+        }
+        tailThreads.forEach(Thread::interrupt);
+        try {
+            for (Thread tailThread : tailThreads) {
+                tailThread.join(TAIL_STOP_TIMEOUT);
+                if (tailThread.isAlive()) {
+                    log.warn("Thread {} did not stop within {} ms", tailThread.getName(), TAIL_STOP_TIMEOUT);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        managers.forEach(Manager::shutdown);
+    }
+
+    //pipelines sharing a file index, spool or stored windows would overwrite each other's state
+    private static void validateStateFiles(List<Manager> managers) {
+        Map<Path, String> owners = new HashMap<>();
+        boolean valid = true;
+        for (Manager manager : managers) {
+            for (Map.Entry<String, String> stateFile : manager.getMetricProperties().getStateFiles().entrySet()) {
+                String owner = String.format("'%s' of %s", stateFile.getKey(), manager.getPipelineName());
+                String otherOwner = owners.putIfAbsent(Paths.get(stateFile.getValue()).toAbsolutePath().normalize(), owner);
+                if (otherOwner != null) {
+                    log.error("Property {} - {} is already used as {}", owner, stateFile.getValue(), otherOwner);
+                    valid = false;
+                }
+            }
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Pipelines cannot share files keeping their state");
+        }
+    }
+
+    //name of the properties file without extension, numbered when more files have the same name
+    private static String getPipelineName(String pathToPropertiesFile, Set<String> pipelineNames) {
+        String fileName = new File(pathToPropertiesFile).getName();
+        String name = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+        String pipelineName = name;
+        for (int i = 2; !pipelineNames.add(pipelineName); i++) {
+            pipelineName = name + "-" + i;
+        }
+        return pipelineName;
+    }
+}
@@ -8,14 +8,17 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Getter
 @Setter
 @Slf4j
 @NoArgsConstructor
 public class Arguments {
 
-    @Option(name = "-p", usage = "path to properties file", required = true)
-    private String pathToPropertiesFile = null;
+    @Option(name = "-p", usage = "path to properties file, repeated for every pipeline run by the process", required = true)
+    private List<String> pathsToPropertiesFiles = new ArrayList<>();
 
     public static Arguments fromMain(String[] args) throws CmdLineException {
         return read(args);
@@ -0,0 +1,321 @@
+package sensor.common;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint store appending a small CRC-checked record per update instead of rewriting the whole index file.
+ * Records are synced to disk in groups - after sync count records or sync time milliseconds, whichever comes
+ * first - and the journal is rewritten with the current positions only when it grows over the compact size.
+ * After a crash reading resumes from the last record that was synced completely. Positions of files missing at two
+ * compactions in a row are dropped, a file missing only for a moment while it is rotated keeps its position.
+ */
+@Slf4j
+public class CheckpointJournal implements CheckpointStore {
+
+    //"SCJ1"
+    private static final int MAGIC = 0x53434a31;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POSITION_SIZE = Integer.BYTES + Long.BYTES;
+    private static final byte[] NO_FILE_KEY = new byte[0];
+    static final String BACKUP_SUFFIX = ".bak";
+
+    private final Path journalPath;
+    private final int syncCount;
+    private final long syncTime;
+    private final long compactSize;
+
+    private final Map<String, FilePosition> positions = new HashMap<>();
+    private final Map<String, byte[]> encodedPaths = new HashMap<>();
+    private final Map<String, byte[]> encodedFileKeys = new HashMap<>();
+    //files missing at the last compaction
+    private Set<String> missingFiles = Collections.emptySet();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncExecutor;
+
+    private FileChannel channel;
+    private int pendingRecords;
+    private long lastSyncTime;
+
+    public CheckpointJournal(String pathToJournal, int syncCount, long syncTime, long compactSize) throws IOException {
+        this.journalPath = Paths.get(pathToJournal);
+        this.syncCount = syncCount;
+        this.syncTime = syncTime;
+        this.compactSize = compactSize;
+
+        recover();
+        this.lastSyncTime = System.currentTimeMillis();
+
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncExecutor.scheduleWithFixedDelay(this::syncPendingRecords, syncTime, syncTime, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized FilePosition getPosition(String filePath) {
+        return positions.get(filePath);
+    }
+
+    @Override
+    public synchronized void updatePosition(String filePath, FilePosition position) throws IOException {
+        positions.put(filePath, position);
+        byte[] pathBytes = encodedPaths.computeIfAbsent(filePath, path -> path.getBytes(StandardCharsets.UTF_8));
+        byte[] fileKeyBytes = encodeFileKey(position.getIdentity());
+
+        if (buffer.remaining() < RECORD_HEADER_SIZE + payloadLength(pathBytes, fileKeyBytes)) {
+            writeBuffer();
+        }
+        putRecord(buffer, pathBytes, fileKeyBytes, position);
+        pendingRecords++;
+
+        if (pendingRecords >= syncCount || System.currentTimeMillis() - lastSyncTime >= syncTime) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        syncExecutor.shutdown();
+        sync();
+        channel.close();
+    }
+
+    private void syncPendingRecords() {
+        synchronized (this) {
+            if (pendingRecords == 0) {
+                return;
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                log.error("Error by syncing checkpoint journal {}", journalPath, e);
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        writeBuffer();
+        channel.force(false);
+        pendingRecords = 0;
+        lastSyncTime = System.currentTimeMillis();
+
+        if (channel.size() > compactSize) {
+            compact();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    //path length, path, line number, byte offset and, when the file identity is known,
+    //fingerprint length, fingerprint, file key length (0 for no key), file key
+    private void putRecord(ByteBuffer target, byte[] pathBytes, byte[] fileKeyBytes, FilePosition position) {
+        int recordStart = target.position();
+        int payloadStart = recordStart + RECORD_HEADER_SIZE;
+        int payloadLength = payloadLength(pathBytes, fileKeyBytes);
+
+        target.putInt(payloadLength);
+        target.putInt(0);
+        target.putShort((short) pathBytes.length);
+        target.put(pathBytes);
+        target.putInt(position.getLineNumber());
+        target.putLong(position.getByteOffset());
+        if (fileKeyBytes != null) {
+            target.putInt(position.getIdentity().getFingerprintLength());
+            target.putLong(position.getIdentity().getFingerprint());
+            target.putShort((short) fileKeyBytes.length);
+            target.put(fileKeyBytes);
+        }
+
+        crc.reset();
+        crc.update(target.array(), target.arrayOffset() + payloadStart, payloadLength);
+        target.putInt(recordStart + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private int payloadLength(byte[] pathBytes, byte[] fileKeyBytes) {
+        int payloadLength = Short.BYTES + pathBytes.length + POSITION_SIZE;
+        return fileKeyBytes != null ? payloadLength + POSITION_SIZE + Short.BYTES + fileKeyBytes.length : payloadLength;
+    }
+
+    //null when the identity is not known
+    private byte[] encodeFileKey(FileIdentity identity) {
+        if (identity == null) {
+            return null;
+        }
+        return identity.getFileKey() != null
+                ? encodedFileKeys.computeIfAbsent(identity.getFileKey(), fileKey -> fileKey.getBytes(StandardCharsets.UTF_8))
+                : NO_FILE_KEY;
+    }
+
+    private void recover() throws IOException {
+        if (Files.notExists(journalPath) || Files.size(journalPath) == 0) {
+            log.info("Creating checkpoint journal: {}", journalPath);
+            compact();
+            return;
+        }
+
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        if (journal.remaining() < Integer.BYTES || journal.getInt() != MAGIC) {
+            importIndexProperties(journal.array());
+            //the journal replaces the index in place, the index is kept to switch back
+            Path backupPath = Paths.get(journalPath.toString() + BACKUP_SUFFIX);
+            Files.copy(journalPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Index properties {} kept as {}", journalPath, backupPath);
+            compact();
+            return;
+        }
+
+        long validLength = readRecords(journal);
+        if (validLength < journal.capacity()) {
+            log.warn("Checkpoint journal {} has {} bytes of incomplete or corrupted records after the last durable position, skipping them",
+                    journalPath, journal.capacity() - validLength);
+        }
+        log.info("Checkpoint journal {} recovered, files: {}", journalPath, positions.size());
+        positions.forEach((path, position) -> log.info("\t {} at {}", path, position));
+
+        this.channel = FileChannel.open(journalPath, StandardOpenOption.WRITE);
+        this.channel.truncate(validLength);
+        this.channel.position(validLength);
+    }
+
+    //returns the length of the journal up to the last complete record with a valid checksum
+    private long readRecords(ByteBuffer journal) {
+        int validLength = journal.position();
+        while (journal.remaining() >= RECORD_HEADER_SIZE) {
+            int payloadLength = journal.getInt();
+            int checksum = journal.getInt();
+            if (payloadLength < Short.BYTES || payloadLength > journal.remaining()) {
+                break;
+            }
+            int payloadStart = journal.position();
+            crc.reset();
+            crc.update(journal.array(), payloadStart, payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            byte[] pathBytes = new byte[journal.getShort()];
+            journal.get(pathBytes);
+            int lineNumber = journal.getInt();
+            long byteOffset = journal.getLong();
+            FileIdentity identity = null;
+            if (journal.position() < payloadStart + payloadLength) {
+                int fingerprintLength = journal.getInt();
+                long fingerprint = journal.getLong();
+                byte[] fileKeyBytes = new byte[journal.getShort()];
+                journal.get(fileKeyBytes);
+                identity = new FileIdentity(fileKeyBytes.length > 0 ? new String(fileKeyBytes, StandardCharsets.UTF_8) : null,
+                        fingerprintLength, fingerprint);
+            }
+            positions.put(new String(pathBytes, StandardCharsets.UTF_8), new FilePosition(lineNumber, byteOffset, identity));
+
+            validLength = payloadStart + payloadLength;
+            journal.position(validLength);
+        }
+        return validLength;
+    }
+
+    //index written by FileIndexProperties before switching to the journal
+    private void importIndexProperties(byte[] content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(content));
+        String filePath = properties.getProperty(FileIndexProperties.PropertyName.LAST_ANALYSED_FILE_PATH.getName());
+        String lineNumber = properties.getProperty(FileIndexProperties.PropertyName.LAST_ANALYSED_LINE_NUMBER.getName());
+        String byteOffset = properties.getProperty(FileIndexProperties.PropertyName.LAST_ANALYSED_BYTE_OFFSET.getName());
+
+        if (filePath != null && !filePath.trim().isEmpty() && lineNumber != null) {
+            positions.put(filePath, new FilePosition(Integer.parseInt(lineNumber.trim()),
+                    byteOffset != null ? Long.parseLong(byteOffset.trim()) : FilePosition.UNKNOWN_BYTE_OFFSET));
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(FileIndexProperties.FILE_POSITION_PREFIX)) {
+                positions.put(name.substring(FileIndexProperties.FILE_POSITION_PREFIX.length()),
+                        FileIndexProperties.parseFilePosition(properties.getProperty(name)));
+            }
+        }
+        log.info("Checkpoint journal {} created from index properties, files: {}", journalPath, positions.size());
+    }
+
+    //writes the current positions to a new journal which atomically replaces the old one
+    private void compact() throws IOException {
+        pruneMissingFiles();
+        //keys of files no longer indexed are not kept
+        encodedFileKeys.clear();
+        Path compactedPath = Paths.get(journalPath.toString() + ".tmp");
+        try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC);
+            header.flip();
+            compacted.write(header);
+            for (Map.Entry<String, FilePosition> entry : positions.entrySet()) {
+                byte[] pathBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] fileKeyBytes = encodeFileKey(entry.getValue().getIdentity());
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadLength(pathBytes, fileKeyBytes));
+                putRecord(record, pathBytes, fileKeyBytes, entry.getValue());
+                record.flip();
+                while (record.hasRemaining()) {
+                    compacted.write(record);
+                }
+            }
+            compacted.force(true);
+        }
+        Files.move(compactedPath, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.debug("Checkpoint journal {} compacted, files: {}", journalPath, positions.size());
+    }
+
+    private void pruneMissingFiles() {
+        Set<String> nowMissingFiles = new HashSet<>();
+        for (Iterator<String> paths = positions.keySet().iterator(); paths.hasNext(); ) {
+            String path = paths.next();
+            if (Files.exists(Paths.get(path))) {
+                continue;
+            }
+            if (missingFiles.contains(path)) {
+                log.info("File {} no longer exists, removing its position from checkpoint journal {}", path, journalPath);
+                paths.remove();
+                encodedPaths.remove(path);
+            } else {
+                nowMissingFiles.add(path);
+            }
+        }
+        missingFiles = nowMissingFiles;
+    }
+}
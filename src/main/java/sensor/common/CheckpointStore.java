@@ -0,0 +1,14 @@
+package sensor.common;
+
+import sensor.common.pojo.FilePosition;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface CheckpointStore extends Closeable {
+
+    //null when there is no checkpoint for the file
+    FilePosition getPosition(String filePath);
+
+    void updatePosition(String filePath, FilePosition position) throws IOException;
+}
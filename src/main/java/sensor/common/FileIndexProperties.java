@@ -4,55 +4,63 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import static sensor.common.FileIndexProperties.PropertyName.LAST_ANALYSED_BYTE_OFFSET;
 import static sensor.common.FileIndexProperties.PropertyName.LAST_ANALYSED_FILE_PATH;
 import static sensor.common.FileIndexProperties.PropertyName.LAST_ANALYSED_LINE_NUMBER;
 
 @Slf4j
-public class FileIndexProperties {
+public class FileIndexProperties implements CheckpointStore {
 
     private static final int DEFAULT_LINE_NUMBER = 1;
-    private static FileIndexProperties INSTANCE = null;
-
+    static final String FILE_POSITION_PREFIX = "file.position.";
+    private static final String FILE_POSITION_SEPARATOR = ":";
+    private static final long PRUNE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
     private Properties prop;
-    private boolean isInitialized;
     private String pathToPropertiesFile;
+    //files missing at the last prune, positions of files missing at two prunes in a row are removed
+    private Set<String> missingFiles = Collections.emptySet();
+    private long lastPruneTime;
 
-    private FileIndexProperties(String pathToPropertiesFile){
+    FileIndexProperties(String pathToPropertiesFile){
         this.pathToPropertiesFile = pathToPropertiesFile;
         this.prop = new Properties();
 
-        try {
-            prop.load(new FileInputStream(pathToPropertiesFile));
-            this.isInitialized = true;
+        try (FileInputStream in = new FileInputStream(pathToPropertiesFile)) {
+            prop.load(in);
         } catch (NullPointerException | IOException ex){
             log.warn("Could not load properties from {}, creating properties with default values", pathToPropertiesFile);
             try {
                 createDefaultPropertiesFile(pathToPropertiesFile);
-                this.isInitialized = true;
             }catch (IOException ioEx){
                 log.error("Error by creating default properties file", ioEx);
+                throw new UncheckedIOException(ioEx);
             }
         }
     }
 
-    public static void createInstance(String pathToLogsPropertiesFile){
-        INSTANCE = new FileIndexProperties(pathToLogsPropertiesFile);
-    }
-
-    public static FileIndexProperties getInstance(){
-        if (INSTANCE == null || !INSTANCE.isInitialized) throw new RuntimeException("Log tags properties not set");
-        return INSTANCE;
-    }
-
     public int getLastAnalysedLineNumber(){
         String value = this.prop.getProperty(LAST_ANALYSED_LINE_NUMBER.getName());
         return StringUtils.isNotBlank(value) ? Integer.parseInt(value) : DEFAULT_LINE_NUMBER;
     }
 
+    //index files written before byte offsets were stored have only the line number
+    public long getLastAnalysedByteOffset(){
+        String value = this.prop.getProperty(LAST_ANALYSED_BYTE_OFFSET.getName());
+        return StringUtils.isNotBlank(value) ? Long.parseLong(value) : FilePosition.UNKNOWN_BYTE_OFFSET;
+    }
+
     public String getLastAnalysedFilePath(){
         return this.prop.getProperty(LAST_ANALYSED_FILE_PATH.getName());
     }
@@ -61,15 +69,95 @@ public class FileIndexProperties {
         this.prop.setProperty(LAST_ANALYSED_LINE_NUMBER.getName(), String.valueOf(lastAnalysedLineNumber));
     }
 
+    public void setLastAnalysedByteOffset(long lastAnalysedByteOffset) {
+        this.prop.setProperty(LAST_ANALYSED_BYTE_OFFSET.getName(), String.valueOf(lastAnalysedByteOffset));
+    }
+
     public void setLastAnalysedFilePath(String lastAnalysedFilePath){
         this.prop.setProperty(LAST_ANALYSED_FILE_PATH.getName(), lastAnalysedFilePath);
     }
 
+    //every file has its own position, index files written before that have only the last analysed file
+    @Override
+    public synchronized FilePosition getPosition(String filePath) {
+        String filePosition = this.prop.getProperty(FILE_POSITION_PREFIX + filePath);
+        if (StringUtils.isNotBlank(filePosition)) {
+            return parseFilePosition(filePosition);
+        }
+        String lastAnalysedFilePath = getLastAnalysedFilePath();
+        if (lastAnalysedFilePath == null || !lastAnalysedFilePath.equals(filePath)) {
+            return null;
+        }
+        return new FilePosition(getLastAnalysedLineNumber(), getLastAnalysedByteOffset());
+    }
+
+    @Override
+    public synchronized void updatePosition(String filePath, FilePosition position) throws IOException {
+        this.prop.setProperty(FILE_POSITION_PREFIX + filePath, formatFilePosition(position));
+        setLastAnalysedFilePath(filePath);
+        setLastAnalysedLineNumber(position.getLineNumber());
+        setLastAnalysedByteOffset(position.getByteOffset());
+        if (System.currentTimeMillis() - lastPruneTime >= PRUNE_INTERVAL) {
+            pruneMissingFiles();
+        }
+        update();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    //line:offset, followed by fingerprint length:fingerprint:file key when the file identity is known
+    static FilePosition parseFilePosition(String filePosition) {
+        String[] parts = filePosition.trim().split(FILE_POSITION_SEPARATOR, 5);
+        FileIdentity identity = null;
+        if (parts.length == 5) {
+            identity = new FileIdentity(StringUtils.isNotEmpty(parts[4]) ? parts[4] : null,
+                    Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+        }
+        return new FilePosition(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), identity);
+    }
+
+    private static String formatFilePosition(FilePosition position) {
+        StringBuilder result = new StringBuilder()
+                .append(position.getLineNumber()).append(FILE_POSITION_SEPARATOR).append(position.getByteOffset());
+        FileIdentity identity = position.getIdentity();
+        if (identity != null) {
+            result.append(FILE_POSITION_SEPARATOR).append(identity.getFingerprintLength())
+                    .append(FILE_POSITION_SEPARATOR).append(identity.getFingerprint())
+                    .append(FILE_POSITION_SEPARATOR).append(identity.getFileKey() != null ? identity.getFileKey() : "");
+        }
+        return result.toString();
+    }
+
+    //a file missing only for a moment while it is rotated keeps its position
+    private void pruneMissingFiles() {
+        Set<String> nowMissingFiles = new HashSet<>();
+        for (String name : this.prop.stringPropertyNames()) {
+            if (!name.startsWith(FILE_POSITION_PREFIX)) {
+                continue;
+            }
+            String filePath = name.substring(FILE_POSITION_PREFIX.length());
+            if (Files.exists(Paths.get(filePath))) {
+                continue;
+            }
+            if (missingFiles.contains(filePath)) {
+                log.info("File {} no longer exists, removing its position from {}", filePath, pathToPropertiesFile);
+                this.prop.remove(name);
+            } else {
+                nowMissingFiles.add(filePath);
+            }
+        }
+        missingFiles = nowMissingFiles;
+        lastPruneTime = System.currentTimeMillis();
+    }
+
     private void createDefaultPropertiesFile(String pathToMainPropertiesFile) throws IOException{
         log.info("Creating default properties file under default path:{}", pathToMainPropertiesFile);
 
         this.prop = new Properties();
         this.prop.setProperty(LAST_ANALYSED_LINE_NUMBER.getName(), String.valueOf(DEFAULT_LINE_NUMBER));
+        this.prop.setProperty(LAST_ANALYSED_BYTE_OFFSET.getName(), "0");
         this.prop.setProperty(LAST_ANALYSED_FILE_PATH.getName(),"");
 
         update();
@@ -81,9 +169,10 @@ public class FileIndexProperties {
 
         try(FileOutputStream out = new FileOutputStream(yourFile)) {
             this.prop.store(out, null);
-            log.debug("Tag properties file updated, current values are: {{}: {}, {}: {})",
+            log.debug("Tag properties file updated, current values are: {{}: {}, {}: {}, {}: {})",
                     LAST_ANALYSED_FILE_PATH.getName(), getLastAnalysedFilePath(),
-                    LAST_ANALYSED_LINE_NUMBER.getName(), getLastAnalysedLineNumber());
+                    LAST_ANALYSED_LINE_NUMBER.getName(), getLastAnalysedLineNumber(),
+                    LAST_ANALYSED_BYTE_OFFSET.getName(), getLastAnalysedByteOffset());
         }
     }
 
@@ -93,6 +182,8 @@ public class FileIndexProperties {
 
         LAST_ANALYSED_LINE_NUMBER("last.analysed.line.number"),
 
+        LAST_ANALYSED_BYTE_OFFSET("last.analysed.byte.offset"),
+
         LAST_ANALYSED_FILE_PATH("last.analysed.file.path");
 
         private String name;
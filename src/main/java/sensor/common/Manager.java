@@ -1,7 +1,9 @@
 package sensor.common;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import sensor.common.enums.ApplicationName;
+import sensor.common.enums.CheckpointStoreType;
 import sensor.common.enums.MetricSenderType;
 import sensor.common.enums.MetricSource;
 import sensor.service.chooser.CeTrafficFileChooser;
@@ -11,6 +13,7 @@ import sensor.service.chooser.FcrFileChooser;
 import sensor.service.converter.MetricConverter;
 import sensor.service.converter.PlaceholderMetricConverter;
 import sensor.service.parser.CeTrafficLogParser;
+import sensor.service.parser.DelimitedLogParser;
 import sensor.service.parser.FcrLogParser;
 import sensor.service.parser.GenomLogParser;
 import sensor.service.parser.ThroughputLogParser;
@@ -20,56 +23,135 @@ import sensor.service.reader.FileMetricReader;
 import sensor.service.reader.GenomUrlMetricReader;
 import sensor.service.reader.MetricReader;
 import sensor.service.reader.UrlMetricReader;
+import sensor.service.sender.AggregatingMetricSender;
+import sensor.service.sender.BatchingMetricSender;
+import sensor.service.sender.DeadbandMetricSender;
 import sensor.service.sender.MetricSender;
+import sensor.service.sender.SpoolingMetricSender;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+/**
+ * Components of one pipeline - reader, parser, sender and checkpoint store - created once from its properties when
+ * first needed. Pipelines of one process have their own managers and share senders of the same sink through the
+ * registry. Components are looked up without locks once created.
+ */
 @Slf4j
 public class Manager {
 
-    private static final MetricProperties metricProperties = MetricProperties.getInstance();
-    private static final FileIndexProperties fileIndexProperties = FileIndexProperties.getInstance();
+    @Getter
+    private final String pipelineName;
+    @Getter
+    private final MetricProperties metricProperties;
+    private final MetricSenderRegistry metricSenderRegistry;
 
-    private static final Map<String, SingletonSupplier> suppliersContext = new HashMap<>();
+    private final ConcurrentMap<String, SingletonSupplier<?>> suppliersContext = new ConcurrentHashMap<>();
 
+    public Manager(String pipelineName, MetricProperties metricProperties, MetricSenderRegistry metricSenderRegistry) {
+        this.pipelineName = pipelineName;
+        this.metricProperties = metricProperties;
+        this.metricSenderRegistry = metricSenderRegistry;
+    }
+
+    //plain read once the supplier exists, computeIfAbsent locks its bin even when the key is present
+    @SuppressWarnings("unchecked")
+    private <T> T getComponent(String name, Supplier<T> supplier) {
+        SingletonSupplier<?> singletonSupplier = suppliersContext.get(name);
+        if (singletonSupplier == null) {
+            singletonSupplier = suppliersContext.computeIfAbsent(name, s -> new SingletonSupplier<>(supplier));
+        }
+        return (T) singletonSupplier.get();
+    }
 
-    private static LogParser getProperLogParser() {
+
+    private LogParser getProperLogParser() {
         return createProperLogParser(metricProperties.getCollectorParser());
     }
 
-    private static LogParser createProperLogParser(ApplicationName applicationName) {
+    private LogParser createProperLogParser(ApplicationName applicationName) {
 
-        return (LogParser) suppliersContext.computeIfAbsent("LogParser", s -> new SingletonSupplier<>(() -> {
+        return getComponent("LogParser", () -> {
             switch (applicationName) {
             	case THROUGHPUT:
             		return new ThroughputLogParser(metricProperties.getMetricName());
                 case FCR:
-                    return new FcrLogParser(metricProperties.getMetricName());
+                    return new FcrLogParser(metricProperties.getMetricName(), metricProperties.getCollectorParserFcrCapacity(),
+                            metricProperties.getCollectorParserFcrTtl(), metricProperties.getCollectorParserFcrSnapshot());
                 case GENOM:
                     return new GenomLogParser(metricProperties.getMetricName());
                 case TEST:
                 	return new TestLogParser(metricProperties.getMetricName());
                 case CE_TRAFFIC:
-                    return new CeTrafficLogParser();
+                    return new CeTrafficLogParser(metricProperties.getMetricTimestampUnit());
+                case DELIMITED:
+                    return new DelimitedLogParser(metricProperties.getMetricName(), metricProperties.getCollectorParserDelimiter(),
+                            metricProperties.getCollectorParserFields(), metricProperties.getCollectorParserTimestampUnit(),
+                            metricProperties.getMetricTimestampUnit(), metricProperties.getCollectorParserTags());
                 default:
                     throw new RuntimeException("There is no LogParser instance for " + applicationName);
             }
-        })).get();
+        });
 
     }
 
-    private static MetricConverter getMetricConverter() {
-        return new PlaceholderMetricConverter(metricProperties.getMetricPattern());
+    private MetricConverter getMetricConverter() {
+        return new PlaceholderMetricConverter(metricProperties.getMetricPattern(), metricProperties.getMetricValueDecimalPlaces());
     }
 
-    public static MetricSender getProperNewMetricSender() {
+    public MetricSender getProperNewMetricSender() {
         return createNewMetricSender(metricProperties.getSenderType());
     }
 
-    private static MetricSender createNewMetricSender(MetricSenderType metricSenderType) {
+    private MetricSender createNewMetricSender(MetricSenderType metricSenderType) {
+
+        return getComponent("MetricSender", () -> {
+            MetricSender metricSender = createMetricSender(metricSenderType);
+            int batchSize = metricProperties.getSenderBatchSize();
+            if (batchSize > 1) {
+                metricSender = new BatchingMetricSender(metricSender, batchSize, metricProperties.getSenderBatchTime());
+            }
+            String spoolDir = metricProperties.getSenderSpoolDir();
+            if (spoolDir != null) {
+                try {
+                    metricSender = new SpoolingMetricSender(metricSender, spoolDir, metricProperties.getSenderSpoolSegmentSize(),
+                            metricProperties.getSenderSpoolMaxSize(), metricProperties.getSenderSpoolMaxAge());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            TimeUnit timestampUnit = metricProperties.getMetricTimestampUnit();
+            //suppressed before spooling and after aggregation, so steady aggregates are suppressed too
+            Map<String, String> deadbands = metricProperties.getSenderDeadbands();
+            if (!deadbands.isEmpty()) {
+                metricSender = new DeadbandMetricSender(metricSender, deadbands,
+                        timestampUnit.convert(metricProperties.getSenderDeadbandHeartbeat(), TimeUnit.MILLISECONDS),
+                        metricProperties.getSenderDeadbandIdle());
+            }
+            //aggregated before spooling, so only aggregates are stored
+            long aggregateWindow = metricProperties.getSenderAggregateWindow();
+            if (aggregateWindow > 0) {
+                metricSender = new AggregatingMetricSender(metricSender, timestampUnit.convert(aggregateWindow, TimeUnit.MILLISECONDS),
+                        timestampUnit.convert(metricProperties.getSenderAggregateSlide(), TimeUnit.MILLISECONDS),
+                        timestampUnit.convert(metricProperties.getSenderAggregateIdle(), TimeUnit.MILLISECONDS), timestampUnit,
+                        metricProperties.getSenderAggregateOutputs(), metricProperties.getSenderAggregatePercentiles(),
+                        metricProperties.getSenderAggregateStateFile());
+            }
+            return metricSender;
+        });
+    }
 
-        return (MetricSender) suppliersContext.computeIfAbsent("MetricSender", s -> new SingletonSupplier<>(() -> {
+    //connections are shared with pipelines sending to the same sink in the same way
+    private MetricSender createMetricSender(MetricSenderType metricSenderType) {
+        return metricSenderRegistry.acquire(getMetricSenderKey(metricSenderType), () -> {
             switch (metricSenderType) {
                 case JMS:
                     try {
@@ -82,61 +164,126 @@ public class Manager {
                 default:
                     throw new RuntimeException("There is no MetricSender instance for " + metricSenderType);
             }
-        })).get();
+        });
+    }
+
+    //every property used by the sender, except the password as the key is logged
+    private String getMetricSenderKey(MetricSenderType metricSenderType) {
+        String format = metricProperties.getMetricPattern() + "|" + metricProperties.getMetricValueDecimalPlaces();
+        switch (metricSenderType) {
+            case JMS:
+                return String.join("|", "jms", metricProperties.getJmsServerAddress() + ":" + metricProperties.getJmsServerPort(),
+                        metricProperties.getJmsServerUsername(), String.valueOf(metricProperties.getJmsTransactedBatchSize()),
+                        String.valueOf(metricProperties.isJmsAsyncSend()), metricProperties.getJmsDeliveryMode().name(),
+                        metricProperties.getJmsMessageFormat().name(), format);
+            case TELNET:
+                return String.join("|", "telnet", metricProperties.getTelnetServerAddress() + ":" + metricProperties.getTelnetServerPort(),
+                        String.valueOf(metricProperties.isTelnetPlainSocket()), String.valueOf(metricProperties.getTelnetConnectTimeout()),
+                        String.valueOf(metricProperties.getTelnetReconnectTime()), String.valueOf(metricProperties.getTelnetReconnectMaxTime()), format);
+            default:
+                throw new RuntimeException("There is no MetricSender instance for " + metricSenderType);
+        }
     }
 
 
-    public static MetricReader getProperMetricReader() {
+    public MetricReader getProperMetricReader() {
         return createMetricReader(metricProperties.getCollector());
     }
 
-    private static MetricReader createMetricReader(MetricSource metricSource) {
+    private MetricReader createMetricReader(MetricSource metricSource) {
 
-        return (MetricReader) suppliersContext.computeIfAbsent("MetricReader", s -> new SingletonSupplier<>(() -> {
+        return getComponent("MetricReader", () -> {
             switch (metricSource) {
                 case FILE:
-                    return new FileMetricReader(getProperLogParser(), getProperNewMetricSender(), getFileChooser());
+                    boolean pipeline = metricProperties.isCollectorPipeline();
+                    return new FileMetricReader(getProperLogParser(), getProperNewMetricSender(), getFileChooser(),
+                            metricProperties.getCollectorFileChunkSize(), metricProperties.getCollectorFileThreads(),
+                            metricProperties.getCollectorFileCheckpointInterval(),
+                            pipeline ? metricProperties.getCollectorPipelineParserThreads() : 0,
+                            pipeline ? metricProperties.getCollectorPipelineSenderThreads() : 0,
+                            metricProperties.getCollectorPipelineBufferSize());
                 case URL:
                     return getProperUrlMetricReader();
                 default:
                     throw new RuntimeException("There is no MetricReader instance for " + metricSource);
             }
-        })).get();
+        });
     }
 
-    private static UrlMetricReader getProperUrlMetricReader() {
+    private UrlMetricReader getProperUrlMetricReader() {
         return createUrlMetricReader(metricProperties.getCollectorParser());
     }
 
-    private static UrlMetricReader createUrlMetricReader(ApplicationName applicationName) {
-        return (UrlMetricReader) suppliersContext.computeIfAbsent("UrlMetricReader", s -> new SingletonSupplier<>(() -> {
+    private UrlMetricReader createUrlMetricReader(ApplicationName applicationName) {
+        return getComponent("UrlMetricReader", () -> {
             switch (applicationName) {
                 case GENOM:
                     return new GenomUrlMetricReader(getProperNewMetricSender(), metricProperties);
                 default:
                     throw new RuntimeException("There is no UrlMetricReader instance for " + applicationName);
             }
-        })).get();
+        });
     }
 
 
-    private static FileChooser getFileChooser() {
+    private CheckpointStore getCheckpointStore() {
+        return createCheckpointStore(metricProperties.getCollectorFileIndexType());
+    }
+
+    private CheckpointStore createCheckpointStore(CheckpointStoreType checkpointStoreType) {
+        return getComponent("CheckpointStore", () -> {
+            switch (checkpointStoreType) {
+                case PROPERTIES:
+                    return new FileIndexProperties(metricProperties.getCollectorFileIndex());
+                case JOURNAL:
+                    try {
+                        return new CheckpointJournal(metricProperties.getCollectorFileIndex(), metricProperties.getCollectorFileIndexSyncCount(),
+                                metricProperties.getCollectorFileIndexSyncTime(), metricProperties.getCollectorFileIndexCompactSize());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                default:
+                    throw new RuntimeException("There is no CheckpointStore instance for " + checkpointStoreType);
+            }
+        });
+    }
+
+    private FileChooser getFileChooser() {
         return createFileChooser(metricProperties.getCollectorParser());
     }
 
-    private static FileChooser createFileChooser(ApplicationName applicationName) {
-        return (FileChooser) suppliersContext.computeIfAbsent("FileChooser", s -> new SingletonSupplier<>(() -> {
+    private FileChooser createFileChooser(ApplicationName applicationName) {
+        return getComponent("FileChooser", () -> {
             switch (applicationName) {
             	case THROUGHPUT:
-            		return new ThroughputFileChooser(fileIndexProperties, metricProperties);
+            		return new ThroughputFileChooser(getCheckpointStore(), metricProperties);
             	case TEST:
                 case FCR:
-                    return new FcrFileChooser(fileIndexProperties, metricProperties);
+                    return new FcrFileChooser(getCheckpointStore(), metricProperties);
                 case CE_TRAFFIC:
-                    return new CeTrafficFileChooser(metricProperties, fileIndexProperties);
+                case DELIMITED:
+                    return new CeTrafficFileChooser(metricProperties, getCheckpointStore());
                 default:
                     throw new RuntimeException("There is no FileChooser instance for " + applicationName);
             }
-        })).get();
+        });
+    }
+
+    //closes created components holding files or connections, readers first so their last positions get stored,
+    //shared senders are closed with the last pipeline using them, a component kept under two names is closed once
+    public void shutdown() {
+        Set<Object> closed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String name : new String[]{"MetricReader", "UrlMetricReader", "FileChooser", "CheckpointStore", "LogParser", "MetricSender"}) {
+            SingletonSupplier<?> supplier = suppliersContext.get(name);
+            Object instance = supplier != null ? supplier.getIfCreated() : null;
+            if (instance instanceof Closeable && closed.add(instance)) {
+                try {
+                    ((Closeable) instance).close();
+                    log.info("{} of {} closed", name, pipelineName);
+                } catch (Exception e) {
+                    log.error("Error by closing {} of {}", name, pipelineName, e);
+                }
+            }
+        }
     }
 }
@@ -6,25 +6,70 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
-import sensor.Arguments;
+import sensor.common.enums.AggregationOutput;
 import sensor.common.enums.ApplicationName;
+import sensor.common.enums.CheckpointStoreType;
+import sensor.common.enums.CollectorMode;
+import sensor.common.enums.JmsDeliveryMode;
+import sensor.common.enums.JmsMessageFormat;
 import sensor.common.enums.MetricSenderType;
 import sensor.common.enums.MetricSource;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class MetricProperties {
 
-    private static MetricProperties INSTANCE = null;
-
-    private static Properties prop;
-    private boolean isInitialized;
+    private static final long DEFAULT_COLLECTOR_TAIL_POLL_TIME = 1000;
+    //values written as by Double.toString
+    private static final int DEFAULT_METRIC_VALUE_DECIMAL_PLACES = -1;
+    private static final int DEFAULT_COLLECTOR_FILE_CHUNK_SIZE = 32 * 1024 * 1024;
+    private static final int DEFAULT_COLLECTOR_FILE_THREADS = 1;
+    private static final boolean DEFAULT_COLLECTOR_PIPELINE = false;
+    private static final int DEFAULT_COLLECTOR_PIPELINE_PARSER_THREADS = 1;
+    private static final int DEFAULT_COLLECTOR_PIPELINE_SENDER_THREADS = 1;
+    private static final int DEFAULT_COLLECTOR_PIPELINE_BUFFER_SIZE = 4096;
+    private static final int DEFAULT_COLLECTOR_FILE_INDEX_SYNC_COUNT = 1000;
+    private static final long DEFAULT_COLLECTOR_FILE_INDEX_SYNC_TIME = 1000;
+    private static final long DEFAULT_COLLECTOR_FILE_INDEX_COMPACT_SIZE = 1024 * 1024;
+    private static final int DEFAULT_COLLECTOR_FILE_CHECKPOINT_INTERVAL = 1000;
+    private static final String DEFAULT_COLLECTOR_PARSER_DELIMITER = ":";
+    private static final int DEFAULT_SENDER_BATCH_SIZE = 1;
+    private static final long DEFAULT_SENDER_BATCH_TIME = 1000;
+    private static final double DEFAULT_COLLECTOR_URL_TASK_PERCENTILE = 95;
+    private static final int DEFAULT_COLLECTOR_URL_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_COLLECTOR_URL_READ_TIMEOUT = 30_000;
+    private static final int DEFAULT_COLLECTOR_URL_THREADS = 8;
+    private static final long DEFAULT_SENDER_AGGREGATE_WINDOW = 0;
+    private static final String DEFAULT_SENDER_AGGREGATE_OUTPUTS = "avg";
+    private static final String DEFAULT_SENDER_AGGREGATE_STATE_FILE_SUFFIX = ".windows";
+    private static final long DEFAULT_SENDER_DEADBAND_HEARTBEAT = 300_000;
+    private static final long DEFAULT_SENDER_DEADBAND_IDLE = 3_600_000;
+    private static final int DEFAULT_SENDER_SPOOL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_SENDER_SPOOL_MAX_SIZE = 1024L * 1024 * 1024;
+    private static final long DEFAULT_SENDER_SPOOL_MAX_AGE = 0;
+    private static final boolean DEFAULT_JMS_ASYNC_SEND = false;
+    private static final int DEFAULT_JMS_TRANSACTED_BATCH_SIZE = 0;
+    private static final boolean DEFAULT_TELNET_PLAIN_SOCKET = false;
+    private static final int DEFAULT_TELNET_CONNECT_TIMEOUT = 10_000;
+    private static final long DEFAULT_TELNET_RECONNECT_TIME = 1000;
+    private static final long DEFAULT_TELNET_RECONNECT_MAX_TIME = 60_000;
+    private static final int DEFAULT_COLLECTOR_PARSER_FCR_CAPACITY = 100_000;
+    private static final long DEFAULT_COLLECTOR_PARSER_FCR_TTL = 0;
+    private static final String DEFAULT_COLLECTOR_PARSER_FCR_SNAPSHOT_SUFFIX = ".fcr";
+
+    private static final int MAX_PORT = 0xffff;
+
+    private final Properties prop = new Properties();
 
     private MetricProperties(String pathToPropertiesFile) throws IOException {
         readProperties(pathToPropertiesFile);
@@ -32,28 +77,20 @@ public class MetricProperties {
         MetricProperties.PropertiesValidator.ValidationResult validationResult = new MetricProperties.PropertiesValidator().validate();
         if (!validationResult.isValid()) {
             validationResult.getErrors().forEach((enumName, information) -> log.error("Property '{}' - {}", enumName.getName(), information));
-            throw new IllegalArgumentException("Exception by parsing properties");
+            throw new IllegalArgumentException("Exception by parsing properties of " + pathToPropertiesFile);
         }
-
-        INSTANCE = this;
-    }
-
-    public static void createInstance(Arguments arguments) throws IOException {
-        new MetricProperties(arguments.getPathToPropertiesFile());
     }
 
-    public static MetricProperties getInstance() {
-        if (INSTANCE == null || !INSTANCE.isInitialized) throw new RuntimeException("Properties not set");
-        return INSTANCE;
+    //every file is read into its own instance, so one process can run pipelines of more files
+    public static MetricProperties load(String pathToPropertiesFile) throws IOException {
+        return new MetricProperties(pathToPropertiesFile);
     }
 
     private void readProperties(String pathToPropertiesFile) throws IOException {
         log.info("Loading properties from: {}", pathToPropertiesFile);
 
-        try {
-            prop = new Properties();
-            prop.load(new FileInputStream(pathToPropertiesFile));
-            this.isInitialized = true;
+        try (FileInputStream in = new FileInputStream(pathToPropertiesFile)) {
+            prop.load(in);
             log.info("Properties loaded");
         } catch (IOException ex) {
             log.error(ex.getMessage());
@@ -70,14 +107,34 @@ public class MetricProperties {
         return get(PropertyName.METRIC_PATTERN);
     }
 
+    public int getMetricValueDecimalPlaces() {
+        String value = get(PropertyName.METRIC_VALUE_DECIMAL_PLACES);
+        return StringUtils.isBlank(value) ? DEFAULT_METRIC_VALUE_DECIMAL_PLACES : Integer.parseInt(value.trim());
+    }
+
+    public TimeUnit getMetricTimestampUnit() {
+        String value = get(PropertyName.METRIC_TIMESTAMP_UNIT);
+        return StringUtils.isBlank(value) ? TimeUnit.SECONDS : TimeUnit.valueOf(getUppercase(PropertyName.METRIC_TIMESTAMP_UNIT));
+    }
+
     public int getCheckingTime() {
-        return Integer.parseInt(getCheckingTimeAsString());
+        return Integer.parseInt(getCheckingTimeAsString().trim());
     }
 
     private String getCheckingTimeAsString() {
         return get(PropertyName.COLLECTOR_CHECKING_TIME);
     }
 
+    public CollectorMode getCollectorMode() {
+        String value = get(PropertyName.COLLECTOR_MODE);
+        return StringUtils.isBlank(value) ? CollectorMode.CRON : CollectorMode.valueOf(getUppercase(PropertyName.COLLECTOR_MODE));
+    }
+
+    public long getCollectorTailPollTime() {
+        String value = get(PropertyName.COLLECTOR_TAIL_POLL_TIME);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_TAIL_POLL_TIME : Long.parseLong(value.trim());
+    }
+
     public String getCollectorFileDir() {
         return get(PropertyName.COLLECTOR_FILE_DIR);
     }
@@ -90,6 +147,62 @@ public class MetricProperties {
         return get(PropertyName.COLLECTOR_FILE_INDEX);
     }
 
+    public int getCollectorFileThreads() {
+        String value = get(PropertyName.COLLECTOR_FILE_THREADS);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_FILE_THREADS : Integer.parseInt(value.trim());
+    }
+
+    public boolean isCollectorPipeline() {
+        String value = get(PropertyName.COLLECTOR_PIPELINE);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PIPELINE : Boolean.parseBoolean(value.trim());
+    }
+
+    public int getCollectorPipelineParserThreads() {
+        String value = get(PropertyName.COLLECTOR_PIPELINE_PARSER_THREADS);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PIPELINE_PARSER_THREADS : Integer.parseInt(value.trim());
+    }
+
+    public int getCollectorPipelineSenderThreads() {
+        String value = get(PropertyName.COLLECTOR_PIPELINE_SENDER_THREADS);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PIPELINE_SENDER_THREADS : Integer.parseInt(value.trim());
+    }
+
+    public int getCollectorPipelineBufferSize() {
+        String value = get(PropertyName.COLLECTOR_PIPELINE_BUFFER_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PIPELINE_BUFFER_SIZE : Integer.parseInt(value.trim());
+    }
+
+    public CheckpointStoreType getCollectorFileIndexType() {
+        String value = get(PropertyName.COLLECTOR_FILE_INDEX_TYPE);
+        return StringUtils.isBlank(value) ? CheckpointStoreType.PROPERTIES : CheckpointStoreType.valueOf(getUppercase(PropertyName.COLLECTOR_FILE_INDEX_TYPE));
+    }
+
+    public int getCollectorFileIndexSyncCount() {
+        String value = get(PropertyName.COLLECTOR_FILE_INDEX_SYNC_COUNT);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_FILE_INDEX_SYNC_COUNT : Integer.parseInt(value.trim());
+    }
+
+    public long getCollectorFileIndexSyncTime() {
+        String value = get(PropertyName.COLLECTOR_FILE_INDEX_SYNC_TIME);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_FILE_INDEX_SYNC_TIME : Long.parseLong(value.trim());
+    }
+
+    public long getCollectorFileIndexCompactSize() {
+        String value = get(PropertyName.COLLECTOR_FILE_INDEX_COMPACT_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_FILE_INDEX_COMPACT_SIZE : Long.parseLong(value.trim());
+    }
+
+    //lines with metrics between stored positions, by default not fewer than the batch size, so batches are not cut
+    public int getCollectorFileCheckpointInterval() {
+        String value = get(PropertyName.COLLECTOR_FILE_CHECKPOINT_INTERVAL);
+        return StringUtils.isBlank(value) ? Math.max(DEFAULT_COLLECTOR_FILE_CHECKPOINT_INTERVAL, getSenderBatchSize()) : Integer.parseInt(value.trim());
+    }
+
+    public int getCollectorFileChunkSize() {
+        String value = get(PropertyName.COLLECTOR_FILE_CHUNK_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_FILE_CHUNK_SIZE : Integer.parseInt(value.trim());
+    }
+
     public MetricSource getCollector() {
         return MetricSource.valueOf(getUppercase(PropertyName.COLLECTOR));
     }
@@ -98,10 +211,65 @@ public class MetricProperties {
         return ApplicationName.valueOf(getUppercase(PropertyName.COLLECTOR_PARSER));
     }
 
+    //not trimmed, so it can be a space or a tab
+    public String getCollectorParserDelimiter() {
+        String value = get(PropertyName.COLLECTOR_PARSER_DELIMITER);
+        return StringUtils.isEmpty(value) ? DEFAULT_COLLECTOR_PARSER_DELIMITER : value;
+    }
+
+    public String getCollectorParserFields() {
+        return get(PropertyName.COLLECTOR_PARSER_FIELDS);
+    }
+
+    public TimeUnit getCollectorParserTimestampUnit() {
+        String value = get(PropertyName.COLLECTOR_PARSER_TIMESTAMP_UNIT);
+        return StringUtils.isBlank(value) ? TimeUnit.SECONDS : TimeUnit.valueOf(getUppercase(PropertyName.COLLECTOR_PARSER_TIMESTAMP_UNIT));
+    }
+
+    //name=value pairs separated by commas
+    public Map<String, String> getCollectorParserTags() {
+        Map<String, String> tags = new LinkedHashMap<>();
+        String value = get(PropertyName.COLLECTOR_PARSER_TAGS);
+        if (StringUtils.isBlank(value)) {
+            return tags;
+        }
+        for (String tag : value.split(",")) {
+            String[] tagParts = tag.split("=", 2);
+            tags.put(tagParts[0].trim(), tagParts[1].trim());
+        }
+        return tags;
+    }
+
+    public int getCollectorParserFcrCapacity() {
+        String value = get(PropertyName.COLLECTOR_PARSER_FCR_CAPACITY);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PARSER_FCR_CAPACITY : Integer.parseInt(value.trim());
+    }
+
+    public long getCollectorParserFcrTtl() {
+        String value = get(PropertyName.COLLECTOR_PARSER_FCR_TTL);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_PARSER_FCR_TTL : Long.parseLong(value.trim());
+    }
+
+    //next to the file index when not set
+    public String getCollectorParserFcrSnapshot() {
+        String value = get(PropertyName.COLLECTOR_PARSER_FCR_SNAPSHOT);
+        return StringUtils.isBlank(value) ? getCollectorFileIndex() + DEFAULT_COLLECTOR_PARSER_FCR_SNAPSHOT_SUFFIX : value.trim();
+    }
+
     public String getCollectorUrl() {
         return get(PropertyName.COLLECTOR_URL);
     }
 
+    public List<String> getCollectorUrls() {
+        List<String> urls = new ArrayList<>();
+        for (String url : getCollectorUrl().split(",")) {
+            if (StringUtils.isNotBlank(url)) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+
     public String getCollectorUrlSuffixToGetAppId() {
         return get(PropertyName.COLLECTOR_URL_SUFFIX_GET_APP_ID);
     }
@@ -114,10 +282,169 @@ public class MetricProperties {
         return Integer.valueOf(get(PropertyName.COLLECTOR_URL_MAX_DURATION_TIME));
     }
 
+    public double getCollectorUrlTaskPercentile() {
+        String value = get(PropertyName.COLLECTOR_URL_TASK_PERCENTILE);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_URL_TASK_PERCENTILE : Double.parseDouble(value.trim());
+    }
+
+    //milliseconds
+    public int getCollectorUrlConnectTimeout() {
+        String value = get(PropertyName.COLLECTOR_URL_CONNECT_TIMEOUT);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_URL_CONNECT_TIMEOUT : Integer.parseInt(value.trim());
+    }
+
+    //milliseconds
+    public int getCollectorUrlReadTimeout() {
+        String value = get(PropertyName.COLLECTOR_URL_READ_TIMEOUT);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_URL_READ_TIMEOUT : Integer.parseInt(value.trim());
+    }
+
+    public int getCollectorUrlThreads() {
+        String value = get(PropertyName.COLLECTOR_URL_THREADS);
+        return StringUtils.isBlank(value) ? DEFAULT_COLLECTOR_URL_THREADS : Integer.parseInt(value.trim());
+    }
+
+    //milliseconds, the checking time when not set
+    public long getCollectorUrlDeadline() {
+        String value = get(PropertyName.COLLECTOR_URL_DEADLINE);
+        return StringUtils.isBlank(value) ? TimeUnit.SECONDS.toMillis(getCheckingTime()) : Long.parseLong(value.trim());
+    }
+
     public MetricSenderType getSenderType() {
         return MetricSenderType.valueOf(getUppercase(PropertyName.SENDER_TYPE));
     }
 
+    public int getSenderBatchSize() {
+        String value = get(PropertyName.SENDER_BATCH_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_BATCH_SIZE : Integer.parseInt(value.trim());
+    }
+
+    public long getSenderBatchTime() {
+        String value = get(PropertyName.SENDER_BATCH_TIME);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_BATCH_TIME : Long.parseLong(value.trim());
+    }
+
+    //milliseconds, 0 when metrics are not aggregated
+    public long getSenderAggregateWindow() {
+        String value = get(PropertyName.SENDER_AGGREGATE_WINDOW);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_AGGREGATE_WINDOW : Long.parseLong(value.trim());
+    }
+
+    //milliseconds, the window when not set
+    public long getSenderAggregateSlide() {
+        String value = get(PropertyName.SENDER_AGGREGATE_SLIDE);
+        return StringUtils.isBlank(value) ? getSenderAggregateWindow() : Long.parseLong(value.trim());
+    }
+
+    //milliseconds without metrics of a series after its last window before the series is removed, the window when not set
+    public long getSenderAggregateIdle() {
+        String value = get(PropertyName.SENDER_AGGREGATE_IDLE);
+        return StringUtils.isBlank(value) ? getSenderAggregateWindow() : Long.parseLong(value.trim());
+    }
+
+    //file index with a suffix when not set, null without a file index
+    public String getSenderAggregateStateFile() {
+        String value = get(PropertyName.SENDER_AGGREGATE_STATE_FILE);
+        if (StringUtils.isNotBlank(value)) {
+            return value.trim();
+        }
+        return StringUtils.isBlank(getCollectorFileIndex()) ? null : getCollectorFileIndex().trim() + DEFAULT_SENDER_AGGREGATE_STATE_FILE_SUFFIX;
+    }
+
+    //avg when not set and no percentiles are set
+    public List<AggregationOutput> getSenderAggregateOutputs() {
+        String value = get(PropertyName.SENDER_AGGREGATE_OUTPUTS);
+        List<AggregationOutput> outputs = new ArrayList<>();
+        if (StringUtils.isBlank(value) && !getSenderAggregatePercentiles().isEmpty()) {
+            return outputs;
+        }
+        for (String output : (StringUtils.isBlank(value) ? DEFAULT_SENDER_AGGREGATE_OUTPUTS : value).split(",")) {
+            outputs.add(AggregationOutput.valueOf(output.trim().toUpperCase()));
+        }
+        return outputs;
+    }
+
+    //from 0 to 100, empty when not set
+    public List<Double> getSenderAggregatePercentiles() {
+        String value = get(PropertyName.SENDER_AGGREGATE_PERCENTILES);
+        List<Double> percentiles = new ArrayList<>();
+        if (StringUtils.isBlank(value)) {
+            return percentiles;
+        }
+        for (String percentile : value.split(",")) {
+            percentiles.add(Double.parseDouble(percentile.trim()));
+        }
+        return percentiles;
+    }
+
+    //metric name to deadband, 0 when only the name is set, empty when metrics are not suppressed
+    public Map<String, String> getSenderDeadbands() {
+        Map<String, String> deadbands = new LinkedHashMap<>();
+        String value = get(PropertyName.SENDER_DEADBAND);
+        if (StringUtils.isBlank(value)) {
+            return deadbands;
+        }
+        for (String deadband : value.split(",")) {
+            String[] deadbandParts = deadband.split("=", 2);
+            deadbands.put(deadbandParts[0].trim(), deadbandParts.length == 2 ? deadbandParts[1].trim() : "0");
+        }
+        return deadbands;
+    }
+
+    //milliseconds, 0 when suppressed metrics are never sent again
+    public long getSenderDeadbandHeartbeat() {
+        String value = get(PropertyName.SENDER_DEADBAND_HEARTBEAT);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_DEADBAND_HEARTBEAT : Long.parseLong(value.trim());
+    }
+
+    //milliseconds, the heartbeat when not set, or an hour without heartbeat
+    public long getSenderDeadbandIdle() {
+        String value = get(PropertyName.SENDER_DEADBAND_IDLE);
+        if (StringUtils.isBlank(value)) {
+            return getSenderDeadbandHeartbeat() > 0 ? getSenderDeadbandHeartbeat() : DEFAULT_SENDER_DEADBAND_IDLE;
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    //null when metrics are not spooled
+    public String getSenderSpoolDir() {
+        String value = get(PropertyName.SENDER_SPOOL_DIR);
+        return StringUtils.isBlank(value) ? null : value.trim();
+    }
+
+    public int getSenderSpoolSegmentSize() {
+        String value = get(PropertyName.SENDER_SPOOL_SEGMENT_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_SPOOL_SEGMENT_SIZE : Integer.parseInt(value.trim());
+    }
+
+    public long getSenderSpoolMaxSize() {
+        String value = get(PropertyName.SENDER_SPOOL_MAX_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_SPOOL_MAX_SIZE : Long.parseLong(value.trim());
+    }
+
+    public long getSenderSpoolMaxAge() {
+        String value = get(PropertyName.SENDER_SPOOL_MAX_AGE);
+        return StringUtils.isBlank(value) ? DEFAULT_SENDER_SPOOL_MAX_AGE : Long.parseLong(value.trim());
+    }
+
+    //property name to the file or directory keeping state of the pipeline, pipelines of one process must not share them
+    public Map<String, String> getStateFiles() {
+        Map<String, String> stateFiles = new LinkedHashMap<>();
+        if (getCollector() == MetricSource.FILE) {
+            stateFiles.put(PropertyName.COLLECTOR_FILE_INDEX.getName(), getCollectorFileIndex());
+            if (getCollectorParser() == ApplicationName.FCR) {
+                stateFiles.put(PropertyName.COLLECTOR_PARSER_FCR_SNAPSHOT.getName(), getCollectorParserFcrSnapshot());
+            }
+        }
+        if (getSenderSpoolDir() != null) {
+            stateFiles.put(PropertyName.SENDER_SPOOL_DIR.getName(), getSenderSpoolDir());
+        }
+        if (getSenderAggregateWindow() > 0 && getSenderAggregateStateFile() != null) {
+            stateFiles.put(PropertyName.SENDER_AGGREGATE_STATE_FILE.getName(), getSenderAggregateStateFile());
+        }
+        return stateFiles;
+    }
+
     public String getJmsServerAddress() {
         return get(PropertyName.JMS_SERVER_ADDRESS);
     }
@@ -138,6 +465,26 @@ public class MetricProperties {
         return get(PropertyName.JMS_SERVER_PASSWORD);
     }
 
+    public boolean isJmsAsyncSend() {
+        String value = get(PropertyName.JMS_ASYNC_SEND);
+        return StringUtils.isBlank(value) ? DEFAULT_JMS_ASYNC_SEND : Boolean.parseBoolean(value.trim());
+    }
+
+    public int getJmsTransactedBatchSize() {
+        String value = get(PropertyName.JMS_TRANSACTED_BATCH_SIZE);
+        return StringUtils.isBlank(value) ? DEFAULT_JMS_TRANSACTED_BATCH_SIZE : Integer.parseInt(value.trim());
+    }
+
+    public JmsDeliveryMode getJmsDeliveryMode() {
+        String value = get(PropertyName.JMS_DELIVERY_MODE);
+        return StringUtils.isBlank(value) ? JmsDeliveryMode.PERSISTENT : JmsDeliveryMode.valueOf(getUppercase(PropertyName.JMS_DELIVERY_MODE));
+    }
+
+    public JmsMessageFormat getJmsMessageFormat() {
+        String value = get(PropertyName.JMS_MESSAGE_FORMAT);
+        return StringUtils.isBlank(value) ? JmsMessageFormat.TEXT : JmsMessageFormat.valueOf(getUppercase(PropertyName.JMS_MESSAGE_FORMAT));
+    }
+
     public String getTelnetServerAddress() {
         return get(PropertyName.TELNET_SERVER_ADDRESS);
     }
@@ -150,6 +497,26 @@ public class MetricProperties {
         return get(PropertyName.TELNET_SERVER_PORT);
     }
 
+    public boolean isTelnetPlainSocket() {
+        String value = get(PropertyName.TELNET_PLAIN_SOCKET);
+        return StringUtils.isBlank(value) ? DEFAULT_TELNET_PLAIN_SOCKET : Boolean.parseBoolean(value.trim());
+    }
+
+    public int getTelnetConnectTimeout() {
+        String value = get(PropertyName.TELNET_CONNECT_TIMEOUT);
+        return StringUtils.isBlank(value) ? DEFAULT_TELNET_CONNECT_TIMEOUT : Integer.parseInt(value.trim());
+    }
+
+    public long getTelnetReconnectTime() {
+        String value = get(PropertyName.TELNET_RECONNECT_TIME);
+        return StringUtils.isBlank(value) ? DEFAULT_TELNET_RECONNECT_TIME : Long.parseLong(value.trim());
+    }
+
+    public long getTelnetReconnectMaxTime() {
+        String value = get(PropertyName.TELNET_RECONNECT_MAX_TIME);
+        return StringUtils.isBlank(value) ? DEFAULT_TELNET_RECONNECT_MAX_TIME : Long.parseLong(value.trim());
+    }
+
     private String getUppercase(PropertyName propertyName) {
         return get(propertyName).toUpperCase().trim();
     }
@@ -164,33 +531,85 @@ public class MetricProperties {
 
         COLLECTOR_CHECKING_TIME("collector.checking.time"),
 
+        COLLECTOR_MODE("collector.mode"),
+        COLLECTOR_TAIL_POLL_TIME("collector.tail.poll.time"),
+
         METRIC_NAME("metric.name"),
 
         METRIC_PATTERN("metric.pattern"),
+        METRIC_VALUE_DECIMAL_PLACES("metric.value.decimal.places"),
+        METRIC_TIMESTAMP_UNIT("metric.timestamp.unit"),
 
         COLLECTOR("collector"),
 
         COLLECTOR_PARSER("collector.parser"),
+        COLLECTOR_PARSER_DELIMITER("collector.parser.delimiter"),
+        COLLECTOR_PARSER_FIELDS("collector.parser.fields"),
+        COLLECTOR_PARSER_TIMESTAMP_UNIT("collector.parser.timestamp.unit"),
+        COLLECTOR_PARSER_TAGS("collector.parser.tags"),
+        COLLECTOR_PARSER_FCR_CAPACITY("collector.parser.fcr.capacity"),
+        COLLECTOR_PARSER_FCR_TTL("collector.parser.fcr.ttl"),
+        COLLECTOR_PARSER_FCR_SNAPSHOT("collector.parser.fcr.snapshot"),
 
         COLLECTOR_FILE_DIR("collector.file.dir"),
         COLLECTOR_FILE_PATTERN("collector.file.pattern"),
         COLLECTOR_FILE_INDEX("collector.file.index"),
+        COLLECTOR_FILE_INDEX_TYPE("collector.file.index.type"),
+        COLLECTOR_FILE_INDEX_SYNC_COUNT("collector.file.index.sync.count"),
+        COLLECTOR_FILE_INDEX_SYNC_TIME("collector.file.index.sync.time"),
+        COLLECTOR_FILE_INDEX_COMPACT_SIZE("collector.file.index.compact.size"),
+        COLLECTOR_FILE_CHECKPOINT_INTERVAL("collector.file.checkpoint.interval"),
+        COLLECTOR_FILE_CHUNK_SIZE("collector.file.chunk.size"),
+        COLLECTOR_FILE_THREADS("collector.file.threads"),
+
+        COLLECTOR_PIPELINE("collector.pipeline"),
+        COLLECTOR_PIPELINE_PARSER_THREADS("collector.pipeline.parser.threads"),
+        COLLECTOR_PIPELINE_SENDER_THREADS("collector.pipeline.sender.threads"),
+        COLLECTOR_PIPELINE_BUFFER_SIZE("collector.pipeline.buffer.size"),
 
         COLLECTOR_URL("collector.url"),
         COLLECTOR_URL_SUFFIX_GET_APP_ID("collector.url.suffix.get.app.id"),
         COLLECTOR_URL_SUFFIX_GET_METRICS("collector.url.suffix.get.metrics"),
         COLLECTOR_URL_MAX_DURATION_TIME("collector.url.max.duration.time"),
+        COLLECTOR_URL_TASK_PERCENTILE("collector.url.task.percentile"),
+        COLLECTOR_URL_CONNECT_TIMEOUT("collector.url.connect.timeout"),
+        COLLECTOR_URL_READ_TIMEOUT("collector.url.read.timeout"),
+        COLLECTOR_URL_DEADLINE("collector.url.deadline"),
+        COLLECTOR_URL_THREADS("collector.url.threads"),
 
         SENDER_TYPE("sender.type"),
+        SENDER_BATCH_SIZE("sender.batch.size"),
+        SENDER_BATCH_TIME("sender.batch.time"),
+        SENDER_AGGREGATE_WINDOW("sender.aggregate.window"),
+        SENDER_AGGREGATE_SLIDE("sender.aggregate.slide"),
+        SENDER_AGGREGATE_IDLE("sender.aggregate.idle"),
+        SENDER_AGGREGATE_STATE_FILE("sender.aggregate.state.file"),
+        SENDER_AGGREGATE_OUTPUTS("sender.aggregate.outputs"),
+        SENDER_AGGREGATE_PERCENTILES("sender.aggregate.percentiles"),
+        SENDER_DEADBAND("sender.deadband"),
+        SENDER_DEADBAND_HEARTBEAT("sender.deadband.heartbeat"),
+        SENDER_DEADBAND_IDLE("sender.deadband.idle"),
+        SENDER_SPOOL_DIR("sender.spool.dir"),
+        SENDER_SPOOL_SEGMENT_SIZE("sender.spool.segment.size"),
+        SENDER_SPOOL_MAX_SIZE("sender.spool.max.size"),
+        SENDER_SPOOL_MAX_AGE("sender.spool.max.age"),
 
         JMS_SERVER_ADDRESS("jms.server.address"),
         JMS_SERVER_PORT("jms.sever.port"),
         JMS_SERVER_USERNAME("jms.server.username"),
         JMS_SERVER_PASSWORD("jms.server.password"),
+        JMS_ASYNC_SEND("jms.async.send"),
+        JMS_TRANSACTED_BATCH_SIZE("jms.transacted.batch.size"),
+        JMS_DELIVERY_MODE("jms.delivery.mode"),
+        JMS_MESSAGE_FORMAT("jms.message.format"),
 
 
         TELNET_SERVER_ADDRESS("telnet.server.address"),
-        TELNET_SERVER_PORT("telnet.sever.port");
+        TELNET_SERVER_PORT("telnet.sever.port"),
+        TELNET_PLAIN_SOCKET("telnet.plain.socket"),
+        TELNET_CONNECT_TIMEOUT("telnet.connect.timeout"),
+        TELNET_RECONNECT_TIME("telnet.reconnect.time"),
+        TELNET_RECONNECT_MAX_TIME("telnet.reconnect.max.time");
 
         private String name;
 
@@ -202,10 +621,15 @@ public class MetricProperties {
         ValidationResult validate() {
             Map<PropertyName, String> errors = new HashMap<>();
 
+            validateNumbers(errors);
             validateSender(errors);
+            validateAggregation(errors);
+            validateDeadbands(errors);
             validateCollector(errors);
+            validateCollectorMode(errors);
             validateIfBlank(errors, PropertyName.COLLECTOR_CHECKING_TIME, getCheckingTimeAsString());
             validateIfBlank(errors, PropertyName.METRIC_PATTERN, getMetricPattern());
+            validateIfNotEnum(errors, PropertyName.METRIC_TIMESTAMP_UNIT, TimeUnit.class);
             return new ValidationResult(errors);
         }
 
@@ -225,6 +649,7 @@ public class MetricProperties {
                                     validateIfBlank(errors, PropertyName.COLLECTOR_URL_SUFFIX_GET_APP_ID, getCollectorUrlSuffixToGetAppId());
                                     validateIfBlank(errors, PropertyName.COLLECTOR_URL_SUFFIX_GET_METRICS, getCollectorUrlSuffixToGetMetrics());
                                     validateIfBlank(errors, PropertyName.COLLECTOR_URL_MAX_DURATION_TIME, get(PropertyName.COLLECTOR_URL_MAX_DURATION_TIME));
+                                    validateIfNotNumber(errors, PropertyName.COLLECTOR_URL_MAX_DURATION_TIME, 0, Integer.MAX_VALUE);
                                     break;
                                 default:
                                     errors.put(PropertyName.COLLECTOR_PARSER, String.format("Value: %s is currently not supported by metric generator for analyse from", applicationNameEnum));
@@ -245,6 +670,16 @@ public class MetricProperties {
                                     validateIfBlank(errors, PropertyName.COLLECTOR_FILE_DIR, getCollectorFileDir());
                                     validateIfBlank(errors, PropertyName.COLLECTOR_FILE_INDEX, getCollectorFileIndex());
                                     validateIfBlank(errors, PropertyName.COLLECTOR_FILE_PATTERN, getCollectorFilePattern());
+                                    validateIfNotEnum(errors, PropertyName.COLLECTOR_FILE_INDEX_TYPE, CheckpointStoreType.class);
+                                    break;
+                                case DELIMITED:
+                                    validateIfBlank(errors, PropertyName.COLLECTOR_FILE_DIR, getCollectorFileDir());
+                                    validateIfBlank(errors, PropertyName.COLLECTOR_FILE_INDEX, getCollectorFileIndex());
+                                    validateIfBlank(errors, PropertyName.COLLECTOR_FILE_PATTERN, getCollectorFilePattern());
+                                    validateIfNotEnum(errors, PropertyName.COLLECTOR_FILE_INDEX_TYPE, CheckpointStoreType.class);
+                                    validateIfBlank(errors, PropertyName.COLLECTOR_PARSER_FIELDS, getCollectorParserFields());
+                                    validateIfNotEnum(errors, PropertyName.COLLECTOR_PARSER_TIMESTAMP_UNIT, TimeUnit.class);
+                                    validateTags(errors);
                                     break;
                                 default:
                                     errors.put(PropertyName.COLLECTOR_PARSER, String.format("Value: %s is currently not supported by metric generator", applicationNameEnum));
@@ -264,6 +699,18 @@ public class MetricProperties {
             }
         }
 
+        private void validateCollectorMode(Map<PropertyName, String> errors) {
+            String collectorMode = get(PropertyName.COLLECTOR_MODE);
+            if (StringUtils.isBlank(collectorMode)) {
+                return;
+            }
+            if (!EnumUtils.isValidEnum(CollectorMode.class, getUppercase(PropertyName.COLLECTOR_MODE))) {
+                errors.put(PropertyName.COLLECTOR_MODE, String.format("Value: %s is not supported, acceptable values: %s", collectorMode, Arrays.toString(CollectorMode.values())));
+            } else if (getCollectorMode() == CollectorMode.TAIL && !MetricSource.FILE.name().equals(getUppercase(PropertyName.COLLECTOR))) {
+                errors.put(PropertyName.COLLECTOR_MODE, String.format("Value: %s is supported only for collector: %s", collectorMode, MetricSource.FILE));
+            }
+        }
+
         private void validateSender(Map<PropertyName, String> errors) {
             String metricSenderType = getUppercase(PropertyName.SENDER_TYPE);
             if (EnumUtils.isValidEnum(MetricSenderType.class, metricSenderType)) {
@@ -273,13 +720,21 @@ public class MetricProperties {
 
                         validateIfBlank(errors, PropertyName.JMS_SERVER_ADDRESS, getJmsServerAddress());
                         validateIfBlank(errors, PropertyName.JMS_SERVER_PORT, getJmsServerPortAsString());
+                        validateIfNotNumber(errors, PropertyName.JMS_SERVER_PORT, 1, MAX_PORT);
+                        validateIfNotNumber(errors, PropertyName.JMS_TRANSACTED_BATCH_SIZE, 0, Integer.MAX_VALUE);
                         validateIfBlank(errors, PropertyName.JMS_SERVER_USERNAME, getJmsServerUsername());
                         validateIfBlank(errors, PropertyName.JMS_SERVER_PASSWORD, getJmsServerPassword());
+                        validateIfNotEnum(errors, PropertyName.JMS_DELIVERY_MODE, JmsDeliveryMode.class);
+                        validateIfNotEnum(errors, PropertyName.JMS_MESSAGE_FORMAT, JmsMessageFormat.class);
                         break;
                     case TELNET:
 
                         validateIfBlank(errors, PropertyName.TELNET_SERVER_ADDRESS, getTelnetServerAddress());
                         validateIfBlank(errors, PropertyName.TELNET_SERVER_PORT, getTelnetServerPortAsString());
+                        validateIfNotNumber(errors, PropertyName.TELNET_SERVER_PORT, 1, MAX_PORT);
+                        validateIfNotNumber(errors, PropertyName.TELNET_CONNECT_TIMEOUT, 1, Integer.MAX_VALUE);
+                        validateIfNotNumber(errors, PropertyName.TELNET_RECONNECT_TIME, 1, Long.MAX_VALUE);
+                        validateIfNotNumber(errors, PropertyName.TELNET_RECONNECT_MAX_TIME, 1, Long.MAX_VALUE);
                         break;
                     default:
                         errors.put(PropertyName.SENDER_TYPE, String.format("Value: %s is currently not supported by metric generator", metricSenderTypeEnum));
@@ -289,6 +744,123 @@ public class MetricProperties {
             }
         }
 
+        //sizes, counts and times, blank values are replaced by defaults
+        private void validateNumbers(Map<PropertyName, String> errors) {
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_CHECKING_TIME, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_TAIL_POLL_TIME, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_PARSER_FCR_CAPACITY, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_PARSER_FCR_TTL, 0, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_THREADS, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_CHUNK_SIZE, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_CHECKPOINT_INTERVAL, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_INDEX_SYNC_COUNT, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_INDEX_SYNC_TIME, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_FILE_INDEX_COMPACT_SIZE, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_PIPELINE_PARSER_THREADS, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_PIPELINE_SENDER_THREADS, 1, Integer.MAX_VALUE);
+            //ring buffers are rounded up to a power of two
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_PIPELINE_BUFFER_SIZE, 1, 1 << 30);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_URL_CONNECT_TIMEOUT, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_URL_READ_TIMEOUT, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_URL_DEADLINE, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.COLLECTOR_URL_THREADS, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_BATCH_SIZE, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_BATCH_TIME, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_AGGREGATE_WINDOW, 0, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_AGGREGATE_SLIDE, 0, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_AGGREGATE_IDLE, 0, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_SPOOL_SEGMENT_SIZE, 1, Integer.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_SPOOL_MAX_SIZE, 1, Long.MAX_VALUE);
+            validateIfNotNumber(errors, PropertyName.SENDER_SPOOL_MAX_AGE, 0, Long.MAX_VALUE);
+        }
+
+        private void validateAggregation(Map<PropertyName, String> errors) {
+            if (errors.containsKey(PropertyName.SENDER_AGGREGATE_WINDOW) || errors.containsKey(PropertyName.SENDER_AGGREGATE_SLIDE)
+                    || errors.containsKey(PropertyName.SENDER_AGGREGATE_IDLE) || getSenderAggregateWindow() <= 0) {
+                return;
+            }
+            long slide = getSenderAggregateSlide();
+            if (slide <= 0 || getSenderAggregateWindow() % slide != 0) {
+                errors.put(PropertyName.SENDER_AGGREGATE_SLIDE, String.format("Value: %s is not supported, window has to be a multiple of it", slide));
+            }
+            if (getSenderAggregateIdle() < 0) {
+                errors.put(PropertyName.SENDER_AGGREGATE_IDLE, String.format("Value: %s is not supported, acceptable values: 0 or more", getSenderAggregateIdle()));
+            }
+            String outputs = get(PropertyName.SENDER_AGGREGATE_OUTPUTS);
+            if (StringUtils.isNotBlank(outputs)) {
+                for (String output : outputs.split(",")) {
+                    if (!EnumUtils.isValidEnum(AggregationOutput.class, output.trim().toUpperCase())) {
+                        errors.put(PropertyName.SENDER_AGGREGATE_OUTPUTS, String.format("Value: %s is not supported, acceptable values: %s", output.trim(), Arrays.toString(AggregationOutput.values())));
+                    }
+                }
+            }
+            String percentiles = get(PropertyName.SENDER_AGGREGATE_PERCENTILES);
+            if (StringUtils.isNotBlank(percentiles)) {
+                for (String percentile : percentiles.split(",")) {
+                    if (!percentile.trim().matches("\\d+(\\.\\d+)?") || Double.parseDouble(percentile.trim()) <= 0 || Double.parseDouble(percentile.trim()) > 100) {
+                        errors.put(PropertyName.SENDER_AGGREGATE_PERCENTILES, String.format("Value: %s is not supported, acceptable values: numbers greater than 0 and at most 100", percentile.trim()));
+                    }
+                }
+            }
+        }
+
+        private void validateDeadbands(Map<PropertyName, String> errors) {
+            String deadbands = get(PropertyName.SENDER_DEADBAND);
+            if (StringUtils.isBlank(deadbands)) {
+                return;
+            }
+            for (String deadband : deadbands.split(",")) {
+                String[] deadbandParts = deadband.split("=", 2);
+                if (StringUtils.isBlank(deadbandParts[0]) || deadbandParts.length == 2 && !deadbandParts[1].trim().matches("\\d+(\\.\\d+)?%?")) {
+                    errors.put(PropertyName.SENDER_DEADBAND, String.format("Deadband: %s is not supported, acceptable format: name, name=number or name=percent%%", deadband.trim()));
+                }
+            }
+            String heartbeat = get(PropertyName.SENDER_DEADBAND_HEARTBEAT);
+            if (StringUtils.isNotBlank(heartbeat) && !heartbeat.trim().matches("\\d+")) {
+                errors.put(PropertyName.SENDER_DEADBAND_HEARTBEAT, String.format("Value: %s is not supported, acceptable values: milliseconds, 0 - no heartbeat", heartbeat.trim()));
+            }
+            String idle = get(PropertyName.SENDER_DEADBAND_IDLE);
+            if (StringUtils.isNotBlank(idle) && !idle.trim().matches("[1-9]\\d*")) {
+                errors.put(PropertyName.SENDER_DEADBAND_IDLE, String.format("Value: %s is not supported, acceptable values: milliseconds greater than 0", idle.trim()));
+            }
+        }
+
+        private void validateTags(Map<PropertyName, String> errors) {
+            String tags = get(PropertyName.COLLECTOR_PARSER_TAGS);
+            if (StringUtils.isBlank(tags)) {
+                return;
+            }
+            for (String tag : tags.split(",")) {
+                String[] tagParts = tag.split("=", 2);
+                if (tagParts.length != 2 || StringUtils.isBlank(tagParts[0]) || StringUtils.isBlank(tagParts[1])) {
+                    errors.put(PropertyName.COLLECTOR_PARSER_TAGS, String.format("Tag: %s is not supported, acceptable format: name=value", tag.trim()));
+                }
+            }
+        }
+
+        private <E extends Enum<E>> void validateIfNotEnum(Map<PropertyName, String> errors, PropertyName propertyName, Class<E> enumClass) {
+            String value = get(propertyName);
+            if (StringUtils.isNotBlank(value) && !EnumUtils.isValidEnum(enumClass, getUppercase(propertyName))) {
+                errors.put(propertyName, String.format("Value: %s is not supported, acceptable values: %s", value, Arrays.toString(enumClass.getEnumConstants())));
+            }
+        }
+
+        private void validateIfNotNumber(Map<PropertyName, String> errors, PropertyName propertyName, long min, long max) {
+            String value = get(propertyName);
+            if (StringUtils.isBlank(value) || errors.containsKey(propertyName)) {
+                return;
+            }
+            try {
+                long number = Long.parseLong(value.trim());
+                if (number >= min && number <= max) {
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                //reported below
+            }
+            errors.put(propertyName, String.format("Value: %s is not supported, acceptable values: whole numbers from %s to %s", value.trim(), min, max));
+        }
+
         private void validateIfBlank(Map<PropertyName, String> errors, PropertyName propertyName, String value) {
             if (StringUtils.isBlank(value)) {
                 errors.put(propertyName, "Value must be set");
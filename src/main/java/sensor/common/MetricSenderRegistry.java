@@ -0,0 +1,123 @@
+package sensor.common;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.MetricPOJO;
+import sensor.service.sender.MetricSender;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Senders shared by pipelines of the process, one per sink, so pipelines sending to the same server with the same
+ * format share its connection. A pipeline gets a handle of the sender, the sender is closed when the handles of all
+ * pipelines using it are closed. When the shared sender drops metrics, e.g. as its connection failed, metrics of
+ * all pipelines not flushed yet are lost, so the next flush of every handle which sent metrics since its last flush
+ * fails, even if the failure was caused by another pipeline.
+ */
+@Slf4j
+public class MetricSenderRegistry {
+
+    private final ConcurrentMap<String, SharedMetricSender> senders = new ConcurrentHashMap<>();
+
+    //the key identifies the sink and everything that changes what is sent to it
+    MetricSender acquire(String key, Supplier<MetricSender> metricSenderSupplier) {
+        SharedMetricSender sharedMetricSender = senders.compute(key, (name, shared) -> {
+            if (shared == null) {
+                log.info("Sender created for {}", name);
+                shared = new SharedMetricSender(name, metricSenderSupplier.get());
+            } else {
+                log.info("Sender shared for {}", name);
+            }
+            shared.references.incrementAndGet();
+            return shared;
+        });
+        return new MetricSenderHandle(sharedMetricSender);
+    }
+
+    private void release(SharedMetricSender sharedMetricSender) throws IOException {
+        //removed under the lock of its key, so a new acquire of the key creates a new sender
+        boolean[] unused = new boolean[1];
+        senders.computeIfPresent(sharedMetricSender.key, (name, shared) -> {
+            if (shared == sharedMetricSender && shared.references.decrementAndGet() == 0) {
+                unused[0] = true;
+                return null;
+            }
+            return shared;
+        });
+        if (unused[0] && sharedMetricSender.metricSender instanceof Closeable) {
+            ((Closeable) sharedMetricSender.metricSender).close();
+            log.info("Sender for {} closed", sharedMetricSender.key);
+        }
+    }
+
+    private static class SharedMetricSender {
+
+        private final String key;
+        private final MetricSender metricSender;
+        private final AtomicInteger references = new AtomicInteger();
+
+        SharedMetricSender(String key, MetricSender metricSender) {
+            this.key = key;
+            this.metricSender = metricSender;
+        }
+    }
+
+    //sender of one pipeline, closing it releases the shared sender once
+    private class MetricSenderHandle implements MetricSender, Closeable {
+
+        private final SharedMetricSender sharedMetricSender;
+        //failure generation when the first metric after the last flush was sent, -1 without such metrics
+        private final AtomicLong sentGeneration = new AtomicLong(-1);
+        private boolean closed;
+
+        MetricSenderHandle(SharedMetricSender sharedMetricSender) {
+            this.sharedMetricSender = sharedMetricSender;
+        }
+
+        @Override
+        public void sendMessage(MetricPOJO metricPOJO) throws Exception {
+            markSent();
+            sharedMetricSender.metricSender.sendMessage(metricPOJO);
+        }
+
+        @Override
+        public void sendBatch(Collection<MetricPOJO> metrics) throws Exception {
+            markSent();
+            sharedMetricSender.metricSender.sendBatch(metrics);
+        }
+
+        @Override
+        public void flush() throws Exception {
+            long generation = sentGeneration.getAndSet(-1);
+            sharedMetricSender.metricSender.flush();
+            if (generation >= 0 && getFailureGeneration() != generation) {
+                throw new IOException(String.format("Sender for %s dropped metrics not flushed yet after a failure", sharedMetricSender.key));
+            }
+        }
+
+        @Override
+        public long getFailureGeneration() {
+            return sharedMetricSender.metricSender.getFailureGeneration();
+        }
+
+        private void markSent() {
+            if (sentGeneration.get() < 0) {
+                sentGeneration.compareAndSet(-1, getFailureGeneration());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                release(sharedMetricSender);
+            }
+        }
+    }
+}
@@ -2,10 +2,11 @@ package sensor.common;
 
 import java.util.function.Supplier;
 
+//the instance is created once under a lock, later calls only read it
 public class SingletonSupplier<T> implements Supplier<T> {
 
     private final Supplier<T> supplier;
-    private T instance;
+    private volatile T instance;
 
     SingletonSupplier(Supplier<T> supplier) {
         this.supplier = supplier;
@@ -13,9 +14,20 @@ public class SingletonSupplier<T> implements Supplier<T> {
 
     @Override
     public T get() {
-        if (instance == null) {
-            instance = supplier.get();
+        T result = instance;
+        if (result == null) {
+            synchronized (this) {
+                result = instance;
+                if (result == null) {
+                    result = supplier.get();
+                    instance = result;
+                }
+            }
         }
+        return result;
+    }
+
+    public T getIfCreated() {
         return instance;
     }
 }
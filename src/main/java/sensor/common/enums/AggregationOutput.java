@@ -0,0 +1,5 @@
+package sensor.common.enums;
+
+public enum AggregationOutput {
+    MIN, MAX, AVG, SUM, COUNT, LAST
+}
@@ -1,5 +1,5 @@
 package sensor.common.enums;
 
 public enum ApplicationName {
-    TEST, NS3, FCR, GENOM, CE_TRAFFIC, THROUGHPUT
+    TEST, NS3, FCR, GENOM, CE_TRAFFIC, THROUGHPUT, DELIMITED
 }
@@ -0,0 +1,5 @@
+package sensor.common.enums;
+
+public enum JmsDeliveryMode {
+    PERSISTENT, NON_PERSISTENT
+}
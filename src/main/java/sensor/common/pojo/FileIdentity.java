@@ -0,0 +1,20 @@
+package sensor.common.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class FileIdentity {
+
+    //inode or its equivalent, null when not supported by the file system
+    private String fileKey;
+    //number of bytes from the beginning of the file covered by the fingerprint
+    private int fingerprintLength;
+    private long fingerprint;
+
+    @Override
+    public String toString() {
+        return "key " + fileKey + ", fingerprint " + Long.toHexString(fingerprint) + " of " + fingerprintLength + " bytes";
+    }
+}
@@ -0,0 +1,28 @@
+package sensor.common.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class FilePosition {
+
+    public static final FilePosition START = new FilePosition(1, 0L);
+    public static final long UNKNOWN_BYTE_OFFSET = -1L;
+
+    //line from which the next read starts (1-based)
+    private int lineNumber;
+    //byte directly after the last consumed line terminator
+    private long byteOffset;
+    //file the position belongs to, null when not known
+    private FileIdentity identity;
+
+    public FilePosition(int lineNumber, long byteOffset) {
+        this(lineNumber, byteOffset, null);
+    }
+
+    @Override
+    public String toString() {
+        return "line " + lineNumber + " (byte " + byteOffset + ")";
+    }
+}
@@ -3,11 +3,19 @@ package sensor.common.pojo;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.util.Collections;
+import java.util.Map;
+
 @Getter
 @AllArgsConstructor
 public class MetricPOJO {
     private String metricName;
     private double metricValue;
     private long timestamp;
+    //tag name to value, empty when the metric has no tags
+    private Map<String, String> tags;
 
+    public MetricPOJO(String metricName, double metricValue, long timestamp) {
+        this(metricName, metricValue, timestamp, Collections.emptyMap());
+    }
 }
@@ -5,14 +5,13 @@ import org.quartz.*;
 import sensor.common.Manager;
 import sensor.service.reader.MetricReader;
 
-import java.util.concurrent.CountDownLatch;
-
 @Slf4j
 @PersistJobDataAfterExecution
 @DisallowConcurrentExecution
 public class MetricGeneratorJob implements Job {
 
-    private static int count;
+    static final String MANAGER_KEY = "manager";
+    private static final String COUNT_KEY = "count";
 
     @Override
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
@@ -23,16 +22,17 @@ public class MetricGeneratorJob implements Job {
         log.info("MyJob next scheduled time: {}", jobExecutionContext.getNextFireTime());
         log.info("--------------------------------------------------------------------");
 
-        executeSending();
-
-        ((CountDownLatch) jobDetail.getJobDataMap().get("latch")).countDown();
+        JobDataMap jobDataMap = jobDetail.getJobDataMap();
+        executeSending((Manager) jobDataMap.get(MANAGER_KEY));
 
-        count++;
+        //kept between executions of the job of the pipeline
+        int count = jobDataMap.containsKey(COUNT_KEY) ? jobDataMap.getInt(COUNT_KEY) + 1 : 1;
+        jobDataMap.put(COUNT_KEY, count);
         log.info("Job count {}", count);
     }
 
-    private void executeSending(){
-        MetricReader properMetricReader = Manager.getProperMetricReader();
+    private void executeSending(Manager manager){
+        MetricReader properMetricReader = manager.getProperMetricReader();
         try {
             properMetricReader.readMetrics();
         } catch (Exception e){
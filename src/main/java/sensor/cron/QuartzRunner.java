@@ -1,53 +1,58 @@
 package sensor.cron;
 
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
 import sensor.common.Manager;
-import sensor.common.MetricProperties;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.Properties;
 
 import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
 import static org.quartz.TriggerBuilder.newTrigger;
 
-@Getter
 @Slf4j
-@NoArgsConstructor
+@AllArgsConstructor
 public class QuartzRunner {
 
-    private MetricProperties metricProperties = MetricProperties.getInstance();
-    private CountDownLatch latch = new CountDownLatch(1);
+    private static final String JOB_GROUP = "metricGenerator";
+
+    //shared by jobs of all pipelines
+    private final Scheduler scheduler;
+    private final Manager manager;
+
+    public static Scheduler createScheduler(int threadCount) throws SchedulerException {
+        Properties properties = new Properties();
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "MetricGeneratorScheduler");
+        properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_CLASS, "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threadCount));
+        properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+        return new StdSchedulerFactory(properties).getScheduler();
+    }
 
     public void fireJob() {
         try {
-            log.info("Metric Sender: {}", Manager.getProperNewMetricSender().getClass().toString());
-            Scheduler scheduler = new StdSchedulerFactory().getScheduler();
-            scheduler.scheduleJob(getJobDetail(), getTrigger(metricProperties.getCheckingTime()));
-            scheduler.start();
-
-            latch.await();
-        } catch (SchedulerException | InterruptedException ex) {
+            log.info("Pipeline: {}, metric sender: {}", manager.getPipelineName(), manager.getProperNewMetricSender().getClass().toString());
+            scheduler.scheduleJob(getJobDetail(), getTrigger(manager.getMetricProperties().getCheckingTime()));
+        } catch (SchedulerException ex) {
             log.error(ex.getMessage());
         }
     }
 
     private JobDetail getJobDetail() {
         JobDataMap data = new JobDataMap();
-        data.put("latch", this.latch);
+        data.put(MetricGeneratorJob.MANAGER_KEY, manager);
 
         return JobBuilder.newJob(MetricGeneratorJob.class)
                 .usingJobData(data)
-                .withIdentity("myJob", "group1")
+                .withIdentity(manager.getPipelineName(), JOB_GROUP)
                 .build();
     }
 
     private Trigger getTrigger(int secondsBetweenCronStarts) {
         // Trigger the job to run now, and then every secondsBetweenCronStarts seconds
         return newTrigger()
-                .withIdentity("myTrigger", "group1")
+                .withIdentity(manager.getPipelineName(), JOB_GROUP)
                 .startNow()
                 .withSchedule(simpleSchedule()
                         .withIntervalInSeconds(secondsBetweenCronStarts)
@@ -56,4 +61,3 @@ public class QuartzRunner {
     }
 
 }
-
@@ -0,0 +1,72 @@
+package sensor.cron;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.Manager;
+import sensor.common.MetricProperties;
+import sensor.service.reader.MetricReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Keeps reading the log files continuously instead of running a cron job. New lines are read as soon as
+ * the directory reports a change, the poll time is used as a fallback for file systems without change events.
+ */
+@Slf4j
+public class TailRunner {
+
+    private final Manager manager;
+    private final MetricProperties metricProperties;
+
+    public TailRunner(Manager manager) {
+        this.manager = manager;
+        this.metricProperties = manager.getMetricProperties();
+    }
+
+    public void fireJob() {
+        MetricReader metricReader = manager.getProperMetricReader();
+        Path directory = Paths.get(metricProperties.getCollectorFileDir());
+        long pollTime = metricProperties.getCollectorTailPollTime();
+
+        log.info("Pipeline: {}, metric sender: {}", manager.getPipelineName(), manager.getProperNewMetricSender().getClass().toString());
+        log.info("Tailing files in: {}, poll time: {} ms", directory, pollTime);
+
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                readMetrics(metricReader);
+
+                WatchKey watchKey = watchService.poll(pollTime, TimeUnit.MILLISECONDS);
+                if (watchKey != null) {
+                    //any number of pending events is handled by a single read
+                    watchKey.pollEvents();
+                    watchKey.reset();
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.info("Tailing files in: {} stopped", directory);
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            log.error(ex.getMessage());
+        }
+    }
+
+    private void readMetrics(MetricReader metricReader) {
+        try {
+            metricReader.readMetrics();
+        } catch (InterruptedException e) {
+            //stops the loop
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error during reading metrics", e);
+        }
+    }
+}
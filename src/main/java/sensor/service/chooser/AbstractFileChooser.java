@@ -1,56 +1,222 @@
 package sensor.service.chooser;
 
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.FileIndexProperties;
+import sensor.common.CheckpointStore;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 public abstract class AbstractFileChooser implements FileChooser {
 
     @Getter(value = AccessLevel.PACKAGE)
-    private final FileIndexProperties fileIndexProperties;
+    private final CheckpointStore checkpointStore;
+
+    //rotated files of the last check mapped to the files they were rotated from
+    private volatile Map<Path, Path> sourceFiles = Collections.emptyMap();
 
     @Override
-    public Map<Path, Integer> findFilesToAnalise() throws IOException {
+    public Map<Path, FilePosition> findFilesToAnalise() throws IOException {
         List<Path> filesToAnalise = getFilesToAnalise();
 
-        String lastAnalysedFilePath = fileIndexProperties.getLastAnalysedFilePath();
-        Map<Path, Integer> result = new HashMap<>();
+        Map<Path, FilePosition> result = new LinkedHashMap<>();
+        Map<Path, Path> rotatedFiles = new HashMap<>();
         for (Path path : filesToAnalise) {
-            if (lastAnalysedFilePath != null && path.toString().equals(lastAnalysedFilePath)) {
-                //check line numbers
-                if (Files.lines(path).count() > fileIndexProperties.getLastAnalysedLineNumber()) {
-                    result.put(path, fileIndexProperties.getLastAnalysedLineNumber() );
-                } else {
-                    log.debug("Skiping {} - file is currently read", path.getFileName().toString());
+            FilePosition position = checkpointStore.getPosition(path.toString());
+            if (position == null) {
+                result.putIfAbsent(path, FilePosition.START);
+                continue;
+            }
+            position = resolveByteOffset(path, position);
+
+            if (position.getIdentity() != null && !FileFingerprints.hasIdentity(path, position.getIdentity())) {
+                //rotated files are finished first, a map keeps the insertion order
+                addRotatedFiles(path, position, result, rotatedFiles);
+                result.put(path, FilePosition.START);
+                continue;
+            }
+
+            if (CompressedFiles.isCompressed(path)) {
+                if (!CompressedFiles.isFullyRead(path, position.getByteOffset())) {
+                    result.putIfAbsent(path, position);
+                }
+                continue;
+            }
+
+            //check size against the stored offset instead of counting lines
+            long size = Files.size(path);
+            if (size < position.getByteOffset()) {
+                log.warn("File {} truncated to {} bytes, was read up to {}, reading from the beginning", path.toString(), size, position);
+                //copied before it was truncated, the copy is finished first
+                if (position.getIdentity() != null) {
+                    addRotatedFiles(path, position, result, rotatedFiles);
                 }
+                result.put(path, FilePosition.START);
+            } else if (size > position.getByteOffset()) {
+                result.putIfAbsent(path, position);
             } else {
-                result.put(path, 1);
+                log.debug("Skiping {} - file is currently read", path.getFileName().toString());
             }
         }
+        this.sourceFiles = rotatedFiles;
 
-        log.info("Files to analise: {}", result.keySet().size());
-        result.forEach((path, line) -> log.info("\t {} from line: {}", path.getFileName().toString(), line));
+        log.debug("Files to analise: {}", result.keySet().size());
+        result.forEach((path, position) -> log.debug("\t {} from {}", path.getFileName().toString(), position));
         return result;
     }
 
     protected abstract List<Path> getFilesToAnalise() throws IOException;
 
     @Override
-    public void updateFileIndex(String filePath, Integer line) throws IOException {
-        fileIndexProperties.setLastAnalysedFilePath(filePath);
-        fileIndexProperties.setLastAnalysedLineNumber(line);
-        fileIndexProperties.update();
+    public void updateFileIndex(String filePath, FilePosition position) throws IOException {
+        checkpointStore.updatePosition(filePath, position);
+    }
+
+    @Override
+    public Path getSourceFile(Path filePath) {
+        return sourceFiles.getOrDefault(filePath, filePath);
+    }
+
+    //the file the position belongs to is finished first, then files rotated after it - plain or compressed - oldest first
+    private void addRotatedFiles(Path path, FilePosition position, Map<Path, FilePosition> result, Map<Path, Path> rotatedFiles) throws IOException {
+        Path rotatedPath = findRotatedFile(path, position);
+        if (rotatedPath == null) {
+            log.warn("File {} was replaced, previous file read up to {} not found, reading the new file from the beginning", path.toString(), position);
+            return;
+        }
+
+        //the rotated file could be partly read under its new name already
+        FilePosition rotatedPosition = checkpointStore.getPosition(rotatedPath.toString());
+        if (!hasIdentity(rotatedPath, rotatedPosition) || rotatedPosition.getByteOffset() < position.getByteOffset()) {
+            rotatedPosition = position;
+        }
+        log.info("File {} was rotated to {}, finishing it from {}", path.toString(), rotatedPath.toString(), rotatedPosition);
+        addRotatedFile(path, rotatedPath, rotatedPosition, result, rotatedFiles);
+
+        FileTime rotationTime = Files.getLastModifiedTime(rotatedPath);
+        for (Path laterRotatedPath : findLaterRotatedFiles(path, rotationTime)) {
+            FilePosition laterRotatedPosition = checkpointStore.getPosition(laterRotatedPath.toString());
+            if (!hasIdentity(laterRotatedPath, laterRotatedPosition)) {
+                laterRotatedPosition = FilePosition.START;
+            }
+            log.info("File {} was rotated again to {}, reading it from {}", path.toString(), laterRotatedPath.toString(), laterRotatedPosition);
+            addRotatedFile(path, laterRotatedPath, laterRotatedPosition, result, rotatedFiles);
+        }
+    }
+
+    private void addRotatedFile(Path path, Path rotatedPath, FilePosition rotatedPosition,
+                                Map<Path, FilePosition> result, Map<Path, Path> rotatedFiles) throws IOException {
+        boolean fullyRead = CompressedFiles.isCompressed(rotatedPath)
+                ? CompressedFiles.isFullyRead(rotatedPath, rotatedPosition.getByteOffset())
+                : Files.size(rotatedPath) <= rotatedPosition.getByteOffset();
+        if (!fullyRead) {
+            result.put(rotatedPath, rotatedPosition);
+            rotatedFiles.put(rotatedPath, path);
+        }
     }
-}
 
+    //a plain file is matched by its file key and content, a copy of a file truncated after copying (copytruncate) by
+    //its content and size, the latest one, a compressed one by its uncompressed content only, while a file is
+    //compressed both exist and the plain one is complete
+    private Path findRotatedFile(Path path, FilePosition position) throws IOException {
+        FileIdentity identity = position.getIdentity();
+        FileIdentity contentIdentity = new FileIdentity(null, identity.getFingerprintLength(), identity.getFingerprint());
+        Path copiedPath = null;
+        FileTime copyTime = null;
+        Path compressedPath = null;
+
+        Path directory = path.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path candidate : (Iterable<Path>) files::iterator) {
+                if (candidate.equals(path.toAbsolutePath()) || !Files.isRegularFile(candidate)) {
+                    continue;
+                }
+                if (!CompressedFiles.isCompressed(candidate)) {
+                    if (FileFingerprints.hasIdentity(candidate, identity)) {
+                        return path.isAbsolute() ? candidate : path.resolveSibling(candidate.getFileName());
+                    }
+                    //an empty fingerprint matches any file
+                    if (identity.getFingerprintLength() > 0 && Files.size(candidate) >= position.getByteOffset()
+                            && FileFingerprints.hasIdentity(candidate, contentIdentity)) {
+                        FileTime modificationTime = Files.getLastModifiedTime(candidate);
+                        if (copyTime == null || modificationTime.compareTo(copyTime) > 0) {
+                            copiedPath = path.isAbsolute() ? candidate : path.resolveSibling(candidate.getFileName());
+                            copyTime = modificationTime;
+                        }
+                    }
+                } else if (compressedPath == null && FileFingerprints.hasIdentity(candidate, contentIdentity)) {
+                    compressedPath = path.isAbsolute() ? candidate : path.resolveSibling(candidate.getFileName());
+                }
+            }
+        }
+        return copiedPath != null ? copiedPath : compressedPath;
+    }
+
+    //files named after the live file, e.g. Throughput.log.1 or Throughput.log.2.gz, modified after the rotation time
+    private List<Path> findLaterRotatedFiles(Path path, FileTime rotationTime) throws IOException {
+        String fileName = path.getFileName().toString();
+        Map<Path, FileTime> laterRotatedFiles = new HashMap<>();
+        try (Stream<Path> files = Files.list(path.toAbsolutePath().getParent())) {
+            for (Path candidate : (Iterable<Path>) files::iterator) {
+                String candidateName = candidate.getFileName().toString();
+                if (candidateName.length() > fileName.length() && candidateName.startsWith(fileName) && Files.isRegularFile(candidate)) {
+                    FileTime modificationTime = Files.getLastModifiedTime(candidate);
+                    if (modificationTime.compareTo(rotationTime) > 0) {
+                        laterRotatedFiles.put(path.isAbsolute() ? candidate : path.resolveSibling(candidate.getFileName()), modificationTime);
+                    }
+                }
+            }
+        }
+        return laterRotatedFiles.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private boolean hasIdentity(Path path, FilePosition position) throws IOException {
+        return position != null && position.getIdentity() != null && FileFingerprints.hasIdentity(path, position.getIdentity());
+    }
+
+    private FilePosition resolveByteOffset(Path path, FilePosition position) throws IOException {
+        if (position.getByteOffset() != FilePosition.UNKNOWN_BYTE_OFFSET) {
+            return position;
+        }
+        //legacy index stores the last line sent, reading continues with the next one
+        int lineNumber = position.getLineNumber() + 1;
+        long byteOffset = findLineOffset(path, lineNumber);
+        log.info("Index without byte offset, line {} of {} starts at byte {}", lineNumber, path.getFileName().toString(), byteOffset);
+        return new FilePosition(lineNumber, byteOffset);
+    }
+
+    //one-time scan for index files written before byte offsets were stored
+    private long findLineOffset(Path path, int lineNumber) throws IOException {
+        long offset = 0;
+        int line = 1;
+        try (InputStream in = CompressedFiles.newInputStream(path)) {
+            int b;
+            while (line < lineNumber && (b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    line++;
+                }
+            }
+        }
+        return offset;
+    }
+}
@@ -1,16 +1,19 @@
 package sensor.service.chooser;
 
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.FileIndexProperties;
+import sensor.common.CheckpointStore;
 import sensor.common.MetricProperties;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 public class CeTrafficFileChooser extends AbstractFileChooser {
@@ -18,18 +21,23 @@ public class CeTrafficFileChooser extends AbstractFileChooser {
     private final MetricProperties metricProperties;
     private final Predicate<Path> fileNamePredicate;
 
-    public CeTrafficFileChooser(MetricProperties metricProperties, FileIndexProperties fileIndexProperties) {
-        super(fileIndexProperties);
+    public CeTrafficFileChooser(MetricProperties metricProperties, CheckpointStore checkpointStore) {
+        super(checkpointStore);
         this.metricProperties = metricProperties;
-        this.fileNamePredicate = path -> path.getFileName().toString().equalsIgnoreCase(metricProperties.getCollectorFilePattern());
+        //pattern is a file name or a glob, e.g. *.log
+        PathMatcher fileNameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + metricProperties.getCollectorFilePattern());
+        this.fileNamePredicate = path -> path.getFileName().toString().equalsIgnoreCase(metricProperties.getCollectorFilePattern())
+                || fileNameMatcher.matches(path.getFileName());
     }
 
     @Override
     protected List<Path> getFilesToAnalise() throws IOException {
-        return Files
-                .list(Paths.get(metricProperties.getCollectorFileDir()))
-                .filter(fileNamePredicate)
-                .sorted()
-                .collect(Collectors.toList());
+        try (Stream<Path> files = Files.list(Paths.get(metricProperties.getCollectorFileDir()))) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(fileNamePredicate)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
     }
 }
@@ -0,0 +1,68 @@
+package sensor.service.chooser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gzip compressed logs left by log rotation. They are read as a stream of uncompressed bytes, so positions
+ * in a compressed file are offsets in its uncompressed content.
+ */
+public final class CompressedFiles {
+
+    public static final String GZIP_EXTENSION = ".gz";
+    //offset stored for a file read to its end whose gzip trailer does not tell so, e.g. a truncated or corrupted
+    //file or one of several gzip members
+    public static final long FINISHED_OFFSET = Long.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private CompressedFiles() {
+    }
+
+    public static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(GZIP_EXTENSION);
+    }
+
+    //uncompressed content of the file
+    public static InputStream newInputStream(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (!isCompressed(path)) {
+            return new BufferedInputStream(in, BUFFER_SIZE);
+        }
+        try {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    //compares the offset with the uncompressed size (modulo 2^32) kept in the gzip trailer, so a file read
+    //completely is recognised without decompressing it again
+    public static boolean isFullyRead(Path path, long byteOffset) throws IOException {
+        if (byteOffset == FINISHED_OFFSET) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < GZIP_TRAILER_SIZE) {
+                return false;
+            }
+            ByteBuffer uncompressedSize = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (uncompressedSize.hasRemaining()
+                    && channel.read(uncompressedSize, size - Integer.BYTES + uncompressedSize.position()) > 0) {
+                //read until the buffer is full
+            }
+            return (uncompressedSize.getInt(0) & 0xffffffffL) == (byteOffset & 0xffffffffL);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package sensor.service.chooser;
 
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.FileIndexProperties;
+import sensor.common.CheckpointStore;
 import sensor.common.MetricProperties;
 
 import java.nio.file.Path;
@@ -14,15 +14,15 @@ public class FcrFileChooser extends AbstractFileChooser {
 
     private final MetricProperties metricProperties;
 
-    public FcrFileChooser(FileIndexProperties fileIndexProperties, MetricProperties metricProperties) {
-        super(fileIndexProperties);
+    public FcrFileChooser(CheckpointStore checkpointStore, MetricProperties metricProperties) {
+        super(checkpointStore);
         this.metricProperties = metricProperties;
     }
 
     @Override
     protected List<Path> getFilesToAnalise() {
         String pathInString = metricProperties.getCollectorFileDir() + metricProperties.getCollectorFilePattern();
-        log.info("Path to Fcr file with logs: {}", pathInString);
+        log.debug("Path to Fcr file with logs: {}", pathInString);
         Path path = Paths.get(pathInString);
         return Collections.singletonList(path);
     }
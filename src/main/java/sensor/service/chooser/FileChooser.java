@@ -1,12 +1,19 @@
 package sensor.service.chooser;
 
+import sensor.common.pojo.FilePosition;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map;
 
 public interface FileChooser {
 
-    Map<Path, Integer> findFilesToAnalise() throws IOException ;
+    Map<Path, FilePosition> findFilesToAnalise() throws IOException ;
+
+    void updateFileIndex(String filePath, FilePosition position) throws IOException;
 
-    void updateFileIndex(String filePath, Integer line) throws IOException;
+    //file a rotated file was rotated from, files of the same source are read one after another
+    default Path getSourceFile(Path filePath) {
+        return filePath;
+    }
 }
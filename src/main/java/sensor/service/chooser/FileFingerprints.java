@@ -0,0 +1,107 @@
+package sensor.service.chooser;
+
+import sensor.common.pojo.FileIdentity;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Identifies a file by its file key and a hash of its first bytes, so it can be recognised after it is
+ * renamed by log rotation and a file truncated in place can be told from the one that was read before.
+ * The hash of a compressed file is computed over its uncompressed content.
+ */
+public final class FileFingerprints {
+
+    public static final int FINGERPRINT_SIZE = 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private FileFingerprints() {
+    }
+
+    public static FileIdentity identify(Path path, FileChannel channel) throws IOException {
+        int fingerprintLength = (int) Math.min(FINGERPRINT_SIZE, channel.size());
+        return new FileIdentity(fileKey(path), fingerprintLength, fingerprint(channel, fingerprintLength));
+    }
+
+    public static FileIdentity identifyCompressed(Path path) throws IOException {
+        byte[] content = readCompressed(path, FINGERPRINT_SIZE);
+        return new FileIdentity(fileKey(path), content.length, fingerprint(ByteBuffer.wrap(content), content.length));
+    }
+
+    //identity without a file key matches any file with the same content
+    public static boolean hasIdentity(Path path, FileIdentity identity) throws IOException {
+        String fileKey = fileKey(path);
+        if (fileKey != null && identity.getFileKey() != null && !fileKey.equals(identity.getFileKey())) {
+            return false;
+        }
+        if (CompressedFiles.isCompressed(path)) {
+            byte[] content = readCompressed(path, identity.getFingerprintLength());
+            return content.length == identity.getFingerprintLength()
+                    && fingerprint(ByteBuffer.wrap(content), content.length) == identity.getFingerprint();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size() >= identity.getFingerprintLength()
+                    && fingerprint(channel, identity.getFingerprintLength()) == identity.getFingerprint();
+        }
+    }
+
+    public static boolean isSameFile(FileIdentity identity, FileIdentity otherIdentity) {
+        if (identity == null || otherIdentity == null) {
+            return false;
+        }
+        boolean sameFingerprint = identity.getFingerprintLength() != otherIdentity.getFingerprintLength()
+                || identity.getFingerprint() == otherIdentity.getFingerprint();
+        if (identity.getFileKey() != null && otherIdentity.getFileKey() != null) {
+            return identity.getFileKey().equals(otherIdentity.getFileKey()) && sameFingerprint;
+        }
+        return identity.getFingerprintLength() == otherIdentity.getFingerprintLength() && sameFingerprint;
+    }
+
+    public static String fileKey(Path path) throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return fileKey != null ? fileKey.toString() : null;
+    }
+
+    //FNV-1a of the first length bytes
+    private static long fingerprint(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            //read until the buffer is full
+        }
+        return fingerprint(buffer, buffer.position());
+    }
+
+    private static long fingerprint(ByteBuffer buffer, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.get(i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    //up to length uncompressed bytes, fewer when the file is shorter or was not written completely
+    private static byte[] readCompressed(Path path, int length) throws IOException {
+        byte[] content = new byte[length];
+        int read = 0;
+        try (InputStream in = CompressedFiles.newInputStream(path)) {
+            int count;
+            while (read < length && (count = in.read(content, read, length - read)) > 0) {
+                read += count;
+            }
+        } catch (EOFException e) {
+            //content read so far is used
+        }
+        return read == length ? content : Arrays.copyOf(content, read);
+    }
+}
@@ -6,7 +6,7 @@ import java.util.Collections;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.FileIndexProperties;
+import sensor.common.CheckpointStore;
 import sensor.common.MetricProperties;
 
 @Slf4j
@@ -14,15 +14,15 @@ public class ThroughputFileChooser extends AbstractFileChooser {
 
     private final MetricProperties metricProperties;
 
-    public ThroughputFileChooser(FileIndexProperties fileIndexProperties, MetricProperties metricProperties) {
-        super(fileIndexProperties);
+    public ThroughputFileChooser(CheckpointStore checkpointStore, MetricProperties metricProperties) {
+        super(checkpointStore);
         this.metricProperties = metricProperties;
     }
 
     @Override
     protected List<Path> getFilesToAnalise() {
         String pathInString = metricProperties.getCollectorFileDir() + metricProperties.getCollectorFilePattern();
-        log.info("Path to Throughput file with logs: {}", pathInString);
+        log.debug("Path to Throughput file with logs: {}", pathInString);
         Path path = Paths.get(pathInString);
         return Collections.singletonList(path);
     }
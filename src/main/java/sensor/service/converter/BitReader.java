@@ -0,0 +1,41 @@
+package sensor.service.converter;
+
+//reads bits written by BitWriter
+class BitReader {
+
+    private final byte[] bytes;
+    private long bitPosition;
+
+    BitReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    long readBits(int bits) {
+        if (bitPosition + bits > 8L * bytes.length) {
+            throw new IllegalArgumentException("Metric batch is truncated at bit " + bitPosition);
+        }
+        long value = 0;
+        for (int remaining = bits; remaining > 0; ) {
+            int index = (int) (bitPosition >>> 3);
+            int available = 8 - (int) (bitPosition & 7);
+            int chunk = Math.min(available, remaining);
+            int chunkBits = ((bytes[index] & 0xff) >>> (available - chunk)) & ((1 << chunk) - 1);
+            value = (value << chunk) | chunkBits;
+            remaining -= chunk;
+            bitPosition += chunk;
+        }
+        return value;
+    }
+
+    byte[] readBytes(int length) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) readBits(8);
+        }
+        return value;
+    }
+}
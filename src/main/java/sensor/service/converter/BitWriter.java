@@ -0,0 +1,52 @@
+package sensor.service.converter;
+
+import java.util.Arrays;
+
+//bits appended from the most significant bit of every byte
+class BitWriter {
+
+    private byte[] bytes;
+    private int size;
+    //bits not written to bytes yet, fewer than 8 between writes
+    private long pending;
+    private int pendingBits;
+
+    BitWriter(int initialSize) {
+        this.bytes = new byte[Math.max(initialSize, 16)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    //lowest bits of the value, from the highest of them
+    void writeBits(long value, int bits) {
+        if (bits > Integer.SIZE) {
+            writeBits(value >>> Integer.SIZE, bits - Integer.SIZE);
+            bits = Integer.SIZE;
+        }
+        pending = (pending << bits) | (value & ((1L << bits) - 1));
+        pendingBits += bits;
+        if (size + 8 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        }
+        while (pendingBits >= 8) {
+            pendingBits -= 8;
+            bytes[size++] = (byte) (pending >>> pendingBits);
+        }
+    }
+
+    void writeBytes(byte[] value) {
+        for (byte b : value) {
+            writeBits(b, 8);
+        }
+    }
+
+    byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(bytes, pendingBits > 0 ? size + 1 : size);
+        if (pendingBits > 0) {
+            result[size] = (byte) (pending << (8 - pendingBits));
+        }
+        return result;
+    }
+}
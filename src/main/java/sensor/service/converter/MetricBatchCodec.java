@@ -0,0 +1,181 @@
+package sensor.service.converter;
+
+import sensor.common.pojo.MetricPOJO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of a batch of points of one series - metric name and tags - sent as one message. As in
+ * Gorilla, timestamps are stored as deltas of deltas and values as XOR with the previous value, so regular
+ * timestamps and slowly changing values take a few bits per point. Layout: magic, name, tags, number of points,
+ * first timestamp and value in 64 bits, then for every next point:
+ * <ul>
+ * <li>delta of delta of timestamp: '0' for 0, '10', '110' or '1110' and 7, 9 or 12 bits, else '1111' and 64 bits</li>
+ * <li>value XOR previous value: '0' for the same value, '10' and the bits within the leading and trailing zeros
+ * of the previous XOR, else '11', 5 bits of leading zeros, 6 bits of the length - 1 and the bits</li>
+ * </ul>
+ * Encoded values are decoded to exactly the same doubles.
+ */
+public final class MetricBatchCodec {
+
+    //"SMB1"
+    public static final int MAGIC = 0x534d4231;
+
+    private static final int[] DELTA_BITS = {7, 9, 12};
+    private static final int MAX_LEADING_ZEROS = 31;
+
+    private MetricBatchCodec() {
+    }
+
+    //points have to be of the same metric name and tags as the first one
+    public static byte[] encode(List<MetricPOJO> points) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Batch of metrics is empty");
+        }
+        MetricPOJO first = points.get(0);
+        BitWriter out = new BitWriter(64 + 2 * points.size());
+        out.writeBits(MAGIC, Integer.SIZE);
+        writeString(out, first.getMetricName());
+        out.writeBits(first.getTags().size(), Short.SIZE);
+        for (Map.Entry<String, String> tag : first.getTags().entrySet()) {
+            writeString(out, tag.getKey());
+            writeString(out, tag.getValue());
+        }
+        out.writeBits(points.size(), Integer.SIZE);
+
+        long timestamp = first.getTimestamp();
+        long value = Double.doubleToRawLongBits(first.getMetricValue());
+        out.writeBits(timestamp, Long.SIZE);
+        out.writeBits(value, Long.SIZE);
+
+        long delta = 0;
+        int leadingZeros = -1;
+        int trailingZeros = 0;
+        for (int i = 1; i < points.size(); i++) {
+            MetricPOJO point = points.get(i);
+            if (!first.getMetricName().equals(point.getMetricName()) || !first.getTags().equals(point.getTags())) {
+                throw new IllegalArgumentException("Batch mixes metric " + first.getMetricName() + " with " + point.getMetricName());
+            }
+
+            long nextDelta = point.getTimestamp() - timestamp;
+            writeDeltaOfDelta(out, nextDelta - delta);
+            delta = nextDelta;
+            timestamp = point.getTimestamp();
+
+            long nextValue = Double.doubleToRawLongBits(point.getMetricValue());
+            long xor = nextValue ^ value;
+            value = nextValue;
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+            out.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING_ZEROS);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leadingZeros >= 0 && leading >= leadingZeros && trailing >= trailingZeros) {
+                out.writeBit(false);
+                out.writeBits(xor >>> trailingZeros, Long.SIZE - leadingZeros - trailingZeros);
+            } else {
+                int length = Long.SIZE - leading - trailing;
+                out.writeBit(true);
+                out.writeBits(leading, 5);
+                out.writeBits(length - 1, 6);
+                out.writeBits(xor >>> trailing, length);
+                leadingZeros = leading;
+                trailingZeros = trailing;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static List<MetricPOJO> decode(byte[] message) {
+        BitReader in = new BitReader(message);
+        if ((int) in.readBits(Integer.SIZE) != MAGIC) {
+            throw new IllegalArgumentException("Message is not an encoded batch of metrics");
+        }
+        String metricName = readString(in);
+        int tagsCount = (int) in.readBits(Short.SIZE);
+        Map<String, String> tags = Collections.emptyMap();
+        if (tagsCount > 0) {
+            tags = new LinkedHashMap<>();
+            for (int i = 0; i < tagsCount; i++) {
+                tags.put(readString(in), readString(in));
+            }
+            tags = Collections.unmodifiableMap(tags);
+        }
+        int count = (int) in.readBits(Integer.SIZE);
+
+        List<MetricPOJO> points = new ArrayList<>(count);
+        long timestamp = in.readBits(Long.SIZE);
+        long value = in.readBits(Long.SIZE);
+        points.add(new MetricPOJO(metricName, Double.longBitsToDouble(value), timestamp, tags));
+
+        long delta = 0;
+        int leadingZeros = 0;
+        int trailingZeros = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(in);
+            timestamp += delta;
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leadingZeros = (int) in.readBits(5);
+                    int length = (int) in.readBits(6) + 1;
+                    trailingZeros = Long.SIZE - leadingZeros - length;
+                }
+                value ^= in.readBits(Long.SIZE - leadingZeros - trailingZeros) << trailingZeros;
+            }
+            points.add(new MetricPOJO(metricName, Double.longBitsToDouble(value), timestamp, tags));
+        }
+        return points;
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            out.writeBit(false);
+            return;
+        }
+        for (int bits : DELTA_BITS) {
+            out.writeBit(true);
+            long limit = 1L << (bits - 1);
+            if (deltaOfDelta >= -limit && deltaOfDelta < limit) {
+                out.writeBit(false);
+                out.writeBits(deltaOfDelta, bits);
+                return;
+            }
+        }
+        out.writeBit(true);
+        out.writeBits(deltaOfDelta, Long.SIZE);
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        for (int bits : DELTA_BITS) {
+            if (!in.readBit()) {
+                //sign extended
+                return in.readBits(bits) << (Long.SIZE - bits) >> (Long.SIZE - bits);
+            }
+        }
+        return in.readBits(Long.SIZE);
+    }
+
+    private static void writeString(BitWriter out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("Value longer than 65535 bytes: " + value.substring(0, 100));
+        }
+        out.writeBits(bytes.length, Short.SIZE);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(BitReader in) {
+        int length = (int) in.readBits(Short.SIZE);
+        return new String(in.readBytes(length), StandardCharsets.UTF_8);
+    }
+}
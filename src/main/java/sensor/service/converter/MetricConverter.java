@@ -6,5 +6,9 @@ public interface MetricConverter {
 
     String convert(MetricPOJO metricPOJO);
 
-}
+    //appends the message to the builder, senders writing characters can reuse the builder for every metric
+    default void convert(MetricPOJO metricPOJO, StringBuilder message) {
+        message.append(convert(metricPOJO));
+    }
 
+}
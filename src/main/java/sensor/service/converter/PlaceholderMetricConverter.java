@@ -1,28 +1,187 @@
 package sensor.service.converter;
 
-import lombok.AllArgsConstructor;
-import org.apache.commons.text.StrSubstitutor;
 import sensor.common.pojo.MetricPOJO;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-@AllArgsConstructor
+/**
+ * Renders metrics by a pattern with placeholders like {@code ${metric.name} ${metric.value} ${metric.timestamp}}.
+ * The pattern is compiled once into literal and placeholder parts which are appended to a builder for every
+ * metric, numbers are appended without creating strings. Placeholders:
+ * <ul>
+ * <li>{@code metric.name}, {@code metric.value}, {@code metric.timestamp}</li>
+ * <li>{@code metric.tags} - all tags as name=value separated by spaces</li>
+ * <li>{@code metric.tag.<name>} - value of a single tag, the placeholder is kept when the metric has no such tag</li>
+ * </ul>
+ * Unknown placeholders are kept as they are and {@code $${...}} is written as {@code ${...}}.
+ */
 public class PlaceholderMetricConverter implements MetricConverter {
 
-    private String pattern;
+    private static final String PLACEHOLDER_START = "${";
+    private static final String PLACEHOLDER_END = "}";
+    private static final char ESCAPE = '$';
+    private static final String TAG_PREFIX = "metric.tag.";
+
+    private static final int LITERAL = 0;
+    private static final int NAME = 1;
+    private static final int VALUE = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int TAGS = 4;
+    private static final int TAG = 5;
+
+    //largest value scaled by decimal places which is written without falling back to Double.toString
+    private static final double MAX_SCALED_VALUE = 1e18;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+    private final String pattern;
+    //-1 when values are written as by Double.toString
+    private final int decimalPlaces;
+
+    //parts of the pattern, text is the literal or the tag name
+    private final int[] kinds;
+    private final String[] texts;
+
+    private final ThreadLocal<StringBuilder> messages = ThreadLocal.withInitial(StringBuilder::new);
+
+    public PlaceholderMetricConverter(String pattern) {
+        this(pattern, -1);
+    }
+
+    public PlaceholderMetricConverter(String pattern, int decimalPlaces) {
+        if (decimalPlaces >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Decimal places must be lower than " + POWERS_OF_TEN.length + ": " + decimalPlaces);
+        }
+        this.pattern = pattern;
+        this.decimalPlaces = decimalPlaces;
+
+        List<Integer> partKinds = new ArrayList<>();
+        List<String> partTexts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int position = 0;
+        while (position < pattern.length()) {
+            int start = pattern.indexOf(PLACEHOLDER_START, position);
+            int end = start < 0 ? -1 : pattern.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                literal.append(pattern, position, pattern.length());
+                break;
+            }
+            if (start > position && pattern.charAt(start - 1) == ESCAPE) {
+                literal.append(pattern, position, start - 1).append(PLACEHOLDER_START);
+                position = start + PLACEHOLDER_START.length();
+                continue;
+            }
+            literal.append(pattern, position, start);
+            position = end + PLACEHOLDER_END.length();
+
+            int kind = placeholderKind(pattern.substring(start + PLACEHOLDER_START.length(), end));
+            if (kind == LITERAL) {
+                literal.append(pattern, start, position);
+                continue;
+            }
+            if (literal.length() > 0) {
+                partKinds.add(LITERAL);
+                partTexts.add(literal.toString());
+                literal.setLength(0);
+            }
+            partKinds.add(kind);
+            partTexts.add(kind == TAG ? pattern.substring(start + PLACEHOLDER_START.length() + TAG_PREFIX.length(), end) : null);
+        }
+        if (literal.length() > 0) {
+            partKinds.add(LITERAL);
+            partTexts.add(literal.toString());
+        }
+        this.kinds = partKinds.stream().mapToInt(Integer::intValue).toArray();
+        this.texts = partTexts.toArray(new String[0]);
+    }
 
     @Override
     public String convert(MetricPOJO metricPOJO) {
-        return StrSubstitutor.replace(pattern, getAsMap(metricPOJO));
+        StringBuilder message = messages.get();
+        message.setLength(0);
+        convert(metricPOJO, message);
+        return message.toString();
     }
 
-    private Map<String, String> getAsMap(MetricPOJO metricPOJO) {
-        Map<String, String> result = new HashMap<>();
-        result.put("metric.name", metricPOJO.getMetricName());
-        result.put("metric.value", Double.toString(metricPOJO.getMetricValue()));
-        result.put("metric.timestamp", Long.toString(metricPOJO.getTimestamp()));
-        return result;
+    @Override
+    public void convert(MetricPOJO metricPOJO, StringBuilder message) {
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    message.append(texts[i]);
+                    break;
+                case NAME:
+                    message.append(metricPOJO.getMetricName());
+                    break;
+                case VALUE:
+                    appendValue(message, metricPOJO.getMetricValue());
+                    break;
+                case TIMESTAMP:
+                    message.append(metricPOJO.getTimestamp());
+                    break;
+                case TAGS:
+                    appendTags(message, metricPOJO.getTags());
+                    break;
+                case TAG:
+                    String value = metricPOJO.getTags().get(texts[i]);
+                    if (value != null) {
+                        message.append(value);
+                    } else {
+                        message.append(PLACEHOLDER_START).append(TAG_PREFIX).append(texts[i]).append(PLACEHOLDER_END);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown part of pattern " + pattern);
+            }
+        }
+    }
+
+    private int placeholderKind(String placeholder) {
+        switch (placeholder) {
+            case "metric.name":
+                return NAME;
+            case "metric.value":
+                return VALUE;
+            case "metric.timestamp":
+                return TIMESTAMP;
+            case "metric.tags":
+                return TAGS;
+            default:
+                return placeholder.startsWith(TAG_PREFIX) && placeholder.length() > TAG_PREFIX.length() ? TAG : LITERAL;
+        }
     }
-}
 
+    //rounded half away from zero to the decimal places, as Double.toString when not set or the value is too large
+    private void appendValue(StringBuilder message, double value) {
+        long scale = decimalPlaces < 0 ? 0 : POWERS_OF_TEN[decimalPlaces];
+        if (scale == 0 || !(Math.abs(value) * scale < MAX_SCALED_VALUE)) {
+            message.append(value);
+            return;
+        }
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            message.append('-');
+        }
+        message.append(scaled / scale);
+        if (decimalPlaces > 0) {
+            message.append('.');
+            long fraction = scaled % scale;
+            for (long power = scale / 10; power > fraction && power > 1; power /= 10) {
+                message.append('0');
+            }
+            message.append(fraction);
+        }
+    }
+
+    private void appendTags(StringBuilder message, Map<String, String> tags) {
+        boolean first = true;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!first) {
+                message.append(' ');
+            }
+            message.append(tag.getKey()).append('=').append(tag.getValue());
+            first = false;
+        }
+    }
+}
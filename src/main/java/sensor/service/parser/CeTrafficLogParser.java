@@ -2,49 +2,86 @@ package sensor.service.parser;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.pojo.MetricPOJO;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Parser of {@code <metric name> <value> <timestamp>} lines. The line is scanned backwards for the timestamp
+ * and forwards for the end of the name, which gives the same result as the former regular expression
+ * {@code ^((?<metricName>.+?) (?<value>.+?) (?<timestamp>\d{10}))$}: the name ends at the first space after its
+ * first character, the value is everything up to the space before the timestamp. Besides 10 digit timestamps in
+ * seconds 13 digit timestamps in milliseconds are accepted.
+ */
 @Slf4j
 @AllArgsConstructor
-public class CeTrafficLogParser implements LogParser {
+public class CeTrafficLogParser implements StreamingLogParser {
 
-    private final static String LOGS_LINE_REGEX =  "^((?<metricName>.+?) (?<value>.+?) (?<timestamp>\\d{10}))$";
-    private final static String BLANK_LINE_REGEX = "^\\s*$";
+    private static final int SECONDS_TIMESTAMP_DIGITS = 10;
+    private static final int MILLISECONDS_TIMESTAMP_DIGITS = 13;
 
-    private final static Pattern LOGS_LINE_PATTERN = Pattern.compile(LOGS_LINE_REGEX);
-    private final static Pattern BLANK_LINE_PATTERN = Pattern.compile(BLANK_LINE_REGEX);
+    //metric name view reused by every thread reading lines
+    private final static ThreadLocal<SubSequence> METRIC_NAME = ThreadLocal.withInitial(SubSequence::new);
 
+    private final TimeUnit metricTimestampUnit;
 
     @Override
-    public MetricPOJO parseLineToPOJO(String line) {
-        log.debug("line: {}", line);
-
-        if (line == null || BLANK_LINE_PATTERN.matcher(line).find()){
+    public void parseLine(CharSequence line, MetricSink metricSink) throws Exception {
+        if (line == null || CharSequences.isBlank(line)){
             log.info("line is blank");
-            return null;
+            return;
+        }
+
+        int end = line.length();
+        if (isLineSeparator(line, end - 1)) {
+            end--;
+        }
+
+        int timestampStart = end;
+        while (timestampStart > 0 && line.charAt(timestampStart - 1) >= '0' && line.charAt(timestampStart - 1) <= '9') {
+            timestampStart--;
+        }
+        int timestampDigits = end - timestampStart;
+        if ((timestampDigits != SECONDS_TIMESTAMP_DIGITS && timestampDigits != MILLISECONDS_TIMESTAMP_DIGITS)
+                || timestampStart == 0 || line.charAt(timestampStart - 1) != ' ') {
+            return;
         }
 
-        Matcher logsLineMatcher =  LOGS_LINE_PATTERN.matcher(line);
-        if(logsLineMatcher.find()){
-            String metricName = logsLineMatcher.group("metricName");
-            String value = logsLineMatcher.group("value");
-            String timestamp = logsLineMatcher.group("timestamp");
+        //name and value are not empty
+        int valueEnd = timestampStart - 1;
+        int nameEnd = CharSequences.indexOf(line, ' ', 1, valueEnd - 1);
+        if (nameEnd < 0 || containsLineSeparator(line, valueEnd)) {
+            return;
+        }
+
+        double value;
+        try {
+            value = CharSequences.parseDouble(line, nameEnd + 1, valueEnd);
+        }catch(Exception ex){
+            log.error(ex.getMessage());
+            log.info("Line without time request information - error by parsing time");
+            return;
+        }
+        long timestamp = CharSequences.parseLong(line, timestampStart, end);
+        timestamp = timestampDigits == SECONDS_TIMESTAMP_DIGITS
+                ? metricTimestampUnit.convert(timestamp, TimeUnit.SECONDS)
+                : metricTimestampUnit.convert(timestamp, TimeUnit.MILLISECONDS);
 
-            log.debug("name: {}, value: {}, timestamp: {}", metricName, value, timestamp);
+        metricSink.accept(METRIC_NAME.get().wrap(line, 0, nameEnd), value, timestamp);
+    }
 
-            try {
-                return new MetricPOJO(metricName, Double.parseDouble(value), Long.valueOf(timestamp));
-            }catch(Exception ex){
-                log.error(ex.getMessage());
-                log.info("Line without time request information - error by parsing time");
-                return null;
+    private static boolean containsLineSeparator(CharSequence line, int end) {
+        for (int i = 0; i < end; i++) {
+            if (isLineSeparator(line, i)) {
+                return true;
             }
         }
-        return null;
+        return false;
     }
 
+    //characters the regex dot does not match, NEL after a non-ASCII character is a byte of an UTF-8 sequence in a line read as bytes
+    private static boolean isLineSeparator(CharSequence line, int index) {
+        char c = line.charAt(index);
+        return c == '\r' || c == '\u2028' || c == '\u2029'
+                || (c == '\u0085' && (index == 0 || line.charAt(index - 1) < 0x80));
+    }
 }
-
@@ -0,0 +1,162 @@
+package sensor.service.parser;
+
+/**
+ * Parsing of line parts in place. Numbers in the common plain decimal form are computed directly from the
+ * characters, anything else is handed to {@link Long#parseLong(String)} or {@link Double#parseDouble(String)},
+ * so the results and errors are the same as with the JDK methods.
+ */
+public final class CharSequences {
+
+    //up to 15 digits and a power of ten up to 10^22 are exact doubles, so a single multiplication
+    //or division of them is correctly rounded
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_EXACT_POWER = 22;
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CharSequences() {
+    }
+
+    //same as matching ^\s*$
+    public static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //start of the range without leading characters String.trim() removes
+    public static int trimStart(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    //end of the range without trailing characters String.trim() removes
+    public static int trimEnd(CharSequence s, int from, int to) {
+        while (to > from && s.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    public static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean contentEquals(CharSequence s, int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) != expected.charAt(i - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static long parseLong(CharSequence s, int from, int to) {
+        int i = from;
+        boolean negative = i < to && s.charAt(i) == '-';
+        if (i < to && (negative || s.charAt(i) == '+')) {
+            i++;
+        }
+        if (i == to || to - i > MAX_LONG_DIGITS) {
+            return Long.parseLong(s.subSequence(from, to).toString());
+        }
+
+        long value = 0;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.parseLong(s.subSequence(from, to).toString());
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    public static double parseDouble(CharSequence s, int from, int to) {
+        int i = from;
+        boolean negative = i < to && s.charAt(i) == '-';
+        if (i < to && (negative || s.charAt(i) == '+')) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                }
+                if (fraction) {
+                    exponent--;
+                }
+                if (digits > MAX_EXACT_DIGITS) {
+                    return parseDoubleSlow(s, from, to);
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < to && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < to && s.charAt(i) == '-';
+            if (i < to && (negativeExponent || s.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            int exponentValue = 0;
+            for (; i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                exponentValue = Math.min(exponentValue * 10 + (s.charAt(i) - '0'), 10_000);
+            }
+            if (i == exponentStart) {
+                return parseDoubleSlow(s, from, to);
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+
+        if (!anyDigit || i < to) {
+            return parseDoubleSlow(s, from, to);
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (exponent < -MAX_EXACT_POWER || exponent > MAX_EXACT_POWER) {
+            return parseDoubleSlow(s, from, to);
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(CharSequence s, int from, int to) {
+        return Double.parseDouble(s.subSequence(from, to).toString());
+    }
+}
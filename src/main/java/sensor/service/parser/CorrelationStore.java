@@ -0,0 +1,259 @@
+package sensor.service.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Open start events waiting for their end event, kept as primitive long keys and timestamps in arrays sized
+ * once for the capacity. An entry is matched by its key and a check, two independent hashes of the event, so
+ * an end event is not paired with another start when only one of the hashes collides. Entries are ordered
+ * from the least recently started, the oldest one is dropped when the store is full and entries older than
+ * the time to live are dropped as time advances. Dropped entries and end events without a start are counted
+ * as orphans.
+ */
+public class CorrelationStore {
+
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    //"SCS2", snapshots "SCS1" had no checks
+    private static final int SNAPSHOT_MAGIC = 0x53435332;
+    private static final int LEGACY_SNAPSHOT_MAGIC = 0x53435331;
+    //check of entries read from "SCS1" snapshots, they are matched by the key only
+    private static final long KEY_ONLY = 0;
+    private static final int NONE = -1;
+    private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private final int capacity;
+    //0 when entries do not expire
+    private final long timeToLive;
+
+    //entries
+    private final long[] keys;
+    private final long[] checks;
+    private final long[] timestamps;
+    private final int[] previous;
+    private final int[] next;
+    //open addressing index of entries, entry index + 1 or 0 for an empty slot
+    private final int[] table;
+    private final int mask;
+    private final int shift;
+
+    private int oldest = NONE;
+    private int newest = NONE;
+    private int freeEntry;
+    private int size;
+
+    private long expiredCount;
+    private long evictedCount;
+    private long unmatchedCount;
+
+    public CorrelationStore(int capacity, long timeToLive) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.keys = new long[capacity];
+        this.checks = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(tableSize);
+
+        //free entries are linked by next
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        this.freeEntry = 0;
+    }
+
+    //start event, a repeated start replaces the timestamp
+    public void put(long key, long check, long timestamp) {
+        int slot = findSlot(key, check);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            checks[entry] = check;
+            timestamps[entry] = timestamp;
+            unlink(entry);
+            linkNewest(entry);
+            return;
+        }
+        if (size == capacity) {
+            removeEntry(oldest);
+            evictedCount++;
+            slot = findSlot(key, check);
+        }
+
+        int entry = freeEntry;
+        freeEntry = next[entry];
+        keys[entry] = key;
+        checks[entry] = check;
+        timestamps[entry] = timestamp;
+        table[-slot - 1] = entry + 1;
+        linkNewest(entry);
+        size++;
+    }
+
+    //end event, returns the timestamp of the start or NOT_FOUND
+    public long remove(long key, long check) {
+        int slot = findSlot(key, check);
+        if (slot < 0) {
+            unmatchedCount++;
+            return NOT_FOUND;
+        }
+        int entry = table[slot] - 1;
+        long timestamp = timestamps[entry];
+        removeEntry(entry);
+        return timestamp;
+    }
+
+    //drops entries started more than the time to live before the given time
+    public void expire(long timestamp) {
+        if (timeToLive <= 0) {
+            return;
+        }
+        while (oldest != NONE && timestamps[oldest] < timestamp - timeToLive) {
+            removeEntry(oldest);
+            expiredCount++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public long getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+    public long getOrphanCount() {
+        return expiredCount + evictedCount + unmatchedCount;
+    }
+
+    //entries from the oldest, written to a temporary file which replaces the snapshot
+    public void writeSnapshot(Path path) throws IOException {
+        Path temporaryPath = Paths.get(path.toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(size);
+            for (int entry = oldest; entry != NONE; entry = next[entry]) {
+                out.writeLong(keys[entry]);
+                out.writeLong(checks[entry]);
+                out.writeLong(timestamps[entry]);
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //returns number of entries read, the oldest ones are dropped when the snapshot has more than the capacity
+    public int readSnapshot(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != LEGACY_SNAPSHOT_MAGIC) {
+                throw new IOException("File " + path + " is not a correlation snapshot");
+            }
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                long key = in.readLong();
+                long check = magic == SNAPSHOT_MAGIC ? in.readLong() : KEY_ONLY;
+                put(key, check, in.readLong());
+            }
+            evictedCount = 0;
+            return entries;
+        }
+    }
+
+    private int hash(long key) {
+        return (int) ((key * HASH_MULTIPLIER) >>> shift);
+    }
+
+    //slot of the key and check or -(empty slot for the key) - 1
+    private int findSlot(long key, long check) {
+        int slot = hash(key);
+        while (table[slot] != 0) {
+            int entry = table[slot] - 1;
+            if (keys[entry] == key && (checks[entry] == check || checks[entry] == KEY_ONLY)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private int slotOf(int entry) {
+        int slot = hash(keys[entry]);
+        while (table[slot] != entry + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void removeEntry(int entry) {
+        deleteSlot(slotOf(entry));
+        unlink(entry);
+        next[entry] = freeEntry;
+        freeEntry = entry;
+        size--;
+    }
+
+    //moves following entries of the probe sequence back, so lookups need no deleted markers
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (table[i] == 0) {
+                break;
+            }
+            int home = hash(keys[table[i] - 1]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void unlink(int entry) {
+        if (previous[entry] != NONE) {
+            next[previous[entry]] = next[entry];
+        } else {
+            oldest = next[entry];
+        }
+        if (next[entry] != NONE) {
+            previous[next[entry]] = previous[entry];
+        } else {
+            newest = previous[entry];
+        }
+    }
+
+    private void linkNewest(int entry) {
+        previous[entry] = newest;
+        next[entry] = NONE;
+        if (newest != NONE) {
+            next[newest] = entry;
+        } else {
+            oldest = entry;
+        }
+        newest = entry;
+    }
+}
@@ -0,0 +1,176 @@
+package sensor.service.parser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser of lines split by a delimiter into fields, the role of every field is given by its position in a
+ * layout like {@code timestamp,value} or {@code timestamp,-,value:cpu,value:memory}:
+ * <ul>
+ * <li>{@code timestamp} - metric timestamp, without it the time of reading is used</li>
+ * <li>{@code name} - metric name for value fields without their own name</li>
+ * <li>{@code value} or {@code value:<metric name>} - metric value, a line produces a metric per value field</li>
+ * <li>{@code -} - ignored field</li>
+ * </ul>
+ * The layout is compiled once, a line is split in a single pass and its fields are parsed in place.
+ */
+@Slf4j
+public class DelimitedLogParser implements StreamingLogParser {
+
+    private static final String TIMESTAMP_FIELD = "timestamp";
+    private static final String NAME_FIELD = "name";
+    private static final String VALUE_FIELD = "value";
+    private static final String IGNORED_FIELD = "-";
+    private static final String NAME_SEPARATOR = ":";
+
+    private final String metricName;
+    private final String delimiter;
+    private final TimeUnit timestampUnit;
+    private final TimeUnit metricTimestampUnit;
+    private final Map<String, String> tags;
+
+    //number of fields up to the last one used, further fields are not split
+    private final int fieldsCount;
+    private final int timestampField;
+    private final int nameField;
+    private final int[] valueFields;
+    //null for values named by the name field or the metric name
+    private final String[] valueNames;
+
+    //fields of the line parsed by the thread
+    private final ThreadLocal<LineFields> lineFields;
+
+    public DelimitedLogParser(String metricName, String delimiter, String fields, TimeUnit timestampUnit,
+                              TimeUnit metricTimestampUnit, Map<String, String> tags) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new IllegalArgumentException("Delimiter of fields must be set");
+        }
+        this.metricName = metricName;
+        this.delimiter = delimiter;
+        this.timestampUnit = timestampUnit;
+        this.metricTimestampUnit = metricTimestampUnit;
+        this.tags = Collections.unmodifiableMap(tags);
+
+        String[] fieldRoles = fields.split(",");
+        int timestamp = -1;
+        int name = -1;
+        List<Integer> values = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < fieldRoles.length; i++) {
+            String fieldRole = fieldRoles[i].trim();
+            if (TIMESTAMP_FIELD.equals(fieldRole) && timestamp < 0) {
+                timestamp = i;
+            } else if (NAME_FIELD.equals(fieldRole) && name < 0) {
+                name = i;
+            } else if (VALUE_FIELD.equals(fieldRole)) {
+                values.add(i);
+                names.add(null);
+            } else if (fieldRole.startsWith(VALUE_FIELD + NAME_SEPARATOR) && fieldRole.length() > VALUE_FIELD.length() + 1) {
+                values.add(i);
+                names.add(fieldRole.substring(VALUE_FIELD.length() + 1).trim());
+            } else if (!IGNORED_FIELD.equals(fieldRole) && !fieldRole.isEmpty()) {
+                throw new IllegalArgumentException(String.format("Field %s: %s is not supported, acceptable: %s, %s, %s, %s<metric name>, %s",
+                        i + 1, fieldRole, TIMESTAMP_FIELD, NAME_FIELD, VALUE_FIELD, VALUE_FIELD + NAME_SEPARATOR, IGNORED_FIELD));
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("At least one value field must be set in: " + fields);
+        }
+
+        this.timestampField = timestamp;
+        this.nameField = name;
+        this.valueFields = values.stream().mapToInt(Integer::intValue).toArray();
+        this.valueNames = names.toArray(new String[0]);
+        this.fieldsCount = Math.max(Math.max(timestamp, name), valueFields[valueFields.length - 1]) + 1;
+        this.lineFields = ThreadLocal.withInitial(() -> new LineFields(fieldsCount, valueFields.length));
+    }
+
+    @Override
+    public void parseLine(CharSequence line, MetricSink metricSink) throws Exception {
+        if (line == null || CharSequences.isBlank(line)) {
+            log.info("line is blank");
+            return;
+        }
+
+        LineFields fields = lineFields.get();
+        int[] bounds = fields.bounds;
+        if (!splitLine(line, bounds)) {
+            log.info("Line: {} doesn't match pattern", line);
+            return;
+        }
+
+        //all fields are parsed before the first metric is emitted, so a line is either used or skipped as a whole
+        long timestamp;
+        double[] values = fields.values;
+        try {
+            timestamp = timestampField < 0
+                    ? metricTimestampUnit.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                    : metricTimestampUnit.convert(CharSequences.parseLong(line, bounds[2 * timestampField], bounds[2 * timestampField + 1]), timestampUnit);
+            for (int i = 0; i < valueFields.length; i++) {
+                values[i] = CharSequences.parseDouble(line, bounds[2 * valueFields[i]], bounds[2 * valueFields[i] + 1]);
+            }
+        } catch (NumberFormatException e) {
+            log.info("Line: {} doesn't match pattern - {}", line, e.getMessage());
+            return;
+        }
+
+        CharSequence lineMetricName = nameField < 0
+                ? metricName
+                : fields.name.wrap(line, bounds[2 * nameField], bounds[2 * nameField + 1]);
+        for (int i = 0; i < valueFields.length; i++) {
+            metricSink.accept(valueNames[i] != null ? valueNames[i] : lineMetricName, values[i], timestamp, tags);
+        }
+    }
+
+    //stores start and end of every used field without surrounding whitespace, false when the line has fewer fields
+    private boolean splitLine(CharSequence line, int[] bounds) {
+        int length = line.length();
+        int fieldStart = 0;
+        for (int field = 0; field < fieldsCount; field++) {
+            if (fieldStart > length) {
+                return false;
+            }
+            int fieldEnd = indexOfDelimiter(line, fieldStart, length);
+            if (fieldEnd < 0) {
+                fieldEnd = length;
+            }
+            int start = CharSequences.trimStart(line, fieldStart, fieldEnd);
+            bounds[2 * field] = start;
+            bounds[2 * field + 1] = CharSequences.trimEnd(line, start, fieldEnd);
+            fieldStart = fieldEnd + delimiter.length();
+        }
+        return true;
+    }
+
+    private int indexOfDelimiter(CharSequence line, int from, int to) {
+        char first = delimiter.charAt(0);
+        if (delimiter.length() == 1) {
+            return CharSequences.indexOf(line, first, from, to);
+        }
+        for (int i = CharSequences.indexOf(line, first, from, to); i >= 0 && i + delimiter.length() <= to;
+             i = CharSequences.indexOf(line, first, i + 1, to)) {
+            if (CharSequences.contentEquals(line, i, i + delimiter.length(), delimiter)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class LineFields {
+
+        //start and end of every field
+        private final int[] bounds;
+        private final double[] values;
+        private final SubSequence name = new SubSequence();
+
+        LineFields(int fieldsCount, int valuesCount) {
+            this.bounds = new int[2 * fieldsCount];
+            this.values = new double[valuesCount];
+        }
+    }
+}
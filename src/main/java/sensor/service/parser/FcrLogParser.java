@@ -1,66 +1,181 @@
 package sensor.service.parser;
 
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.pojo.MetricPOJO;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 @Slf4j
-public class FcrLogParser implements LogParser {
+public class FcrLogParser implements StreamingLogParser, Closeable {
 
     private static final String START_STATE_NAME = "poczatek";
     private static final String FINISH_STATE_NAME = "koniec";
-    private static final int NUMBER_OF_LINE_PARTS = 4;
-    private final static String BLANK_LINE_REGEX = "^\\s*$";
 
-    private final static Pattern BLANK_LINE_PATTERN = Pattern.compile(BLANK_LINE_REGEX);
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long CHECK_MULTIPLIER = 0x9e3779b97f4a7c15L;
+    private static final long ORPHANS_REPORT_INTERVAL = 60_000;
+    private static final String METHOD_TAG = "method";
+    private static final int MAX_CACHED_METHODS = 16;
 
-    private Map<String, Map<String, String>> fcrMethodsDataMap;
-    private String metricName;
+    //starts waiting for their finish by method and fileId
+    private final CorrelationStore startTimestamps;
+    private final Path snapshotPath;
+    private final String metricName;
+    //tags of durations by method, only a few methods are logged
+    private final List<Map<String, String>> methodTags = new ArrayList<>();
 
-    public FcrLogParser(String metricName) {
+    private long reportedOrphansCount;
+    private long orphansReportTime;
+
+    public FcrLogParser(String metricName, int capacity, long timeToLive, String snapshotPath) {
         this.metricName = metricName;
-        this.fcrMethodsDataMap = new HashMap<>();
+        this.startTimestamps = new CorrelationStore(capacity, timeToLive);
+        this.snapshotPath = Paths.get(snapshotPath);
+        readSnapshot();
     }
 
+    //method:state:timestamp:fileId
     @Override
-    public MetricPOJO parseLineToPOJO(String line) {
-        if (line == null || BLANK_LINE_PATTERN.matcher(line).find()) {
+    public synchronized void parseLine(CharSequence line, MetricSink metricSink) throws Exception {
+        if (line == null || CharSequences.isBlank(line)) {
             log.info("line is blank");
-            return null;
+            return;
         }
 
-        String[] lineParts = line.trim().split(":");
+        int start = CharSequences.trimStart(line, 0, line.length());
+        int end = CharSequences.trimEnd(line, start, line.length());
+        //trailing empty parts are not counted, as by split
+        while (end > start && line.charAt(end - 1) == ':') {
+            end--;
+        }
 
-        if (lineParts.length != NUMBER_OF_LINE_PARTS) {
+        int methodEnd = CharSequences.indexOf(line, ':', start, end);
+        int stateEnd = methodEnd < 0 ? -1 : CharSequences.indexOf(line, ':', methodEnd + 1, end);
+        int timestampEnd = stateEnd < 0 ? -1 : CharSequences.indexOf(line, ':', stateEnd + 1, end);
+        if (timestampEnd < 0 || CharSequences.indexOf(line, ':', timestampEnd + 1, end) >= 0) {
             log.info("Line: {} doesn't match pattern", line);
-            return null;
+            return;
         }
 
-        String method = lineParts[0]; //wyslijPlik or usunPlik
-        String state = lineParts[1]; //poczatek or koniec
-        String timestamp = lineParts[2];
-        String fileId = lineParts[3];
-        log.info("Parsing line: method: {}, state:{}, timestamp:{}, fileId:{}", method, state, timestamp, fileId);
-        if (START_STATE_NAME.equals(state)) {
-            computeIfAbsent(method).put(fileId, timestamp);
-        } else if (FINISH_STATE_NAME.equals(state)) {
+        if (log.isDebugEnabled()) {
+            log.debug("Parsing line: method: {}, state:{}, timestamp:{}, fileId:{}", line.subSequence(start, methodEnd),
+                    line.subSequence(methodEnd + 1, stateEnd), line.subSequence(stateEnd + 1, timestampEnd),
+                    line.subSequence(timestampEnd + 1, end));
+        }
+        //wyslijPlik or usunPlik with fileId
+        long key = key(line, start, methodEnd, timestampEnd + 1, end);
+        long check = check(line, start, methodEnd, timestampEnd + 1, end);
+        //poczatek or koniec
+        if (CharSequences.contentEquals(line, methodEnd + 1, stateEnd, START_STATE_NAME)) {
+            long startTimestamp;
+            try {
+                startTimestamp = CharSequences.parseLong(line, stateEnd + 1, timestampEnd);
+            } catch (NumberFormatException e) {
+                log.info("Line: {} doesn't match pattern", line);
+                return;
+            }
+            startTimestamps.put(key, check, startTimestamp);
+            startTimestamps.expire(startTimestamp);
+        } else if (CharSequences.contentEquals(line, methodEnd + 1, stateEnd, FINISH_STATE_NAME)) {
             log.debug("Line with state {}, checking for state {}", FINISH_STATE_NAME, START_STATE_NAME);
-            String startTimestamp = computeIfAbsent(method).get(fileId);
-            if (startTimestamp != null) {
+            long startTimestamp = startTimestamps.remove(key, check);
+            if (startTimestamp != CorrelationStore.NOT_FOUND) {
                 log.debug("Found state {} with timestamp: {}", START_STATE_NAME, startTimestamp);
-                double durationTime = Long.valueOf(timestamp) - Long.valueOf(startTimestamp);
-                computeIfAbsent(method).remove(fileId);
-                log.info("Prepare metric: metricName: {}, time: {}, timestamp: {}", metricName, durationTime, Long.valueOf(timestamp));
-                return new MetricPOJO(metricName, durationTime, Long.valueOf(timestamp));
+                long timestamp = CharSequences.parseLong(line, stateEnd + 1, timestampEnd);
+                startTimestamps.expire(timestamp);
+                double durationTime = timestamp - startTimestamp;
+                log.debug("Prepare metric: metricName: {}, time: {}, timestamp: {}", metricName, durationTime, timestamp);
+                metricSink.accept(metricName, durationTime, timestamp, methodTags(line, start, methodEnd));
+            }
+        }
+        reportOrphans();
+    }
+
+    //64-bit FNV-1a of method and fileId, so no key object is kept for a start
+    private static long key(CharSequence line, int methodStart, int methodEnd, int fileIdStart, int fileIdEnd) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = methodStart; i < methodEnd; i++) {
+            hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+        }
+        hash = (hash ^ ':') * FNV_PRIME;
+        for (int i = fileIdStart; i < fileIdEnd; i++) {
+            hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    //polynomial hash of method and fileId with their lengths, mixed as in SplitMix64, independent of the key
+    private static long check(CharSequence line, int methodStart, int methodEnd, int fileIdStart, int fileIdEnd) {
+        long hash = methodEnd - methodStart;
+        for (int i = methodStart; i < methodEnd; i++) {
+            hash = hash * CHECK_MULTIPLIER + line.charAt(i);
+        }
+        hash = hash * CHECK_MULTIPLIER + (fileIdEnd - fileIdStart);
+        for (int i = fileIdStart; i < fileIdEnd; i++) {
+            hash = hash * CHECK_MULTIPLIER + line.charAt(i);
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private Map<String, String> methodTags(CharSequence line, int methodStart, int methodEnd) {
+        for (Map<String, String> tags : methodTags) {
+            if (CharSequences.contentEquals(line, methodStart, methodEnd, tags.get(METHOD_TAG))) {
+                return tags;
             }
         }
-        return null;
+        Map<String, String> tags = Collections.singletonMap(METHOD_TAG, line.subSequence(methodStart, methodEnd).toString());
+        if (methodTags.size() < MAX_CACHED_METHODS) {
+            methodTags.add(tags);
+        }
+        return tags;
+    }
+
+    //at most once a minute and only when there are new orphans
+    private void reportOrphans() {
+        long orphansCount = startTimestamps.getOrphanCount();
+        if (orphansCount == reportedOrphansCount) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - orphansReportTime >= ORPHANS_REPORT_INTERVAL) {
+            logOrphans();
+            reportedOrphansCount = orphansCount;
+            orphansReportTime = now;
+        }
     }
 
-    private Map<String, String> computeIfAbsent(String method) {
-        return fcrMethodsDataMap.computeIfAbsent(method, s -> new HashMap<>());
+    private void logOrphans() {
+        log.info("Fcr {} starts waiting for finish, orphans: {} expired, {} dropped over capacity, {} finishes without start",
+                startTimestamps.size(), startTimestamps.getExpiredCount(), startTimestamps.getEvictedCount(), startTimestamps.getUnmatchedCount());
+    }
+
+    private void readSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try {
+            int count = startTimestamps.readSnapshot(snapshotPath);
+            log.info("Read {} starts waiting for finish from {}", count, snapshotPath);
+        } catch (IOException e) {
+            log.warn("Cannot read starts waiting for finish from {}, starting without them", snapshotPath, e);
+        }
+    }
+
+    //starts waiting for their finish are kept for the next run
+    @Override
+    public synchronized void close() throws IOException {
+        logOrphans();
+        startTimestamps.writeSnapshot(snapshotPath);
+        log.info("Written {} starts waiting for finish to {}", startTimestamps.size(), snapshotPath);
     }
 }
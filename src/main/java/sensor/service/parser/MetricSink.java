@@ -0,0 +1,14 @@
+package sensor.service.parser;
+
+import java.util.Collections;
+import java.util.Map;
+
+public interface MetricSink {
+
+    //metric name is valid only until the method returns, tags are constant for the parser
+    void accept(CharSequence metricName, double metricValue, long timestamp, Map<String, String> tags) throws Exception;
+
+    default void accept(CharSequence metricName, double metricValue, long timestamp) throws Exception {
+        accept(metricName, metricValue, timestamp, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,31 @@
+package sensor.service.parser;
+
+import sensor.common.pojo.MetricPOJO;
+
+/**
+ * Parser pushing the metrics of a line into a sink instead of returning a new object per line. A line is
+ * usually a view of the read buffer, implementations should parse it in place without creating strings.
+ */
+public interface StreamingLogParser extends LogParser {
+
+    //line is a view valid only until the method returns, it may produce any number of metrics
+    void parseLine(CharSequence line, MetricSink metricSink) throws Exception;
+
+    //first metric of the line
+    @Override
+    default MetricPOJO parseLineToPOJO(String line) {
+        MetricPOJO[] metricPOJO = new MetricPOJO[1];
+        try {
+            parseLine(line, (metricName, metricValue, timestamp, tags) -> {
+                if (metricPOJO[0] == null) {
+                    metricPOJO[0] = new MetricPOJO(metricName.toString(), metricValue, timestamp, tags);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error by parsing line: " + line, e);
+        }
+        return metricPOJO[0];
+    }
+}
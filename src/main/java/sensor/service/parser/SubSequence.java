@@ -0,0 +1,36 @@
+package sensor.service.parser;
+
+//reusable view of a part of another sequence, valid as long as the viewed sequence
+final class SubSequence implements CharSequence {
+
+    private CharSequence sequence;
+    private int start;
+    private int length;
+
+    SubSequence wrap(CharSequence sequence, int start, int end) {
+        this.sequence = sequence;
+        this.start = start;
+        this.length = end - start;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return sequence.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return sequence.subSequence(this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        return sequence.subSequence(start, start + length).toString();
+    }
+}
@@ -1,16 +1,9 @@
 package sensor.service.parser;
 
-import java.util.regex.Pattern;
-
 import lombok.extern.slf4j.Slf4j;
-import sensor.common.pojo.MetricPOJO;
 
 @Slf4j
-public class ThroughputLogParser implements LogParser  {
-	
-	private static final int NUMBER_OF_LINE_PARTS = 2;
-	private final static String BLANK_LINE_REGEX = "^\\s*$";
-	private final static Pattern BLANK_LINE_PATTERN = Pattern.compile(BLANK_LINE_REGEX);
+public class ThroughputLogParser implements StreamingLogParser  {
 	
 	private String metricName;
 	
@@ -19,27 +12,30 @@ public class ThroughputLogParser implements LogParser  {
 		this.metricName = metricName;
 	}
 
+	//timestamp:value
 	@Override
-	public MetricPOJO parseLineToPOJO(String line) {
-		// TODO Auto-generated method stub
-		if (line == null || BLANK_LINE_PATTERN.matcher(line).find()) {
+	public void parseLine(CharSequence line, MetricSink metricSink) throws Exception {
+		if (line == null || CharSequences.isBlank(line)) {
             log.info("line is blank");
-            return null;
+            return;
         }
-		
-		String[] lineParts = line.trim().split(":");
-		
-		 String timestamp = lineParts[0];
-		 String metricValue = lineParts[1];
 
-        if (lineParts.length != NUMBER_OF_LINE_PARTS) {
+		int start = CharSequences.trimStart(line, 0, line.length());
+		int end = CharSequences.trimEnd(line, start, line.length());
+		//trailing empty parts are not counted, as by split
+		while (end > start && line.charAt(end - 1) == ':') {
+			end--;
+		}
+
+		int separator = CharSequences.indexOf(line, ':', start, end);
+        if (separator < 0 || CharSequences.indexOf(line, ':', separator + 1, end) >= 0) {
             log.info("Line: {} doesn't match pattern", line);
-            return null;
+            return;
         }
-        
-        double value = Double.parseDouble(metricValue);
-        
-		return new MetricPOJO(metricName, value, Long.valueOf(timestamp));
+
+        double value = CharSequences.parseDouble(line, separator + 1, end);
+
+		metricSink.accept(metricName, value, CharSequences.parseLong(line, start, separator));
 	}
 
-}
\ No newline at end of file
+}
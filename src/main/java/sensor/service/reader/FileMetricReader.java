@@ -1,51 +1,299 @@
 package sensor.service.reader;
 
-import com.jramoyo.io.IndexedFileReader;
 import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.FilePosition;
 import sensor.common.pojo.MetricPOJO;
+import sensor.service.chooser.CompressedFiles;
 import sensor.service.chooser.FileChooser;
+import sensor.service.chooser.FileFingerprints;
 import sensor.service.parser.LogParser;
+import sensor.service.parser.MetricSink;
+import sensor.service.parser.StreamingLogParser;
+import sensor.service.sender.FlushTracker;
 import sensor.service.sender.MetricSender;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class FileMetricReader implements MetricReader {
+public class FileMetricReader implements MetricReader, Closeable {
 
-    private LogParser logParser;
+    private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private StreamingLogParser logParser;
     private MetricSender metricSender;
     private FileChooser fileChooser;
+    private int chunkSize;
+    //lines with metrics between stored positions, the sender is flushed before a position is stored
+    private int checkpointInterval;
+    //null when files are read one after another
+    private ExecutorService fileExecutor;
+    //null when lines are parsed and sent by the reading thread
+    private MetricPipeline metricPipeline;
+
+    private final MetricNameCache metricNames = new MetricNameCache();
 
-    public FileMetricReader(LogParser logParser, MetricSender metricSender, FileChooser fileChooser) {
-        this.logParser = Objects.requireNonNull(logParser, "LogParser could not be null");
+    //scanners are kept open between checks, so a check only reads bytes appended since the previous one
+    private final Map<Path, MappedLineScanner> openScanners = new ConcurrentHashMap<>();
+
+    public FileMetricReader(LogParser logParser, MetricSender metricSender, FileChooser fileChooser, int chunkSize, int threads,
+                            int checkpointInterval, int parserThreads, int senderThreads, int pipelineBufferSize) {
+        Objects.requireNonNull(logParser, "LogParser could not be null");
+        this.logParser = logParser instanceof StreamingLogParser ? (StreamingLogParser) logParser : (line, metricSink) -> {
+            MetricPOJO metricPOJO = logParser.parseLineToPOJO(line.toString());
+            if (metricPOJO != null) {
+                metricSink.accept(metricPOJO.getMetricName(), metricPOJO.getMetricValue(), metricPOJO.getTimestamp(), metricPOJO.getTags());
+            }
+        };
         this.metricSender = Objects.requireNonNull(metricSender, "MetricSender could not be null");
         this.fileChooser = Objects.requireNonNull(fileChooser, "FileChooser could not be null");
+        this.chunkSize = chunkSize;
+        this.checkpointInterval = Math.max(checkpointInterval, 1);
+        if (threads > 1) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.fileExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "file-reader-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (parserThreads > 0 && senderThreads > 0) {
+            this.metricPipeline = new MetricPipeline(this.logParser, metricSender, fileChooser, metricNames,
+                    parserThreads, senderThreads, pipelineBufferSize, this.checkpointInterval);
+        }
     }
 
     @Override
     public void readMetrics() throws Exception {
-        Map<Path, Integer> filesToAnalise = fileChooser.findFilesToAnalise();
+        Map<Path, FilePosition> filesToAnalise = fileChooser.findFilesToAnalise();
+
+        if (metricPipeline == null) {
+            readFiles(filesToAnalise);
+        } else {
+            readFilesIntoPipeline(filesToAnalise);
+        }
+        closeScannersOfRemovedFiles();
+    }
+
+    private void readFiles(Map<Path, FilePosition> filesToAnalise) throws Exception {
+        if (fileExecutor == null || filesToAnalise.size() < 2) {
+            for (Map.Entry<Path, FilePosition> fileToAnalise : filesToAnalise.entrySet()) {
+                readFileOrCloseScanner(fileToAnalise.getKey(), fileToAnalise.getValue());
+            }
+        } else {
+            readFilesConcurrently(filesToAnalise);
+        }
+    }
+
+    //positions are stored when lines are sent, so the next check starts where sending ended
+    private void readFilesIntoPipeline(Map<Path, FilePosition> filesToAnalise) throws Exception {
+        Exception exception = null;
+        try {
+            readFiles(filesToAnalise);
+        } catch (Exception e) {
+            exception = e;
+        }
+        try {
+            metricPipeline.awaitRound();
+        } catch (Exception e) {
+            if (exception == null) {
+                exception = e;
+            } else if (e != exception) {
+                log.error("Error during reading metrics", e);
+            }
+        }
+        if (exception != null) {
+            //scanners are ahead of the stored positions
+            closeScanners();
+            throw exception;
+        }
+    }
 
-        for (Path path : filesToAnalise.keySet()) {
-            Integer lineNumber = filesToAnalise.get(path);
-            IndexedFileReader reader = new IndexedFileReader(path.toFile());
-            int linesCount = reader.getLineCount();
+    //files of a source are read by a single task, so lines keep their order and rotated files are finished first
+    private void readFilesConcurrently(Map<Path, FilePosition> filesToAnalise) throws Exception {
+        Map<Path, Map<Path, FilePosition>> filesBySource = new LinkedHashMap<>();
+        for (Map.Entry<Path, FilePosition> fileToAnalise : filesToAnalise.entrySet()) {
+            filesBySource.computeIfAbsent(fileChooser.getSourceFile(fileToAnalise.getKey()), source -> new LinkedHashMap<>())
+                    .put(fileToAnalise.getKey(), fileToAnalise.getValue());
+        }
 
-            log.info("Reading file: {} started", path.toString());
+        List<Future<?>> futures = new ArrayList<>(filesBySource.size());
+        for (Map<Path, FilePosition> sourceFiles : filesBySource.values()) {
+            futures.add(fileExecutor.submit(() -> {
+                for (Map.Entry<Path, FilePosition> fileToAnalise : sourceFiles.entrySet()) {
+                    readFileOrCloseScanner(fileToAnalise.getKey(), fileToAnalise.getValue());
+                }
+                return null;
+            }));
+        }
 
-            for (Map.Entry<Integer, String> entry : reader.readLines(lineNumber, linesCount).entrySet()) {
-                MetricPOJO metricPOJO = logParser.parseLineToPOJO(entry.getValue());
-                if (metricPOJO != null) {
-                    metricSender.sendMessage(metricPOJO);
-                    fileChooser.updateFileIndex(path.toString(), entry.getKey());
+        Exception firstException = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                if (firstException == null) {
+                    firstException = cause;
+                } else {
+                    log.error("Error during reading metrics", cause);
                 }
             }
-            fileChooser.updateFileIndex(path.toString(), linesCount);
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
 
-            log.info("Reading file: {} finished after reading {} lines ({} - {})", path.toString(), linesCount - lineNumber, lineNumber, linesCount);
+    private void readFileOrCloseScanner(Path path, FilePosition startPosition) throws Exception {
+        log.debug("Reading file: {} started from {}", path.toString(), startPosition);
+        try {
+            readFile(path, startPosition);
+        } catch (Exception e) {
+            closeScanner(path);
+            throw e;
+        }
+    }
+
+    private void readFile(Path path, FilePosition startPosition) throws Exception {
+        //compressed files do not grow, they are read to the end at once
+        if (CompressedFiles.isCompressed(path)) {
+            try (LineScanner scanner = new GzipLineScanner(path, startPosition)) {
+                readFile(path, startPosition, scanner);
+            }
+        } else {
+            readFile(path, startPosition, getScanner(path, startPosition));
         }
     }
-}
 
+    private void readFile(Path path, FilePosition startPosition, LineScanner scanner) throws Exception {
+        if (metricPipeline != null) {
+            readFileIntoPipeline(path, scanner);
+            return;
+        }
+        String filePath = path.toString();
+        //files are read by several threads sharing the sender
+        FlushTracker flushTracker = new FlushTracker(metricSender);
+        boolean[] lineWithMetrics = new boolean[1];
+        int[] linesToCheckpoint = new int[1];
+        MetricSink metricSink = (metricName, metricValue, timestamp, tags) -> {
+            flushTracker.sendMessage(new MetricPOJO(metricNames.get(metricName), metricValue, timestamp, tags));
+            lineWithMetrics[0] = true;
+        };
+        //position is stored after all metrics of a line are sent
+        scanner.scan(line -> {
+            lineWithMetrics[0] = false;
+            logParser.parseLine(line, metricSink);
+            if (lineWithMetrics[0] && ++linesToCheckpoint[0] >= checkpointInterval) {
+                flushTracker.flush();
+                fileChooser.updateFileIndex(filePath, scanner.getPosition());
+                linesToCheckpoint[0] = 0;
+            }
+        });
+        flushTracker.flush();
+        FilePosition endPosition = scanner.getPosition();
+        fileChooser.updateFileIndex(path.toString(), endPosition);
+
+        log.debug("Reading file: {} finished after reading {} lines ({} - {}), {} bytes",
+                path.toString(), endPosition.getLineNumber() - startPosition.getLineNumber(),
+                startPosition.getLineNumber(), endPosition.getLineNumber(),
+                endPosition.getByteOffset() - startPosition.getByteOffset());
+    }
+
+    private void readFileIntoPipeline(Path path, LineScanner scanner) throws Exception {
+        String filePath = path.toString();
+        int partition = metricPipeline.getPartition(fileChooser.getSourceFile(path));
+        long linesCount = scanner.scan(line -> metricPipeline.publishLine(partition, filePath, line, scanner));
+        metricPipeline.publishPosition(partition, filePath, scanner.getPosition());
+        log.debug("Reading file: {} finished after reading {} lines", filePath, linesCount);
+    }
+
+    //max number of lines waiting for every parser thread in the last check, empty when lines are not pipelined
+    public int[] getParserQueueDepths() {
+        return metricPipeline == null ? new int[0] : metricPipeline.getMaxParserQueueDepths();
+    }
+
+    //max number of metrics waiting for every sender thread in the last check, empty when lines are not pipelined
+    public int[] getSenderQueueDepths() {
+        return metricPipeline == null ? new int[0] : metricPipeline.getMaxSenderQueueDepths();
+    }
+
+    //slots of every pipeline queue, a queue as deep as this held back the stage before it
+    public int getPipelineQueueCapacity() {
+        return metricPipeline == null ? 0 : metricPipeline.getQueueCapacity();
+    }
+
+    private MappedLineScanner getScanner(Path path, FilePosition startPosition) throws IOException {
+        MappedLineScanner scanner = openScanners.get(path);
+        if (scanner != null && scanner.getPosition().getByteOffset() == startPosition.getByteOffset()
+                && FileFingerprints.isSameFile(scanner.getIdentity(), startPosition.getIdentity())) {
+            return scanner;
+        }
+        closeScanner(path);
+        scanner = new MappedLineScanner(path, startPosition, chunkSize);
+        openScanners.put(path, scanner);
+        return scanner;
+    }
+
+    private void closeScanner(Path path) throws IOException {
+        MappedLineScanner scanner = openScanners.remove(path);
+        if (scanner != null) {
+            scanner.close();
+        }
+    }
+
+    private void closeScanners() throws IOException {
+        for (MappedLineScanner scanner : openScanners.values()) {
+            scanner.close();
+        }
+        openScanners.clear();
+    }
+
+    private void closeScannersOfRemovedFiles() throws IOException {
+        Iterator<Map.Entry<Path, MappedLineScanner>> iterator = openScanners.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, MappedLineScanner> entry = iterator.next();
+            if (Files.notExists(entry.getKey())) {
+                log.info("File: {} removed, closing it", entry.getKey().toString());
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        //files being read are finished first, their scanners are closed below
+        if (fileExecutor != null) {
+            fileExecutor.shutdown();
+            try {
+                if (!fileExecutor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    log.warn("Files still read after {} ms, interrupting reading", CLOSE_TIMEOUT);
+                    fileExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                fileExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (metricPipeline != null) {
+            metricPipeline.close();
+        }
+        closeScanners();
+    }
+}
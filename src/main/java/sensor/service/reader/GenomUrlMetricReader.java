@@ -1,36 +1,66 @@
 package sensor.service.reader;
 
 import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import sensor.common.MetricProperties;
 import sensor.common.pojo.MetricPOJO;
+import sensor.service.reader.SparkJsonReader.ExecutorsSummary;
+import sensor.service.reader.SparkJsonReader.Stage;
 import sensor.service.sender.MetricSender;
 
 import javax.ws.rs.core.UriBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Reads progress of all running Spark applications and their active stages from the REST API of every url. All
+ * requests go through one client, so connections are kept alive between requests and ticks, and responses are
+ * gzipped. Requests of a tick run at once on a bounded number of threads, so a tick takes about as long as the
+ * slowest chain of requests, and requests not answered by the deadline are given up. Metrics of stages are tagged
+ * with the application and the stage, cores of an application with the application. An application listed by
+ * more urls is read from the first one. Timeouts of a request are at most the deadline, as a request given up is
+ * not interrupted but keeps its thread until the timeout.
+ */
 @Slf4j
-public class GenomUrlMetricReader extends UrlMetricReader {
+public class GenomUrlMetricReader extends UrlMetricReader implements Closeable {
 
     private MetricProperties metricProperties;
     private MetricSender metricSender;
-    private String basicUrl;
+    private List<String> basicUrls;
+    private final Client client;
+    //threads of requests given up end with their timeouts, at the latest by the deadline of the next tick
+    private final ExecutorService requestExecutor;
+    private final long deadline;
 
     private static final String LEFT_TASKS_METRIC_NAME = "SimulationLeftNumber";
     private static final String TIME_PERCENTILE_METRIC_NAME = "ETPercentile";
@@ -38,152 +68,189 @@ public class GenomUrlMetricReader extends UrlMetricReader {
     private static final String ELAPSED_TIME_METRIC_NAME = "SimulationElapsedTime";
     private static final String TOTAL_CORES_METRIC_NAME = "TotalCores";
 
-    private static final String GETTING_JOBS_URL_SUFFIX = "/stages/1";
+    private static final String APPLICATION_TAG = "application";
+    private static final String STAGE_TAG = "stage";
+
+    private static final String RUNNING_APPLICATIONS_QUERY = "status=running";
+    private static final String GETTING_ACTIVE_STAGES_URL_SUFFIX = "/stages?status=active";
     private static final String GETTING_EXECUTORS_URL_SUFFIX = "/executors";
+    private static final String GETTING_STAGES_URL_SUFFIX = "/stages/";
+    private static final String GETTING_TASK_SUMMARY_URL_SUFFIX = "/taskSummary?quantiles=";
+    private static final String TASK_RUN_TIME_FIELD = "executorRunTime";
 
 
     public GenomUrlMetricReader(MetricSender metricSender, MetricProperties metricProperties) {
         this.metricSender = Objects.requireNonNull(metricSender, "MetricSender could not be null");
         this.metricProperties = Objects.requireNonNull(metricProperties, "MetricProperties could not be null");
-        this.basicUrl = metricProperties.getCollectorUrl();
+        this.basicUrls = metricProperties.getCollectorUrls();
+        this.deadline = metricProperties.getCollectorUrlDeadline();
+
+        ClientConfig config = new DefaultClientConfig();
+        this.client = Client.create(config);
+        client.setConnectTimeout((int) Math.min(metricProperties.getCollectorUrlConnectTimeout(), deadline));
+        client.setReadTimeout((int) Math.min(metricProperties.getCollectorUrlReadTimeout(), deadline));
+        client.addFilter(new GZIPContentEncodingFilter(false));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.requestExecutor = Executors.newFixedThreadPool(metricProperties.getCollectorUrlThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "genom-url-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public void readMetrics() throws Exception {
 
-        log.info("Basic url: {}", basicUrl);
+        log.debug("Basic urls: {}", basicUrls);
+        long tickDeadline = System.currentTimeMillis() + deadline;
 
-        String applicationId = findApplicationId();
-
-        if (applicationId == null) {
-            log.error("Error by getting applicationId");
-            return;
+        Map<String, CompletableFuture<List<String>>> applicationsFutures = new LinkedHashMap<>();
+        for (String basicUrl : basicUrls) {
+            applicationsFutures.put(basicUrl, CompletableFuture.supplyAsync(() -> findApplicationIds(basicUrl), requestExecutor));
         }
-        log.info("Application id: {}", applicationId);
-
-        MeasurementValues lastMeasurementValues = null;
-        try {
-
-            MeasurementValues currentMeasurementValues = findExecutingJobsInfo(applicationId);
-
-            int numLeftTasks = currentMeasurementValues.getNumTasks() + currentMeasurementValues.getNumFailedTasks()
-                    + currentMeasurementValues.getNumKilledTasks() - currentMeasurementValues.getNumCompletedTasks();
-            long elapsedTimeInSeconds = currentMeasurementValues.getElapsedTimeInSeconds();
-            long remainingTimeInSeconds = currentMeasurementValues.getRemainingTimeInSeconds();
-            double percentileTaskTime = currentMeasurementValues.getPercentileTaskTime();
-
-            int totalCores = currentMeasurementValues.getTotalCores();
-
-
-            log.info("allTasksNumber: {}, numCompletedTasks: {}, leftTasksNumber: {}, remainingTime: {}s, p95: {}s",
-                    currentMeasurementValues.getNumTasks(), currentMeasurementValues.getNumCompletedTasks(),
-                    numLeftTasks, remainingTimeInSeconds, percentileTaskTime);
-
-            lastMeasurementValues = currentMeasurementValues;
+        //application id to its url
+        Map<String, String> applicationUrls = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<String>>> applicationsFuture : applicationsFutures.entrySet()) {
+            List<String> applicationIds = await(applicationsFuture.getValue(), tickDeadline, "applications of " + applicationsFuture.getKey());
+            if (applicationIds != null) {
+                for (String applicationId : applicationIds) {
+                    applicationUrls.putIfAbsent(applicationId, applicationsFuture.getKey() + metricProperties.getCollectorUrlSuffixToGetAppId() + "/" + applicationId);
+                }
+            }
+        }
+        log.info("Running applications: {}", applicationUrls.keySet());
 
-            createAndSendGenomMetrics(numLeftTasks, percentileTaskTime, elapsedTimeInSeconds, remainingTimeInSeconds, totalCores);
+        List<ApplicationFutures> applications = new ArrayList<>(applicationUrls.size());
+        for (Map.Entry<String, String> applicationUrl : applicationUrls.entrySet()) {
+            applications.add(requestApplication(applicationUrl.getKey(), applicationUrl.getValue()));
+        }
 
-        } catch (ClientHandlerException ex) {
-            if (lastMeasurementValues != null) {
-                log.info("Job closed, {} tasks from {} completed per 100%", lastMeasurementValues.getNumCompletedTasks(), lastMeasurementValues.getNumTasks());
-            }
-            return;
+        List<MetricPOJO> metrics = new ArrayList<>();
+        long currentTimestamp = getTimestamp();
+        for (ApplicationFutures application : applications) {
+            addApplicationMetrics(application, tickDeadline, currentTimestamp, metrics);
+        }
+        if (!metrics.isEmpty()) {
+            metricSender.sendBatch(metrics);
+            metricSender.flush();
         }
     }
 
-    private void createAndSendGenomMetrics(int numLeftTasks, Double percentileTaskTime, long elapsedTimeInSeconds, long durationTime, int totalCores) throws Exception {
-        long currentTimestamp = getTimestamp();
-        metricSender.sendMessage(new MetricPOJO(LEFT_TASKS_METRIC_NAME, numLeftTasks, currentTimestamp));
-        metricSender.sendMessage(new MetricPOJO(TIME_PERCENTILE_METRIC_NAME, percentileTaskTime, currentTimestamp));
-        metricSender.sendMessage(new MetricPOJO(ELAPSED_TIME_METRIC_NAME, elapsedTimeInSeconds, currentTimestamp));
-        metricSender.sendMessage(new MetricPOJO(REMAINING_TIME_METRIC_NAME, durationTime, currentTimestamp));
-        metricSender.sendMessage(new MetricPOJO(TOTAL_CORES_METRIC_NAME, totalCores, currentTimestamp));
+    //executors and active stages are requested at once, task summaries of stages once stages are known
+    private ApplicationFutures requestApplication(String applicationId, String applicationUrl) {
+        CompletableFuture<ExecutorsSummary> executorsFuture = CompletableFuture.supplyAsync(
+                () -> findTotalCoresAndMeanDurationTime(applicationUrl), requestExecutor);
+        CompletableFuture<List<Stage>> stagesFuture = CompletableFuture.supplyAsync(() -> findActiveStages(applicationUrl), requestExecutor);
+        CompletableFuture<List<Double>> percentilesFuture = stagesFuture.thenCompose(stages -> {
+            List<CompletableFuture<Double>> stagePercentiles = new ArrayList<>(stages.size());
+            for (Stage stage : stages) {
+                stagePercentiles.add(CompletableFuture.supplyAsync(() -> findPercentileTaskTime(applicationUrl, stage), requestExecutor)
+                        .exceptionally(e -> {
+                            log.warn("Error by getting task summary of stage {} of application {}: {}", stage.getStageId(), applicationId, e.getMessage());
+                            return null;
+                        }));
+            }
+            return CompletableFuture.allOf(stagePercentiles.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> stagePercentiles.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+        });
+        return new ApplicationFutures(applicationId, executorsFuture, stagesFuture, percentilesFuture);
     }
 
-    private String findApplicationId() throws RuntimeException {
-        String urlToGetAppId = basicUrl + metricProperties.getCollectorUrlSuffixToGetAppId();
-        log.info("Connection to url: {}", urlToGetAppId);
+    private void addApplicationMetrics(ApplicationFutures application, long tickDeadline, long currentTimestamp, List<MetricPOJO> metrics) throws InterruptedException {
+        String applicationId = application.getApplicationId();
+        ExecutorsSummary executorsSummary = await(application.getExecutorsFuture(), tickDeadline, "executors of " + applicationId);
+        List<Stage> stages = await(application.getStagesFuture(), tickDeadline, "stages of " + applicationId);
+        List<Double> percentiles = stages == null ? null : await(application.getPercentilesFuture(), tickDeadline, "task summaries of " + applicationId);
 
-        JSONArray jsonArray = new JSONArray(getDataFromUrl(urlToGetAppId));
+        Map<String, String> applicationTags = Collections.singletonMap(APPLICATION_TAG, applicationId);
+        if (executorsSummary != null) {
+            metrics.add(new MetricPOJO(TOTAL_CORES_METRIC_NAME, executorsSummary.getTotalCores(), currentTimestamp, applicationTags));
+        }
+        if (stages == null) {
+            return;
+        }
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            Map<String, String> stageTags = new HashMap<>();
+            stageTags.put(APPLICATION_TAG, applicationId);
+            stageTags.put(STAGE_TAG, String.valueOf(stage.getStageId()));
+
+            int numLeftTasks = stage.getNumTasks() + stage.getNumFailedTasks() + stage.getNumKilledTasks() - stage.getNumCompleteTasks();
+            metrics.add(new MetricPOJO(LEFT_TASKS_METRIC_NAME, numLeftTasks, currentTimestamp, stageTags));
+
+            Double percentileTaskTime = percentiles == null ? null : percentiles.get(i);
+            if (percentileTaskTime == null && executorsSummary != null) {
+                percentileTaskTime = (double) executorsSummary.getMeanDurationTime();
+            }
+            if (percentileTaskTime != null) {
+                metrics.add(new MetricPOJO(TIME_PERCENTILE_METRIC_NAME, percentileTaskTime, currentTimestamp, stageTags));
+            }
 
-        return convert(jsonArray).stream()
-                .findFirst()
-                .map(jsonObject -> jsonObject.getString("id"))
-                .orElseThrow(() -> new RuntimeException("Error by parsing JSON response with application id"));
-    }
+            Pair<Long, Long> elapsedRemainingTime = null;
+            if (stage.getSubmissionTime() != null) {
+                try {
+                    elapsedRemainingTime = countElapsedRemainingTime(parseDate(stage.getSubmissionTime()), new Date());
+                    metrics.add(new MetricPOJO(ELAPSED_TIME_METRIC_NAME, elapsedRemainingTime.getLeft(), currentTimestamp, stageTags));
+                    metrics.add(new MetricPOJO(REMAINING_TIME_METRIC_NAME, elapsedRemainingTime.getRight(), currentTimestamp, stageTags));
+                } catch (ParseException e) {
+                    log.warn("Error by parsing submission time {} of stage {} of application {}", stage.getSubmissionTime(), stage.getStageId(), applicationId);
+                }
+            }
 
-    private List<JSONObject> convert(JSONArray jsonArray) {
-        List<JSONObject> result = new ArrayList<>(jsonArray.length());
-        for (int i = 0; i < jsonArray.length(); i++) {
-            result.add(jsonArray.getJSONObject(i));
+            log.info("Application: {}, stage: {}, allTasksNumber: {}, numCompletedTasks: {}, numActiveTasks: {}, leftTasksNumber: {}, "
+                            + "elapsedTime: {}s, remainingTime: {}s, totalCores: {}, percentileTaskTime: {}s", applicationId, stage.getStageId(),
+                    stage.getNumTasks(), stage.getNumCompleteTasks(), stage.getNumActiveTasks(), numLeftTasks,
+                    elapsedRemainingTime == null ? null : elapsedRemainingTime.getLeft(), elapsedRemainingTime == null ? null : elapsedRemainingTime.getRight(),
+                    executorsSummary == null ? null : executorsSummary.getTotalCores(), percentileTaskTime);
         }
-        return result;
     }
 
+    private List<String> findApplicationIds(String basicUrl) {
+        String suffixToGetAppId = metricProperties.getCollectorUrlSuffixToGetAppId();
+        String urlToGetAppIds = basicUrl + suffixToGetAppId + (suffixToGetAppId.contains("?") ? "&" : "?") + RUNNING_APPLICATIONS_QUERY;
+        log.debug("Connection to url: {}", urlToGetAppIds);
 
-    private MeasurementValues findExecutingJobsInfo(String applicationId) throws ParseException {
-        String urlToGetJobsInfo = basicUrl + metricProperties.getCollectorUrlSuffixToGetAppId() + "/" + applicationId + GETTING_JOBS_URL_SUFFIX;
-        log.info("Get jobs statistics from url: {}", urlToGetJobsInfo);
-
-        String jobsInfo = getDataFromUrl(urlToGetJobsInfo);
-
-        JSONArray jsonArray = new JSONArray(jobsInfo);
-
-        log.info("All jobs number: {}", jsonArray.length());
-        JSONObject jsonObject = jsonArray.getJSONObject(0);
-
-        int numTask = jsonObject.getInt("numTasks");
-        int numCompletedTasks = jsonObject.getInt("numCompleteTasks");
-        int numFailedTasks = jsonObject.getInt("numFailedTasks");
-        int numActiveTasks = jsonObject.getInt("numActiveTasks");
-        int numKilledTasks = jsonObject.getInt("numKilledTasks");
-
-        Date startTime = parseDate(jsonObject.getString("submissionTime"));
-        Pair<Long, Long> elapsedRemainingTime = countElapsedRemainingTime(startTime, new Date());
-        Long simulationElapsedTime = elapsedRemainingTime.getLeft();
-        Long remainingInSeconds = elapsedRemainingTime.getRight();
-
-        ExecutorsMeasurementValues executorsMeasurementValues = findTotalCoresAndMeanDurationTime(applicationId);
-        int totalCores = executorsMeasurementValues.getTotalCores();
-        long percentileTaskTime = executorsMeasurementValues.getMeanDurationTime();
-
-        log.info("Job information: \n numTasks: {}, \n numCompletedTasks: {}, \n numFailedTasks: {}," +
-                        "\n numActiveTasks: {}, \n numKilledTasks: {}, \n startTime: {}, " +
-                        " \n simulationElapsedTime= {}, \n remainingInSeconds= {}, \n totalCores= {}, \n percentileTaskTime= {}", numTask, numCompletedTasks,
-                numFailedTasks, numActiveTasks, numKilledTasks, startTime, simulationElapsedTime, remainingInSeconds, totalCores, percentileTaskTime);
-
-        return new MeasurementValues(numTask, numCompletedTasks, numFailedTasks, numActiveTasks, numKilledTasks, simulationElapsedTime, remainingInSeconds, totalCores, percentileTaskTime);
-
+        List<String> applicationIds = getDataFromUrl(urlToGetAppIds, SparkJsonReader::readApplicationIds);
+        if (applicationIds == null) {
+            throw new RuntimeException("Error by getting applications from " + urlToGetAppIds);
+        }
+        return applicationIds;
     }
 
-    private ExecutorsMeasurementValues findTotalCoresAndMeanDurationTime(String applicationId) {
-        String urlToGetExecutorsInfo = basicUrl + metricProperties.getCollectorUrlSuffixToGetAppId() + "/" + applicationId + GETTING_EXECUTORS_URL_SUFFIX;
-        log.info("Checking executors info from: {}", urlToGetExecutorsInfo);
-        String response = getDataFromUrl(urlToGetExecutorsInfo);
-
-        JSONArray jsonArray = new JSONArray(response);
-
-        int executorsNumber = jsonArray.length() - 1; //omit driver0
-        int totalCoresSum = 0;
-        long totalMeanDurationTimes = 0;
+    private List<Stage> findActiveStages(String applicationUrl) {
+        String urlToGetStages = applicationUrl + GETTING_ACTIVE_STAGES_URL_SUFFIX;
+        log.debug("Get stages statistics from url: {}", urlToGetStages);
 
-        for (int i = 1; i < jsonArray.length(); i++) { //start at 1, omit driver0
-            Integer totalCoresPerExecutor = (Integer) jsonArray.getJSONObject(i).get("totalCores");
-            totalCoresSum += totalCoresPerExecutor;
-
-            int totalDurationPerExecutor = (Integer) jsonArray.getJSONObject(i).get("totalDuration");
-            int completedTasksPerExecutor = (Integer) jsonArray.getJSONObject(i).get("completedTasks");
+        List<Stage> stages = getDataFromUrl(urlToGetStages, SparkJsonReader::readStages);
+        if (stages == null) {
+            throw new RuntimeException("Error by getting stages from " + urlToGetStages);
+        }
+        return stages;
+    }
 
-            if (completedTasksPerExecutor == 0) { //executor did not performed any tasks
-                executorsNumber--;
-            } else {
-                long meanDurationTimePerExecutorInS = totalDurationPerExecutor / (1000 * completedTasksPerExecutor);
-                totalMeanDurationTimes += meanDurationTimePerExecutorInS;
-            }
+    //percentile of run times of tasks of the stage in seconds, null when the server gives no task summary
+    private Double findPercentileTaskTime(String applicationUrl, Stage stage) {
+        double quantile = metricProperties.getCollectorUrlTaskPercentile() / 100;
+        String urlToGetTaskSummary = applicationUrl + GETTING_STAGES_URL_SUFFIX + stage.getStageId() + "/" + stage.getAttemptId()
+                + GETTING_TASK_SUMMARY_URL_SUFFIX + quantile;
+        log.debug("Get task summary from url: {}", urlToGetTaskSummary);
+        Double runTime = getDataFromUrl(urlToGetTaskSummary, stream -> SparkJsonReader.readFirstQuantile(stream, TASK_RUN_TIME_FIELD));
+        if (runTime == null) {
+            log.warn("No {} in task summary, percentile of task time is replaced by mean time of executors", TASK_RUN_TIME_FIELD);
+            return null;
         }
+        return runTime / 1000;
+    }
 
-        long meanDurationTime = totalMeanDurationTimes/executorsNumber;
-        return new ExecutorsMeasurementValues(totalCoresSum, meanDurationTime);
+    private ExecutorsSummary findTotalCoresAndMeanDurationTime(String applicationUrl) {
+        String urlToGetExecutorsInfo = applicationUrl + GETTING_EXECUTORS_URL_SUFFIX;
+        log.debug("Checking executors info from: {}", urlToGetExecutorsInfo);
+        ExecutorsSummary executorsSummary = getDataFromUrl(urlToGetExecutorsInfo, SparkJsonReader::readExecutors);
+        if (executorsSummary == null) {
+            throw new RuntimeException("Error by getting executors from " + urlToGetExecutorsInfo);
+        }
+        return executorsSummary;
     }
 
     private Pair<Long, Long> countElapsedRemainingTime(Date startDate, Date endDate) {
@@ -194,20 +261,42 @@ public class GenomUrlMetricReader extends UrlMetricReader {
     }
 
 
-    private String getDataFromUrl(String url) {
-        ClientConfig config = new DefaultClientConfig();
-        Client client = Client.create(config);
+    //result of the request, null when the request failed or was given up after the deadline, e.g. the application ended
+    private <T> T await(Future<T> future, long tickDeadline, String description) throws InterruptedException {
+        try {
+            return future.get(Math.max(0, tickDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            log.warn("Error by getting {}: {}", description, cause);
+            return null;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("No {} within {} ms, they are not read in this tick", description, deadline);
+            return null;
+        }
+    }
 
+    //fields read from the response stream, null when the response is not 200
+    private <T> T getDataFromUrl(String url, ResponseReader<T> responseReader) {
         WebResource webResource = client.resource(UriBuilder.fromUri(url).build());
         ClientResponse response = webResource.accept("application/json").get(ClientResponse.class);
 
-        String result = "";
-        if (response.getStatus() == 200) {
-
-            result = response.getEntity(String.class);
-            log.debug("Response entity from url:{}   : {}", url, result);
+        //the connection is kept alive only when the response is read to the end
+        try (InputStream stream = response.getEntityInputStream()) {
+            if (response.getStatus() != 200) {
+                log.debug("Response status from url:{}   : {}", url, response.getStatus());
+                return null;
+            }
+            return responseReader.read(stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error by reading response from url " + url, e);
         }
-        return result;
+    }
+
+    @Override
+    public void close() {
+        requestExecutor.shutdownNow();
+        client.destroy();
     }
 
     private long getTimestamp() {
@@ -220,25 +309,18 @@ public class GenomUrlMetricReader extends UrlMetricReader {
 
     @AllArgsConstructor
     @Getter
-    class MeasurementValues {
+    private static class ApplicationFutures {
 
-        Integer numTasks;
-        Integer numCompletedTasks;
-        Integer numFailedTasks;
-        Integer numActiveTasks;
-        Integer numKilledTasks;
-        Long elapsedTimeInSeconds;
-        Long remainingTimeInSeconds;
-        Integer totalCores;
-        Long percentileTaskTime;
+        private final String applicationId;
+        private final CompletableFuture<ExecutorsSummary> executorsFuture;
+        private final CompletableFuture<List<Stage>> stagesFuture;
+        //null for stages without task summary, in the order of stages
+        private final CompletableFuture<List<Double>> percentilesFuture;
     }
 
-    @AllArgsConstructor
-    @Getter
-    class ExecutorsMeasurementValues{
+    private interface ResponseReader<T> {
 
-        Integer totalCores;
-        Long meanDurationTime;
+        T read(InputStream stream) throws IOException;
     }
 }
 
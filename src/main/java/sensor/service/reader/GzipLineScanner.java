@@ -0,0 +1,163 @@
+package sensor.service.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+import sensor.service.chooser.CompressedFiles;
+import sensor.service.chooser.FileFingerprints;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+/**
+ * Scans a gzip compressed file for lines while it is decompressed, nothing is inflated to disk. Positions
+ * are offsets in the uncompressed content. A compressed file is not written to anymore, so the last line
+ * is handed over even without a terminator. A file whose end does not match its gzip trailer - truncated, corrupted
+ * or made of several members - is marked finished when read to its end, so it is not chosen again.
+ */
+@Slf4j
+public class GzipLineScanner implements LineScanner {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    //an incomplete file modified within this time could still be written by the compressor
+    private static final long WRITE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path path;
+    private final InputStream in;
+    private final FileIdentity identity;
+    private final ByteCharSequence line = new ByteCharSequence();
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int lineNumber;
+    private long byteOffset;
+    private boolean finished;
+
+    public GzipLineScanner(Path path, FilePosition position) throws IOException {
+        this.path = path;
+        this.identity = FileFingerprints.identifyCompressed(path);
+        this.in = CompressedFiles.newInputStream(path);
+        this.lineNumber = position.getLineNumber();
+        this.byteOffset = skip(Math.max(position.getByteOffset(), 0));
+    }
+
+    @Override
+    public long scan(LineHandler lineHandler) throws Exception {
+        long linesCount = 0;
+        ByteBuffer view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        //buffer starts with the part of a line left from the previous block
+        int length = 0;
+        int read;
+        while ((read = read(length)) > 0) {
+            long bufferOffset = byteOffset;
+            int lineStart = 0;
+            int newline;
+            int searchFrom = length;
+            length += read;
+            while ((newline = MappedLineScanner.indexOfNewline(view, searchFrom, length)) >= 0) {
+                byteOffset = bufferOffset + newline + 1;
+                handleLine(lineHandler, view, lineStart, newline);
+                lineStart = newline + 1;
+                searchFrom = lineStart;
+                linesCount++;
+            }
+
+            length -= lineStart;
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, length);
+            } else if (length == buffer.length) {
+                //a line longer than the buffer needs a larger one
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        if (length > 0 && read == 0) {
+            byteOffset += length;
+            handleLine(lineHandler, view, 0, length);
+            linesCount++;
+        }
+        line.wrap(null, 0, 0);
+        finish(read == 0);
+        return linesCount;
+    }
+
+    //the position of a finished file is the finished offset, otherwise its trailer tells whether it was read fully
+    @Override
+    public FilePosition getPosition() {
+        return new FilePosition(lineNumber, finished ? CompressedFiles.FINISHED_OFFSET : byteOffset, identity);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    @Override
+    public FileIdentity getIdentity() {
+        return identity;
+    }
+
+    private void handleLine(LineHandler lineHandler, ByteBuffer view, int lineStart, int lineEnd) throws Exception {
+        int end = lineEnd > lineStart && view.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        line.wrap(view, lineStart, end - lineStart);
+        lineNumber++;
+        lineHandler.handleLine(line);
+    }
+
+    private void finish(boolean complete) throws IOException {
+        if (CompressedFiles.isFullyRead(path, byteOffset)) {
+            return;
+        }
+        if (!complete && System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() < WRITE_TIMEOUT) {
+            log.info("Compressed file {} is incomplete after {} bytes and still modified, reading it again later", path.toString(), byteOffset);
+            return;
+        }
+        log.warn("Compressed file {} read up to {} bytes does not match its gzip trailer, marking it finished", path.toString(), byteOffset);
+        finished = true;
+    }
+
+    //number of bytes read into the buffer from offset, 0 at the end of the file, -1 when the file ends unexpectedly
+    private int read(int offset) throws IOException {
+        try {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            return Math.max(read, 0);
+        } catch (EOFException | ZipException e) {
+            log.warn("Compressed file {} is incomplete or corrupted after {} bytes, skipping the rest: {}", path.toString(), byteOffset, e.getMessage());
+            return -1;
+        }
+    }
+
+    private long skip(long offset) throws IOException {
+        long skipped = 0;
+        long count;
+        try {
+            while (skipped < offset && (count = in.skip(offset - skipped)) > 0) {
+                skipped += count;
+            }
+        } catch (EOFException | ZipException e) {
+            log.warn("Compressed file {} is incomplete or corrupted after {} bytes: {}", path.toString(), skipped, e.getMessage());
+        }
+        if (skipped < offset) {
+            log.warn("Compressed file {} has {} bytes, less than {} read before", path.toString(), skipped, offset);
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,7 @@
+package sensor.service.reader;
+
+public interface LineHandler {
+
+    //line is a view valid only until the method returns
+    void handleLine(CharSequence line) throws Exception;
+}
@@ -0,0 +1,21 @@
+package sensor.service.reader;
+
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+
+import java.io.Closeable;
+
+public interface LineScanner extends Closeable {
+
+    //hands over all complete lines written since the last scan, returns number of lines
+    long scan(LineHandler lineHandler) throws Exception;
+
+    FilePosition getPosition();
+
+    //parts of the position, so it is not created for every line
+    int getLineNumber();
+
+    long getByteOffset();
+
+    FileIdentity getIdentity();
+}
@@ -0,0 +1,150 @@
+package sensor.service.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+import sensor.service.chooser.FileFingerprints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scans a file for lines by mapping it chunk by chunk, lines are handed over one at a time as views of the
+ * mapped memory, so the heap usage does not depend on the number of lines waiting to be read. While a chunk
+ * is scanned the next one is loaded in the background. A trailing line without a terminator is not handed
+ * over - it is still being written and will be read during the next scan.
+ */
+@Slf4j
+public class MappedLineScanner implements LineScanner {
+
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chunk-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final ByteCharSequence line = new ByteCharSequence();
+
+    private int lineNumber;
+    private long byteOffset;
+    private FileIdentity identity;
+    private Future<?> prefetch;
+
+    public MappedLineScanner(Path path, FilePosition position, int chunkSize) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.chunkSize = chunkSize;
+        this.lineNumber = position.getLineNumber();
+        this.byteOffset = position.getByteOffset();
+        this.identity = FileFingerprints.identify(path, channel);
+    }
+
+    @Override
+    public long scan(LineHandler lineHandler) throws Exception {
+        long size = channel.size();
+        long linesCount = 0;
+        long mapLength = chunkSize;
+
+        while (byteOffset < size) {
+            long chunkStart = byteOffset;
+            int length = (int) Math.min(mapLength, size - chunkStart);
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, length).order(ByteOrder.LITTLE_ENDIAN);
+            prefetch(chunkStart + length, size);
+
+            int lineStart = 0;
+            int newline;
+            while ((newline = indexOfNewline(chunk, lineStart, length)) >= 0) {
+                int lineEnd = newline > lineStart && chunk.get(newline - 1) == '\r' ? newline - 1 : newline;
+                line.wrap(chunk, lineStart, lineEnd - lineStart);
+                lineStart = newline + 1;
+                byteOffset = chunkStart + lineStart;
+                lineNumber++;
+                linesCount++;
+                lineHandler.handleLine(line);
+            }
+
+            if (chunkStart + length >= size) {
+                break;
+            }
+            //a line longer than the chunk needs a larger mapping
+            mapLength = lineStart == 0 ? Math.min(mapLength * 2, Integer.MAX_VALUE) : chunkSize;
+        }
+        line.wrap(null, 0, 0);
+
+        //fingerprint of a file opened while it was shorter covers all bytes available now
+        if (identity.getFingerprintLength() < FileFingerprints.FINGERPRINT_SIZE && size > identity.getFingerprintLength()) {
+            identity = FileFingerprints.identify(path, channel);
+        }
+        return linesCount;
+    }
+
+    @Override
+    public FilePosition getPosition() {
+        return new FilePosition(lineNumber, byteOffset, identity);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    @Override
+    public FileIdentity getIdentity() {
+        return identity;
+    }
+
+    private void prefetch(long position, long size) {
+        if (position >= size || (prefetch != null && !prefetch.isDone())) {
+            return;
+        }
+        long length = Math.min(chunkSize, size - position);
+        prefetch = PREFETCH_EXECUTOR.submit(() -> {
+            try {
+                channel.map(FileChannel.MapMode.READ_ONLY, position, length).load();
+            } catch (IOException e) {
+                log.debug("Prefetch of {} bytes from {} failed: {}", length, position, e.getMessage());
+            }
+        });
+    }
+
+    //compares 8 bytes at once, a byte equal to '\n' becomes 0 after xor and gets its high bit set in found
+    static int indexOfNewline(ByteBuffer chunk, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = chunk.getLong(i) ^ NEWLINES;
+            long found = ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (chunk.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
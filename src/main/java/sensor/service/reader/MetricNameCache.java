@@ -0,0 +1,31 @@
+package sensor.service.reader;
+
+/**
+ * Names of metrics parsed from lines, so a metric name repeated in every line becomes a string once. Entries
+ * are replaced on collisions. The cache is shared by reading threads without locking - an entry is an
+ * immutable string checked against the name before it is used.
+ */
+class MetricNameCache {
+
+    private static final int SIZE = 1024;
+
+    private final String[] names = new String[SIZE];
+
+    String get(CharSequence metricName) {
+        if (metricName instanceof String) {
+            return (String) metricName;
+        }
+        //same as String.hashCode for the ASCII names
+        int hash = 0;
+        for (int i = 0; i < metricName.length(); i++) {
+            hash = 31 * hash + metricName.charAt(i);
+        }
+        int index = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String name = names[index];
+        if (name == null || name.hashCode() != hash || !name.contentEquals(metricName)) {
+            name = metricName.toString();
+            names[index] = name;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,409 @@
+package sensor.service.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+import sensor.common.pojo.MetricPOJO;
+import sensor.service.chooser.FileChooser;
+import sensor.service.parser.MetricSink;
+import sensor.service.parser.StreamingLogParser;
+import sensor.service.sender.FlushTracker;
+import sensor.service.sender.MetricSender;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parsing and sending of lines read by {@link FileMetricReader} in separate stages connected by ring buffers,
+ * so reading goes on while a slow sender catches up, until the buffers are full. Every source file is assigned
+ * to one parsing and one sending thread, so its metrics are sent and its positions stored in the order of its
+ * lines. Senders convert metrics themselves, so conversion is done by the sending stage.
+ */
+@Slf4j
+class MetricPipeline implements Closeable {
+
+    private static final int INITIAL_LINE_SIZE = 256;
+
+    private final StreamingLogParser logParser;
+    private final MetricSender metricSender;
+    private final FileChooser fileChooser;
+    private final MetricNameCache metricNames;
+    private final int checkpointInterval;
+
+    private final List<RingBuffer<LineSlot>> lineBuffers = new ArrayList<>();
+    private final List<RingBuffer<MetricSlot>> metricBuffers = new ArrayList<>();
+    private final ExecutorService stageExecutor;
+
+    //first error of the current round, lines and metrics after it are skipped
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private volatile CountDownLatch roundLatch;
+    //max depth of every queue in the last round
+    private volatile int[] maxParserQueueDepths;
+    private volatile int[] maxSenderQueueDepths;
+
+    MetricPipeline(StreamingLogParser logParser, MetricSender metricSender, FileChooser fileChooser, MetricNameCache metricNames,
+                   int parserThreads, int senderThreads, int bufferSize, int checkpointInterval) {
+        this.logParser = logParser;
+        this.metricSender = metricSender;
+        this.fileChooser = fileChooser;
+        this.metricNames = metricNames;
+        this.checkpointInterval = checkpointInterval;
+
+        for (int i = 0; i < parserThreads; i++) {
+            lineBuffers.add(new RingBuffer<>(bufferSize, LineSlot::new));
+        }
+        for (int i = 0; i < senderThreads; i++) {
+            metricBuffers.add(new RingBuffer<>(bufferSize, MetricSlot::new));
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.stageExecutor = Executors.newFixedThreadPool(parserThreads + senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "metric-pipeline-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (RingBuffer<LineSlot> lineBuffer : lineBuffers) {
+            stageExecutor.execute(() -> parseLines(lineBuffer));
+        }
+        for (RingBuffer<MetricSlot> metricBuffer : metricBuffers) {
+            stageExecutor.execute(() -> sendMetrics(metricBuffer));
+        }
+        this.maxParserQueueDepths = new int[parserThreads];
+        this.maxSenderQueueDepths = new int[senderThreads];
+    }
+
+    //lines of files with the same partition go through the same threads
+    int getPartition(Object sourceFile) {
+        return sourceFile.hashCode() & Integer.MAX_VALUE;
+    }
+
+    //copies the line, as it is valid only until the scanner hands over the next one
+    void publishLine(int partition, String filePath, CharSequence line, LineScanner scanner) throws Exception {
+        throwFailure();
+        RingBuffer<LineSlot> lineBuffer = lineBuffers.get(partition % lineBuffers.size());
+        long sequence = lineBuffer.claim();
+        LineSlot slot = lineBuffer.get(sequence);
+        slot.type = SlotType.LINE;
+        slot.partition = partition;
+        slot.filePath = filePath;
+        slot.copyLine(line);
+        slot.lineNumber = scanner.getLineNumber();
+        slot.byteOffset = scanner.getByteOffset();
+        slot.identity = scanner.getIdentity();
+        lineBuffer.publish(sequence);
+    }
+
+    //position stored after metrics of all lines published before are sent
+    void publishPosition(int partition, String filePath, FilePosition position) throws InterruptedException {
+        RingBuffer<LineSlot> lineBuffer = lineBuffers.get(partition % lineBuffers.size());
+        long sequence = lineBuffer.claim();
+        LineSlot slot = lineBuffer.get(sequence);
+        slot.type = SlotType.POSITION;
+        slot.partition = partition;
+        slot.filePath = filePath;
+        slot.position = position;
+        lineBuffer.publish(sequence);
+        lineBuffer.flush();
+    }
+
+    //waits until everything published is sent, throws the first error of the round
+    void awaitRound() throws Exception {
+        CountDownLatch latch = new CountDownLatch(metricBuffers.size());
+        roundLatch = latch;
+        for (RingBuffer<LineSlot> lineBuffer : lineBuffers) {
+            long sequence = lineBuffer.claim();
+            lineBuffer.get(sequence).type = SlotType.BARRIER;
+            lineBuffer.publish(sequence);
+            lineBuffer.flush();
+        }
+        latch.await();
+        reportQueueDepth();
+
+        Exception exception = failure.getAndSet(null);
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    //lines waiting for every parser thread
+    int[] getParserQueueDepths() {
+        return lineBuffers.stream().mapToInt(RingBuffer::getDepth).toArray();
+    }
+
+    //metrics waiting for every sender thread
+    int[] getSenderQueueDepths() {
+        return metricBuffers.stream().mapToInt(RingBuffer::getDepth).toArray();
+    }
+
+    int[] getMaxParserQueueDepths() {
+        return maxParserQueueDepths.clone();
+    }
+
+    int[] getMaxSenderQueueDepths() {
+        return maxSenderQueueDepths.clone();
+    }
+
+    int getQueueCapacity() {
+        return lineBuffers.get(0).getCapacity();
+    }
+
+    private void throwFailure() throws Exception {
+        Exception exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void fail(Exception e) {
+        if (!failure.compareAndSet(null, e)) {
+            log.error("Error during processing metrics", e);
+        }
+    }
+
+    //a full buffer means the stage after it is the slowest one
+    private void reportQueueDepth() {
+        int capacity = getQueueCapacity();
+        int[] lineDepths = lineBuffers.stream().mapToInt(RingBuffer::resetMaxDepth).toArray();
+        int[] metricDepths = metricBuffers.stream().mapToInt(RingBuffer::resetMaxDepth).toArray();
+        maxParserQueueDepths = lineDepths;
+        maxSenderQueueDepths = metricDepths;
+        if (Arrays.stream(lineDepths).anyMatch(depth -> depth >= capacity) || Arrays.stream(metricDepths).anyMatch(depth -> depth >= capacity)) {
+            log.info("Pipeline queues were full, max depth of parser queues: {}, sender queues: {}, capacity: {}",
+                    Arrays.toString(lineDepths), Arrays.toString(metricDepths), capacity);
+        } else if (log.isDebugEnabled()) {
+            log.debug("Max depth of parser queues: {}, sender queues: {}", Arrays.toString(lineDepths), Arrays.toString(metricDepths));
+        }
+    }
+
+    private void parseLines(RingBuffer<LineSlot> lineBuffer) {
+        PipelineSink metricSink = new PipelineSink();
+        long next = 0;
+        try {
+            while (true) {
+                long last = lineBuffer.awaitPublished();
+                for (long sequence = next; sequence <= last; sequence++) {
+                    parseLine(lineBuffer.get(sequence), metricSink);
+                }
+                next = last + 1;
+                lineBuffer.release(last);
+                metricBuffers.forEach(RingBuffer::flush);
+            }
+        } catch (InterruptedException e) {
+            log.debug("Parser stage stopped");
+        }
+    }
+
+    private void parseLine(LineSlot slot, PipelineSink metricSink) throws InterruptedException {
+        switch (slot.type) {
+            case LINE:
+                if (failure.get() != null) {
+                    return;
+                }
+                metricSink.start(slot);
+                try {
+                    logParser.parseLine(slot.line, metricSink);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    fail(e);
+                } finally {
+                    metricSink.finish();
+                }
+                break;
+            case POSITION:
+                RingBuffer<MetricSlot> metricBuffer = metricBuffers.get(slot.partition % metricBuffers.size());
+                long sequence = metricBuffer.claim();
+                MetricSlot metricSlot = metricBuffer.get(sequence);
+                metricSlot.type = SlotType.POSITION;
+                metricSlot.filePath = slot.filePath;
+                metricSlot.position = slot.position;
+                metricBuffer.publish(sequence);
+                break;
+            case BARRIER:
+                for (RingBuffer<MetricSlot> buffer : metricBuffers) {
+                    long barrier = buffer.claim();
+                    buffer.get(barrier).type = SlotType.BARRIER;
+                    buffer.publish(barrier);
+                }
+                break;
+        }
+    }
+
+    private void sendMetrics(RingBuffer<MetricSlot> metricBuffer) {
+        SentPositions positions = new SentPositions();
+        long next = 0;
+        int barriers = 0;
+        try {
+            while (true) {
+                long last = metricBuffer.awaitPublished();
+                for (long sequence = next; sequence <= last; sequence++) {
+                    MetricSlot slot = metricBuffer.get(sequence);
+                    if (slot.type == SlotType.BARRIER) {
+                        //all parser threads passed the end of the round
+                        if (++barriers == lineBuffers.size()) {
+                            positions.store();
+                            barriers = 0;
+                            roundLatch.countDown();
+                        }
+                    } else if (failure.get() == null) {
+                        sendMetric(slot, positions);
+                    }
+                }
+                next = last + 1;
+                metricBuffer.release(last);
+            }
+        } catch (InterruptedException e) {
+            log.debug("Sender stage stopped");
+        }
+    }
+
+    private void sendMetric(MetricSlot slot, SentPositions positions) {
+        try {
+            if (slot.type == SlotType.METRIC) {
+                positions.flushTracker.sendMessage(new MetricPOJO(slot.metricName, slot.metricValue, slot.timestamp, slot.tags));
+            }
+            //position is stored after all metrics of a line are sent
+            if (slot.position != null) {
+                positions.add(slot.filePath, slot.position, slot.type == SlotType.POSITION);
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+
+    @Override
+    public void close() {
+        stageExecutor.shutdownNow();
+    }
+
+    private enum SlotType {
+        LINE, METRIC, POSITION, BARRIER
+    }
+
+    //line read from a file or a position to store
+    private static class LineSlot {
+
+        private SlotType type;
+        private int partition;
+        private String filePath;
+        private byte[] bytes = new byte[INITIAL_LINE_SIZE];
+        private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private final ByteCharSequence line = new ByteCharSequence();
+        private int lineNumber;
+        private long byteOffset;
+        private FileIdentity identity;
+        private FilePosition position;
+
+        //lines are bytes, as kept by the scanners
+        private void copyLine(CharSequence source) {
+            int length = source.length();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+                buffer = ByteBuffer.wrap(bytes);
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) source.charAt(i);
+            }
+            line.wrap(buffer, 0, length);
+        }
+    }
+
+    //metric of a line, with the position of the line when it is its last metric
+    private static class MetricSlot {
+
+        private SlotType type;
+        private String filePath;
+        private String metricName;
+        private double metricValue;
+        private long timestamp;
+        private Map<String, String> tags;
+        private FilePosition position;
+    }
+
+    //positions of lines sent by a sender thread, stored after the sender is flushed
+    private class SentPositions {
+
+        private final Map<String, FilePosition> positions = new LinkedHashMap<>();
+        //sender threads share the sender
+        private final FlushTracker flushTracker = new FlushTracker(metricSender);
+        private int lines;
+
+        private void add(String filePath, FilePosition position, boolean endOfFile) {
+            positions.put(filePath, position);
+            if (endOfFile || ++lines >= checkpointInterval) {
+                store();
+            }
+        }
+
+        private void store() {
+            try {
+                if (failure.get() != null) {
+                    flushTracker.reset();
+                } else if (!positions.isEmpty()) {
+                    flushTracker.flush();
+                    for (Map.Entry<String, FilePosition> position : positions.entrySet()) {
+                        fileChooser.updateFileIndex(position.getKey(), position.getValue());
+                    }
+                }
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                positions.clear();
+                lines = 0;
+            }
+        }
+    }
+
+    //publishes a metric when the next one arrives, so the position can be added to the last metric of a line
+    private class PipelineSink implements MetricSink {
+
+        private LineSlot lineSlot;
+        private RingBuffer<MetricSlot> metricBuffer;
+        private long pending = -1;
+
+        private void start(LineSlot lineSlot) {
+            this.lineSlot = lineSlot;
+            this.metricBuffer = metricBuffers.get(lineSlot.partition % metricBuffers.size());
+        }
+
+        @Override
+        public void accept(CharSequence metricName, double metricValue, long timestamp, Map<String, String> tags) throws Exception {
+            publishPending();
+            long sequence = metricBuffer.claim();
+            MetricSlot slot = metricBuffer.get(sequence);
+            slot.type = SlotType.METRIC;
+            slot.filePath = lineSlot.filePath;
+            slot.metricName = metricNames.get(metricName);
+            slot.metricValue = metricValue;
+            slot.timestamp = timestamp;
+            slot.tags = tags;
+            slot.position = null;
+            pending = sequence;
+        }
+
+        private void finish() {
+            if (pending >= 0 && failure.get() == null) {
+                metricBuffer.get(pending).position = new FilePosition(lineSlot.lineNumber, lineSlot.byteOffset, lineSlot.identity);
+            }
+            publishPending();
+        }
+
+        private void publishPending() {
+            if (pending >= 0) {
+                metricBuffer.publish(pending);
+                pending = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package sensor.service.reader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded buffer of preallocated slots between two stages of {@link MetricPipeline}. Producers claim a slot,
+ * fill it in place and publish it, the single consumer takes published slots in the order they were claimed
+ * and releases them for reuse. Claiming and publishing only touch atomic sequences, the lock is taken when a
+ * stage has to wait: a producer while the buffer is full, so a slow stage holds back the stages before it, and
+ * the consumer while nothing is published. A waiting consumer is woken up for a batch of slots or by
+ * {@link #flush()}, not for every slot, so the stages do not switch threads for every line.
+ */
+class RingBuffer<T> {
+
+    private final Object[] slots;
+    //sequence last published in every slot
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int signalBatch;
+
+    //next sequence to claim and next sequence to release
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private volatile boolean consumerWaiting;
+
+    //approximate, updated without synchronization
+    private volatile int maxDepth;
+
+    RingBuffer(int capacity, Supplier<T> slotFactory) {
+        int size = capacity <= 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.signalBatch = size / 4;
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotFactory.get();
+            published.set(i, -1);
+        }
+    }
+
+    //sequence of a free slot, waits while the buffer is full
+    long claim() throws InterruptedException {
+        long sequence = tail.getAndIncrement();
+        if (sequence - head >= slots.length) {
+            awaitFree(sequence);
+        }
+        int depth = (int) (sequence + 1 - head);
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+
+    void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        if (consumerWaiting && tail.get() - head >= signalBatch) {
+            signalConsumer();
+        }
+    }
+
+    //wakes up the consumer waiting for slots published before
+    void flush() {
+        if (consumerWaiting) {
+            signalConsumer();
+        }
+    }
+
+    //last sequence published without a gap after the last released one, waits for at least one
+    long awaitPublished() throws InterruptedException {
+        long next = head;
+        if (published.get((int) next & mask) != next) {
+            lock.lockInterruptibly();
+            try {
+                consumerWaiting = true;
+                while (published.get((int) next & mask) != next) {
+                    notEmpty.await();
+                }
+            } finally {
+                consumerWaiting = false;
+                lock.unlock();
+            }
+        }
+        long last = next;
+        while (published.get((int) (last + 1) & mask) == last + 1) {
+            last++;
+        }
+        return last;
+    }
+
+    //slots up to the sequence can be claimed again
+    void release(long last) {
+        head = last + 1;
+        if (waitingProducers.get() > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    //claimed slots not released yet, above the capacity while producers wait
+    int getDepth() {
+        return (int) (tail.get() - head);
+    }
+
+    //highest number of claimed slots since the previous call
+    int resetMaxDepth() {
+        int depth = maxDepth;
+        maxDepth = 0;
+        return depth;
+    }
+
+    private void awaitFree(long sequence) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waitingProducers.incrementAndGet();
+            while (sequence - head >= slots.length) {
+                notFull.await();
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private void signalConsumer() {
+        lock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package sensor.service.reader;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the fields needed from responses of the Spark REST API token by token, straight from the response stream,
+ * so no response is kept as a string or a tree. Fields not needed, nested ones too, are skipped.
+ */
+class SparkJsonReader {
+
+    //thread safe once configured
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private SparkJsonReader() {
+    }
+
+    //ids of the applications listed
+    static List<String> readApplicationIds(InputStream stream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(stream)) {
+            expect(parser, JsonToken.START_ARRAY);
+            List<String> ids = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("id".equals(field)) {
+                        ids.add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            return ids;
+        }
+    }
+
+    //attempts of stages listed
+    static List<Stage> readStages(InputStream stream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(stream)) {
+            expect(parser, JsonToken.START_ARRAY);
+            List<Stage> stages = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                stages.add(readStage(parser));
+            }
+            return stages;
+        }
+    }
+
+    private static Stage readStage(JsonParser parser) throws IOException {
+        int stageId = 0;
+        int attemptId = 0;
+        int numTasks = 0;
+        int numCompleteTasks = 0;
+        int numFailedTasks = 0;
+        int numActiveTasks = 0;
+        int numKilledTasks = 0;
+        String submissionTime = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "stageId":
+                    stageId = parser.getIntValue();
+                    break;
+                case "attemptId":
+                    attemptId = parser.getIntValue();
+                    break;
+                case "numTasks":
+                    numTasks = parser.getIntValue();
+                    break;
+                case "numCompleteTasks":
+                    numCompleteTasks = parser.getIntValue();
+                    break;
+                case "numFailedTasks":
+                    numFailedTasks = parser.getIntValue();
+                    break;
+                case "numActiveTasks":
+                    numActiveTasks = parser.getIntValue();
+                    break;
+                case "numKilledTasks":
+                    numKilledTasks = parser.getIntValue();
+                    break;
+                case "submissionTime":
+                    submissionTime = parser.getText();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Stage(stageId, attemptId, numTasks, numCompleteTasks, numFailedTasks, numActiveTasks, numKilledTasks, submissionTime);
+    }
+
+    //cores and mean task duration of executors, the first one listed is the driver and is omitted
+    static ExecutorsSummary readExecutors(InputStream stream) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(stream)) {
+            expect(parser, JsonToken.START_ARRAY);
+            int totalCores = 0;
+            int executorsWithTasks = 0;
+            long totalMeanDurationTimes = 0;
+            for (int executor = 0; parser.nextToken() == JsonToken.START_OBJECT; executor++) {
+                int cores = 0;
+                long totalDuration = 0;
+                int completedTasks = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "totalCores":
+                            cores = parser.getIntValue();
+                            break;
+                        case "totalDuration":
+                            totalDuration = parser.getLongValue();
+                            break;
+                        case "completedTasks":
+                            completedTasks = parser.getIntValue();
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                if (executor == 0) {
+                    continue;
+                }
+                totalCores += cores;
+                //executors which did not perform any task are omitted from the mean
+                if (completedTasks != 0) {
+                    executorsWithTasks++;
+                    totalMeanDurationTimes += totalDuration / (1000L * completedTasks);
+                }
+            }
+            return new ExecutorsSummary(totalCores, executorsWithTasks == 0 ? 0 : totalMeanDurationTimes / executorsWithTasks);
+        }
+    }
+
+    //first value of the field in milliseconds, null when the field is missing or empty
+    static Double readFirstQuantile(InputStream stream, String fieldName) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(stream)) {
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken first = parser.nextToken();
+                    return first == JsonToken.VALUE_NUMBER_FLOAT || first == JsonToken.VALUE_NUMBER_INT ? parser.getDoubleValue() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.nextToken() != token) {
+            throw new IOException(String.format("Expected %s in JSON response, found %s", token, parser.getCurrentToken()));
+        }
+    }
+
+    @AllArgsConstructor
+    @Getter
+    static class Stage {
+
+        private final int stageId;
+        private final int attemptId;
+        private final int numTasks;
+        private final int numCompleteTasks;
+        private final int numFailedTasks;
+        private final int numActiveTasks;
+        private final int numKilledTasks;
+        private final String submissionTime;
+    }
+
+    @AllArgsConstructor
+    @Getter
+    static class ExecutorsSummary {
+
+        private final int totalCores;
+        //mean over executors which performed any task of their mean task durations in seconds
+        private final long meanDurationTime;
+    }
+}
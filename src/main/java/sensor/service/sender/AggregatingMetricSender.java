@@ -0,0 +1,556 @@
+package sensor.service.sender;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.enums.AggregationOutput;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregates metrics of every series - metric name and tags - in windows of metric timestamps and sends the
+ * outputs of every window instead of the metrics. A window is split into panes of the slide length, so windows
+ * are tumbling when the slide equals the window and sliding when it is shorter. A window is sent when a metric
+ * of the series arrives after its end, with the timestamp of the window start. Every series has its own event
+ * time, so series of a source read behind the others are aggregated like the current ones. Metrics out of order
+ * are added to windows of the series still open, those older than all its open windows are dropped. Outputs are
+ * sent under the metric name when there is one output, as {@code <metric name>.<output>} when there are more.
+ * <p>
+ * Percentiles are estimated by a {@link QuantileSketch} of every pane, merged for the window, and sent as
+ * {@code <metric name>.p<percentile>} with the decimal point replaced by '_', like {@code p99_9}.
+ * <p>
+ * Metrics of windows still open are not sent by {@link #flush()}, they are sent by the next metrics of their
+ * series. With a state file, panes of open windows are written to it by {@link #flush()} and on closing, before
+ * positions of their lines are stored, and read back when the sender is created, so open windows outlive a crash
+ * or a restart, metrics of lines read again after a crash may be counted twice. Without it open windows are sent
+ * when the sender is closed. A series without metrics for the window and the idle time of the clock has its
+ * windows sent by {@link #flush()} and is removed.
+ * <p>
+ * When sending or flushing downstream fails, or metrics are dropped downstream, open windows are set back to
+ * those of the last successful flush, as lines of metrics passed since are read again from their stored positions.
+ * Series are not removed as idle until a flush succeeds again.
+ */
+@Slf4j
+public class AggregatingMetricSender implements MetricSender, Closeable {
+
+    private static final long LATE_LOG_INTERVAL = 60_000;
+    //relative error of percentiles below 0.4%
+    private static final int SKETCH_PRECISION = 7;
+    private static final int STATE_VERSION = 2;
+    //with the watermark and the last expired pane, which are not used anymore
+    private static final int WATERMARK_STATE_VERSION = 1;
+
+    private final MetricSender metricSender;
+    private final long slide;
+    private final int panes;
+    //window and idle time of the clock after which a series without metrics is removed
+    private final long idleTime;
+    //current time in units of metric timestamps
+    private final LongSupplier clock;
+    private final AggregationOutput[] outputs;
+    private final String[] outputSuffixes;
+    //from 0 to 1
+    private final double[] quantiles;
+    private final String[] quantileSuffixes;
+    //panes of a window merged, null without percentiles
+    private final QuantileSketch windowSketch;
+    //null when open windows are not stored
+    private final Path stateFile;
+
+    private final Map<String, Map<Map<String, String>, Series>> series = new HashMap<>();
+    private long lateCount;
+    private long lastLateLogTime;
+    //since the state was stored
+    private boolean changed;
+    //series of the last successful flush, written to the state file
+    private byte[] flushedState;
+    //failure generation downstream when open windows were last flushed or set back
+    private long knownGeneration;
+    //since sending or flushing downstream failed until a flush succeeds
+    private boolean failing;
+    //open windows set back after an exception, metrics of other callers were dropped with them
+    private volatile long failureGeneration;
+
+    //window, slide and idle time in units of metric timestamps, the window is a multiple of the slide, percentiles from 0 to 100
+    public AggregatingMetricSender(MetricSender metricSender, long window, long slide, long idleTime, TimeUnit timestampUnit,
+                                   List<AggregationOutput> outputs, List<Double> percentiles, String stateFile) {
+        this(metricSender, window, slide, idleTime, () -> timestampUnit.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS),
+                outputs, percentiles, stateFile);
+    }
+
+    AggregatingMetricSender(MetricSender metricSender, long window, long slide, long idleTime, LongSupplier clock,
+                            List<AggregationOutput> outputs, List<Double> percentiles, String stateFile) {
+        if (slide <= 0 || window < slide || window % slide != 0) {
+            throw new IllegalArgumentException(String.format("Window %s has to be a multiple of slide %s", window, slide));
+        }
+        if (idleTime < 0) {
+            throw new IllegalArgumentException("Idle time must not be negative: " + idleTime);
+        }
+        if (outputs.isEmpty() && percentiles.isEmpty()) {
+            throw new IllegalArgumentException("At least one output of aggregation must be set");
+        }
+        this.metricSender = metricSender;
+        this.slide = slide;
+        this.panes = (int) (window / slide);
+        this.idleTime = window + idleTime;
+        this.clock = clock;
+        this.outputs = outputs.toArray(new AggregationOutput[0]);
+        boolean singleOutput = outputs.size() + percentiles.size() == 1;
+        this.outputSuffixes = new String[this.outputs.length];
+        for (int i = 0; i < this.outputs.length; i++) {
+            outputSuffixes[i] = singleOutput ? "" : "." + this.outputs[i].name().toLowerCase();
+        }
+        this.quantiles = new double[percentiles.size()];
+        this.quantileSuffixes = new String[percentiles.size()];
+        for (int i = 0; i < quantiles.length; i++) {
+            double percentile = percentiles.get(i);
+            if (!(percentile > 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile must be greater than 0 and at most 100: " + percentile);
+            }
+            quantiles[i] = percentile / 100;
+            String name = BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString().replace('.', '_');
+            quantileSuffixes[i] = singleOutput ? "" : ".p" + name;
+        }
+        this.windowSketch = quantiles.length > 0 ? new QuantileSketch(SKETCH_PRECISION) : null;
+        this.stateFile = stateFile == null ? null : Paths.get(stateFile);
+        restoreState();
+        this.flushedState = writeState();
+        this.knownGeneration = metricSender.getFailureGeneration();
+    }
+
+    @Override
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        setBackAfterDroppedMetrics();
+        try {
+            add(metricPOJO);
+        } catch (Exception e) {
+            setBack(e);
+            throw e;
+        }
+    }
+
+    private void add(MetricPOJO metricPOJO) throws Exception {
+        long pane = Math.floorDiv(metricPOJO.getTimestamp(), slide);
+        Series metricSeries = series.computeIfAbsent(metricPOJO.getMetricName(), name -> new HashMap<>())
+                .computeIfAbsent(metricPOJO.getTags(), tags -> new Series(metricPOJO.getMetricName(), tags, panes, windowSketch != null));
+        if (metricSeries.currentPane == Long.MIN_VALUE) {
+            metricSeries.currentPane = pane;
+            metricSeries.firstPane = pane;
+        } else if (pane <= metricSeries.currentPane - panes) {
+            countLate();
+            return;
+        } else if (pane > metricSeries.currentPane) {
+            advance(metricSeries, pane);
+        }
+        changed = true;
+        metricSeries.lastAddTime = clock.getAsLong();
+        metricSeries.add((int) Math.floorMod(pane, (long) panes), metricPOJO.getMetricValue(), metricPOJO.getTimestamp());
+    }
+
+    //windows of series idle for the idle time of the clock are sent too, open windows are stored after those sent are flushed
+    @Override
+    public synchronized void flush() throws Exception {
+        setBackAfterDroppedMetrics();
+        try {
+            if (!failing) {
+                expireIdleSeries();
+            }
+            metricSender.flush();
+        } catch (Exception e) {
+            setBack(e);
+            throw e;
+        }
+        failing = false;
+        knownGeneration = metricSender.getFailureGeneration();
+        storeState();
+    }
+
+    @Override
+    public long getFailureGeneration() {
+        return failureGeneration + metricSender.getFailureGeneration();
+    }
+
+    //metrics dropped downstream may include windows sent since the last flush
+    private void setBackAfterDroppedMetrics() throws IOException {
+        long generation = metricSender.getFailureGeneration();
+        if (generation != knownGeneration) {
+            knownGeneration = generation;
+            log.warn("Metrics were dropped by the sender, open windows are set back to the last flush");
+            setBack();
+        }
+    }
+
+    private void setBack(Exception cause) throws IOException {
+        log.warn("Error by sending windows of metrics, open windows are set back to the last flush: {}", cause.getMessage());
+        failureGeneration++;
+        knownGeneration = metricSender.getFailureGeneration();
+        setBack();
+    }
+
+    //lines of metrics passed since the last flush are read again, series are not idle before they are
+    private void setBack() throws IOException {
+        failing = true;
+        series.clear();
+        readState(new DataInputStream(new ByteArrayInputStream(flushedState)));
+        changed = false;
+    }
+
+    //windows of series without metrics for the window and the idle time are sent, the series are removed
+    private void expireIdleSeries() throws Exception {
+        long lastIdleTime = clock.getAsLong() - idleTime;
+        Iterator<Map<Map<String, String>, Series>> names = series.values().iterator();
+        while (names.hasNext()) {
+            Map<Map<String, String>, Series> metricSeries = names.next();
+            Iterator<Series> tagSeries = metricSeries.values().iterator();
+            while (tagSeries.hasNext()) {
+                Series idleSeries = tagSeries.next();
+                if (idleSeries.lastAddTime <= lastIdleTime) {
+                    //all windows with its panes
+                    advance(idleSeries, idleSeries.currentPane + panes);
+                    tagSeries.remove();
+                    changed = true;
+                }
+            }
+            if (metricSeries.isEmpty()) {
+                names.remove();
+            }
+        }
+    }
+
+    //sends windows ending before the pane, panes leaving the window are cleared for reuse
+    private void advance(Series metricSeries, long pane) throws Exception {
+        long current = metricSeries.currentPane;
+        for (int i = 0; i < panes && current < pane; i++) {
+            //sliding windows starting before the first metric of the series are not complete
+            if (current - panes + 1 >= metricSeries.firstPane) {
+                sendWindow(metricSeries, current);
+            }
+            current++;
+            metricSeries.clear((int) Math.floorMod(current, (long) panes));
+        }
+        //all panes are empty after a gap longer than the window
+        metricSeries.currentPane = pane;
+    }
+
+    //window ending with the pane
+    private void sendWindow(Series metricSeries, long lastPane) throws Exception {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double last = Double.NaN;
+        long lastTimestamp = Long.MIN_VALUE;
+        if (windowSketch != null) {
+            windowSketch.clear();
+        }
+        for (int i = 0; i < panes; i++) {
+            if (metricSeries.counts[i] == 0) {
+                continue;
+            }
+            if (windowSketch != null) {
+                windowSketch.merge(metricSeries.sketches[i]);
+            }
+            count += metricSeries.counts[i];
+            sum += metricSeries.sums[i];
+            min = Math.min(min, metricSeries.mins[i]);
+            max = Math.max(max, metricSeries.maxs[i]);
+            if (metricSeries.lastTimestamps[i] >= lastTimestamp) {
+                lastTimestamp = metricSeries.lastTimestamps[i];
+                last = metricSeries.lasts[i];
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        long windowStart = (lastPane - panes + 1) * slide;
+        for (int i = 0; i < outputs.length; i++) {
+            double value;
+            switch (outputs[i]) {
+                case MIN:
+                    value = min;
+                    break;
+                case MAX:
+                    value = max;
+                    break;
+                case AVG:
+                    value = sum / count;
+                    break;
+                case SUM:
+                    value = sum;
+                    break;
+                case COUNT:
+                    value = count;
+                    break;
+                case LAST:
+                    value = last;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown output of aggregation " + outputs[i]);
+            }
+            metricSender.sendMessage(new MetricPOJO(metricSeries.metricName + outputSuffixes[i], value, windowStart, metricSeries.tags));
+        }
+        for (int i = 0; i < quantiles.length; i++) {
+            metricSender.sendMessage(new MetricPOJO(metricSeries.metricName + quantileSuffixes[i], windowSketch.quantile(quantiles[i]),
+                    windowStart, metricSeries.tags));
+        }
+    }
+
+    private void countLate() {
+        lateCount++;
+        long now = System.currentTimeMillis();
+        if (now - lastLateLogTime >= LATE_LOG_INTERVAL) {
+            log.warn("{} metrics dropped as they arrived after their windows were sent", lateCount);
+            lastLateLogTime = now;
+            lateCount = 0;
+        }
+    }
+
+    //windows still open are stored, or sent without a state file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            try {
+                if (stateFile == null) {
+                    for (Map<Map<String, String>, Series> metricSeries : series.values()) {
+                        for (Series tagSeries : metricSeries.values()) {
+                            sendWindow(tagSeries, tagSeries.currentPane);
+                        }
+                    }
+                    series.clear();
+                } else if (!failing) {
+                    expireIdleSeries();
+                }
+                metricSender.flush();
+                storeState();
+            } catch (Exception e) {
+                log.error("Error by sending open windows of metrics", e);
+            }
+        }
+        if (metricSender instanceof Closeable) {
+            ((Closeable) metricSender).close();
+        }
+    }
+
+    //panes of open windows are kept for setting them back and written to a temporary file moved over the state file,
+    //so a crash leaves the previous state
+    private void storeState() throws IOException {
+        if (!changed) {
+            return;
+        }
+        flushedState = writeState();
+        changed = false;
+        if (stateFile == null) {
+            return;
+        }
+        Path temporaryPath = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.write(temporaryPath, flushedState);
+        Files.move(temporaryPath, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private byte[] writeState() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(STATE_VERSION);
+            out.writeLong(slide);
+            out.writeInt(panes);
+            out.writeBoolean(windowSketch != null);
+            out.writeInt(series.size());
+            for (Map.Entry<String, Map<Map<String, String>, Series>> metricSeries : series.entrySet()) {
+                out.writeUTF(metricSeries.getKey());
+                out.writeInt(metricSeries.getValue().size());
+                for (Series tagSeries : metricSeries.getValue().values()) {
+                    tagSeries.writeTo(out);
+                }
+            }
+        } catch (IOException e) {
+            //not thrown by an array
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    //state stored with other window settings or broken is not restored
+    private void restoreState() {
+        if (stateFile == null || Files.notExists(stateFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            int seriesCount = readState(in);
+            if (seriesCount < 0) {
+                log.warn("Open windows in {} were stored with other settings of aggregation, they are not restored", stateFile);
+                return;
+            }
+            log.info("Open windows of {} series restored from {}", seriesCount, stateFile);
+        } catch (IOException e) {
+            series.clear();
+            log.warn("Open windows in {} could not be restored: {}", stateFile, e.getMessage());
+        }
+    }
+
+    //number of series read or -1 when they were written with other settings, series are idle from now
+    private int readState(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != STATE_VERSION && version != WATERMARK_STATE_VERSION || in.readLong() != slide || in.readInt() != panes
+                || in.readBoolean() != (windowSketch != null)) {
+            return -1;
+        }
+        if (version == WATERMARK_STATE_VERSION) {
+            in.readLong();
+            in.readLong();
+        }
+        Map<String, Map<Map<String, String>, Series>> storedSeries = new HashMap<>();
+        int seriesCount = 0;
+        long now = clock.getAsLong();
+        for (int names = in.readInt(); names > 0; names--) {
+            String metricName = in.readUTF();
+            Map<Map<String, String>, Series> metricSeries = new HashMap<>();
+            for (int tagSeries = in.readInt(); tagSeries > 0; tagSeries--) {
+                Series restored = Series.readFrom(in, metricName, panes, windowSketch != null);
+                restored.lastAddTime = now;
+                metricSeries.put(restored.tags, restored);
+                seriesCount++;
+            }
+            storedSeries.put(metricName, metricSeries);
+        }
+        series.putAll(storedSeries);
+        return seriesCount;
+    }
+
+    //panes of the current window, the pane of a timestamp is at its pane number modulo the number of panes
+    private static class Series {
+
+        private final String metricName;
+        private final Map<String, String> tags;
+
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+        private final double[] lasts;
+        private final long[] lastTimestamps;
+        //null without percentiles
+        private final QuantileSketch[] sketches;
+        private long currentPane = Long.MIN_VALUE;
+        private long firstPane;
+        //clock when the last metric was added, not stored
+        private long lastAddTime;
+
+        Series(String metricName, Map<String, String> tags, int panes, boolean withSketches) {
+            this.metricName = metricName;
+            this.tags = tags;
+            this.counts = new long[panes];
+            this.sums = new double[panes];
+            this.mins = new double[panes];
+            this.maxs = new double[panes];
+            this.lasts = new double[panes];
+            this.lastTimestamps = new long[panes];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+            this.sketches = withSketches ? new QuantileSketch[panes] : null;
+            if (withSketches) {
+                for (int i = 0; i < panes; i++) {
+                    sketches[i] = new QuantileSketch(SKETCH_PRECISION);
+                }
+            }
+        }
+
+        void add(int pane, double value, long timestamp) {
+            counts[pane]++;
+            sums[pane] += value;
+            mins[pane] = Math.min(mins[pane], value);
+            maxs[pane] = Math.max(maxs[pane], value);
+            if (timestamp >= lastTimestamps[pane] || counts[pane] == 1) {
+                lastTimestamps[pane] = timestamp;
+                lasts[pane] = value;
+            }
+            if (sketches != null) {
+                sketches[pane].add(value);
+            }
+        }
+
+        //panes with metrics only
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(tags == null ? -1 : tags.size());
+            if (tags != null) {
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    out.writeUTF(tag.getKey());
+                    out.writeUTF(tag.getValue());
+                }
+            }
+            out.writeLong(currentPane);
+            out.writeLong(firstPane);
+            for (int pane = 0; pane < counts.length; pane++) {
+                out.writeLong(counts[pane]);
+                if (counts[pane] == 0) {
+                    continue;
+                }
+                out.writeDouble(sums[pane]);
+                out.writeDouble(mins[pane]);
+                out.writeDouble(maxs[pane]);
+                out.writeDouble(lasts[pane]);
+                out.writeLong(lastTimestamps[pane]);
+                if (sketches != null) {
+                    sketches[pane].writeTo(out);
+                }
+            }
+        }
+
+        static Series readFrom(DataInputStream in, String metricName, int panes, boolean withSketches) throws IOException {
+            int tagsCount = in.readInt();
+            Map<String, String> tags = null;
+            if (tagsCount >= 0) {
+                tags = new HashMap<>(2 * tagsCount);
+                for (int i = 0; i < tagsCount; i++) {
+                    tags.put(in.readUTF(), in.readUTF());
+                }
+            }
+            Series series = new Series(metricName, tags, panes, withSketches);
+            series.currentPane = in.readLong();
+            series.firstPane = in.readLong();
+            for (int pane = 0; pane < panes; pane++) {
+                series.counts[pane] = in.readLong();
+                if (series.counts[pane] == 0) {
+                    continue;
+                }
+                series.sums[pane] = in.readDouble();
+                series.mins[pane] = in.readDouble();
+                series.maxs[pane] = in.readDouble();
+                series.lasts[pane] = in.readDouble();
+                series.lastTimestamps[pane] = in.readLong();
+                if (withSketches) {
+                    series.sketches[pane].readFrom(in);
+                }
+            }
+            return series;
+        }
+
+        void clear(int pane) {
+            counts[pane] = 0;
+            sums[pane] = 0;
+            mins[pane] = Double.POSITIVE_INFINITY;
+            maxs[pane] = Double.NEGATIVE_INFINITY;
+            if (sketches != null) {
+                sketches[pane].clear();
+            }
+        }
+    }
+}
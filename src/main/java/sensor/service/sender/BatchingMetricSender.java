@@ -0,0 +1,118 @@
+package sensor.service.sender;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects metrics and hands them to the sender as a batch when there are batch size of them or batch time
+ * has passed, whichever comes first. A batch which failed to be sent in the background is reported by the
+ * next {@link #flush()}, so readers do not store positions of lines whose metrics were not sent. Every dropped
+ * batch increases the failure generation, so callers sharing the sender whose metrics were in it, but who did
+ * not get the exception, do not store their positions either.
+ */
+@Slf4j
+public class BatchingMetricSender implements MetricSender, Closeable {
+
+    private final MetricSender metricSender;
+    private final int batchSize;
+
+    private List<MetricPOJO> batch;
+    private Exception failure;
+    //batches dropped by this sender, added to the generation of the sender below
+    private volatile long failureGeneration;
+    private final ScheduledExecutorService flushExecutor;
+
+    public BatchingMetricSender(MetricSender metricSender, int batchSize, long batchTime) {
+        this.metricSender = metricSender;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metric-batch-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushInBackground, batchTime, batchTime, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        batch.add(metricPOJO);
+        if (batch.size() >= batchSize) {
+            sendCollected();
+        }
+    }
+
+    @Override
+    public synchronized void sendBatch(Collection<MetricPOJO> metrics) throws Exception {
+        batch.addAll(metrics);
+        if (batch.size() >= batchSize) {
+            sendCollected();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws Exception {
+        Exception exception = failure;
+        failure = null;
+        if (exception != null) {
+            throw exception;
+        }
+        sendCollected();
+        metricSender.flush();
+    }
+
+    @Override
+    public long getFailureGeneration() {
+        return failureGeneration + metricSender.getFailureGeneration();
+    }
+
+    private synchronized void flushInBackground() {
+        try {
+            sendCollected();
+            metricSender.flush();
+        } catch (Exception e) {
+            log.error("Error by sending batch of metrics", e);
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    //a batch that failed is dropped, its lines are read again from the stored positions
+    private void sendCollected() throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<MetricPOJO> metrics = batch;
+        batch = new ArrayList<>(batchSize);
+        log.debug("Sending batch of {} metrics", metrics.size());
+        try {
+            metricSender.sendBatch(metrics);
+        } catch (Exception e) {
+            failureGeneration++;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushExecutor.shutdownNow();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error by sending last batch of metrics", e);
+        }
+        if (metricSender instanceof Closeable) {
+            ((Closeable) metricSender).close();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package sensor.service.sender;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends a metric of a series - metric name and tags - only when its value differs from the last value sent by more
+ * than the deadband of the metric name, or when the heartbeat passed since the last metric sent, so slowly changing
+ * series are not sent again on every read. A deadband is absolute, like {@code 0.5}, or relative to the last value
+ * sent, like {@code 5%}, 0 sends every change. Deadbands are set per metric name, {@code *} applies to metric names
+ * not set, metrics of names without a deadband are sent as they are.
+ * <p>
+ * Last values are forgotten when sending fails or metrics are dropped downstream, as they may not have reached the
+ * sink, so the next metric of every series is sent. A series without metrics for the idle time of the clock is
+ * removed, its next metric is sent.
+ */
+@Slf4j
+public class DeadbandMetricSender implements MetricSender, Closeable {
+
+    public static final String ANY_METRIC_NAME = "*";
+
+    private final MetricSender metricSender;
+    private final long heartbeat;
+    private final Map<String, Deadband> deadbands = new HashMap<>();
+    private final Deadband defaultDeadband;
+    //milliseconds
+    private final long idleTime;
+    private final LongSupplier clock;
+
+    private long suppressedCount;
+    private long sentCount;
+    //failure generation downstream when last values were last forgotten
+    private long knownGeneration;
+    private long lastExpireTime;
+
+    //deadbands as numbers or percents, heartbeat in units of metric timestamps, 0 - no heartbeat, idle time in milliseconds
+    public DeadbandMetricSender(MetricSender metricSender, Map<String, String> deadbands, long heartbeat, long idleTime) {
+        this(metricSender, deadbands, heartbeat, idleTime, System::currentTimeMillis);
+    }
+
+    DeadbandMetricSender(MetricSender metricSender, Map<String, String> deadbands, long heartbeat, long idleTime, LongSupplier clock) {
+        this.metricSender = metricSender;
+        this.heartbeat = heartbeat;
+        this.idleTime = idleTime;
+        this.clock = clock;
+        this.knownGeneration = metricSender.getFailureGeneration();
+        this.lastExpireTime = clock.getAsLong();
+        for (Map.Entry<String, String> deadband : deadbands.entrySet()) {
+            String value = deadband.getValue().trim();
+            boolean relative = value.endsWith("%");
+            double width = Double.parseDouble(relative ? value.substring(0, value.length() - 1).trim() : value);
+            if (!(width >= 0)) {
+                throw new IllegalArgumentException(String.format("Deadband %s of %s must not be negative", value, deadband.getKey()));
+            }
+            this.deadbands.put(deadband.getKey(), new Deadband(relative ? 0 : width, relative ? width / 100 : 0));
+        }
+        this.defaultDeadband = this.deadbands.remove(ANY_METRIC_NAME);
+    }
+
+    @Override
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        long now = clock.getAsLong();
+        forgetAfterDroppedMetrics();
+        expireIdleSeries(now);
+        Deadband deadband = deadbands.get(metricPOJO.getMetricName());
+        if (deadband == null && defaultDeadband != null) {
+            deadband = defaultDeadband.forName(metricPOJO.getMetricName());
+        }
+        if (deadband == null) {
+            metricSender.sendMessage(metricPOJO);
+            return;
+        }
+        if (deadband.pass(metricPOJO.getTags(), metricPOJO.getMetricValue(), metricPOJO.getTimestamp(), heartbeat, now)) {
+            try {
+                metricSender.sendMessage(metricPOJO);
+            } catch (Exception e) {
+                forget();
+                throw e;
+            }
+            sentCount++;
+        } else {
+            suppressedCount++;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws Exception {
+        forgetAfterDroppedMetrics();
+        try {
+            metricSender.flush();
+        } catch (Exception e) {
+            forget();
+            throw e;
+        }
+        forgetAfterDroppedMetrics();
+    }
+
+    private void forgetAfterDroppedMetrics() {
+        long generation = metricSender.getFailureGeneration();
+        if (generation != knownGeneration) {
+            forget();
+        }
+    }
+
+    //values sent since the last flush may not have reached the sink, so next values are sent whatever they are
+    private void forget() {
+        knownGeneration = metricSender.getFailureGeneration();
+        deadbands.values().forEach(Deadband::clear);
+        if (defaultDeadband != null) {
+            defaultDeadband.clear();
+        }
+        log.info("Last values sent are forgotten after an error of the sender");
+    }
+
+    //at most once in the idle time, so series stay for up to twice the idle time
+    private void expireIdleSeries(long now) {
+        if (now - lastExpireTime < idleTime) {
+            return;
+        }
+        lastExpireTime = now;
+        long lastIdleTime = now - idleTime;
+        for (Deadband deadband : deadbands.values()) {
+            deadband.expire(lastIdleTime);
+        }
+        if (defaultDeadband != null) {
+            defaultDeadband.expire(lastIdleTime);
+        }
+    }
+
+    @Override
+    public long getFailureGeneration() {
+        return metricSender.getFailureGeneration();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            log.info("{} metrics sent, {} metrics suppressed within deadbands", sentCount, suppressedCount);
+        }
+        if (metricSender instanceof Closeable) {
+            ((Closeable) metricSender).close();
+        }
+    }
+
+    //last values sent of the series of a metric name, in an open addressing table of tags
+    private static class Deadband {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final double absolute;
+        //fraction of the last value sent
+        private final double relative;
+        //deadbands of names matched by *
+        private Map<String, Deadband> names;
+
+        private Object[] keys = new Object[INITIAL_CAPACITY];
+        private double[] lastValues = new double[INITIAL_CAPACITY];
+        private long[] lastTimestamps = new long[INITIAL_CAPACITY];
+        //clock of the last metric, sent or not
+        private long[] lastSeenTimes = new long[INITIAL_CAPACITY];
+        private int size;
+
+        Deadband(double absolute, double relative) {
+            this.absolute = absolute;
+            this.relative = relative;
+        }
+
+        Deadband forName(String metricName) {
+            if (names == null) {
+                names = new HashMap<>();
+            }
+            return names.computeIfAbsent(metricName, name -> new Deadband(absolute, relative));
+        }
+
+        //true when the value is sent, it becomes the last value then
+        boolean pass(Map<String, String> tags, double value, long timestamp, long heartbeat, long now) {
+            Object key = tags == null ? Deadband.class : tags;
+            int slot = slot(key);
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                store(slot, value, timestamp);
+                lastSeenTimes[slot] = now;
+                if (++size * 2 > keys.length) {
+                    resize(keys.length * 2, Long.MIN_VALUE);
+                }
+                return true;
+            }
+            lastSeenTimes[slot] = now;
+            double lastValue = lastValues[slot];
+            boolean changed = Double.isNaN(value) || Double.isNaN(lastValue)
+                    ? Double.isNaN(value) != Double.isNaN(lastValue)
+                    : Math.abs(value - lastValue) > Math.max(absolute, relative * Math.abs(lastValue));
+            //timestamps going back, e.g. when files are read again, are sent too
+            if (changed || heartbeat > 0 && timestamp - lastTimestamps[slot] >= heartbeat || timestamp < lastTimestamps[slot]) {
+                store(slot, value, timestamp);
+                return true;
+            }
+            return false;
+        }
+
+        private void store(int slot, double value, long timestamp) {
+            lastValues[slot] = value;
+            lastTimestamps[slot] = timestamp;
+        }
+
+        private int slot(Object key) {
+            int mask = keys.length - 1;
+            int slot = mix(key.hashCode()) & mask;
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void clear() {
+            keys = new Object[INITIAL_CAPACITY];
+            lastValues = new double[INITIAL_CAPACITY];
+            lastTimestamps = new long[INITIAL_CAPACITY];
+            lastSeenTimes = new long[INITIAL_CAPACITY];
+            size = 0;
+            names = null;
+        }
+
+        //removes series last seen at the given time or before, and names matched by * without series
+        void expire(long lastIdleTime) {
+            int live = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && lastSeenTimes[i] > lastIdleTime) {
+                    live++;
+                }
+            }
+            if (live < size) {
+                int capacity = INITIAL_CAPACITY;
+                while (live * 2 > capacity) {
+                    capacity *= 2;
+                }
+                size = live;
+                resize(capacity, lastIdleTime);
+            }
+            if (names != null) {
+                Iterator<Deadband> nameDeadbands = names.values().iterator();
+                while (nameDeadbands.hasNext()) {
+                    Deadband nameDeadband = nameDeadbands.next();
+                    nameDeadband.expire(lastIdleTime);
+                    if (nameDeadband.size == 0) {
+                        nameDeadbands.remove();
+                    }
+                }
+            }
+        }
+
+        //series last seen after the given time are kept
+        private void resize(int capacity, long lastIdleTime) {
+            Object[] oldKeys = keys;
+            double[] oldValues = lastValues;
+            long[] oldTimestamps = lastTimestamps;
+            long[] oldSeenTimes = lastSeenTimes;
+            keys = new Object[capacity];
+            lastValues = new double[capacity];
+            lastTimestamps = new long[capacity];
+            lastSeenTimes = new long[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && oldSeenTimes[i] > lastIdleTime) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    store(slot, oldValues[i], oldTimestamps[i]);
+                    lastSeenTimes[slot] = oldSeenTimes[i];
+                }
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package sensor.service.sender;
+
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.IOException;
+
+/**
+ * Flushes a sender shared by several callers for one of them, a thread storing positions of lines whose metrics
+ * it sent. A sender drops metrics of all its callers when its connection fails, so a flush returning normally
+ * proves metrics of the caller were sent only if the failure generation of the sender did not change since the
+ * first of them was passed, otherwise the flush fails and the positions are not stored. Not thread safe, every
+ * caller has its own.
+ */
+public class FlushTracker {
+
+    private final MetricSender metricSender;
+    //generation when the first metric after the last flush was passed, -1 without such metrics
+    private long generation = -1;
+
+    public FlushTracker(MetricSender metricSender) {
+        this.metricSender = metricSender;
+    }
+
+    public void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        if (generation < 0) {
+            generation = metricSender.getFailureGeneration();
+        }
+        metricSender.sendMessage(metricPOJO);
+    }
+
+    public void flush() throws Exception {
+        long sentGeneration = generation;
+        generation = -1;
+        metricSender.flush();
+        if (sentGeneration >= 0 && metricSender.getFailureGeneration() != sentGeneration) {
+            throw new IOException("Metrics were dropped by a failure of the sender before they were flushed");
+        }
+    }
+
+    //metrics passed since the last flush are given up, e.g. after an error, their positions are not stored
+    public void reset() {
+        generation = -1;
+    }
+}
@@ -3,56 +3,246 @@ package sensor.service.sender;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import sensor.common.MetricProperties;
+import sensor.common.enums.JmsDeliveryMode;
+import sensor.common.enums.JmsMessageFormat;
 import sensor.common.pojo.MetricPOJO;
+import sensor.service.converter.MetricBatchCodec;
 import sensor.service.converter.MetricConverter;
 
-import javax.jms.*;
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+/**
+ * Sends metrics to the topic named after the metric through one connection and session kept open between
+ * sends, with a producer cached for every topic. In a transacted session messages are committed every
+ * transacted batch size messages and on {@link #flush()}, otherwise every message is sent on its own, waiting
+ * for the broker unless sends are asynchronous. After a failure the connection is closed and opened again by
+ * the next send. Messages and points of all callers not committed or sent yet are dropped with the connection,
+ * which increases the failure generation.
+ * <p>
+ * In the gorilla format metrics are collected per metric name and tags and every series is sent on
+ * {@link #flush()} as one bytes message encoded by {@link MetricBatchCodec}, with the metric name, format and
+ * number of points in message properties.
+ */
 @Slf4j
-public class JmsMetricSender implements MetricSender {
+public class JmsMetricSender implements MetricSender, Closeable {
 
-    private MetricProperties metricProperties;
-    private MetricConverter metricConverter;
+    public static final String METRIC_NAME_PROPERTY = "metricName";
+    public static final String FORMAT_PROPERTY = "format";
+    public static final String POINTS_PROPERTY = "points";
 
-    private ActiveMQConnectionFactory activeMQConnectionFactory;
+    //series are sent before flush when this number of points is collected
+    private static final int MAX_COLLECTED_POINTS = 10_000;
+
+    private final MetricConverter metricConverter;
+    private final ActiveMQConnectionFactory activeMQConnectionFactory;
+    //0 when the session is not transacted
+    private final int transactedBatchSize;
+    private final int deliveryMode;
+    private final JmsMessageFormat messageFormat;
+
+    private Connection connection;
+    private Session session;
+    private final Map<String, MessageProducer> producers = new HashMap<>();
+    private int uncommitted;
+    //gorilla format, points by metric name and tags
+    private final Map<String, Map<Map<String, String>, List<MetricPOJO>>> series = new LinkedHashMap<>();
+    private int collectedPoints;
+    //set by the connection when it fails between sends
+    private volatile JMSException connectionFailure;
+    private volatile long failureGeneration;
 
     public JmsMetricSender(MetricProperties metricProperties, MetricConverter metricConverter) throws Exception {
-        this.metricProperties = Objects.requireNonNull(metricProperties);
+        this(new ActiveMQConnectionFactory(Objects.requireNonNull(metricProperties).getJmsServerUsername(), metricProperties.getJmsServerPassword(),
+                        metricProperties.getJmsServerAddress() + ":" + metricProperties.getJmsServerPort()),
+                metricProperties.getJmsTransactedBatchSize(), metricProperties.isJmsAsyncSend(), metricProperties.getJmsDeliveryMode(),
+                metricProperties.getJmsMessageFormat(), metricConverter);
+    }
+
+    JmsMetricSender(ActiveMQConnectionFactory activeMQConnectionFactory, int transactedBatchSize, boolean asyncSend,
+                    JmsDeliveryMode deliveryMode, JmsMessageFormat messageFormat, MetricConverter metricConverter) {
         this.metricConverter = Objects.requireNonNull(metricConverter);
+        this.transactedBatchSize = transactedBatchSize;
+        this.deliveryMode = deliveryMode == JmsDeliveryMode.NON_PERSISTENT ? DeliveryMode.NON_PERSISTENT : DeliveryMode.PERSISTENT;
+        this.messageFormat = messageFormat;
+
+        this.activeMQConnectionFactory = activeMQConnectionFactory;
+        this.activeMQConnectionFactory.setUseAsyncSend(asyncSend);
+    }
+
+    @Override
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        try {
+            send(metricPOJO);
+        } catch (JMSException e) {
+            reset(e);
+            throw e;
+        }
+    }
 
-        this.activeMQConnectionFactory = new ActiveMQConnectionFactory(metricProperties.getJmsServerUsername(), metricProperties.getJmsServerPassword(),
-                metricProperties.getJmsServerAddress() + ":" + metricProperties.getJmsServerPort());
+    @Override
+    public synchronized void sendBatch(Collection<MetricPOJO> metrics) throws Exception {
+        try {
+            for (MetricPOJO metricPOJO : metrics) {
+                send(metricPOJO);
+            }
+            sendCollected();
+            commit();
+        } catch (JMSException e) {
+            reset(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws JMSException {
+        try {
+            sendCollected();
+            commit();
+        } catch (JMSException e) {
+            reset(e);
+            throw e;
+        }
     }
 
     @Override
-    public void sendMessage(MetricPOJO metricPOJO) throws Exception {
-        Connection connection = startConnection();
-        connection.start();
-        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        Topic topic = session.createTopic(metricPOJO.getMetricName());
+    public long getFailureGeneration() {
+        return failureGeneration;
+    }
+
+    private void send(MetricPOJO metricPOJO) throws JMSException {
+        if (messageFormat == JmsMessageFormat.GORILLA) {
+            series.computeIfAbsent(metricPOJO.getMetricName(), name -> new HashMap<>())
+                    .computeIfAbsent(metricPOJO.getTags(), tags -> new ArrayList<>())
+                    .add(metricPOJO);
+            if (++collectedPoints >= MAX_COLLECTED_POINTS) {
+                sendCollected();
+            }
+            return;
+        }
+        Session currentSession = getSession();
         String message = metricConverter.convert(metricPOJO);
-        log.info("Message: {}", message);
-        Message msg = session.createTextMessage(message);
-        MessageProducer producer = session.createProducer(topic);
-        producer.send(msg);
+        log.debug("Message: {}", message);
+        getProducer(metricPOJO.getMetricName()).send(currentSession.createTextMessage(message));
+        countUncommitted();
+    }
 
-        stopConnection(connection);
+    private void sendCollected() throws JMSException {
+        if (collectedPoints == 0) {
+            return;
+        }
+        Session currentSession = getSession();
+        for (Map.Entry<String, Map<Map<String, String>, List<MetricPOJO>>> metricSeries : series.entrySet()) {
+            for (List<MetricPOJO> points : metricSeries.getValue().values()) {
+                BytesMessage message = currentSession.createBytesMessage();
+                message.writeBytes(MetricBatchCodec.encode(points));
+                message.setStringProperty(METRIC_NAME_PROPERTY, metricSeries.getKey());
+                message.setStringProperty(FORMAT_PROPERTY, messageFormat.name().toLowerCase());
+                message.setIntProperty(POINTS_PROPERTY, points.size());
+                log.debug("Message: {} points of {}", points.size(), metricSeries.getKey());
+                getProducer(metricSeries.getKey()).send(message);
+                countUncommitted();
+            }
+        }
+        series.clear();
+        collectedPoints = 0;
+    }
+
+    private MessageProducer getProducer(String metricName) throws JMSException {
+        MessageProducer producer = producers.get(metricName);
+        if (producer == null) {
+            Session currentSession = getSession();
+            producer = currentSession.createProducer(currentSession.createTopic(metricName));
+            producer.setDeliveryMode(deliveryMode);
+            producers.put(metricName, producer);
+        }
+        return producer;
+    }
+
+    private void countUncommitted() throws JMSException {
+        if (transactedBatchSize > 0 && ++uncommitted >= transactedBatchSize) {
+            commit();
+        }
+    }
+
+    private void commit() throws JMSException {
+        if (connectionFailure != null) {
+            throw connectionFailure;
+        }
+        if (session != null && uncommitted > 0) {
+            session.commit();
+            uncommitted = 0;
+        }
+    }
+
+    private Session getSession() throws JMSException {
+        if (connectionFailure != null) {
+            throw connectionFailure;
+        }
+        if (session == null) {
+            Connection newConnection = activeMQConnectionFactory.createConnection();
+            try {
+                newConnection.setExceptionListener(e -> connectionFailure = e);
+                session = newConnection.createSession(transactedBatchSize > 0,
+                        transactedBatchSize > 0 ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+                newConnection.start();
+            } catch (JMSException e) {
+                newConnection.close();
+                session = null;
+                throw e;
+            }
+            connection = newConnection;
+            log.info("Connection started");
+        }
+        return session;
     }
 
-    private Connection startConnection() throws JMSException {
-        Connection connection = activeMQConnectionFactory.createConnection();
-        connection.start();
-        log.debug("Connection started");
-        return connection;
+    //messages not committed and points not sent yet are dropped, positions of their lines are not stored, so they are read again
+    private void reset(JMSException cause) {
+        log.warn("Sending to broker failed, connection will be opened again: {}", cause.getMessage());
+        failureGeneration++;
+        series.clear();
+        collectedPoints = 0;
+        closeConnection();
+        connectionFailure = null;
     }
 
-    private void stopConnection(Connection connection) throws Exception {
+    private void closeConnection() {
         if (connection != null) {
-            connection.close();
+            try {
+                //closes sessions and producers too
+                connection.close();
+            } catch (JMSException e) {
+                log.debug("Error by closing connection: {}", e.getMessage());
+            }
         }
+        connection = null;
+        session = null;
+        producers.clear();
+        uncommitted = 0;
         log.debug("Connection closed");
     }
 
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (JMSException e) {
+            log.warn("Messages not committed before closing: {}", e.getMessage());
+        } finally {
+            closeConnection();
+        }
+    }
 }
-
@@ -2,9 +2,27 @@ package sensor.service.sender;
 
 import sensor.common.pojo.MetricPOJO;
 
+import java.util.Collection;
+
 public interface MetricSender {
 
     void sendMessage(MetricPOJO metricPOJO) throws Exception;
 
-}
+    //metrics sent in order, one by one unless the sender can send them together
+    default void sendBatch(Collection<MetricPOJO> metrics) throws Exception {
+        for (MetricPOJO metricPOJO : metrics) {
+            sendMessage(metricPOJO);
+        }
+    }
 
+    //after it returns all metrics passed before are sent, so positions of their lines can be stored
+    default void flush() throws Exception {
+    }
+
+    //increases every time metrics passed but not flushed yet are dropped, e.g. by a failed connection, a flush
+    //returning normally proves metrics of a caller sharing the sender were sent only if it did not change since
+    //the first of them, see FlushTracker
+    default long getFailureGeneration() {
+        return 0;
+    }
+}
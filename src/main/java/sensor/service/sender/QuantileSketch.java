@@ -0,0 +1,182 @@
+package sensor.service.sender;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Histogram of values in buckets growing with the value, so a quantile is estimated with a relative error of at
+ * most 2^-(precision + 1) in a fixed number of counters. A bucket is given by the binary exponent of the value
+ * and the highest precision bits of its mantissa, so no logarithm is computed. Values from 2^-10 to 2^40 are
+ * bucketed, lower values - zero and negative too - are counted in the first bucket and higher ones in the last,
+ * min and max are kept exactly. Sketches of the same precision can be merged and written, only buckets with values are.
+ */
+public class QuantileSketch {
+
+    private static final int MIN_EXPONENT = -10;
+    private static final int MAX_EXPONENT = 40;
+    private static final int MANTISSA_BITS = 52;
+    private static final int EXPONENT_BIAS = 1023;
+    private static final double MIN_VALUE = Math.scalb(1.0, MIN_EXPONENT);
+
+    private final int precision;
+    private final int[] counts;
+    //range of buckets used since the sketch was cleared
+    private int lowestBucket;
+    private int highestBucket;
+    private long count;
+    private double min;
+    private double max;
+
+    public QuantileSketch(int precision) {
+        if (precision < 1 || precision > 10) {
+            throw new IllegalArgumentException("Precision must be from 1 to 10 bits: " + precision);
+        }
+        this.precision = precision;
+        this.counts = new int[((MAX_EXPONENT - MIN_EXPONENT) << precision) + 2];
+        clear();
+    }
+
+    //NaN is ignored
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int bucket = bucket(value);
+        counts[bucket]++;
+        lowestBucket = Math.min(lowestBucket, bucket);
+        highestBucket = Math.max(highestBucket, bucket);
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Sketches of precision " + precision + " and " + other.precision + " cannot be merged");
+        }
+        for (int bucket = other.lowestBucket; bucket <= other.highestBucket; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        lowestBucket = Math.min(lowestBucket, other.lowestBucket);
+        highestBucket = Math.max(highestBucket, other.highestBucket);
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    //quantile from 0 to 1, NaN when the sketch is empty
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        for (int bucket = lowestBucket; bucket <= highestBucket; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, Math.max(min, bucketValue(bucket)));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void clear() {
+        if (lowestBucket <= highestBucket) {
+            Arrays.fill(counts, lowestBucket, highestBucket + 1, 0);
+        }
+        lowestBucket = counts.length;
+        highestBucket = -1;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        if (count == 0) {
+            return;
+        }
+        out.writeDouble(min);
+        out.writeDouble(max);
+        int used = 0;
+        for (int bucket = lowestBucket; bucket <= highestBucket; bucket++) {
+            if (counts[bucket] != 0) {
+                used++;
+            }
+        }
+        out.writeInt(used);
+        for (int bucket = lowestBucket; bucket <= highestBucket; bucket++) {
+            if (counts[bucket] != 0) {
+                out.writeInt(bucket);
+                out.writeInt(counts[bucket]);
+            }
+        }
+    }
+
+    //replaces values of the sketch with those written by a sketch of the same precision
+    public void readFrom(DataInput in) throws IOException {
+        clear();
+        long written = in.readLong();
+        if (written == 0) {
+            return;
+        }
+        double writtenMin = in.readDouble();
+        double writtenMax = in.readDouble();
+        for (int used = in.readInt(); used > 0; used--) {
+            int bucket = in.readInt();
+            if (bucket < 0 || bucket >= counts.length) {
+                clear();
+                throw new IOException(String.format("Bucket %s is not a bucket of sketch of precision %s", bucket, precision));
+            }
+            counts[bucket] = in.readInt();
+            lowestBucket = Math.min(lowestBucket, bucket);
+            highestBucket = Math.max(highestBucket, bucket);
+        }
+        count = written;
+        min = writtenMin;
+        max = writtenMax;
+    }
+
+    private int bucket(double value) {
+        if (!(value >= MIN_VALUE)) {
+            return 0;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        int exponent = (int) (bits >>> MANTISSA_BITS) - EXPONENT_BIAS;
+        if (exponent >= MAX_EXPONENT) {
+            return counts.length - 1;
+        }
+        int subBucket = (int) (bits >>> (MANTISSA_BITS - precision)) & ((1 << precision) - 1);
+        return 1 + ((exponent - MIN_EXPONENT) << precision) + subBucket;
+    }
+
+    //middle of the bucket
+    private double bucketValue(int bucket) {
+        if (bucket == 0) {
+            return min;
+        }
+        if (bucket == counts.length - 1) {
+            return max;
+        }
+        int exponent = ((bucket - 1) >> precision) + MIN_EXPONENT;
+        int subBucket = (bucket - 1) & ((1 << precision) - 1);
+        return Math.scalb(1.0 + (subBucket + 0.5) / (1 << precision), exponent);
+    }
+}
@@ -0,0 +1,466 @@
+package sensor.service.sender;
+
+import lombok.extern.slf4j.Slf4j;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Appends metrics to memory mapped segment files in the spool directory and sends them to the sender from a
+ * background thread, so reading goes on while the sender is slow or unavailable. The drainer sends spooled
+ * metrics in order, flushes the sender after every batch and only then stores how far the spool was sent, so
+ * after a failure or a restart metrics are sent again from the stored position. Drained segments are deleted,
+ * the oldest segment is dropped when the spool grows over its max size and metrics spooled longer than the
+ * max age are dropped instead of being sent. Spooled metrics are not dropped by failures of the sender, so the
+ * failure generation of the spool does not change.
+ */
+@Slf4j
+public class SpoolingMetricSender implements MetricSender, Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String POSITION_FILE = "position";
+    //length and CRC of the payload
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+    private static final int MAX_STRING_LENGTH = 0xffff;
+    private static final int DRAIN_BATCH_SIZE = 1000;
+    private static final long IDLE_WAIT_TIME = 1000;
+    private static final long RETRY_TIME = 1000;
+    private static final long MAX_RETRY_TIME = 60_000;
+
+    private final MetricSender metricSender;
+    private final Path spoolDir;
+    private final int segmentSize;
+    private final long maxSize;
+    //0 when metrics do not expire
+    private final long maxAge;
+
+    //from the oldest, metrics are appended to the last one
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long spoolSize;
+    private final CRC32 crc = new CRC32();
+    private boolean drainerWaiting;
+    private volatile boolean closed;
+
+    //used by the drainer thread only
+    private Segment drainSegment;
+    private int drainPosition;
+    private int committedPosition;
+    private int pendingCount;
+    private long expiredCount;
+    private long retryTime = RETRY_TIME;
+    private final byte[] stringBytes = new byte[MAX_STRING_LENGTH];
+    //the sender may be shared with other pipelines
+    private final FlushTracker flushTracker;
+    private final Thread drainer;
+
+    public SpoolingMetricSender(MetricSender metricSender, String spoolDir, int segmentSize, long maxSize, long maxAge) throws IOException {
+        this.metricSender = metricSender;
+        this.spoolDir = Paths.get(spoolDir);
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.flushTracker = new FlushTracker(metricSender);
+
+        Files.createDirectories(this.spoolDir);
+        recover();
+
+        this.drainer = new Thread(this::drain, "metric-spool-drain");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    @Override
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        if (closed) {
+            throw new IOException("Spool " + spoolDir + " is closed");
+        }
+        byte[] name = encode(metricPOJO.getMetricName());
+        Map<String, String> tags = metricPOJO.getTags();
+        List<byte[]> tagBytes = tags.isEmpty() ? Collections.emptyList() : new ArrayList<>(2 * tags.size());
+        int length = 2 * Long.BYTES + Double.BYTES + Short.BYTES + name.length + Short.BYTES;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            byte[] tagName = encode(tag.getKey());
+            byte[] tagValue = encode(tag.getValue());
+            tagBytes.add(tagName);
+            tagBytes.add(tagValue);
+            length += 2 * Short.BYTES + tagName.length + tagValue.length;
+        }
+        if (RECORD_HEADER_SIZE + length > segmentSize) {
+            throw new IOException(String.format("Metric %s of %s bytes is larger than spool segment", metricPOJO.getMetricName(), length));
+        }
+
+        Segment segment = segments.getLast();
+        if (segment.written + RECORD_HEADER_SIZE + length > segment.buffer.capacity()) {
+            segment = roll(segment);
+        }
+        int start = segment.written;
+        MappedByteBuffer out = segment.buffer;
+        out.position(start + RECORD_HEADER_SIZE);
+        out.putLong(System.currentTimeMillis());
+        out.putLong(metricPOJO.getTimestamp());
+        out.putDouble(metricPOJO.getMetricValue());
+        putString(out, name);
+        out.putShort((short) tags.size());
+        for (byte[] bytes : tagBytes) {
+            putString(out, bytes);
+        }
+
+        ByteBuffer payload = out.duplicate();
+        payload.position(start + RECORD_HEADER_SIZE);
+        payload.limit(start + RECORD_HEADER_SIZE + length);
+        crc.reset();
+        crc.update(payload);
+        out.putInt(start + Integer.BYTES, (int) crc.getValue());
+        //length is put last, a record without it is not complete
+        out.putInt(start, length);
+        segment.written = start + RECORD_HEADER_SIZE + length;
+
+        if (drainerWaiting) {
+            notifyAll();
+        }
+    }
+
+    //spooled metrics are written to disk, the drainer sends them in the background
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            segments.getLast().buffer.force();
+        }
+    }
+
+    private Segment roll(Segment segment) throws IOException {
+        if (segment.written + Integer.BYTES <= segment.buffer.capacity()) {
+            segment.buffer.putInt(segment.written, END_OF_SEGMENT);
+        }
+        segment.buffer.force();
+        Segment next = createSegment(segment.sequence + 1);
+        segments.addLast(next);
+        spoolSize += next.buffer.capacity();
+        segment.sealed = true;
+
+        while (spoolSize > maxSize && segments.size() > 1) {
+            Segment oldest = segments.removeFirst();
+            oldest.dropped = true;
+            spoolSize -= oldest.buffer.capacity();
+            Files.deleteIfExists(oldest.path);
+            log.warn("Spool {} is over max size of {} bytes, metrics of segment {} not sent are dropped", spoolDir, maxSize, oldest.path);
+        }
+        if (drainerWaiting) {
+            notifyAll();
+        }
+        return next;
+    }
+
+    private void drain() {
+        while (!closed) {
+            try {
+                if (!drainNext()) {
+                    commitDrained();
+                    awaitRecords();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                if (closed) {
+                    break;
+                }
+                log.warn("Error by sending spooled metrics, next attempt in {} ms: {}", retryTime, e.getMessage());
+                drainPosition = committedPosition;
+                flushTracker.reset();
+                pendingCount = 0;
+                expiredCount = 0;
+                try {
+                    Thread.sleep(retryTime);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                retryTime = Math.min(retryTime * 2, MAX_RETRY_TIME);
+            }
+        }
+        //position of metrics sent before closing is stored, so they are not sent again by the next run
+        try {
+            commitDrained();
+        } catch (Exception e) {
+            log.debug("Error by storing spool position on closing: {}", e.getMessage());
+        }
+    }
+
+    //false when all spooled metrics were sent
+    private boolean drainNext() throws Exception {
+        Segment segment = drainSegment;
+        if (segment.dropped) {
+            synchronized (this) {
+                drainSegment = segments.getFirst();
+            }
+            drainPosition = committedPosition = pendingCount = 0;
+            return true;
+        }
+        //sealed is read first, after it is set no records are added
+        boolean sealed = segment.sealed;
+        int written = segment.written;
+        if (drainPosition < written) {
+            sendRecord(segment.readBuffer);
+            if (++pendingCount >= DRAIN_BATCH_SIZE) {
+                commitDrained();
+            }
+            return true;
+        }
+        if (sealed) {
+            commitDrained();
+            Segment next;
+            synchronized (this) {
+                if (segment.dropped) {
+                    return true;
+                }
+                segments.remove(segment);
+                spoolSize -= segment.buffer.capacity();
+                next = segments.getFirst();
+                drainSegment = next;
+            }
+            drainPosition = committedPosition = 0;
+            //position is stored first, a segment left after a crash before the position is deleted by recovery
+            storePosition(next.sequence, 0);
+            Files.deleteIfExists(segment.path);
+            return true;
+        }
+        return false;
+    }
+
+    private void sendRecord(ByteBuffer in) throws Exception {
+        int length = in.getInt(drainPosition);
+        in.position(drainPosition + RECORD_HEADER_SIZE);
+        long spoolTime = in.getLong();
+        long timestamp = in.getLong();
+        double value = in.getDouble();
+        String name = getString(in);
+        int tagsCount = Short.toUnsignedInt(in.getShort());
+        Map<String, String> tags = tagsCount == 0 ? Collections.emptyMap() : new HashMap<>(2 * tagsCount);
+        for (int i = 0; i < tagsCount; i++) {
+            tags.put(getString(in), getString(in));
+        }
+        drainPosition += RECORD_HEADER_SIZE + length;
+
+        if (maxAge > 0 && System.currentTimeMillis() - spoolTime > maxAge) {
+            expiredCount++;
+            return;
+        }
+        flushTracker.sendMessage(new MetricPOJO(name, value, timestamp, tags));
+    }
+
+    //metrics sent before are flushed and the spool position after them is stored
+    private void commitDrained() throws Exception {
+        if (pendingCount == 0) {
+            return;
+        }
+        flushTracker.flush();
+        storePosition(drainSegment.sequence, drainPosition);
+        committedPosition = drainPosition;
+        pendingCount = 0;
+        retryTime = RETRY_TIME;
+        if (expiredCount > 0) {
+            log.warn("{} metrics spooled longer than {} ms dropped", expiredCount, maxAge);
+            expiredCount = 0;
+        }
+    }
+
+    private synchronized void awaitRecords() throws InterruptedException {
+        Segment segment = drainSegment;
+        if (closed || segment.dropped || segment.sealed || drainPosition < segment.written) {
+            return;
+        }
+        drainerWaiting = true;
+        try {
+            wait(IDLE_WAIT_TIME);
+        } finally {
+            drainerWaiting = false;
+        }
+    }
+
+    //maps segments left by the previous run, drained ones are deleted, metrics are appended to a new segment
+    private void recover() throws IOException {
+        long[] position = readPosition();
+        List<Path> segmentPaths = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(spoolDir, "*" + SEGMENT_SUFFIX)) {
+            paths.forEach(segmentPaths::add);
+        }
+        segmentPaths.sort((first, second) -> Long.compare(sequenceOf(first), sequenceOf(second)));
+
+        long lastSequence = position[0];
+        for (Path path : segmentPaths) {
+            long sequence = sequenceOf(path);
+            if (sequence < position[0]) {
+                Files.deleteIfExists(path);
+                continue;
+            }
+            Segment segment = mapSegment(sequence, path, Files.size(path));
+            segment.written = scanRecords(segment);
+            segment.sealed = true;
+            segments.addLast(segment);
+            spoolSize += segment.buffer.capacity();
+            lastSequence = sequence;
+        }
+        if (!segments.isEmpty()) {
+            log.info("Spool {} has {} segments not sent", spoolDir, segments.size());
+        }
+
+        Segment segment = createSegment(lastSequence + 1);
+        segments.addLast(segment);
+        spoolSize += segment.buffer.capacity();
+
+        drainSegment = segments.getFirst();
+        if (drainSegment.sequence == position[0]) {
+            drainPosition = committedPosition = (int) Math.min(position[1], drainSegment.written);
+        }
+    }
+
+    //end of complete records, a record torn by a crash and records after it are ignored
+    private int scanRecords(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(position + RECORD_HEADER_SIZE);
+            payload.limit(position + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                log.warn("Spool segment {} has broken record at {}, following records are ignored", segment.path, position);
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        Path path = spoolDir.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        return mapSegment(sequence, path, segmentSize);
+    }
+
+    //mapping stays valid after the channel is closed, it is released when the segment is garbage collected
+    private Segment mapSegment(long sequence, Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private long sequenceOf(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    //sequence of the segment and position in it from which metrics were not sent
+    private long[] readPosition() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(spoolDir.resolve(POSITION_FILE)))) {
+            return new long[]{in.readLong(), in.readInt()};
+        } catch (NoSuchFileException e) {
+            return new long[]{0, 0};
+        }
+    }
+
+    private void storePosition(long sequence, int position) throws IOException {
+        Path temporaryPath = spoolDir.resolve(POSITION_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporaryPath))) {
+            out.writeLong(sequence);
+            out.writeInt(position);
+        }
+        Files.move(temporaryPath, spoolDir.resolve(POSITION_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] encode(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Value longer than " + MAX_STRING_LENGTH + " bytes: " + value.substring(0, 100));
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private String getString(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        in.get(stringBytes, 0, length);
+        return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    //metrics not sent yet stay in the spool for the next run
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segments.getLast().buffer.force();
+            notifyAll();
+        }
+        //the sender is closed after the drainer stopped using it, a send may not react to the interrupt
+        drainer.interrupt();
+        try {
+            drainer.join(IDLE_WAIT_TIME);
+            while (drainer.isAlive()) {
+                log.info("Waiting for spooled metrics being sent to stop");
+                drainer.join(IDLE_WAIT_TIME);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (metricSender instanceof Closeable) {
+            ((Closeable) metricSender).close();
+        }
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+        private final Path path;
+        //written under the lock of the sender
+        private final MappedByteBuffer buffer;
+        //read by the drainer
+        private final ByteBuffer readBuffer;
+
+        //end of complete records
+        private volatile int written;
+        //no more records are added
+        private volatile boolean sealed;
+        //deleted before it was drained
+        private volatile boolean dropped;
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+            this.readBuffer = buffer.duplicate();
+        }
+    }
+}
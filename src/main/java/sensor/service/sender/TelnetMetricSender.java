@@ -1,36 +1,183 @@
 package sensor.service.sender;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.net.telnet.TelnetClient;
 import sensor.common.MetricProperties;
 import sensor.common.pojo.MetricPOJO;
 import sensor.service.converter.MetricConverter;
 
-import java.io.PrintStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 
+/**
+ * Writes metrics as lines through one long-lived connection, buffered until {@link #flush()} or until the
+ * buffer is full. When a write or a connection attempt fails the connection is dropped and metrics are refused
+ * until the next attempt, which is delayed twice as long after every failure, up to the maximum reconnect time.
+ * Lines buffered by all callers are dropped with the connection, which increases the failure generation.
+ */
 @Slf4j
-@AllArgsConstructor
-public class TelnetMetricSender implements MetricSender {
+public class TelnetMetricSender implements MetricSender, Closeable {
 
-    private MetricProperties metricProperties;
-    private MetricConverter metricConverter;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String address;
+    private final int port;
+    //plain TCP socket instead of a Telnet client
+    private final boolean plainSocket;
+    private final int connectTimeout;
+    private final long reconnectTime;
+    private final long maxReconnectTime;
+    private final MetricConverter metricConverter;
+
+    //reused for every metric
+    private final StringBuilder message = new StringBuilder();
+    private char[] messageChars = new char[256];
+
+    private Closeable connection;
+    private Writer out;
+    private long nextConnectTime;
+    private long currentReconnectTime;
+    private volatile long failureGeneration;
+
+    public TelnetMetricSender(MetricProperties metricProperties, MetricConverter metricConverter) {
+        this(metricProperties.getTelnetServerAddress(), metricProperties.getTelnetServerPort(), metricProperties.isTelnetPlainSocket(),
+                metricProperties.getTelnetConnectTimeout(), metricProperties.getTelnetReconnectTime(),
+                metricProperties.getTelnetReconnectMaxTime(), metricConverter);
+    }
+
+    TelnetMetricSender(String address, int port, boolean plainSocket, int connectTimeout, long reconnectTime, long maxReconnectTime,
+                       MetricConverter metricConverter) {
+        this.address = address;
+        this.port = port;
+        this.plainSocket = plainSocket;
+        this.connectTimeout = connectTimeout;
+        this.reconnectTime = reconnectTime;
+        this.maxReconnectTime = maxReconnectTime;
+        this.metricConverter = metricConverter;
+        this.currentReconnectTime = reconnectTime;
+    }
 
     @Override
-    public void sendMessage(MetricPOJO metricPOJO) throws Exception {
-        TelnetClient telnetClient = new TelnetClient();
-        try {
-            telnetClient.connect(metricProperties.getTelnetServerAddress(), metricProperties.getTelnetServerPort());
+    public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+        write(metricPOJO);
+    }
+
+    @Override
+    public synchronized void sendBatch(Collection<MetricPOJO> metrics) throws Exception {
+        for (MetricPOJO metricPOJO : metrics) {
+            write(metricPOJO);
+        }
+        flush();
+    }
 
-            String message = metricConverter.convert(metricPOJO);
-            log.debug("Message: {}", message);
-            PrintStream out = new PrintStream(telnetClient.getOutputStream());
-            out.println(message);
+    @Override
+    public synchronized void flush() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
             out.flush();
-        } finally {
-            telnetClient.disconnect();
+            currentReconnectTime = reconnectTime;
+        } catch (IOException e) {
+            disconnect(e);
+            throw e;
         }
     }
 
-}
+    @Override
+    public long getFailureGeneration() {
+        return failureGeneration;
+    }
+
+    private void write(MetricPOJO metricPOJO) throws IOException {
+        Writer writer = connect();
+        message.setLength(0);
+        metricConverter.convert(metricPOJO, message);
+        log.debug("Message: {}", message);
+        message.append('\n');
+        if (messageChars.length < message.length()) {
+            messageChars = new char[Math.max(message.length(), 2 * messageChars.length)];
+        }
+        message.getChars(0, message.length(), messageChars, 0);
+        try {
+            writer.write(messageChars, 0, message.length());
+        } catch (IOException e) {
+            disconnect(e);
+            throw e;
+        }
+    }
+
+    private Writer connect() throws IOException {
+        if (out != null) {
+            return out;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextConnectTime) {
+            throw new IOException(String.format("Connection to %s:%s is not available, next attempt in %s ms", address, port, nextConnectTime - now));
+        }
+
+        try {
+            OutputStream stream;
+            if (plainSocket) {
+                Socket socket = new Socket();
+                connection = socket;
+                socket.connect(new InetSocketAddress(address, port), connectTimeout);
+                //lines are buffered, so every write is a flush
+                socket.setTcpNoDelay(true);
+                stream = socket.getOutputStream();
+            } else {
+                TelnetClient telnetClient = new TelnetClient();
+                telnetClient.setConnectTimeout(connectTimeout);
+                telnetClient.connect(address, port);
+                connection = telnetClient::disconnect;
+                stream = telnetClient.getOutputStream();
+            }
+            out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            log.info("Connected to {}:{}", address, port);
+            return out;
+        } catch (IOException e) {
+            disconnect(e);
+            throw e;
+        }
+    }
+
+    //metrics not flushed yet are lost, positions of their lines are not stored, so they are read again
+    private void disconnect(IOException cause) {
+        log.warn("Connection to {}:{} failed, next attempt in {} ms: {}", address, port, currentReconnectTime, cause.getMessage());
+        if (out != null) {
+            failureGeneration++;
+        }
+        closeConnection();
+        nextConnectTime = System.currentTimeMillis() + currentReconnectTime;
+        currentReconnectTime = Math.min(currentReconnectTime * 2, maxReconnectTime);
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                log.debug("Error by closing connection to {}:{}: {}", address, port, e.getMessage());
+            }
+        }
+        connection = null;
+        out = null;
+    }
 
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeConnection();
+        }
+    }
+}
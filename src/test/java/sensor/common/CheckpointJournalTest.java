@@ -0,0 +1,201 @@
+package sensor.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointJournalTest {
+
+    private static final int NO_COMPACTION = Integer.MAX_VALUE;
+
+    private Path directory;
+    private Path journalPath;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journalPath = directory.resolve("file.idx");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void recoversPositionsAfterReopen() throws Exception {
+        String first = createFile("a.log");
+        String second = createFile("b.log");
+        try (CheckpointJournal journal = open(1000, NO_COMPACTION)) {
+            journal.updatePosition(first, new FilePosition(3, 30));
+            journal.updatePosition(second, new FilePosition(2, 20, new FileIdentity("(dev=1,ino=2)", 1024, 0xcafeL)));
+            journal.updatePosition(first, new FilePosition(5, 50, new FileIdentity(null, 10, -1L)));
+        }
+
+        try (CheckpointJournal journal = open(1000, NO_COMPACTION)) {
+            assertPosition(new FilePosition(5, 50, new FileIdentity(null, 10, -1L)), journal.getPosition(first));
+            assertPosition(new FilePosition(2, 20, new FileIdentity("(dev=1,ino=2)", 1024, 0xcafeL)), journal.getPosition(second));
+            assertNull(journal.getPosition(directory.resolve("c.log").toString()));
+        }
+    }
+
+    @Test
+    void recoversUpToLastCompleteRecordAfterTornWrite() throws Exception {
+        String file = createFile("a.log");
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            journal.updatePosition(file, new FilePosition(2, 10));
+            journal.updatePosition(file, new FilePosition(3, 20));
+        }
+        long lastRecordEnd = Files.size(journalPath);
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            journal.updatePosition(file, new FilePosition(4, 30));
+        }
+        //only a part of the last record reached the disk
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(journalPath) - 3);
+        }
+
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(3, 20), journal.getPosition(file));
+            assertEquals(lastRecordEnd, Files.size(journalPath));
+            journal.updatePosition(file, new FilePosition(5, 40));
+        }
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(5, 40), journal.getPosition(file));
+        }
+    }
+
+    @Test
+    void skipsRecordsFromFirstCorruptedOne() throws Exception {
+        String file = createFile("a.log");
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            journal.updatePosition(file, new FilePosition(2, 10));
+        }
+        long firstRecordEnd = Files.size(journalPath);
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            journal.updatePosition(file, new FilePosition(3, 20));
+            journal.updatePosition(file, new FilePosition(4, 30));
+        }
+        byte[] content = Files.readAllBytes(journalPath);
+        content[(int) firstRecordEnd + 12] ^= 0x40;
+        Files.write(journalPath, content);
+
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(2, 10), journal.getPosition(file));
+        }
+    }
+
+    @Test
+    void compactionKeepsCurrentPositions() throws Exception {
+        String first = createFile("a.log");
+        String second = createFile("b.log");
+        try (CheckpointJournal journal = open(1, 200)) {
+            for (int i = 1; i <= 100; i++) {
+                journal.updatePosition(first, new FilePosition(i, i * 10L));
+                journal.updatePosition(second, new FilePosition(i, i * 20L, new FileIdentity("key", 1024, i)));
+            }
+        }
+        assertTrue(Files.size(journalPath) <= 200);
+
+        try (CheckpointJournal journal = open(1, 200)) {
+            assertPosition(new FilePosition(100, 1000), journal.getPosition(first));
+            assertPosition(new FilePosition(100, 2000, new FileIdentity("key", 1024, 100)), journal.getPosition(second));
+        }
+    }
+
+    @Test
+    void dropsPositionsOfFilesMissingAtTwoCompactions() throws Exception {
+        String kept = createFile("a.log");
+        String rotated = createFile("b.log");
+        String deleted = createFile("c.log");
+        try (CheckpointJournal journal = open(1, 0)) {
+            journal.updatePosition(kept, new FilePosition(2, 10));
+            journal.updatePosition(rotated, new FilePosition(2, 10));
+            journal.updatePosition(deleted, new FilePosition(2, 10));
+
+            Files.delete(Paths.get(rotated));
+            Files.delete(Paths.get(deleted));
+            journal.updatePosition(kept, new FilePosition(3, 20));
+            assertNotNull(journal.getPosition(rotated));
+            assertNotNull(journal.getPosition(deleted));
+
+            createFile("b.log");
+            journal.updatePosition(kept, new FilePosition(4, 30));
+            assertNotNull(journal.getPosition(rotated));
+            assertNull(journal.getPosition(deleted));
+        }
+
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(4, 30), journal.getPosition(kept));
+            assertPosition(new FilePosition(2, 10), journal.getPosition(rotated));
+            assertNull(journal.getPosition(deleted));
+        }
+    }
+
+    @Test
+    void importsIndexPropertiesAndKeepsThemAsBackup() throws Exception {
+        String first = createFile("a.log");
+        String second = createFile("b.log");
+        String properties = "last.analysed.file.path=" + escape(first) + "\n"
+                + "last.analysed.line.number=7\n"
+                + "last.analysed.byte.offset=70\n"
+                + FileIndexProperties.FILE_POSITION_PREFIX + escape(second) + "=2:20:1024:51966:key\n";
+        Files.write(journalPath, properties.getBytes("ISO-8859-1"));
+
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(7, 70), journal.getPosition(first));
+            assertPosition(new FilePosition(2, 20, new FileIdentity("key", 1024, 51966)), journal.getPosition(second));
+        }
+        assertEquals(properties, new String(Files.readAllBytes(directory.resolve("file.idx" + CheckpointJournal.BACKUP_SUFFIX)), "ISO-8859-1"));
+
+        try (CheckpointJournal journal = open(1, NO_COMPACTION)) {
+            assertPosition(new FilePosition(7, 70), journal.getPosition(first));
+        }
+    }
+
+    private CheckpointJournal open(int syncCount, long compactSize) throws IOException {
+        return new CheckpointJournal(journalPath.toString(), syncCount, 60_000, compactSize);
+    }
+
+    private String createFile(String name) throws IOException {
+        Path file = directory.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write("line\n".getBytes("UTF-8"));
+        }
+        return file.toString();
+    }
+
+    //file paths as written by Properties.store
+    private static String escape(String path) {
+        return path.replace("\\", "\\\\").replace(":", "\\:");
+    }
+
+    private static void assertPosition(FilePosition expected, FilePosition actual) {
+        assertNotNull(actual);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getIdentity() == null, actual.getIdentity() == null);
+        if (expected.getIdentity() != null) {
+            assertEquals(expected.getIdentity().toString(), actual.getIdentity().toString());
+        }
+    }
+}
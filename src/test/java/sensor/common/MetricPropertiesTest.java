@@ -0,0 +1,80 @@
+package sensor.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetricPropertiesTest {
+
+    private Path propertiesFile;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        propertiesFile = Files.createTempFile("metric", ".properties");
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.delete(propertiesFile);
+    }
+
+    @Test
+    void loadsNumbersWithSpaces() throws IOException {
+        MetricProperties metricProperties = load("collector.file.threads= 4 ", "collector.pipeline.buffer.size=1024",
+                "sender.spool.max.age=0", "telnet.connect.timeout=500", "collector.file.checkpoint.interval=10");
+        assertEquals(4, metricProperties.getCollectorFileThreads());
+        assertEquals(1024, metricProperties.getCollectorPipelineBufferSize());
+        assertEquals(500, metricProperties.getTelnetConnectTimeout());
+        assertEquals(10, metricProperties.getCollectorFileCheckpointInterval());
+    }
+
+    //rejected at startup instead of failing late with a NumberFormatException or an empty pool
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "collector.file.threads=0",
+            "collector.file.chunk.size=-1",
+            "collector.file.checkpoint.interval=0",
+            "collector.pipeline.parser.threads=0",
+            "collector.pipeline.sender.threads=two",
+            "collector.pipeline.buffer.size=2147483647",
+            "collector.url.connect.timeout=0",
+            "collector.url.read.timeout=1.5",
+            "collector.url.deadline=-1",
+            "collector.url.threads=0",
+            "sender.batch.size=x",
+            "sender.batch.time=0",
+            "sender.aggregate.window=1m",
+            "sender.spool.segment.size=3000000000",
+            "sender.spool.max.size=0",
+            "sender.spool.max.age=-5",
+            "collector.checking.time=often",
+            "telnet.sever.port=70000",
+            "telnet.connect.timeout=0"
+    })
+    void rejectsInvalidNumber(String override) throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> load(override));
+    }
+
+    //default properties with overrides
+    private MetricProperties load(String... overrides) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/metric.generator.properties")) {
+            Files.copy(in, propertiesFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.write(propertiesFile, Arrays.asList(overrides), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        return MetricProperties.load(propertiesFile.toString());
+    }
+}
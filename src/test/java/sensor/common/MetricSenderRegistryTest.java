@@ -0,0 +1,120 @@
+package sensor.common;
+
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+import sensor.service.sender.FlushTracker;
+import sensor.service.sender.MetricSender;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetricSenderRegistryTest {
+
+    @Test
+    void sharesSenderOfKeyAndClosesItWithLastHandle() throws Exception {
+        MetricSenderRegistry registry = new MetricSenderRegistry();
+        List<BufferingSender> created = new ArrayList<>();
+        MetricSender first = registry.acquire("sink", () -> create(created));
+        MetricSender second = registry.acquire("sink", () -> create(created));
+        MetricSender other = registry.acquire("other", () -> create(created));
+
+        assertEquals(2, created.size());
+        ((Closeable) first).close();
+        ((Closeable) first).close();
+        assertEquals(0, created.get(0).closed);
+        ((Closeable) second).close();
+        assertEquals(1, created.get(0).closed);
+        ((Closeable) other).close();
+        assertEquals(1, created.get(1).closed);
+    }
+
+    @Test
+    void flushOfHandleFailsWhenAnotherPipelineDroppedItsMetrics() throws Exception {
+        MetricSenderRegistry registry = new MetricSenderRegistry();
+        BufferingSender sink = new BufferingSender();
+        MetricSender first = registry.acquire("sink", () -> sink);
+        MetricSender second = registry.acquire("sink", () -> sink);
+
+        first.sendMessage(metric("first"));
+        sink.failNext = true;
+        assertThrows(IOException.class, () -> second.sendMessage(metric("second")));
+
+        assertThrows(IOException.class, first::flush);
+        //nothing was sent since
+        first.flush();
+        first.sendMessage(metric("again"));
+        first.flush();
+        assertEquals(Collections.singletonList("again"), sink.sent);
+    }
+
+    @Test
+    void flushTrackerFailsForThreadWhoseMetricsWereDropped() throws Exception {
+        BufferingSender sink = new BufferingSender();
+        FlushTracker first = new FlushTracker(sink);
+        FlushTracker second = new FlushTracker(sink);
+
+        first.sendMessage(metric("first"));
+        sink.failNext = true;
+        assertThrows(IOException.class, () -> second.sendMessage(metric("second")));
+        second.reset();
+        second.sendMessage(metric("second"));
+        //flushes lines of both, but those of the first one were dropped before
+        second.flush();
+
+        assertThrows(IOException.class, first::flush);
+        assertEquals(Collections.singletonList("second"), sink.sent);
+    }
+
+    private static BufferingSender create(List<BufferingSender> created) {
+        BufferingSender sender = new BufferingSender();
+        created.add(sender);
+        return sender;
+    }
+
+    private static MetricPOJO metric(String name) {
+        return new MetricPOJO(name, 1, 1);
+    }
+
+    //buffers metrics like a connection, a failed send drops everything buffered
+    private static class BufferingSender implements MetricSender, Closeable {
+
+        private final List<String> buffered = new ArrayList<>();
+        private final List<String> sent = new ArrayList<>();
+        private boolean failNext;
+        private long failureGeneration;
+        private int closed;
+
+        @Override
+        public synchronized void sendMessage(MetricPOJO metricPOJO) throws Exception {
+            if (failNext) {
+                failNext = false;
+                buffered.clear();
+                failureGeneration++;
+                throw new IOException("Connection reset");
+            }
+            buffered.add(metricPOJO.getMetricName());
+        }
+
+        @Override
+        public synchronized void flush() {
+            sent.addAll(buffered);
+            buffered.clear();
+        }
+
+        @Override
+        public synchronized long getFailureGeneration() {
+            return failureGeneration;
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package sensor.service.chooser;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.CheckpointJournal;
+import sensor.common.CheckpointStore;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileChooserRotationTest {
+
+    private Path directory;
+    private Path liveFile;
+    private final Map<String, FilePosition> positions = new HashMap<>();
+    private AbstractFileChooser fileChooser;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("rotation");
+        liveFile = directory.resolve("Throughput.log");
+        fileChooser = new AbstractFileChooser(new MapCheckpointStore(positions)) {
+            @Override
+            protected List<Path> getFilesToAnalise() {
+                return Files.exists(liveFile) ? Arrays.asList(liveFile) : new ArrayList<>();
+            }
+        };
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void fingerprintMatchesGrownAndRenamedFileOnly() throws Exception {
+        write(liveFile, lines("a", 100));
+        FileIdentity identity = identify(liveFile);
+
+        append(liveFile, lines("b", 10));
+        assertTrue(FileFingerprints.hasIdentity(liveFile, identity));
+
+        Path renamedFile = directory.resolve("Throughput.log.1");
+        Files.move(liveFile, renamedFile);
+        assertTrue(FileFingerprints.hasIdentity(renamedFile, identity));
+
+        write(liveFile, lines("a", 100));
+        assertFalse(FileFingerprints.hasIdentity(liveFile, identity));
+        assertTrue(FileFingerprints.hasIdentity(liveFile, new FileIdentity(null, identity.getFingerprintLength(), identity.getFingerprint())));
+
+        write(liveFile, lines("c", 100));
+        assertFalse(FileFingerprints.hasIdentity(liveFile, new FileIdentity(null, identity.getFingerprintLength(), identity.getFingerprint())));
+    }
+
+    @Test
+    void readsNewFileFromStartAndGrownFileFromPosition() throws Exception {
+        write(liveFile, lines("a", 100));
+        assertEquals(FilePosition.START, fileChooser.findFilesToAnalise().get(liveFile));
+
+        store(liveFile, Files.size(liveFile));
+        assertTrue(fileChooser.findFilesToAnalise().isEmpty());
+
+        long readSize = Files.size(liveFile);
+        append(liveFile, lines("b", 1));
+        assertEquals(readSize, fileChooser.findFilesToAnalise().get(liveFile).getByteOffset());
+    }
+
+    @Test
+    void readsTruncatedFileFromStart() throws Exception {
+        write(liveFile, lines("a", 200));
+        store(liveFile, Files.size(liveFile));
+        try (FileChannel channel = FileChannel.open(liveFile, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(liveFile) / 2);
+        }
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(FilePosition.START, files.get(liveFile));
+    }
+
+    @Test
+    void readsFileTruncatedAndRewrittenFromStart() throws Exception {
+        write(liveFile, lines("a", 200));
+        store(liveFile, Files.size(liveFile));
+        try (FileChannel channel = FileChannel.open(liveFile, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        append(liveFile, lines("c", 300));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(1, files.size());
+        assertEquals(FilePosition.START, files.get(liveFile));
+    }
+
+    @Test
+    void finishesRotatedFileBeforeNewOne() throws Exception {
+        write(liveFile, lines("a", 100));
+        long readSize = Files.size(liveFile);
+        store(liveFile, readSize);
+        append(liveFile, lines("b", 10));
+        Path rotatedFile = directory.resolve("Throughput.log.1");
+        Files.move(liveFile, rotatedFile);
+        write(liveFile, lines("c", 10));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(Arrays.asList(rotatedFile, liveFile), new ArrayList<>(files.keySet()));
+        assertEquals(readSize, files.get(rotatedFile).getByteOffset());
+        assertEquals(FilePosition.START, files.get(liveFile));
+        assertEquals(liveFile, fileChooser.getSourceFile(rotatedFile));
+        assertEquals(liveFile, fileChooser.getSourceFile(liveFile));
+    }
+
+    @Test
+    void readsFilesRotatedAgainAfterRotatedFileOldestFirst() throws Exception {
+        write(liveFile, lines("a", 100));
+        long readSize = Files.size(liveFile);
+        store(liveFile, readSize);
+        append(liveFile, lines("b", 10));
+        Path firstRotatedFile = directory.resolve("Throughput.log.2");
+        Files.move(liveFile, firstRotatedFile);
+        Files.setLastModifiedTime(firstRotatedFile, FileTime.fromMillis(System.currentTimeMillis() - 20_000));
+        Path secondRotatedFile = directory.resolve("Throughput.log.1");
+        write(secondRotatedFile, lines("c", 100));
+        Files.setLastModifiedTime(secondRotatedFile, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        write(liveFile, lines("d", 10));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(Arrays.asList(firstRotatedFile, secondRotatedFile, liveFile), new ArrayList<>(files.keySet()));
+        assertEquals(readSize, files.get(firstRotatedFile).getByteOffset());
+        assertEquals(FilePosition.START, files.get(secondRotatedFile));
+    }
+
+    @Test
+    void finishesCopyOfFileTruncatedAfterCopying() throws Exception {
+        write(liveFile, lines("a", 100));
+        long readSize = Files.size(liveFile);
+        store(liveFile, readSize);
+        append(liveFile, lines("b", 10));
+        //copytruncate, an older copy with other content is not matched
+        write(directory.resolve("Throughput.log.2"), lines("z", 200));
+        Path copiedFile = directory.resolve("Throughput.log.1");
+        Files.copy(liveFile, copiedFile);
+        try (FileChannel channel = FileChannel.open(liveFile, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        append(liveFile, lines("c", 5));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(Arrays.asList(copiedFile, liveFile), new ArrayList<>(files.keySet()));
+        assertEquals(readSize, files.get(copiedFile).getByteOffset());
+        assertEquals(FilePosition.START, files.get(liveFile));
+        assertEquals(liveFile, fileChooser.getSourceFile(copiedFile));
+    }
+
+    @Test
+    void finishesCopyOfFileTruncatedAfterCopyingAndRewrittenWithSameStart() throws Exception {
+        write(liveFile, lines("a", 100));
+        append(liveFile, lines("b", 100));
+        long readSize = Files.size(liveFile);
+        store(liveFile, readSize);
+        append(liveFile, lines("b", 10));
+        Path copiedFile = directory.resolve("Throughput.log.1");
+        Files.copy(liveFile, copiedFile);
+        try (FileChannel channel = FileChannel.open(liveFile, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        //same first lines, shorter than the read part
+        append(liveFile, lines("a", 100));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(Arrays.asList(copiedFile, liveFile), new ArrayList<>(files.keySet()));
+        assertEquals(readSize, files.get(copiedFile).getByteOffset());
+        assertEquals(FilePosition.START, files.get(liveFile));
+    }
+
+    @Test
+    void finishesRotatedFileCompressedMeanwhile() throws Exception {
+        byte[] content = lines("a", 100);
+        write(liveFile, content);
+        store(liveFile, 1000);
+        Files.delete(liveFile);
+        Path compressedFile = directory.resolve("Throughput.log.1.gz");
+        writeCompressed(compressedFile, content);
+        write(liveFile, lines("c", 10));
+
+        Map<Path, FilePosition> files = fileChooser.findFilesToAnalise();
+        assertEquals(Arrays.asList(compressedFile, liveFile), new ArrayList<>(files.keySet()));
+        assertEquals(1000, files.get(compressedFile).getByteOffset());
+    }
+
+    @Test
+    void skipsCompressedFileReadCompletely() throws Exception {
+        byte[] content = lines("a", 100);
+        liveFile = directory.resolve("Throughput.log.gz");
+        writeCompressed(liveFile, content);
+        assertFalse(CompressedFiles.isFullyRead(liveFile, content.length - 1));
+        assertTrue(CompressedFiles.isFullyRead(liveFile, content.length));
+
+        positions.put(liveFile.toString(), new FilePosition(51, content.length / 2, FileFingerprints.identifyCompressed(liveFile)));
+        assertEquals(content.length / 2, fileChooser.findFilesToAnalise().get(liveFile).getByteOffset());
+
+        positions.put(liveFile.toString(), new FilePosition(101, content.length, FileFingerprints.identifyCompressed(liveFile)));
+        assertTrue(fileChooser.findFilesToAnalise().isEmpty());
+    }
+
+    @Test
+    void skipsCompressedFileMarkedFinished() throws Exception {
+        liveFile = directory.resolve("Throughput.log.gz");
+        writeCompressed(liveFile, lines("a", 100));
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(liveFile, StandardOpenOption.APPEND))) {
+            out.write(lines("b", 10));
+        }
+        FileIdentity identity = FileFingerprints.identifyCompressed(liveFile);
+        long size = lines("a", 100).length + lines("b", 10).length;
+
+        positions.put(liveFile.toString(), new FilePosition(111, size, identity));
+        assertEquals(size, fileChooser.findFilesToAnalise().get(liveFile).getByteOffset());
+
+        positions.put(liveFile.toString(), new FilePosition(111, CompressedFiles.FINISHED_OFFSET, identity));
+        assertTrue(fileChooser.findFilesToAnalise().isEmpty());
+    }
+
+    @Test
+    void continuesAfterLastLineOfLegacyIndex() throws Exception {
+        write(liveFile, lines("a", 100));
+        Path indexFile = directory.resolve("file.idx");
+        Properties index = new Properties();
+        index.setProperty("last.analysed.file.path", liveFile.toString());
+        index.setProperty("last.analysed.line.number", "40");
+        try (OutputStream out = Files.newOutputStream(indexFile)) {
+            index.store(out, null);
+        }
+
+        try (CheckpointJournal checkpointJournal = new CheckpointJournal(indexFile.toString(), 1, 1000, 1 << 20)) {
+            fileChooser = new AbstractFileChooser(checkpointJournal) {
+                @Override
+                protected List<Path> getFilesToAnalise() {
+                    return Arrays.asList(liveFile);
+                }
+            };
+            FilePosition position = fileChooser.findFilesToAnalise().get(liveFile);
+            assertEquals(41, position.getLineNumber());
+            assertEquals(lines("a", 40).length, position.getByteOffset());
+        }
+    }
+
+    private void store(Path path, long byteOffset) throws IOException {
+        positions.put(path.toString(), new FilePosition(1, byteOffset, identify(path)));
+    }
+
+    private static FileIdentity identify(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return FileFingerprints.identify(path, channel);
+        }
+    }
+
+    //lines of about 20 bytes, so a hundred of them cover the fingerprint
+    private static byte[] lines(String prefix, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(prefix).append(" metric ").append(i).append(" 1700000000\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(Path path, byte[] content) throws IOException {
+        Files.write(path, content);
+    }
+
+    private static void append(Path path, byte[] content) throws IOException {
+        Files.write(path, content, StandardOpenOption.APPEND);
+    }
+
+    private static void writeCompressed(Path path, byte[] content) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            out.write(content);
+        }
+    }
+
+    private static class MapCheckpointStore implements CheckpointStore {
+
+        private final Map<String, FilePosition> positions;
+
+        MapCheckpointStore(Map<String, FilePosition> positions) {
+            this.positions = positions;
+        }
+
+        @Override
+        public FilePosition getPosition(String filePath) {
+            return positions.get(filePath);
+        }
+
+        @Override
+        public void updatePosition(String filePath, FilePosition position) {
+            positions.put(filePath, position);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package sensor.service.converter;
+
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricBatchCodecTest {
+
+    @Test
+    void decodesSinglePoint() {
+        List<MetricPOJO> points = Collections.singletonList(new MetricPOJO("throughput.requests", 12.5, 1_700_000_000L));
+        assertRoundTrip(points);
+    }
+
+    @Test
+    void decodesTagsInOrder() {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("host", "node-7");
+        tags.put("dc", "wawa");
+        tags.put("empty", "");
+        tags.put("unicode", "zażółć");
+        List<MetricPOJO> points = Arrays.asList(
+                new MetricPOJO("a", 1, 1_700_000_000L, tags),
+                new MetricPOJO("a", 2, 1_700_000_060L, tags));
+        List<MetricPOJO> decoded = assertRoundTrip(points);
+        assertEquals(new ArrayList<>(tags.keySet()), new ArrayList<>(decoded.get(1).getTags().keySet()));
+    }
+
+    @Test
+    void decodesSpecialValuesBitExactly() {
+        double[] values = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE,
+                -Double.MAX_VALUE, Double.longBitsToDouble(0x7ff8000000000001L), 1e-300, 1, 1, 0.1, 0.2, 0.30000000000000004};
+        List<MetricPOJO> points = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            points.add(new MetricPOJO("a", values[i], 1_700_000_000L + i));
+        }
+        assertRoundTrip(points);
+    }
+
+    @Test
+    void decodesIrregularTimestamps() {
+        long[] timestamps = {1_700_000_000L, 1_700_000_000L, 1_700_000_001L, 1_700_000_000L, 1_700_000_063L, 1_700_000_318L,
+                1_700_002_366L, 0, Long.MAX_VALUE, Long.MIN_VALUE, 1_700_000_000_123L, 1_700_000_000_123L};
+        List<MetricPOJO> points = new ArrayList<>();
+        for (long timestamp : timestamps) {
+            points.add(new MetricPOJO("a", 1, timestamp));
+        }
+        assertRoundTrip(points);
+    }
+
+    @Test
+    void decodesRandomSeries() {
+        Random random = new Random(42);
+        for (int series = 0; series < 500; series++) {
+            int count = 1 + random.nextInt(300);
+            long timestamp = random.nextLong();
+            long interval = random.nextInt(4) == 0 ? random.nextLong() >> random.nextInt(64) : random.nextInt(120);
+            double value = random.nextGaussian() * 1000;
+            List<MetricPOJO> points = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                points.add(new MetricPOJO("series" + series, value, timestamp));
+                timestamp += interval + (random.nextInt(5) == 0 ? random.nextInt(5000) - 2500 : 0);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        break;
+                    case 1:
+                        value += random.nextInt(10);
+                        break;
+                    case 2:
+                        value = Double.longBitsToDouble(random.nextLong());
+                        break;
+                    default:
+                        value *= 1 + random.nextGaussian() / 100;
+                }
+            }
+            assertRoundTrip(points);
+        }
+    }
+
+    @Test
+    void encodesRegularSeriesInFewBytesPerPoint() {
+        List<MetricPOJO> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new MetricPOJO("ce.traffic.bytes_in", i % 10 == 0 ? 100 + i / 10 : 100, 1_700_000_000L + 60L * i));
+        }
+        byte[] message = MetricBatchCodec.encode(points);
+        assertTrue(message.length < 1000, "Bytes: " + message.length);
+        assertRoundTrip(points);
+    }
+
+    @Test
+    void rejectsInvalidBatches() {
+        assertThrows(IllegalArgumentException.class, () -> MetricBatchCodec.encode(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> MetricBatchCodec.encode(Arrays.asList(
+                new MetricPOJO("a", 1, 1), new MetricPOJO("b", 1, 2))));
+        assertThrows(IllegalArgumentException.class, () -> MetricBatchCodec.encode(Arrays.asList(
+                new MetricPOJO("a", 1, 1, Collections.singletonMap("host", "x")),
+                new MetricPOJO("a", 1, 2, Collections.singletonMap("host", "y")))));
+        assertThrows(IllegalArgumentException.class, () -> MetricBatchCodec.decode("a 1 1700000000".getBytes()));
+    }
+
+    private static List<MetricPOJO> assertRoundTrip(List<MetricPOJO> points) {
+        List<MetricPOJO> decoded = MetricBatchCodec.decode(MetricBatchCodec.encode(points));
+        assertEquals(points.size(), decoded.size());
+        for (int i = 0; i < points.size(); i++) {
+            MetricPOJO point = points.get(i);
+            MetricPOJO decodedPoint = decoded.get(i);
+            int index = i;
+            assertEquals(point.getMetricName(), decodedPoint.getMetricName());
+            assertEquals(point.getTags(), decodedPoint.getTags());
+            assertEquals(point.getTimestamp(), decodedPoint.getTimestamp(), () -> "Timestamp of point " + index);
+            assertEquals(Double.doubleToRawLongBits(point.getMetricValue()), Double.doubleToRawLongBits(decodedPoint.getMetricValue()),
+                    () -> "Value of point " + index + ": " + point.getMetricValue());
+        }
+        return decoded;
+    }
+}
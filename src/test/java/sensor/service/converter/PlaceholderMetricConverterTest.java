@@ -0,0 +1,107 @@
+package sensor.service.converter;
+
+import org.apache.commons.text.StrSubstitutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import sensor.common.pojo.MetricPOJO;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlaceholderMetricConverterTest {
+
+    private static final String PATTERN = "${metric.name} ${metric.value} ${metric.timestamp}";
+
+    @Test
+    void writesEscapedAndUnknownPlaceholdersAsText() {
+        PlaceholderMetricConverter converter = new PlaceholderMetricConverter("$${metric.name} ${metric.name} ${metric.unknown} ${metric.value");
+        assertEquals("${metric.name} a ${metric.unknown} ${metric.value", converter.convert(new MetricPOJO("a", 1, 10)));
+    }
+
+    @Test
+    void writesTagsAndKeepsPlaceholderOfMissingTag() {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("host", "node-7");
+        tags.put("dc", "wawa");
+        PlaceholderMetricConverter converter = new PlaceholderMetricConverter(
+                "${metric.name} ${metric.timestamp} ${metric.tags} host=${metric.tag.host} rack=${metric.tag.rack}");
+
+        assertEquals("a 10 host=node-7 dc=wawa host=node-7 rack=${metric.tag.rack}", converter.convert(new MetricPOJO("a", 1, 10, tags)));
+        assertEquals("a 10  host=${metric.tag.host} rack=${metric.tag.rack}", converter.convert(new MetricPOJO("a", 1, 10)));
+    }
+
+    @Test
+    void roundsValueHalfAwayFromZeroToDecimalPlaces() {
+        assertEquals("1.50", value(2, 1.499));
+        assertEquals("1.05", value(2, 1.045));
+        assertEquals("-2.5", value(1, -2.45));
+        assertEquals("3", value(0, 2.5));
+        assertEquals("0.007", value(3, 0.0071));
+        assertEquals("12.000000001", value(9, 12.000000001));
+    }
+
+    @Test
+    void writesNegativeZeroWithoutSign() {
+        assertEquals("0.00", value(2, -0.0));
+        assertEquals("0.00", value(2, -0.001));
+        assertEquals("-0.01", value(2, -0.005));
+        //as by Double.toString without decimal places
+        assertEquals("-0.0", value(-1, -0.0));
+    }
+
+    @Test
+    void writesLargeAndSpecialValuesAsDoubleToString() {
+        assertEquals("1.0E20", value(2, 1e20));
+        assertEquals("-1.0E17", value(2, -1e17));
+        assertEquals("12345678901.25", value(2, 12_345_678_901.25));
+        //scaled by the decimal places over 1e18
+        assertEquals("1.0E16", value(2, 1e16));
+        assertEquals("NaN", value(2, Double.NaN));
+        assertEquals("Infinity", value(2, Double.POSITIVE_INFINITY));
+        assertEquals(Double.toString(Double.MAX_VALUE), value(-1, Double.MAX_VALUE));
+    }
+
+    @Test
+    void rejectsTooManyDecimalPlaces() {
+        assertThrows(IllegalArgumentException.class, () -> new PlaceholderMetricConverter(PATTERN, 10));
+    }
+
+    //same output as StrSubstitutor which rendered the pattern before it was compiled
+    @ParameterizedTest
+    @ValueSource(strings = {
+            PATTERN,
+            "put ${metric.name} ${metric.timestamp} ${metric.value} host=a",
+            "",
+            "no placeholders",
+            "$${metric.name} ${metric.value}",
+            "${metric.unknown} ${metric.name}",
+            "${metric.name",
+            "${} $ $$ ${metric.value}}",
+            "${metric.timestamp}${metric.timestamp}"
+    })
+    void writesSameAsStrSubstitutor(String pattern) {
+        PlaceholderMetricConverter converter = new PlaceholderMetricConverter(pattern);
+        double[] values = {0, 1, -1.5, 0.1, -0.0, 1e20, 123_456.789, Double.NaN};
+        for (double value : values) {
+            MetricPOJO metric = new MetricPOJO("throughput.requests", value, 1_700_000_000L);
+            assertEquals(StrSubstitutor.replace(pattern, substitutions(metric)), converter.convert(metric));
+        }
+    }
+
+    private static String value(int decimalPlaces, double value) {
+        return new PlaceholderMetricConverter("${metric.value}", decimalPlaces).convert(new MetricPOJO("a", value, 10));
+    }
+
+    private static Map<String, String> substitutions(MetricPOJO metric) {
+        Map<String, String> result = new HashMap<>();
+        result.put("metric.name", metric.getMetricName());
+        result.put("metric.value", Double.toString(metric.getMetricValue()));
+        result.put("metric.timestamp", Long.toString(metric.getTimestamp()));
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+package sensor.service.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CeTrafficLogParserTest {
+
+    //parser before lines were scanned
+    private static final Pattern FORMER_PATTERN = Pattern.compile("^((?<metricName>.+?) (?<value>.+?) (?<timestamp>\\d{10}))$");
+    private static final Pattern FORMER_BLANK_PATTERN = Pattern.compile("^\\s*$");
+    private static final Pattern MILLISECONDS_TIMESTAMP = Pattern.compile(".* \\d{13}$");
+    private static final char[] ALPHABET = {'a', 'b', '.', '_', ' ', ' ', ' ', '1', '7', '0', '0', '9', '-', '+', 'e', 'E',
+            'N', 'a', 'I', 'x', 'p', 'd', 'f', '\t', '\r', '\u0085', ' ', ' '};
+
+    private final CeTrafficLogParser parser = new CeTrafficLogParser(TimeUnit.SECONDS);
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "ce.traffic.bytes_in 123.45 1700000000",
+            "a 1 1700000000",
+            "a -1.5e3 1700000000",
+            "a +5 1700000000",
+            "a NaN 1700000000",
+            "a -Infinity 1700000000",
+            "a 0x1p3 1700000000",
+            "a 1d 1700000000",
+            "a 1f 1700000000",
+            "a  1 1700000000",
+            "a 1  1700000000",
+            "a 1 2 1700000000",
+            "a b 1 1700000000",
+            " a 1 1700000000",
+            "  1 1700000000",
+            "a\t1 1700000000",
+            "a 1\t1700000000",
+            "a 1 1700000000\r",
+            "a 1 1700000000\u0085",
+            "a 1 1700000000 ",
+            "a 1 1700000000\r\r",
+            "a\r1 1700000000",
+            "a 1  1700000000",
+            "a 1 170000000",
+            "a 1 17000000000",
+            "a 1 x1700000000",
+            "1 1700000000",
+            " 1700000000",
+            "a 1 ",
+            "",
+            "   ",
+            "ä.bytes 1 1700000000"
+    })
+    void parsesLineLikeFormerRegex(String line) throws Exception {
+        assertEquals(parseWithFormerRegex(line), parse(line), () -> "Line: " + escape(line));
+    }
+
+    @Test
+    void parsesRandomLinesLikeFormerRegex() throws Exception {
+        Random random = new Random(42);
+        int compared = 0;
+        for (int i = 0; i < 300_000; i++) {
+            String line = randomLine(random);
+            //accepted only by the scanner
+            if (MILLISECONDS_TIMESTAMP.matcher(line).matches()) {
+                continue;
+            }
+            assertEquals(parseWithFormerRegex(line), parse(line), () -> "Line: " + escape(line));
+            compared++;
+        }
+        assertTrue(compared > 250_000);
+    }
+
+    @Test
+    void convertsTimestampsToMetricTimestampUnit() throws Exception {
+        CeTrafficLogParser millisecondsParser = new CeTrafficLogParser(TimeUnit.MILLISECONDS);
+        assertEquals("a|1.0|1700000000000", parse(millisecondsParser, "a 1 1700000000"));
+        assertEquals("a|1.0|1700000000123", parse(millisecondsParser, "a 1 1700000000123"));
+        assertEquals("a|1.0|1700000000", parse("a 1 1700000000123"));
+        assertNull(parse("a 1 17000000001"));
+    }
+
+    //mvn test -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstFormerRegex() throws Exception {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 1_000_000; i++) {
+            lines.add("ce.traffic.node" + random.nextInt(100) + ".bytes_in " + random.nextInt(100_000) / 100.0 + " " + (1_700_000_000 + i));
+        }
+        double[] sum = new double[1];
+        MetricSink sink = (metricName, metricValue, timestamp, tags) -> sum[0] += metricValue;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (String line : lines) {
+                Matcher matcher = FORMER_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    sink.accept(matcher.group("metricName"), Double.parseDouble(matcher.group("value")), Long.valueOf(matcher.group("timestamp")));
+                }
+            }
+            long regexTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String line : lines) {
+                parser.parseLine(line, sink);
+            }
+            long scannerTime = System.nanoTime() - start;
+            System.out.printf("1M lines, regex: %d ms, scanner: %d ms%n", TimeUnit.NANOSECONDS.toMillis(regexTime), TimeUnit.NANOSECONDS.toMillis(scannerTime));
+        }
+    }
+
+    private String parse(String line) throws Exception {
+        return parse(parser, line);
+    }
+
+    private static String parse(CeTrafficLogParser parser, String line) throws Exception {
+        List<String> metrics = new ArrayList<>();
+        parser.parseLine(line, (metricName, metricValue, timestamp, tags) -> metrics.add(metricName + "|" + metricValue + "|" + timestamp));
+        return metrics.isEmpty() ? null : metrics.get(0);
+    }
+
+    private static String parseWithFormerRegex(String line) {
+        if (FORMER_BLANK_PATTERN.matcher(line).find()) {
+            return null;
+        }
+        Matcher matcher = FORMER_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return matcher.group("metricName") + "|" + Double.parseDouble(matcher.group("value")) + "|" + Long.valueOf(matcher.group("timestamp"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String randomLine(Random random) {
+        StringBuilder line = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            line.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        if (random.nextInt(4) > 0) {
+            line.append(random.nextBoolean() ? ' ' : ALPHABET[random.nextInt(ALPHABET.length)]);
+            int digits = random.nextInt(5) == 0 ? 9 + random.nextInt(6) : 10;
+            for (int i = 0; i < digits; i++) {
+                line.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(8) == 0) {
+                line.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+        }
+        return line.toString();
+    }
+
+    private static String escape(String line) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : line.toCharArray()) {
+            escaped.append(c < ' ' || c > '~' ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package sensor.service.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CorrelationStoreTest {
+
+    @Test
+    void matchesStartByKeyAndCheck() {
+        CorrelationStore store = new CorrelationStore(10, 0);
+        store.put(1, 10, 100);
+        //same key of another event
+        store.put(1, 11, 200);
+        assertEquals(2, store.size());
+
+        assertEquals(CorrelationStore.NOT_FOUND, store.remove(1, 12));
+        assertEquals(200, store.remove(1, 11));
+        assertEquals(CorrelationStore.NOT_FOUND, store.remove(1, 11));
+        assertEquals(100, store.remove(1, 10));
+        assertEquals(0, store.size());
+        assertEquals(2, store.getUnmatchedCount());
+    }
+
+    @Test
+    void dropsOldestStartsOverCapacityAndAfterTimeToLive() {
+        CorrelationStore store = new CorrelationStore(3, 50);
+        for (long key = 0; key < 4; key++) {
+            store.put(key, -key, 100 + key);
+        }
+        assertEquals(1, store.getEvictedCount());
+        assertEquals(CorrelationStore.NOT_FOUND, store.remove(0, 0));
+
+        store.expire(152);
+        assertEquals(1, store.getExpiredCount());
+        assertEquals(CorrelationStore.NOT_FOUND, store.remove(1, -1));
+        assertEquals(102, store.remove(2, -2));
+        assertEquals(103, store.remove(3, -3));
+    }
+
+    @Test
+    void readsWrittenSnapshot() throws IOException {
+        Path snapshot = Files.createTempFile("correlation", ".snapshot");
+        try {
+            CorrelationStore store = new CorrelationStore(10, 0);
+            store.put(1, 10, 100);
+            store.put(1, 11, 200);
+            store.put(2, 20, 300);
+            store.remove(2, 20);
+            store.writeSnapshot(snapshot);
+
+            CorrelationStore read = new CorrelationStore(10, 0);
+            assertEquals(2, read.readSnapshot(snapshot));
+            assertEquals(200, read.remove(1, 11));
+            assertEquals(100, read.remove(1, 10));
+            assertEquals(0, read.size());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    void readsSnapshotWithoutChecksMatchingByKey() throws IOException {
+        Path snapshot = Files.createTempFile("correlation", ".snapshot");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshot))) {
+                //"SCS1", key and timestamp of entries
+                out.writeInt(0x53435331);
+                out.writeInt(2);
+                out.writeLong(1);
+                out.writeLong(100);
+                out.writeLong(2);
+                out.writeLong(200);
+            }
+
+            CorrelationStore read = new CorrelationStore(10, 0);
+            assertEquals(2, read.readSnapshot(snapshot));
+            assertEquals(100, read.remove(1, 10));
+            assertEquals(CorrelationStore.NOT_FOUND, read.remove(1, 10));
+            //a repeated start takes the check of the event
+            read.put(2, 20, 300);
+            assertEquals(CorrelationStore.NOT_FOUND, read.remove(2, 21));
+            assertEquals(300, read.remove(2, 20));
+            assertEquals(0, read.size());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package sensor.service.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelimitedLogParserTest {
+
+    @Test
+    void parsesFieldsByTheirRoles() throws Exception {
+        DelimitedLogParser parser = parser(";", "-, name ,timestamp,value");
+        assertEquals(Collections.singletonList("cpu|1.5|1700000000"), parse(parser, "host1; cpu ;1700000000; 1.5"));
+        //fields after the last used one are not split
+        assertEquals(Collections.singletonList("cpu|2.0|1700000000"), parse(parser, "host1;cpu;1700000000;2;x;;"));
+    }
+
+    @Test
+    void sendsMetricOfEveryValueField() throws Exception {
+        DelimitedLogParser parser = parser(",", "timestamp,value:cpu,value,value:memory");
+        assertEquals(Arrays.asList("cpu|1.0|1700000000", "metric|2.0|1700000000", "memory|3.0|1700000000"),
+                parse(parser, "1700000000,1,2,3"));
+
+        //the name field names values without their own name
+        DelimitedLogParser namedParser = parser(",", "name,timestamp,value,value:memory");
+        assertEquals(Arrays.asList("disk|1.0|1700000000", "memory|2.0|1700000000"), parse(namedParser, "disk,1700000000,1,2"));
+    }
+
+    @Test
+    void splitsByDelimiterOfMoreCharacters() throws Exception {
+        DelimitedLogParser parser = parser("||", "timestamp,value");
+        assertEquals(Collections.singletonList("metric|1.0|1700000000"), parse(parser, "1700000000||1"));
+        assertEquals(Collections.emptyList(), parse(parser, "1700000000|1"));
+    }
+
+    @Test
+    void passesTagsWithEveryMetric() throws Exception {
+        Map<String, String> tags = Collections.singletonMap("host", "a");
+        DelimitedLogParser parser = new DelimitedLogParser("metric", ",", "timestamp,value:cpu,value:memory", TimeUnit.SECONDS, TimeUnit.SECONDS, tags);
+        List<Map<String, String>> passedTags = new ArrayList<>();
+        parser.parseLine("1700000000,1,2", (metricName, metricValue, timestamp, metricTags) -> passedTags.add(metricTags));
+        assertEquals(Arrays.asList(tags, tags), passedTags);
+    }
+
+    @Test
+    void convertsTimestampsToMetricTimestampUnit() throws Exception {
+        DelimitedLogParser parser = new DelimitedLogParser("metric", ",", "timestamp,value", TimeUnit.SECONDS, TimeUnit.MILLISECONDS, Collections.emptyMap());
+        assertEquals(Collections.singletonList("metric|1.0|1700000000000"), parse(parser, "1700000000,1"));
+
+        DelimitedLogParser millisecondsParser = new DelimitedLogParser("metric", ",", "timestamp,value", TimeUnit.MILLISECONDS, TimeUnit.SECONDS, Collections.emptyMap());
+        assertEquals(Collections.singletonList("metric|1.0|1700000000"), parse(millisecondsParser, "1700000000999,1"));
+    }
+
+    @Test
+    void usesTimeOfReadingWithoutTimestampField() throws Exception {
+        DelimitedLogParser parser = new DelimitedLogParser("metric", ",", "value", TimeUnit.SECONDS, TimeUnit.MILLISECONDS, Collections.emptyMap());
+        long start = System.currentTimeMillis();
+        long[] timestamps = new long[1];
+        parser.parseLine("1", (metricName, metricValue, timestamp, tags) -> timestamps[0] = timestamp);
+        assertTrue(timestamps[0] >= start && timestamps[0] <= System.currentTimeMillis());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "   ",
+            "1700000000",
+            "1700000000,1",
+            "1700000000,1,x",
+            "1700000000,x,2",
+            "x,1,2",
+            "1700000000.5,1,2",
+            "1700000000;1;2"
+    })
+    void skipsLineWithoutAllFields(String line) throws Exception {
+        //a line is used or skipped as a whole
+        assertEquals(Collections.emptyList(), parse(parser(",", "timestamp,value:cpu,value:memory"), line));
+    }
+
+    @Test
+    void rejectsLayoutWithUnknownRoleOrWithoutValue() {
+        assertThrows(IllegalArgumentException.class, () -> parser(",", "timestamp,values"));
+        assertThrows(IllegalArgumentException.class, () -> parser(",", "timestamp,name"));
+        assertThrows(IllegalArgumentException.class, () -> parser(",", "timestamp,value:"));
+        assertThrows(IllegalArgumentException.class, () -> parser("", "timestamp,value"));
+    }
+
+    //mvn test -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstThroughputParser() throws Exception {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 1_000_000; i++) {
+            lines.add((1_700_000_000_000L + i) + ":" + random.nextInt(100_000) / 100.0);
+        }
+        ThroughputLogParser throughputParser = new ThroughputLogParser("metric");
+        DelimitedLogParser delimitedParser = new DelimitedLogParser("metric", ":", "timestamp,value", TimeUnit.MILLISECONDS, TimeUnit.MILLISECONDS,
+                Collections.emptyMap());
+        double[] sum = new double[1];
+        MetricSink sink = (metricName, metricValue, timestamp, tags) -> sum[0] += metricValue;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (String line : lines) {
+                throughputParser.parseLine(line, sink);
+            }
+            long throughputTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String line : lines) {
+                delimitedParser.parseLine(line, sink);
+            }
+            long delimitedTime = System.nanoTime() - start;
+            System.out.printf("1M lines, throughput: %d ms, delimited: %d ms%n", TimeUnit.NANOSECONDS.toMillis(throughputTime),
+                    TimeUnit.NANOSECONDS.toMillis(delimitedTime));
+        }
+    }
+
+    private static DelimitedLogParser parser(String delimiter, String fields) {
+        return new DelimitedLogParser("metric", delimiter, fields, TimeUnit.SECONDS, TimeUnit.SECONDS, Collections.emptyMap());
+    }
+
+    private static List<String> parse(DelimitedLogParser parser, String line) throws Exception {
+        List<String> metrics = new ArrayList<>();
+        parser.parseLine(line, (metricName, metricValue, timestamp, tags) -> metrics.add(metricName + "|" + metricValue + "|" + timestamp));
+        return metrics;
+    }
+}
@@ -0,0 +1,178 @@
+package sensor.service.reader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.MetricProperties;
+import sensor.common.pojo.MetricPOJO;
+import sensor.service.sender.MetricSender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenomUrlMetricReaderTest {
+
+    private static final String APPLICATIONS_PATH = "/api/v1/applications";
+    //stages of app-2 are answered after this time
+    private static final long SLOW_RESPONSE_TIME = 3000;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private Path propertiesFile;
+    private final List<MetricPOJO> sent = new ArrayList<>();
+    private final MetricSender metricSender = sent::add;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext(APPLICATIONS_PATH, this::respond);
+        server.start();
+        propertiesFile = Files.createTempFile("metric", ".properties");
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        Files.delete(propertiesFile);
+    }
+
+    @Test
+    void sendsMetricsReadByDeadlineAndGivesUpRest() throws Exception {
+        MetricProperties metricProperties = properties(serverUrl(), 500, 30_000);
+        try (GenomUrlMetricReader reader = new GenomUrlMetricReader(metricSender, metricProperties)) {
+            long start = System.currentTimeMillis();
+            reader.readMetrics();
+            long time = System.currentTimeMillis() - start;
+
+            assertTrue(time >= 400 && time < SLOW_RESPONSE_TIME, String.valueOf(time));
+            assertEquals(Arrays.asList("ETPercentile app-1 1.5", "SimulationLeftNumber app-1 60.0", "TotalCores app-1 8.0", "TotalCores app-2 4.0"),
+                    describe(sent));
+        }
+    }
+
+    @Test
+    void givesUpRequestAfterReadTimeoutBeforeDeadline() throws Exception {
+        MetricProperties metricProperties = properties(serverUrl(), 10_000, 300);
+        try (GenomUrlMetricReader reader = new GenomUrlMetricReader(metricSender, metricProperties)) {
+            long start = System.currentTimeMillis();
+            reader.readMetrics();
+            long time = System.currentTimeMillis() - start;
+
+            assertTrue(time < SLOW_RESPONSE_TIME, String.valueOf(time));
+            assertEquals(Arrays.asList("ETPercentile app-1 1.5", "SimulationLeftNumber app-1 60.0", "TotalCores app-1 8.0", "TotalCores app-2 4.0"),
+                    describe(sent));
+        }
+    }
+
+    @Test
+    void readsOtherUrlsWhenUrlIsNotAvailable() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        MetricProperties metricProperties = properties("http://localhost:" + closedPort + "," + serverUrl(), 500, 30_000);
+        try (GenomUrlMetricReader reader = new GenomUrlMetricReader(metricSender, metricProperties)) {
+            reader.readMetrics();
+            assertTrue(describe(sent).contains("TotalCores app-1 8.0"));
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(APPLICATIONS_PATH.length());
+        String response;
+        switch (path) {
+            case "":
+                response = "[{\"id\":\"app-1\"},{\"id\":\"app-2\"}]";
+                break;
+            case "/app-1/executors":
+                response = "[{\"id\":\"driver\",\"totalCores\":0},{\"id\":\"1\",\"totalCores\":8,\"totalDuration\":4000,\"completedTasks\":2}]";
+                break;
+            case "/app-2/executors":
+                response = "[{\"id\":\"driver\",\"totalCores\":0},{\"id\":\"1\",\"totalCores\":4,\"totalDuration\":0,\"completedTasks\":0}]";
+                break;
+            case "/app-1/stages":
+                response = "[{\"stageId\":1,\"attemptId\":0,\"numTasks\":100,\"numCompleteTasks\":40}]";
+                break;
+            case "/app-2/stages":
+                try {
+                    Thread.sleep(SLOW_RESPONSE_TIME);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response = "[{\"stageId\":1,\"attemptId\":0,\"numTasks\":10,\"numCompleteTasks\":1}]";
+                break;
+            case "/app-1/stages/1/0/taskSummary":
+                response = "{\"quantiles\":[0.95],\"executorRunTime\":[1500.0]}";
+                break;
+            default:
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            //request given up by the reader
+            exchange.close();
+        }
+    }
+
+    private String serverUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    //default properties with the url collector
+    private MetricProperties properties(String urls, long deadline, int readTimeout) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/metric.generator.properties")) {
+            Files.copy(in, propertiesFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        List<String> overrides = Arrays.asList(
+                "collector=url",
+                "collector.parser=genom",
+                "collector.url=" + urls,
+                "collector.url.suffix.get.app.id=" + APPLICATIONS_PATH,
+                "collector.url.suffix.get.metrics=/stages",
+                "collector.url.max.duration.time=3600",
+                "collector.url.connect.timeout=1000",
+                "collector.url.read.timeout=" + readTimeout,
+                "collector.url.deadline=" + deadline,
+                "collector.url.threads=4");
+        Files.write(propertiesFile, overrides, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        return MetricProperties.load(propertiesFile.toString());
+    }
+
+    private static List<String> describe(List<MetricPOJO> metrics) {
+        return metrics.stream()
+                .map(metric -> metric.getMetricName() + " " + metric.getTags().get("application") + " " + metric.getMetricValue())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
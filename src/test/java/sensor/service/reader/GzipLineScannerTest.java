@@ -0,0 +1,148 @@
+package sensor.service.reader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.FilePosition;
+import sensor.service.chooser.CompressedFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipLineScannerTest {
+
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("gzip");
+        file = directory.resolve("Throughput.log.1.gz");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void readsLinesAndResumesFromPosition() throws Exception {
+        byte[] content = "a 1 1700000000\r\nb 2 1700000000\nc 3 1700000000".getBytes(StandardCharsets.UTF_8);
+        Files.write(file, compress(content));
+
+        List<String> lines = new ArrayList<>();
+        FilePosition position;
+        try (GzipLineScanner scanner = new GzipLineScanner(file, FilePosition.START)) {
+            assertEquals(3, scanner.scan(line -> lines.add(line.toString())));
+            position = scanner.getPosition();
+        }
+        assertEquals(Arrays.asList("a 1 1700000000", "b 2 1700000000", "c 3 1700000000"), lines);
+        assertEquals(content.length, position.getByteOffset());
+        assertEquals(4, position.getLineNumber());
+        assertTrue(CompressedFiles.isFullyRead(file, position.getByteOffset()));
+
+        lines.clear();
+        try (GzipLineScanner scanner = new GzipLineScanner(file, new FilePosition(2, 16))) {
+            scanner.scan(line -> lines.add(line.toString()));
+        }
+        assertEquals(Arrays.asList("b 2 1700000000", "c 3 1700000000"), lines);
+    }
+
+    @Test
+    void marksFileOfSeveralMembersFinished() throws Exception {
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(compress(lines("a", 1000)));
+        members.write(compress(lines("b", 10)));
+        Files.write(file, members.toByteArray());
+
+        FilePosition position = scan(file, FilePosition.START, 1010);
+        assertEquals(CompressedFiles.FINISHED_OFFSET, position.getByteOffset());
+        assertTrue(CompressedFiles.isFullyRead(file, position.getByteOffset()));
+    }
+
+    @Test
+    void marksTruncatedFileFinishedWhenNotModifiedAnymore() throws Exception {
+        byte[] compressed = compress(lines("a", 10_000));
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+        FilePosition position = scan(file, FilePosition.START, -1);
+        assertEquals(CompressedFiles.FINISHED_OFFSET, position.getByteOffset());
+        assertTrue(CompressedFiles.isFullyRead(file, position.getByteOffset()));
+    }
+
+    @Test
+    void readsTruncatedFileAgainWhileItIsWritten() throws Exception {
+        byte[] content = lines("a", 10_000);
+        byte[] compressed = compress(content);
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+
+        FilePosition position = scan(file, FilePosition.START, -1);
+        assertTrue(position.getByteOffset() > 0 && position.getByteOffset() < content.length);
+        assertFalse(CompressedFiles.isFullyRead(file, position.getByteOffset()));
+
+        //compression finished
+        Files.write(file, compressed);
+        FilePosition endPosition = scan(file, position, 10_001 - position.getLineNumber());
+        assertEquals(content.length, endPosition.getByteOffset());
+        assertEquals(10_001, endPosition.getLineNumber());
+    }
+
+    @Test
+    void marksCorruptedFileFinished() throws Exception {
+        byte[] compressed = compress(lines("a", 10_000));
+        compressed[compressed.length / 2] ^= 0x55;
+        compressed[compressed.length / 2 + 1] ^= 0x55;
+        Files.write(file, compressed);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+        FilePosition position = scan(file, FilePosition.START, -1);
+        assertEquals(CompressedFiles.FINISHED_OFFSET, position.getByteOffset());
+    }
+
+    //expected lines -1 when any number of lines can be read
+    private static FilePosition scan(Path file, FilePosition startPosition, long expectedLines) throws Exception {
+        try (GzipLineScanner scanner = new GzipLineScanner(file, startPosition)) {
+            long lines = scanner.scan(line -> {
+            });
+            if (expectedLines >= 0) {
+                assertEquals(expectedLines, lines);
+            }
+            return scanner.getPosition();
+        }
+    }
+
+    private static byte[] lines(String prefix, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(prefix).append(".metric ").append(i).append(" 1700000000\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
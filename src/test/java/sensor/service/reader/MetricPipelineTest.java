@@ -0,0 +1,281 @@
+package sensor.service.reader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.FileIdentity;
+import sensor.common.pojo.FilePosition;
+import sensor.common.pojo.MetricPOJO;
+import sensor.service.chooser.FileChooser;
+import sensor.service.parser.StreamingLogParser;
+import sensor.service.sender.MetricSender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricPipelineTest {
+
+    //lines are "<file>:<line number>", metrics are named by their file
+    private final StreamingLogParser logParser = (line, metricSink) -> {
+        String text = line.toString();
+        if (text.startsWith("bad")) {
+            throw new IllegalArgumentException("Bad line: " + text);
+        }
+        int separator = text.indexOf(':');
+        metricSink.accept(text.substring(0, separator), Double.parseDouble(text.substring(separator + 1)), 0);
+    };
+
+    //metrics are sent only by a flush, sending waits for the gate and fails while failing is set
+    private final Map<String, List<Double>> sent = new ConcurrentHashMap<>();
+    private final List<MetricPOJO> pending = new ArrayList<>();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile boolean failing;
+    private final MetricSender metricSender = new MetricSender() {
+        @Override
+        public void sendMessage(MetricPOJO metricPOJO) throws Exception {
+            gate.await();
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+            synchronized (pending) {
+                pending.add(metricPOJO);
+            }
+        }
+
+        @Override
+        public void flush() {
+            synchronized (pending) {
+                for (MetricPOJO metricPOJO : pending) {
+                    sent.computeIfAbsent(metricPOJO.getMetricName(), name -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(metricPOJO.getMetricValue());
+                }
+                pending.clear();
+            }
+        }
+    };
+
+    //stored positions, with the number of positions of lines not sent when they were stored
+    private final Map<String, FilePosition> positions = new ConcurrentHashMap<>();
+    private final List<String> positionsOfUnsentLines = Collections.synchronizedList(new ArrayList<>());
+    private final FileChooser fileChooser = new FileChooser() {
+        @Override
+        public Map<Path, FilePosition> findFilesToAnalise() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void updateFileIndex(String filePath, FilePosition position) {
+            List<Double> values = sent.getOrDefault(filePath, Collections.emptyList());
+            if (values.size() < position.getLineNumber() - 1) {
+                positionsOfUnsentLines.add(filePath + " " + position);
+            }
+            positions.put(filePath, position);
+        }
+    };
+
+    private MetricPipeline pipeline;
+
+    @AfterEach
+    void closePipeline() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    void keepsOrderOfEverySourceUnderContention() throws Exception {
+        pipeline = new MetricPipeline(logParser, metricSender, fileChooser, new MetricNameCache(), 2, 3, 8, 10);
+        int readers = 4;
+        int lines = 5_000;
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> exceptions = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < readers; i++) {
+            String firstFile = "file" + (2 * i);
+            String secondFile = "file" + (2 * i + 1);
+            int firstPartition = 2 * i;
+            int secondPartition = 2 * i + 1;
+            Thread thread = new Thread(() -> {
+                try {
+                    TestScanner firstScanner = new TestScanner();
+                    TestScanner secondScanner = new TestScanner();
+                    for (int line = 1; line <= lines; line++) {
+                        publishLine(firstPartition, firstFile, firstScanner);
+                        publishLine(secondPartition, secondFile, secondScanner);
+                    }
+                    pipeline.publishPosition(firstPartition, firstFile, firstScanner.getPosition());
+                    pipeline.publishPosition(secondPartition, secondFile, secondScanner.getPosition());
+                } catch (Exception e) {
+                    exceptions.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pipeline.awaitRound();
+
+        assertEquals(Collections.emptyList(), exceptions);
+        assertEquals(2 * readers, sent.size());
+        for (Map.Entry<String, List<Double>> values : sent.entrySet()) {
+            assertEquals(lines, values.getValue().size());
+            for (int line = 1; line <= lines; line++) {
+                assertEquals(line, values.getValue().get(line - 1).intValue(), values.getKey());
+            }
+            assertEquals(lines + 1, positions.get(values.getKey()).getLineNumber());
+        }
+        assertEquals(Collections.emptyList(), positionsOfUnsentLines);
+    }
+
+    @Test
+    void blocksPublisherWhileQueuesOfSlowSenderAreFull() throws Exception {
+        pipeline = new MetricPipeline(logParser, metricSender, fileChooser, new MetricNameCache(), 1, 1, 4, 1);
+        gate = new CountDownLatch(1);
+        int lines = 100;
+        Thread reader = new Thread(() -> {
+            try {
+                TestScanner scanner = new TestScanner();
+                for (int line = 1; line <= lines; line++) {
+                    publishLine(0, "file", scanner);
+                }
+                pipeline.publishPosition(0, "file", scanner.getPosition());
+            } catch (Exception e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+
+        int capacity = pipeline.getQueueCapacity();
+        //both stages wait for the sender, the reader waits for a free slot
+        waitFor(() -> pipeline.getSenderQueueDepths()[0] > capacity && pipeline.getParserQueueDepths()[0] > capacity);
+        assertTrue(reader.isAlive());
+        assertTrue(positions.isEmpty());
+
+        gate.countDown();
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+        pipeline.awaitRound();
+        assertEquals(lines, sent.get("file").size());
+        assertEquals(lines + 1, positions.get("file").getLineNumber());
+        assertArrayEquals(new int[]{capacity}, pipeline.getMaxParserQueueDepths());
+        assertArrayEquals(new int[]{capacity}, pipeline.getMaxSenderQueueDepths());
+        assertEquals(Collections.emptyList(), positionsOfUnsentLines);
+    }
+
+    @Test
+    void throwsExceptionOfParserFromAwaitRound() throws Exception {
+        pipeline = new MetricPipeline(logParser, metricSender, fileChooser, new MetricNameCache(), 1, 1, 16, 1);
+        TestScanner scanner = new TestScanner();
+        publishLine(0, "file", scanner);
+        pipeline.awaitRound();
+        scanner.lineNumber++;
+        pipeline.publishLine(0, "file", "bad line", scanner);
+        publishLine(0, "file", scanner);
+        pipeline.publishPosition(0, "file", scanner.getPosition());
+
+        assertThrows(IllegalArgumentException.class, pipeline::awaitRound);
+        //lines after the failed one are not sent, so their positions are not stored
+        assertEquals(1, sent.get("file").size());
+        assertEquals(2, positions.get("file").getLineNumber());
+
+        //next round starts without the error
+        TestScanner nextScanner = new TestScanner();
+        publishLine(0, "file", nextScanner);
+        pipeline.publishPosition(0, "file", nextScanner.getPosition());
+        pipeline.awaitRound();
+        assertEquals(2, sent.get("file").size());
+    }
+
+    @Test
+    void throwsExceptionOfSenderFromAwaitRoundWithoutStoringPosition() throws Exception {
+        pipeline = new MetricPipeline(logParser, metricSender, fileChooser, new MetricNameCache(), 1, 2, 16, 10);
+        failing = true;
+        TestScanner scanner = new TestScanner();
+        publishLine(0, "file", scanner);
+        pipeline.publishPosition(0, "file", scanner.getPosition());
+
+        assertThrows(IOException.class, pipeline::awaitRound);
+        assertTrue(sent.isEmpty());
+        assertTrue(positions.isEmpty());
+    }
+
+    @Test
+    void storesPositionsOnlyAfterLinesAreSent() throws Exception {
+        pipeline = new MetricPipeline(logParser, metricSender, fileChooser, new MetricNameCache(), 1, 1, 64, 1);
+        gate = new CountDownLatch(1);
+        TestScanner scanner = new TestScanner();
+        for (int line = 1; line <= 10; line++) {
+            publishLine(0, "file", scanner);
+        }
+        pipeline.publishPosition(0, "file", scanner.getPosition());
+
+        Thread.sleep(100);
+        assertTrue(positions.isEmpty());
+        gate.countDown();
+        pipeline.awaitRound();
+
+        assertEquals(10, sent.get("file").size());
+        assertEquals(11, positions.get("file").getLineNumber());
+        assertEquals(Collections.emptyList(), positionsOfUnsentLines);
+    }
+
+    private void publishLine(int partition, String filePath, TestScanner scanner) throws Exception {
+        int line = scanner.lineNumber++;
+        pipeline.publishLine(partition, filePath, filePath + ":" + line, scanner);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    //position of the line after the one handed over last
+    private static class TestScanner implements LineScanner {
+
+        private int lineNumber = 1;
+
+        @Override
+        public long scan(LineHandler lineHandler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FilePosition getPosition() {
+            return new FilePosition(lineNumber, getByteOffset());
+        }
+
+        @Override
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getByteOffset() {
+            return 10L * (lineNumber - 1);
+        }
+
+        @Override
+        public FileIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
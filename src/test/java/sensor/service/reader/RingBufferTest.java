@@ -0,0 +1,86 @@
+package sensor.service.reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+    @Test
+    void blocksProducerWhileFull() throws Exception {
+        RingBuffer<long[]> buffer = new RingBuffer<>(2, () -> new long[1]);
+        buffer.publish(buffer.claim());
+        buffer.publish(buffer.claim());
+
+        AtomicLong claimed = new AtomicLong(-1);
+        Thread producer = new Thread(() -> {
+            try {
+                claimed.set(buffer.claim());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(3, buffer.getDepth());
+
+        assertEquals(1, buffer.awaitPublished());
+        buffer.release(1);
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(2, claimed.get());
+        assertEquals(1, buffer.getDepth());
+    }
+
+    @Test
+    void keepsOrderOfEveryProducerUnderContention() throws Exception {
+        int producers = 4;
+        int values = 100_000;
+        RingBuffer<long[]> buffer = new RingBuffer<>(16, () -> new long[2]);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            int producer = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int value = 0; value < values; value++) {
+                        long sequence = buffer.claim();
+                        long[] slot = buffer.get(sequence);
+                        slot[0] = producer;
+                        slot[1] = value;
+                        buffer.publish(sequence);
+                    }
+                    buffer.flush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        long[] nextValues = new long[producers];
+        long next = 0;
+        while (next < (long) producers * values) {
+            long last = buffer.awaitPublished();
+            for (long sequence = next; sequence <= last; sequence++) {
+                long[] slot = buffer.get(sequence);
+                assertEquals(nextValues[(int) slot[0]]++, slot[1]);
+            }
+            next = last + 1;
+            buffer.release(last);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long nextValue : nextValues) {
+            assertEquals(values, nextValue);
+        }
+        assertTrue(buffer.resetMaxDepth() <= buffer.getCapacity());
+    }
+}
@@ -0,0 +1,178 @@
+package sensor.service.reader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SparkJsonReaderTest {
+
+    @Test
+    void readsApplicationIdsSkippingNestedFields() throws Exception {
+        List<String> ids = SparkJsonReader.readApplicationIds(stream(
+                "[{\"attempts\":[{\"id\":\"attempt-1\",\"completed\":false}],\"name\":\"n\",\"id\":\"app-1\"},{\"id\":\"app-2\"}]"));
+        assertEquals(Arrays.asList("app-1", "app-2"), ids);
+        assertEquals(0, SparkJsonReader.readApplicationIds(stream("[]")).size());
+    }
+
+    @Test
+    void readsStages() throws Exception {
+        List<SparkJsonReader.Stage> stages = SparkJsonReader.readStages(stream(
+                "[{\"status\":\"ACTIVE\",\"stageId\":1,\"attemptId\":2,\"numTasks\":100,\"numActiveTasks\":8,\"numCompleteTasks\":40,"
+                        + "\"numFailedTasks\":1,\"numKilledTasks\":3,\"submissionTime\":\"2026-10-18T10:00:00.000GMT\","
+                        + "\"accumulatorUpdates\":[{\"id\":1}],\"tasks\":{\"1\":{\"taskId\":[1,2]}}},{\"stageId\":1,\"attemptId\":1}]"));
+        assertEquals(2, stages.size());
+        SparkJsonReader.Stage stage = stages.get(0);
+        assertEquals(1, stage.getStageId());
+        assertEquals(2, stage.getAttemptId());
+        assertEquals(100, stage.getNumTasks());
+        assertEquals(8, stage.getNumActiveTasks());
+        assertEquals(40, stage.getNumCompleteTasks());
+        assertEquals(1, stage.getNumFailedTasks());
+        assertEquals(3, stage.getNumKilledTasks());
+        assertEquals("2026-10-18T10:00:00.000GMT", stage.getSubmissionTime());
+        assertNull(stages.get(1).getSubmissionTime());
+    }
+
+    @Test
+    void failsOnErrorResponse() {
+        assertThrows(IOException.class, () -> SparkJsonReader.readStages(stream("{\"message\":\"no such app\"}")));
+    }
+
+    @Test
+    void readsExecutorsOmittingDriverAndExecutorsWithoutTasks() throws Exception {
+        SparkJsonReader.ExecutorsSummary summary = SparkJsonReader.readExecutors(stream(
+                "[{\"id\":\"driver\",\"totalCores\":0,\"totalDuration\":0,\"completedTasks\":0},"
+                        + "{\"id\":\"1\",\"totalCores\":8,\"totalDuration\":20000,\"completedTasks\":2,\"executorLogs\":{\"stdout\":\"x\"}},"
+                        + "{\"id\":\"2\",\"totalCores\":4,\"totalDuration\":0,\"completedTasks\":0},"
+                        + "{\"id\":\"3\",\"totalCores\":8,\"totalDuration\":60000,\"completedTasks\":3}]"));
+        assertEquals(20, summary.getTotalCores());
+        assertEquals(15, summary.getMeanDurationTime());
+    }
+
+    @Test
+    void meanDurationIsZeroWhenNoExecutorPerformedTasks() throws Exception {
+        SparkJsonReader.ExecutorsSummary summary = SparkJsonReader.readExecutors(stream(
+                "[{\"id\":\"driver\",\"totalCores\":0},{\"id\":\"1\",\"totalCores\":8,\"totalDuration\":0,\"completedTasks\":0}]"));
+        assertEquals(8, summary.getTotalCores());
+        assertEquals(0, summary.getMeanDurationTime());
+    }
+
+    @Test
+    void readsExecutorsLikeFormerDomCode() throws Exception {
+        for (int executors : new int[]{2, 3, 50, 500}) {
+            byte[] payload = executorsPayload(executors);
+            long[] expected = readExecutorsWithDom(payload);
+            SparkJsonReader.ExecutorsSummary summary = SparkJsonReader.readExecutors(new ByteArrayInputStream(payload));
+            assertEquals(expected[0], summary.getTotalCores(), "Executors: " + executors);
+            assertEquals(expected[1], summary.getMeanDurationTime(), "Executors: " + executors);
+        }
+    }
+
+    @Test
+    void readsFirstQuantile() throws Exception {
+        assertEquals(Double.valueOf(12345), SparkJsonReader.readFirstQuantile(stream(
+                "{\"quantiles\":[0.95],\"executorDeserializeTime\":[3.0],\"executorRunTime\":[12345.0],\"inputMetrics\":{\"bytesRead\":[1.0]}}"),
+                "executorRunTime"));
+        assertEquals(Double.valueOf(7), SparkJsonReader.readFirstQuantile(stream("{\"executorRunTime\":[7]}"), "executorRunTime"));
+        assertNull(SparkJsonReader.readFirstQuantile(stream("{\"quantiles\":[0.95],\"executorRunTime\":[]}"), "executorRunTime"));
+        assertNull(SparkJsonReader.readFirstQuantile(stream("{\"quantiles\":[0.95]}"), "executorRunTime"));
+    }
+
+    //mvn test -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstFormerDomCode() throws Exception {
+        for (int executors : new int[]{50, 500, 2000}) {
+            byte[] payload = executorsPayload(executors);
+            int iterations = 20_000_000 / payload.length + 50;
+            long sum = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    sum += readExecutorsWithDom(payload)[1];
+                }
+                long domTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    sum += SparkJsonReader.readExecutors(new ByteArrayInputStream(payload)).getMeanDurationTime();
+                }
+                long streamTime = System.nanoTime() - start;
+                System.out.printf("%d executors, %d KB: dom: %.2f ms, stream: %.2f ms%n", executors, payload.length / 1024,
+                        domTime / 1e6 / iterations, streamTime / 1e6 / iterations);
+            }
+            assertTrue(sum > 0);
+        }
+    }
+
+    //summary of executors as computed before responses were streamed, from the response string parsed to a tree
+    private static long[] readExecutorsWithDom(byte[] payload) {
+        JSONArray jsonArray = new JSONArray(new String(payload, StandardCharsets.UTF_8));
+        int executorsNumber = jsonArray.length() - 1;
+        int totalCoresSum = 0;
+        long totalMeanDurationTimes = 0;
+        for (int i = 1; i < jsonArray.length(); i++) {
+            JSONObject executor = jsonArray.getJSONObject(i);
+            totalCoresSum += executor.getInt("totalCores");
+            //read as an int before, which failed for durations not fitting in it
+            long totalDuration = executor.getLong("totalDuration");
+            int completedTasks = executor.getInt("completedTasks");
+            if (completedTasks == 0) {
+                executorsNumber--;
+            } else {
+                totalMeanDurationTimes += totalDuration / (1000L * completedTasks);
+            }
+        }
+        return new long[]{totalCoresSum, executorsNumber == 0 ? 0 : totalMeanDurationTimes / executorsNumber};
+    }
+
+    //response of /executors shaped like one of Spark 3
+    private static byte[] executorsPayload(int executors) {
+        Random random = new Random(executors);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < executors; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int tasks = i == 1 || random.nextInt(10) == 0 ? 0 : random.nextInt(2000);
+            json.append("{\"id\":\"").append(i == 0 ? "driver" : String.valueOf(i))
+                    .append("\",\"hostPort\":\"10.0.").append(i / 250).append('.').append(i % 250).append(":40123\"")
+                    .append(",\"isActive\":true,\"rddBlocks\":0,\"memoryUsed\":").append(random.nextInt(1 << 30))
+                    .append(",\"diskUsed\":0,\"totalCores\":").append(i == 0 ? 0 : 1 + random.nextInt(16))
+                    .append(",\"maxTasks\":8,\"activeTasks\":").append(random.nextInt(8))
+                    .append(",\"failedTasks\":0,\"completedTasks\":").append(tasks)
+                    .append(",\"totalTasks\":").append(tasks)
+                    .append(",\"totalDuration\":").append(tasks * (1000L + random.nextInt(60_000)))
+                    .append(",\"totalGCTime\":").append(random.nextInt(100_000))
+                    .append(",\"totalInputBytes\":").append(random.nextLong() & 0xffffffffffL)
+                    .append(",\"totalShuffleRead\":0,\"totalShuffleWrite\":0,\"isBlacklisted\":false,\"maxMemory\":").append(1L << 31)
+                    .append(",\"addTime\":\"2026-10-18T10:00:00.000GMT\",\"executorLogs\":{\"stdout\":\"http://10.0.0.1:8042/node/containerlogs/container_")
+                    .append(i).append("/stdout?start=-4096\",\"stderr\":\"http://10.0.0.1:8042/node/containerlogs/container_")
+                    .append(i).append("/stderr?start=-4096\"}")
+                    .append(",\"memoryMetrics\":{\"usedOnHeapStorageMemory\":").append(random.nextInt())
+                    .append(",\"usedOffHeapStorageMemory\":0,\"totalOnHeapStorageMemory\":").append(random.nextInt())
+                    .append(",\"totalOffHeapStorageMemory\":0},\"attributes\":{},\"resources\":{},\"resourceProfileId\":0")
+                    .append(",\"peakMemoryMetrics\":{\"JVMHeapMemory\":").append(random.nextInt())
+                    .append(",\"JVMOffHeapMemory\":").append(random.nextInt())
+                    .append(",\"MinorGCCount\":").append(random.nextInt(500)).append(",\"MajorGCCount\":3}}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
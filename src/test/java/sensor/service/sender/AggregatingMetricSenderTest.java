@@ -0,0 +1,304 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.Test;
+import sensor.common.enums.AggregationOutput;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregatingMetricSenderTest {
+
+    private final List<MetricPOJO> sent = new ArrayList<>();
+    private final MetricSender collector = sent::add;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void sendsWindowWhenMetricOfNextWindowArrives() throws Exception {
+        AggregatingMetricSender sender = sender(10, 10, 10, AggregationOutput.SUM, AggregationOutput.COUNT);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("a", 2, 5));
+        assertTrue(sent.isEmpty());
+
+        sender.sendMessage(metric("a", 4, 12));
+        assertEquals(Arrays.asList("a.sum 3.0 @0", "a.count 2.0 @0"), describe(sent));
+    }
+
+    @Test
+    void sendsSlidingWindowsEndingWithEveryPane() throws Exception {
+        AggregatingMetricSender sender = sender(20, 10, 20, AggregationOutput.SUM);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("a", 2, 11));
+        sender.sendMessage(metric("a", 4, 21));
+        //the window starting before the first metric is not complete
+        assertEquals(Collections.singletonList("a 3.0 @0"), describe(sent));
+    }
+
+    @Test
+    void aggregatesSourceReadBehindOthersLikeCurrentOne() throws Exception {
+        AggregatingMetricSender sender = sender(10, 10, 10, AggregationOutput.SUM);
+        for (int i = 0; i < 3; i++) {
+            sender.sendMessage(new MetricPOJO("a", 1, 1000 + 10 * i, Collections.singletonMap("host", "current")));
+            sender.sendMessage(new MetricPOJO("a", 2, 1 + 10 * i, Collections.singletonMap("host", "behind")));
+        }
+        sender.flush();
+        assertEquals(Arrays.asList("a 1.0 @1000", "a 1.0 @1010", "a 2.0 @0", "a 2.0 @10"), sorted(describe(sent)));
+    }
+
+    @Test
+    void sendsWindowsOfIdleSeriesOnlyAfterIdleTimeOfClock() throws Exception {
+        AggregatingMetricSender sender = sender(10, 10, 10, AggregationOutput.SUM);
+        sender.sendMessage(metric("idle", 1, 1));
+        sender.sendMessage(metric("busy", 1, 1));
+        //far ahead in event time
+        sender.sendMessage(metric("busy", 1, 1000));
+        clock.set(19);
+        sender.flush();
+        assertEquals(Collections.singletonList("busy 1.0 @0"), describe(sent));
+
+        sent.clear();
+        clock.set(20);
+        sender.sendMessage(metric("busy", 1, 1001));
+        sender.flush();
+        assertEquals(Collections.singletonList("idle 1.0 @0"), describe(sent));
+    }
+
+    @Test
+    void flushSendsWindowsOfSeriesIdleForIdleTimeOfClock() throws Exception {
+        AggregatingMetricSender sender = sender(10, 10, 10, AggregationOutput.AVG);
+        clock.set(1000);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("a", 3, 2));
+        sender.flush();
+        assertTrue(sent.isEmpty());
+
+        clock.set(1024);
+        sender.flush();
+        assertEquals(Collections.singletonList("a 2.0 @0"), describe(sent));
+    }
+
+    @Test
+    void sendsOpenWindowsOnClose() throws Exception {
+        AggregatingMetricSender sender = sender(10, 10, 10, AggregationOutput.MAX);
+        sender.sendMessage(metric("a", 7, 1));
+        sender.close();
+        assertEquals(Collections.singletonList("a 7.0 @0"), describe(sent));
+    }
+
+    @Test
+    void openWindowsStoredByFlushAreRestoredAfterCrash() throws Exception {
+        String stateFile = stateFile();
+        AggregatingMetricSender sender = new AggregatingMetricSender(collector, 10, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.SUM), Collections.singletonList(50.0), stateFile);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("a", 2, 2));
+        sender.sendMessage(metric("a", 3, 3));
+        sender.flush();
+        //added after the last flush, its line is read again
+        sender.sendMessage(metric("a", 100, 4));
+
+        AggregatingMetricSender restored = new AggregatingMetricSender(collector, 10, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.SUM), Collections.singletonList(50.0), stateFile);
+        restored.sendMessage(metric("a", 4, 4));
+        restored.sendMessage(metric("a", 1, 11));
+        assertEquals(2, sent.size());
+        assertEquals("a.sum 10.0 @0", describe(sent).get(0));
+        assertEquals(2, sent.get(1).getMetricValue(), 2 * 0.004);
+    }
+
+    @Test
+    void closeStoresOpenWindowsInsteadOfSendingThem() throws Exception {
+        String stateFile = stateFile();
+        AggregatingMetricSender sender = sender(stateFile);
+        sender.sendMessage(metric("a", 7, 1));
+        sender.close();
+        assertTrue(sent.isEmpty());
+
+        AggregatingMetricSender restored = sender(stateFile);
+        restored.sendMessage(metric("a", 1, 11));
+        assertEquals(Collections.singletonList("a 7.0 @0"), describe(sent));
+    }
+
+    @Test
+    void windowsStoredWithOtherSettingsAreNotRestored() throws Exception {
+        String stateFile = stateFile();
+        AggregatingMetricSender sender = sender(stateFile);
+        sender.sendMessage(metric("a", 7, 1));
+        sender.flush();
+
+        AggregatingMetricSender restored = new AggregatingMetricSender(collector, 20, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.MAX), Collections.emptyList(), stateFile);
+        restored.sendMessage(metric("a", 1, 31));
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void setsWindowsBackToLastFlushWhenSendingFails() throws Exception {
+        FailingSink sink = new FailingSink();
+        AggregatingMetricSender sender = new AggregatingMetricSender(sink, 10, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.SUM), Collections.emptyList(), null);
+        long generation = sender.getFailureGeneration();
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("a", 2, 2));
+        sender.flush();
+        sender.sendMessage(metric("a", 3, 5));
+        sink.failing = true;
+        assertThrows(IOException.class, () -> sender.sendMessage(metric("a", 4, 12)));
+        assertTrue(sender.getFailureGeneration() != generation);
+
+        //lines after the flush are read again
+        sink.failing = false;
+        sender.sendMessage(metric("a", 3, 5));
+        sender.sendMessage(metric("a", 4, 12));
+        sender.flush();
+        assertEquals(Collections.singletonList("a 6.0 @0"), describe(sink.sent));
+    }
+
+    @Test
+    void setsWindowsBackWhenMetricsWereDroppedDownstream() throws Exception {
+        FailingSink sink = new FailingSink();
+        AggregatingMetricSender sender = new AggregatingMetricSender(sink, 10, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.SUM), Collections.emptyList(), null);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.flush();
+        sender.sendMessage(metric("a", 2, 2));
+        //sent window lost with the connection
+        sender.sendMessage(metric("a", 3, 11));
+        sink.sent.clear();
+        sink.generation++;
+
+        sender.sendMessage(metric("a", 2, 2));
+        sender.sendMessage(metric("a", 3, 11));
+        sender.flush();
+        assertEquals(Collections.singletonList("a 3.0 @0"), describe(sink.sent));
+    }
+
+    @Test
+    void keepsSeriesWhileDownstreamFailsLongerThanIdleTime() throws Exception {
+        FailingSink sink = new FailingSink();
+        AggregatingMetricSender sender = new AggregatingMetricSender(sink, 10, 10, 10, clock::get,
+                Collections.singletonList(AggregationOutput.SUM), Collections.emptyList(), null);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.flush();
+        sender.sendMessage(metric("a", 2, 2));
+        sink.failing = true;
+        for (long time = 10; time <= 100; time += 10) {
+            clock.set(time);
+            assertThrows(IOException.class, sender::flush);
+        }
+
+        sink.failing = false;
+        sender.sendMessage(metric("a", 2, 2));
+        sender.sendMessage(metric("a", 4, 5));
+        sender.flush();
+        assertTrue(sink.sent.isEmpty());
+        sender.sendMessage(metric("a", 1, 11));
+        assertEquals(Collections.singletonList("a 7.0 @0"), describe(sink.sent));
+    }
+
+    @Test
+    void readsWindowsStoredWithWatermark() throws Exception {
+        String stateFile = stateFile();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Paths.get(stateFile)))) {
+            out.writeInt(1);
+            out.writeLong(10);
+            out.writeInt(1);
+            out.writeBoolean(false);
+            //watermark and the last expired pane
+            out.writeLong(3);
+            out.writeLong(-5);
+            out.writeInt(1);
+            out.writeUTF("a");
+            out.writeInt(1);
+            //no tags
+            out.writeInt(0);
+            out.writeLong(0);
+            out.writeLong(0);
+            out.writeLong(1);
+            out.writeDouble(7);
+            out.writeDouble(7);
+            out.writeDouble(7);
+            out.writeDouble(7);
+            out.writeLong(3);
+        }
+        AggregatingMetricSender restored = sender(stateFile);
+        restored.sendMessage(metric("a", 1, 11));
+        assertEquals(Collections.singletonList("a 7.0 @0"), describe(sent));
+    }
+
+    private AggregatingMetricSender sender(String stateFile) {
+        return new AggregatingMetricSender(collector, 10, 10, 10, clock::get, Collections.singletonList(AggregationOutput.MAX),
+                Collections.emptyList(), stateFile);
+    }
+
+    private static String stateFile() throws Exception {
+        Path directory = Files.createTempDirectory("aggregation");
+        directory.toFile().deleteOnExit();
+        Path stateFile = directory.resolve("index.windows");
+        stateFile.toFile().deleteOnExit();
+        assertFalse(Files.exists(stateFile));
+        return stateFile.toString();
+    }
+
+    private AggregatingMetricSender sender(long window, long slide, long idleTime, AggregationOutput... outputs) {
+        return new AggregatingMetricSender(collector, window, slide, idleTime, clock::get, Arrays.asList(outputs), Collections.emptyList(), null);
+    }
+
+    private static MetricPOJO metric(String name, double value, long timestamp) {
+        return new MetricPOJO(name, value, timestamp);
+    }
+
+    private static List<String> describe(List<MetricPOJO> metrics) {
+        List<String> descriptions = new ArrayList<>();
+        for (MetricPOJO metric : metrics) {
+            descriptions.add(metric.getMetricName() + " " + metric.getMetricValue() + " @" + metric.getTimestamp());
+        }
+        return descriptions;
+    }
+
+    private static List<String> sorted(List<String> values) {
+        Collections.sort(values);
+        return values;
+    }
+
+    //sink refusing metrics and flushes while failing
+    private static class FailingSink implements MetricSender {
+
+        private final List<MetricPOJO> sent = new ArrayList<>();
+        private boolean failing;
+        private long generation;
+
+        @Override
+        public void sendMessage(MetricPOJO metricPOJO) throws IOException {
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+            sent.add(metricPOJO);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+        }
+
+        @Override
+        public long getFailureGeneration() {
+            return generation;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchingMetricSenderTest {
+
+    private final List<MetricPOJO> sent = new ArrayList<>();
+    private volatile boolean failing;
+
+    //sink refusing batches while failing, without a failure generation of its own, like a refused connection
+    private final MetricSender sink = new MetricSender() {
+        @Override
+        public void sendMessage(MetricPOJO metricPOJO) {
+            sent.add(metricPOJO);
+        }
+
+        @Override
+        public void sendBatch(Collection<MetricPOJO> metrics) throws IOException {
+            if (failing) {
+                throw new IOException("Connection refused");
+            }
+            sent.addAll(metrics);
+        }
+    };
+
+    @Test
+    void sendsBatchOfBatchSize() throws Exception {
+        try (BatchingMetricSender sender = new BatchingMetricSender(sink, 3, 60_000)) {
+            sender.sendMessage(metric(1));
+            sender.sendMessage(metric(2));
+            assertEquals(0, sent.size());
+            sender.sendMessage(metric(3));
+            assertEquals(3, sent.size());
+            sender.sendMessage(metric(4));
+            sender.flush();
+            assertEquals(4, sent.size());
+        }
+    }
+
+    @Test
+    void failsFlushOfCallerWhoseMetricsWereDroppedWithBatchOfAnotherCaller() throws Exception {
+        try (BatchingMetricSender sender = new BatchingMetricSender(sink, 2, 60_000)) {
+            FlushTracker first = new FlushTracker(sender);
+            FlushTracker second = new FlushTracker(sender);
+            failing = true;
+            first.sendMessage(metric(1));
+            //batch of metrics of both callers is dropped, only the second one gets the exception
+            assertThrows(IOException.class, () -> second.sendMessage(metric(2)));
+            second.reset();
+
+            failing = false;
+            assertThrows(IOException.class, first::flush);
+
+            first.sendMessage(metric(3));
+            second.sendMessage(metric(4));
+            first.flush();
+            second.flush();
+            assertEquals(2, sent.size());
+        }
+    }
+
+    @Test
+    void failsFlushesOfAllCallersAfterBatchDroppedInBackground() throws Exception {
+        try (BatchingMetricSender sender = new BatchingMetricSender(sink, 100, 10)) {
+            FlushTracker first = new FlushTracker(sender);
+            FlushTracker second = new FlushTracker(sender);
+            failing = true;
+            long generation = sender.getFailureGeneration();
+            first.sendMessage(metric(1));
+            second.sendMessage(metric(2));
+            while (sender.getFailureGeneration() == generation) {
+                Thread.sleep(5);
+            }
+
+            failing = false;
+            //the exception of the background flush goes to one caller, the generation to both
+            assertThrows(Exception.class, first::flush);
+            assertThrows(IOException.class, second::flush);
+            assertEquals(0, sent.size());
+        }
+    }
+
+    private static MetricPOJO metric(long timestamp) {
+        return new MetricPOJO("a", 1, timestamp);
+    }
+}
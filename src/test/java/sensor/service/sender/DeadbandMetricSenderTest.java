@@ -0,0 +1,248 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadbandMetricSenderTest {
+
+    private static final long IDLE_TIME = 60_000;
+
+    private final List<MetricPOJO> sent = new ArrayList<>();
+    private final MetricSender collector = sent::add;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void sendsValuesOutsideAbsoluteDeadbandOfLastValueSent() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "0.5"), 0);
+        for (double value : new double[]{10, 10.5, 10.3, 9.6, 9.4, 9.9, 10.0}) {
+            sender.sendMessage(metric("a", value, 1));
+        }
+        assertEquals(Arrays.asList(10.0, 9.4, 10.0), values(sent));
+    }
+
+    @Test
+    void sendsValuesOutsideRelativeDeadbandOfLastValueSent() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", " 10 % "), 0);
+        for (double value : new double[]{100, 109, 91, 111, 122, 99, -5, -5.4, -6}) {
+            sender.sendMessage(metric("a", value, 1));
+        }
+        assertEquals(Arrays.asList(100.0, 111.0, 99.0, -5.0, -6.0), values(sent));
+    }
+
+    @Test
+    void zeroDeadbandSendsEveryChange() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "0"), 0);
+        for (double value : new double[]{1, 1, 1.0000001, 1.0000001, 0, -0.0, 0}) {
+            sender.sendMessage(metric("a", value, 1));
+        }
+        assertEquals(Arrays.asList(1.0, 1.0000001, 0.0), values(sent));
+    }
+
+    @Test
+    void sendsValueAfterHeartbeatOrWhenTimestampGoesBack() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "1"), 60);
+        sender.sendMessage(metric("a", 5, 100));
+        sender.sendMessage(metric("a", 5, 130));
+        sender.sendMessage(metric("a", 5, 159));
+        sender.sendMessage(metric("a", 5, 160));
+        sender.sendMessage(metric("a", 5, 200));
+        //file read again
+        sender.sendMessage(metric("a", 5, 100));
+        assertEquals(Arrays.asList(100L, 160L, 100L), timestamps(sent));
+    }
+
+    @Test
+    void sendsChangesFromAndToNaN() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "100%"), 0);
+        for (double value : new double[]{1, Double.NaN, Double.NaN, 1.5, 1000}) {
+            sender.sendMessage(metric("a", value, 1));
+        }
+        assertEquals(Arrays.asList(1.0, Double.NaN, 1.5, 1000.0), values(sent));
+    }
+
+    @Test
+    void keepsLastValueOfEverySeries() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "0.7"), 0);
+        for (int round = 0; round < 3; round++) {
+            for (int host = 0; host < 1000; host++) {
+                sender.sendMessage(new MetricPOJO("a", host + round * 0.5, 1, Collections.singletonMap("host", "node-" + host)));
+            }
+            sender.sendMessage(new MetricPOJO("a", round * 0.5, 1, null));
+        }
+        //values moved by 0.5 twice, only the second move is out of the deadband
+        assertEquals(2 * 1001, sent.size());
+        for (int host = 0; host < 1000; host++) {
+            MetricPOJO metric = sent.get(1001 + host);
+            assertEquals("node-" + host, metric.getTags().get("host"));
+            assertEquals(host + 1.0, metric.getMetricValue());
+        }
+    }
+
+    @Test
+    void appliesDefaultDeadbandToEveryOtherNameSeparately() throws Exception {
+        Map<String, String> deadbands = new HashMap<>();
+        deadbands.put("exact", "0");
+        deadbands.put(DeadbandMetricSender.ANY_METRIC_NAME, "5");
+        DeadbandMetricSender sender = sender(deadbands, 0);
+        sender.sendMessage(metric("x", 10, 1));
+        sender.sendMessage(metric("y", 12, 1));
+        sender.sendMessage(metric("x", 12, 2));
+        sender.sendMessage(metric("y", 16, 2));
+        sender.sendMessage(metric("exact", 1, 1));
+        sender.sendMessage(metric("exact", 2, 2));
+        assertEquals(Arrays.asList("x", "y", "exact", "exact"), names(sent));
+    }
+
+    @Test
+    void sendsMetricsWithoutDeadbandAsTheyAre() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap("a", "5"), 0);
+        sender.sendMessage(metric("b", 1, 1));
+        sender.sendMessage(metric("b", 1, 1));
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void rejectsNegativeOrInvalidDeadbands() {
+        assertThrows(IllegalArgumentException.class, () -> sender(Collections.singletonMap("a", "-1"), 0));
+        assertThrows(IllegalArgumentException.class, () -> sender(Collections.singletonMap("a", "-1%"), 0));
+        assertThrows(IllegalArgumentException.class, () -> sender(Collections.singletonMap("a", "NaN"), 0));
+        assertThrows(NumberFormatException.class, () -> sender(Collections.singletonMap("a", "x%"), 0));
+    }
+
+    @Test
+    void delegatesFlushCloseAndFailureGeneration() throws Exception {
+        int[] calls = new int[2];
+        ClosableSender downstream = new ClosableSender() {
+            @Override
+            public void sendMessage(MetricPOJO metricPOJO) {
+            }
+
+            @Override
+            public void flush() {
+                calls[0]++;
+            }
+
+            @Override
+            public long getFailureGeneration() {
+                return 7;
+            }
+
+            @Override
+            public void close() {
+                calls[1]++;
+            }
+        };
+        DeadbandMetricSender sender = new DeadbandMetricSender(downstream, Collections.singletonMap("a", "1"), 0, IDLE_TIME, clock::get);
+        sender.flush();
+        assertEquals(7, sender.getFailureGeneration());
+        sender.close();
+        assertTrue(calls[0] == 1 && calls[1] == 1);
+    }
+
+    @Test
+    void sendsValueAgainWhenSendingFailed() throws Exception {
+        boolean[] failing = {false};
+        MetricSender downstream = metricPOJO -> {
+            if (failing[0]) {
+                throw new IOException("Connection refused");
+            }
+            sent.add(metricPOJO);
+        };
+        DeadbandMetricSender sender = new DeadbandMetricSender(downstream, Collections.singletonMap("a", "1"), 0, IDLE_TIME, clock::get);
+        sender.sendMessage(metric("a", 1, 1));
+        failing[0] = true;
+        assertThrows(IOException.class, () -> sender.sendMessage(metric("a", 5, 2)));
+        failing[0] = false;
+        //read again
+        sender.sendMessage(metric("a", 5, 2));
+        assertEquals(Arrays.asList(1.0, 5.0), values(sent));
+    }
+
+    @Test
+    void sendsValuesAgainWhenMetricsWereDroppedDownstream() throws Exception {
+        long[] generation = {0};
+        MetricSender downstream = new MetricSender() {
+            @Override
+            public void sendMessage(MetricPOJO metricPOJO) {
+                sent.add(metricPOJO);
+            }
+
+            @Override
+            public long getFailureGeneration() {
+                return generation[0];
+            }
+        };
+        DeadbandMetricSender sender = new DeadbandMetricSender(downstream, Collections.singletonMap(DeadbandMetricSender.ANY_METRIC_NAME, "1"), 0,
+                IDLE_TIME, clock::get);
+        sender.sendMessage(metric("a", 1, 1));
+        sender.sendMessage(metric("b", 7, 1));
+        sender.sendMessage(metric("a", 5, 2));
+        //the connection failed before the last value was written
+        sent.remove(sent.size() - 1);
+        generation[0]++;
+
+        sender.sendMessage(metric("a", 5, 2));
+        sender.sendMessage(metric("b", 7, 2));
+        sender.flush();
+        assertEquals(Arrays.asList(1.0, 7.0, 5.0, 7.0), values(sent));
+    }
+
+    @Test
+    void removesSeriesIdleForIdleTime() throws Exception {
+        DeadbandMetricSender sender = sender(Collections.singletonMap(DeadbandMetricSender.ANY_METRIC_NAME, "1"), 0);
+        for (int host = 0; host < 100; host++) {
+            sender.sendMessage(new MetricPOJO("a" + host % 10, 1, 1, Collections.singletonMap("host", "node-" + host)));
+        }
+        clock.set(IDLE_TIME / 2);
+        sender.sendMessage(new MetricPOJO("a0", 1, 2, Collections.singletonMap("host", "node-0")));
+        clock.set(IDLE_TIME + 1);
+        sender.sendMessage(new MetricPOJO("a0", 1, 3, Collections.singletonMap("host", "node-0")));
+        sender.sendMessage(new MetricPOJO("a1", 1, 3, Collections.singletonMap("host", "node-1")));
+        //the first one was seen within the idle time, the other one was removed
+        assertEquals(101, sent.size());
+        assertEquals("a1", sent.get(100).getMetricName());
+    }
+
+    private DeadbandMetricSender sender(Map<String, String> deadbands, long heartbeat) {
+        return new DeadbandMetricSender(collector, deadbands, heartbeat, IDLE_TIME, clock::get);
+    }
+
+    private static MetricPOJO metric(String name, double value, long timestamp) {
+        return new MetricPOJO(name, value, timestamp);
+    }
+
+    private static List<Double> values(List<MetricPOJO> metrics) {
+        List<Double> values = new ArrayList<>();
+        metrics.forEach(metric -> values.add(metric.getMetricValue()));
+        return values;
+    }
+
+    private static List<Long> timestamps(List<MetricPOJO> metrics) {
+        List<Long> timestamps = new ArrayList<>();
+        metrics.forEach(metric -> timestamps.add(metric.getTimestamp()));
+        return timestamps;
+    }
+
+    private static List<String> names(List<MetricPOJO> metrics) {
+        List<String> names = new ArrayList<>();
+        metrics.forEach(metric -> names.add(metric.getMetricName()));
+        return names;
+    }
+
+    private interface ClosableSender extends MetricSender, Closeable {
+    }
+}
@@ -0,0 +1,164 @@
+package sensor.service.sender;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.enums.JmsDeliveryMode;
+import sensor.common.enums.JmsMessageFormat;
+import sensor.common.pojo.MetricPOJO;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JmsMetricSenderTest {
+
+    private static final String BROKER_NAME = "sensor-test";
+    //the broker is started by the test, so it is not created again by a connection after it is stopped
+    private static final String BROKER_URL = "vm://" + BROKER_NAME + "?create=false";
+    private static final long RECEIVE_TIMEOUT = 5000;
+
+    private BrokerService broker;
+    private Connection consumerConnection;
+    private JmsMetricSender sender;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        broker = createBroker();
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        if (sender != null) {
+            sender.close();
+        }
+        closeConsumer();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    void commitsEveryTransactedBatchAndOnFlush() throws Exception {
+        MessageConsumer consumer = subscribe("a");
+        sender = sender(3);
+        sender.sendMessage(metric(1));
+        sender.sendMessage(metric(2));
+        assertNull(consumer.receive(200));
+
+        sender.sendMessage(metric(3));
+        assertEquals(Arrays.asList("a 1", "a 2", "a 3"), receive(consumer, 3));
+
+        sender.sendMessage(metric(4));
+        assertNull(consumer.receive(200));
+        sender.flush();
+        assertEquals(Collections.singletonList("a 4"), receive(consumer, 1));
+        assertEquals(0, sender.getFailureGeneration());
+    }
+
+    @Test
+    void opensConnectionAgainAfterBrokerFailure() throws Exception {
+        sender = sender(10);
+        sender.sendMessage(metric(1));
+        sender.flush();
+
+        restartBroker();
+        assertThrows(JMSException.class, () -> {
+            sender.sendMessage(metric(2));
+            sender.flush();
+        });
+        assertEquals(1, sender.getFailureGeneration());
+
+        MessageConsumer consumer = subscribe("a");
+        sender.sendMessage(metric(3));
+        sender.flush();
+        assertEquals(Collections.singletonList("a 3"), receive(consumer, 1));
+        assertEquals(1, sender.getFailureGeneration());
+    }
+
+    @Test
+    void failsFlushOfCallerWhoseMessagesWereDroppedWithConnection() throws Exception {
+        sender = sender(10);
+        FlushTracker first = new FlushTracker(sender);
+        FlushTracker second = new FlushTracker(sender);
+        first.sendMessage(metric(1));
+
+        restartBroker();
+        //messages of both callers are dropped, only the second one gets the exception
+        assertThrows(JMSException.class, () -> {
+            second.sendMessage(metric(2));
+            second.flush();
+        });
+        second.reset();
+
+        MessageConsumer consumer = subscribe("a");
+        assertThrows(IOException.class, first::flush);
+        first.sendMessage(metric(3));
+        first.flush();
+        assertEquals(Collections.singletonList("a 3"), receive(consumer, 1));
+        assertNull(consumer.receive(200));
+    }
+
+    private JmsMetricSender sender(int transactedBatchSize) {
+        return new JmsMetricSender(new ActiveMQConnectionFactory(BROKER_URL), transactedBatchSize, false, JmsDeliveryMode.NON_PERSISTENT,
+                JmsMessageFormat.TEXT, metricPOJO -> metricPOJO.getMetricName() + " " + metricPOJO.getTimestamp());
+    }
+
+    private static BrokerService createBroker() throws Exception {
+        BrokerService brokerService = new BrokerService();
+        brokerService.setBrokerName(BROKER_NAME);
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.start();
+        brokerService.waitUntilStarted();
+        return brokerService;
+    }
+
+    //connections to the stopped broker fail, the sender connects to the new one
+    private void restartBroker() throws Exception {
+        closeConsumer();
+        broker.stop();
+        broker.waitUntilStopped();
+        broker = createBroker();
+    }
+
+    private MessageConsumer subscribe(String topic) throws JMSException {
+        consumerConnection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        consumerConnection.start();
+        Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        return session.createConsumer(session.createTopic(topic));
+    }
+
+    private void closeConsumer() throws JMSException {
+        if (consumerConnection != null) {
+            consumerConnection.close();
+            consumerConnection = null;
+        }
+    }
+
+    private static List<String> receive(MessageConsumer consumer, int count) throws JMSException {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = consumer.receive(RECEIVE_TIMEOUT);
+            messages.add(message == null ? null : ((TextMessage) message).getText());
+        }
+        return messages;
+    }
+
+    private static MetricPOJO metric(long timestamp) {
+        return new MetricPOJO("a", 1, timestamp);
+    }
+}
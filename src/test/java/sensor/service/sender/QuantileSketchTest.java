@@ -0,0 +1,152 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0.0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1.0};
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 5, 7, 10})
+    void estimatesQuantilesWithinRelativeErrorBound(int precision) {
+        Random random = new Random(precision);
+        double bound = Math.scalb(1.0, -(precision + 1));
+        //uniform, exponential, log-normal latencies and values spanning the whole range of buckets
+        DoubleSupplier[] distributions = {
+                () -> 1 + random.nextDouble() * 1000,
+                () -> -Math.log(1 - random.nextDouble()) * 50,
+                () -> Math.exp(3 + 1.5 * random.nextGaussian()),
+                () -> Math.scalb(1 + random.nextDouble(), random.nextInt(50) - 10)
+        };
+        for (DoubleSupplier distribution : distributions) {
+            for (int size : new int[]{1, 2, 10, 1000, 100_000}) {
+                QuantileSketch sketch = new QuantileSketch(precision);
+                double[] values = new double[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = distribution.getAsDouble();
+                    sketch.add(values[i]);
+                }
+                Arrays.sort(values);
+                assertEquals(size, sketch.getCount());
+                assertEquals(values[0], sketch.getMin());
+                assertEquals(values[size - 1], sketch.getMax());
+                for (double quantile : QUANTILES) {
+                    double exact = exactQuantile(values, quantile);
+                    double estimate = sketch.quantile(quantile);
+                    assertTrue(Math.abs(estimate - exact) <= bound * exact,
+                            () -> String.format("Quantile %s of %s values: %s, exact %s, precision %s", quantile, size, estimate, exact, precision));
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsValuesOutsideBucketsWithinMinAndMax() {
+        QuantileSketch sketch = new QuantileSketch(5);
+        for (double value : new double[]{-5, 0, 1e-9, 1e-4, 1, 1e13, 1e15}) {
+            sketch.add(value);
+        }
+        sketch.add(Double.NaN);
+        assertEquals(7, sketch.getCount());
+        assertEquals(-5, sketch.quantile(0));
+        assertEquals(-5, sketch.quantile(0.3));
+        assertEquals(1e15, sketch.quantile(1));
+        assertEquals(1e15, sketch.quantile(0.9));
+        assertEquals(Double.NaN, new QuantileSketch(5).quantile(0.5));
+    }
+
+    @Test
+    void mergedSketchEqualsSketchOfAllValues() {
+        Random random = new Random(1);
+        QuantileSketch all = new QuantileSketch(6);
+        QuantileSketch merged = new QuantileSketch(6);
+        for (int part = 0; part < 10; part++) {
+            QuantileSketch partSketch = new QuantileSketch(6);
+            for (int i = 0; i < 1000; i++) {
+                double value = Math.exp(part + random.nextGaussian());
+                partSketch.add(value);
+                all.add(value);
+            }
+            merged.merge(partSketch);
+        }
+        assertSameQuantiles(all, merged);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new QuantileSketch(5)));
+    }
+
+    @Test
+    void clearedSketchIsEmpty() {
+        QuantileSketch sketch = new QuantileSketch(6);
+        sketch.add(10);
+        sketch.add(1e12);
+        sketch.clear();
+        assertEquals(0, sketch.getCount());
+        assertEquals(Double.NaN, sketch.quantile(0.5));
+        sketch.add(3);
+        assertEquals(3, sketch.quantile(0.5));
+        assertEquals(3, sketch.quantile(1));
+    }
+
+    @Test
+    void readsWrittenSketch() throws IOException {
+        Random random = new Random(2);
+        QuantileSketch sketch = new QuantileSketch(7);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(Math.exp(4 + 2 * random.nextGaussian()));
+        }
+        QuantileSketch read = new QuantileSketch(7);
+        read.add(1);
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(write(sketch))));
+        assertSameQuantiles(sketch, read);
+
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(write(new QuantileSketch(7)))));
+        assertEquals(0, read.getCount());
+
+        QuantileSketch lowerPrecision = new QuantileSketch(3);
+        assertThrows(IOException.class, () -> lowerPrecision.readFrom(new DataInputStream(new ByteArrayInputStream(write(sketch)))));
+        assertEquals(0, lowerPrecision.getCount());
+    }
+
+    @Test
+    void rejectsUnsupportedPrecision() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(11));
+    }
+
+    //value of rank ceil(quantile * count), as estimated by the sketch
+    private static double exactQuantile(double[] sortedValues, double quantile) {
+        int rank = (int) Math.max(1, Math.ceil(quantile * sortedValues.length));
+        return sortedValues[rank - 1];
+    }
+
+    private static void assertSameQuantiles(QuantileSketch expected, QuantileSketch actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        for (double quantile : QUANTILES) {
+            assertEquals(expected.quantile(quantile), actual.quantile(quantile));
+        }
+    }
+
+    private static byte[] write(QuantileSketch sketch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            sketch.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,229 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpoolingMetricSenderTest {
+
+    //header, spool time, timestamp, value, name "a" and no tags
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES + Short.BYTES + 1 + Short.BYTES;
+
+    private Path spoolDir;
+    private final List<Long> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void createSpoolDir() throws IOException {
+        spoolDir = Files.createTempDirectory("spool");
+    }
+
+    @AfterEach
+    void deleteSpoolDir() throws IOException {
+        try (Stream<Path> paths = Files.walk(spoolDir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void sendsRecordsBeforeTornRecordAfterRestart() throws Exception {
+        TestSink sink = new TestSink();
+        sink.failing = true;
+        try (SpoolingMetricSender sender = spool(sink, 1024, 10_240, 0)) {
+            for (long timestamp = 1; timestamp <= 3; timestamp++) {
+                sender.sendMessage(metric(timestamp));
+            }
+        }
+        //payload of the last record written only partly by a crash
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 2L * RECORD_SIZE + RECORD_SIZE - 3);
+        }
+
+        try (SpoolingMetricSender sender = spool(new TestSink(), 1024, 10_240, 0)) {
+            sender.sendMessage(metric(4));
+            waitFor(() -> sent.size() >= 3);
+            Thread.sleep(100);
+        }
+        assertEquals(Arrays.asList(1L, 2L, 4L), sent);
+    }
+
+    @Test
+    void sendsAfterRestartFromStoredPosition() throws Exception {
+        TestSink sink = new TestSink();
+        try (SpoolingMetricSender sender = spool(sink, 1024, 10_240, 0)) {
+            sender.sendMessage(metric(1));
+            sender.sendMessage(metric(2));
+            waitFor(() -> sent.size() == 2);
+            sink.failing = true;
+            sender.sendMessage(metric(3));
+            waitFor(() -> sink.attempts == 3);
+        }
+
+        try (SpoolingMetricSender sender = spool(new TestSink(), 1024, 10_240, 0)) {
+            sender.sendMessage(metric(4));
+            waitFor(() -> sent.size() >= 4);
+            Thread.sleep(100);
+        }
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), sent);
+    }
+
+    @Test
+    void dropsOldestSegmentWhenSpoolGrowsOverMaxSize() throws Exception {
+        TestSink sink = new TestSink();
+        sink.gate = new CountDownLatch(1);
+        //two records a segment, at most three segments
+        try (SpoolingMetricSender sender = spool(sink, 2 * RECORD_SIZE + 10, 3 * (2 * RECORD_SIZE + 10), 0)) {
+            sender.sendMessage(metric(1));
+            waitFor(() -> sink.attempts == 1);
+            for (long timestamp = 2; timestamp <= 10; timestamp++) {
+                sender.sendMessage(metric(timestamp));
+            }
+            assertEquals(3, segments().size());
+
+            sink.gate.countDown();
+            waitFor(() -> sent.contains(10L));
+        }
+        //the record taken before its segment was dropped is still sent
+        assertEquals(Arrays.asList(1L, 5L, 6L, 7L, 8L, 9L, 10L), sent);
+    }
+
+    @Test
+    void dropsMetricsSpooledLongerThanMaxAge() throws Exception {
+        TestSink sink = new TestSink();
+        sink.gate = new CountDownLatch(1);
+        try (SpoolingMetricSender sender = spool(sink, 1024, 10_240, 200)) {
+            sender.sendMessage(metric(1));
+            waitFor(() -> sink.attempts == 1);
+            sender.sendMessage(metric(2));
+            sender.sendMessage(metric(3));
+            Thread.sleep(400);
+            sender.sendMessage(metric(4));
+
+            sink.gate.countDown();
+            waitFor(() -> sent.contains(4L));
+        }
+        assertEquals(Arrays.asList(1L, 4L), sent);
+    }
+
+    @Test
+    void closesSenderAfterDrainerStopped() throws Exception {
+        TestSink sink = new TestSink();
+        sink.ignoringInterrupts = true;
+        sink.gate = new CountDownLatch(1);
+        SpoolingMetricSender sender = spool(sink, 1024, 10_240, 0);
+        sender.sendMessage(metric(1));
+        waitFor(() -> sink.attempts == 1);
+        new Thread(() -> {
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sink.gate.countDown();
+        }).start();
+
+        sender.close();
+        assertTrue(sink.closed);
+        assertFalse(sink.closedWhileSending);
+    }
+
+    private SpoolingMetricSender spool(MetricSender sink, int segmentSize, long maxSize, long maxAge) throws IOException {
+        return new SpoolingMetricSender(sink, spoolDir.toString(), segmentSize, maxSize, maxAge);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(spoolDir)) {
+            return paths.filter(path -> path.toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static MetricPOJO metric(long timestamp) {
+        return new MetricPOJO("a", 1, timestamp);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    //metrics count as sent when they are flushed, sending waits for the gate and fails while failing is set
+    private class TestSink implements MetricSender, Closeable {
+
+        private final List<Long> pending = new ArrayList<>();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile boolean failing;
+        private volatile boolean ignoringInterrupts;
+        private volatile int attempts;
+        private volatile boolean sending;
+        private volatile boolean closed;
+        private volatile boolean closedWhileSending;
+
+        @Override
+        public void sendMessage(MetricPOJO metricPOJO) throws Exception {
+            sending = true;
+            try {
+                attempts++;
+                awaitGate();
+                if (failing) {
+                    throw new IOException("Connection refused");
+                }
+                pending.add(metricPOJO.getTimestamp());
+            } finally {
+                sending = false;
+            }
+        }
+
+        @Override
+        public void flush() {
+            sent.addAll(pending);
+            pending.clear();
+        }
+
+        @Override
+        public void close() {
+            closedWhileSending = sending;
+            closed = true;
+        }
+
+        private void awaitGate() throws InterruptedException {
+            while (true) {
+                try {
+                    gate.await();
+                    return;
+                } catch (InterruptedException e) {
+                    if (!ignoringInterrupts) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package sensor.service.sender;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import sensor.common.pojo.MetricPOJO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelnetMetricSenderTest {
+
+    private static final Pattern NEXT_ATTEMPT = Pattern.compile("next attempt in (\\d+) ms");
+
+    private TestServer server;
+    private TelnetMetricSender sender;
+
+    @AfterEach
+    void close() throws IOException {
+        if (sender != null) {
+            sender.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void sendsLinesThroughOneConnection() throws Exception {
+        server = new TestServer(0, Integer.MAX_VALUE);
+        sender = sender(server.getPort(), 100, 1000);
+        sender.sendMessage(metric(1));
+        sender.sendMessage(metric(2));
+        sender.flush();
+        sender.sendBatch(Arrays.asList(metric(3), metric(4)));
+
+        waitFor(() -> server.lines.size() == 4);
+        assertEquals(Arrays.asList("a 1", "a 2", "a 3", "a 4"), server.lines);
+        assertEquals(1, server.connections.get());
+        assertEquals(0, sender.getFailureGeneration());
+    }
+
+    @Test
+    void reconnectsAfterConnectionClosedByServer() throws Exception {
+        //first connection is closed after a line
+        server = new TestServer(0, 1);
+        sender = sender(server.getPort(), 200, 1000);
+        sender.sendMessage(metric(1));
+        sender.flush();
+        waitFor(() -> server.connections.get() == 1 && server.firstClosed);
+
+        //buffered lines are dropped with the connection, so flushes of all callers fail
+        FlushTracker flushTracker = new FlushTracker(sender);
+        assertThrows(IOException.class, () -> {
+            for (long timestamp = 2; timestamp < 1000; timestamp++) {
+                flushTracker.sendMessage(metric(timestamp));
+                flushTracker.flush();
+                Thread.sleep(5);
+            }
+        });
+        assertEquals(1, sender.getFailureGeneration());
+        IOException refused = assertThrows(IOException.class, () -> sender.sendMessage(metric(1000)));
+        assertTrue(nextAttemptTime(refused) <= 200, refused.getMessage());
+
+        Thread.sleep(250);
+        flushTracker.reset();
+        flushTracker.sendMessage(metric(1001));
+        flushTracker.flush();
+        waitFor(() -> server.lines.contains("a 1001"));
+        assertEquals(2, server.connections.get());
+        assertEquals(1, sender.getFailureGeneration());
+    }
+
+    @Test
+    void doublesReconnectTimeWhileConnectionsAreRefused() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        sender = sender(port, 100, 250);
+
+        assertThrows(ConnectException.class, () -> sender.sendMessage(metric(1)));
+        assertTrue(nextAttemptTime(assertThrows(IOException.class, () -> sender.sendMessage(metric(2)))) <= 100);
+        Thread.sleep(150);
+        assertThrows(ConnectException.class, () -> sender.sendMessage(metric(3)));
+        long nextAttemptTime = nextAttemptTime(assertThrows(IOException.class, () -> sender.sendMessage(metric(4))));
+        assertTrue(nextAttemptTime > 100 && nextAttemptTime <= 200, String.valueOf(nextAttemptTime));
+        Thread.sleep(250);
+        assertThrows(ConnectException.class, () -> sender.sendMessage(metric(5)));
+        nextAttemptTime = nextAttemptTime(assertThrows(IOException.class, () -> sender.sendMessage(metric(6))));
+        assertTrue(nextAttemptTime > 200 && nextAttemptTime <= 250, String.valueOf(nextAttemptTime));
+        //nothing was buffered, so no metrics were dropped
+        assertEquals(0, sender.getFailureGeneration());
+
+        server = new TestServer(port, Integer.MAX_VALUE);
+        Thread.sleep(300);
+        sender.sendMessage(metric(7));
+        sender.flush();
+        waitFor(() -> server.lines.size() == 1);
+        assertEquals(Collections.singletonList("a 7"), server.lines);
+    }
+
+    private static TelnetMetricSender sender(int port, long reconnectTime, long maxReconnectTime) {
+        return new TelnetMetricSender("localhost", port, true, 1000, reconnectTime, maxReconnectTime,
+                metricPOJO -> metricPOJO.getMetricName() + " " + metricPOJO.getTimestamp());
+    }
+
+    private static MetricPOJO metric(long timestamp) {
+        return new MetricPOJO("a", 1, timestamp);
+    }
+
+    private static long nextAttemptTime(IOException e) {
+        Matcher matcher = NEXT_ATTEMPT.matcher(e.getMessage());
+        assertTrue(matcher.find(), e.getMessage());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    //accepts connections one after another, closes the first one after the given number of lines
+    private static class TestServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile boolean firstClosed;
+
+        TestServer(int port, int linesOfFirstConnection) throws IOException {
+            this.serverSocket = new ServerSocket(port);
+            Thread thread = new Thread(() -> accept(linesOfFirstConnection));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void accept(int linesOfFirstConnection) {
+            try {
+                while (true) {
+                    try (Socket socket = serverSocket.accept();
+                         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                        int maxLines = connections.incrementAndGet() == 1 ? linesOfFirstConnection : Integer.MAX_VALUE;
+                        String line;
+                        for (int read = 0; read < maxLines && (line = in.readLine()) != null; read++) {
+                            lines.add(line);
+                        }
+                    }
+                    firstClosed = true;
+                }
+            } catch (IOException e) {
+                //server closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}